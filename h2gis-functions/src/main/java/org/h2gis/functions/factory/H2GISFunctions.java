@@ -38,6 +38,8 @@ import org.h2gis.functions.io.DriverManager;
 import org.h2gis.functions.io.dbf.DBFRead;
 import org.h2gis.functions.io.dbf.DBFWrite;
 import org.h2gis.functions.io.geojson.GeoJsonRead;
+import org.h2gis.functions.io.geojson.GeoJsonSeqRead;
+import org.h2gis.functions.io.geojson.GeoJsonSeqWrite;
 import org.h2gis.functions.io.geojson.GeoJsonWrite;
 import org.h2gis.functions.io.geojson.ST_AsGeoJSON;
 import org.h2gis.functions.io.geojson.ST_GeomFromGeoJSON;
@@ -105,6 +107,7 @@ import org.h2gis.functions.spatial.create.ST_Point;
 import org.h2gis.functions.spatial.create.ST_RingBuffer;
 import org.h2gis.functions.spatial.crs.ST_SetSRID;
 import org.h2gis.functions.spatial.crs.ST_Transform;
+import org.h2gis.functions.spatial.crs.ST_TransformCacheSize;
 import org.h2gis.functions.spatial.distance.ST_ClosestCoordinate;
 import org.h2gis.functions.spatial.distance.ST_ClosestPoint;
 import org.h2gis.functions.spatial.distance.ST_FurthestCoordinate;
@@ -215,6 +218,7 @@ import org.h2gis.functions.spatial.topography.ST_TriangleContouring;
 import org.h2gis.functions.spatial.topography.ST_TriangleDirection;
 import org.h2gis.functions.spatial.topography.ST_TriangleSlope;
 import org.h2gis.functions.spatial.topology.ST_Graph;
+import org.h2gis.functions.spatial.topology.ST_GraphUpdate;
 import org.h2gis.functions.spatial.topology.ST_Node;
 import org.h2gis.functions.spatial.topology.ST_Polygonize;
 import org.h2gis.functions.spatial.trigonometry.ST_Azimuth;
@@ -315,6 +319,7 @@ public class H2GISFunctions {
                 new ST_EnvelopesIntersect(),
                 new ST_Accum(),
                 new ST_Transform(),
+                new ST_TransformCacheSize(),
                 new ST_SetSRID(),
                 new ST_CoordDim(),
                 new ST_GeometryTypeCode(),
@@ -328,6 +333,8 @@ public class H2GISFunctions {
                 new GPXRead(),
                 new GeoJsonRead(),
                 new GeoJsonWrite(),
+                new GeoJsonSeqRead(),
+                new GeoJsonSeqWrite(),
                 new KMLWrite(),
                 new SHPRead(),
                 new SHPWrite(),
@@ -435,6 +442,7 @@ public class H2GISFunctions {
                 new TSVWrite(),
                 new ST_NPoints(),
                 new ST_Graph(),
+                new ST_GraphUpdate(),
                 new H2GISversion(),
                 new ST_Collect(),
                 new ST_RemoveDuplicatedCoordinates(),
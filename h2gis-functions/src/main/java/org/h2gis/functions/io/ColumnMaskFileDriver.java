@@ -0,0 +1,39 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.functions.io;
+
+import java.io.IOException;
+
+/**
+ * A {@link FileDriver} that is able to read only some fields of a row.
+ * A {@link org.h2gis.functions.io.file_table.H2Table} linked with this driver does not read the fields that are not
+ * used by a query.
+ */
+public interface ColumnMaskFileDriver extends FileDriver {
+
+    /**
+     * Read only the requested fields of a row.
+     * @param rowId Row index [0-getRowCount()[
+     * @param columnMask For each field of the row, true if the value has to be read. Null to read all fields.
+     * @return The row content, not requested fields may be null
+     * @throws java.io.IOException Read error
+     */
+    Object[] getRow(long rowId, boolean[] columnMask) throws IOException;
+}
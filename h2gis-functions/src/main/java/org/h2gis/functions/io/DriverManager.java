@@ -23,6 +23,7 @@ package org.h2gis.functions.io;
 import org.h2.util.StringUtils;
 import org.h2gis.functions.io.dbf.DBFDriverFunction;
 import org.h2gis.functions.io.dbf.DBFEngine;
+import org.h2gis.functions.io.file_table.FileEngine;
 import org.h2gis.functions.io.shp.SHPDriverFunction;
 import org.h2gis.functions.io.shp.SHPEngine;
 import org.h2gis.api.AbstractFunction;
@@ -86,14 +87,29 @@ public class DriverManager extends AbstractFunction implements ScalarFunction, D
      * @param tableName [[catalog.]schema.]table reference
      */
     public static void openFile(Connection connection, String fileName, String tableName) throws SQLException {
+        openFile(connection, fileName, tableName, false);
+    }
+
+    /**
+     * Create a new table
+     * @param connection Active connection, do not close this connection.
+     * @param fileName File path to write, if exists it may be replaced
+     * @param tableName [[catalog.]schema.]table reference
+     * @param memoryMapped True to map the file in memory instead of reading it through a heap buffer
+     */
+    public static void openFile(Connection connection, String fileName, String tableName, boolean memoryMapped) throws SQLException {
         String ext = fileName.substring(fileName.lastIndexOf('.') + 1,fileName.length());
         final boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
         for(DriverDef driverDef : DRIVERS) {
             if(driverDef.getFileExt().equalsIgnoreCase(ext)) {
                 Statement st = connection.createStatement();
+                String engineParams = StringUtils.quoteJavaString(fileName);
+                if(memoryMapped) {
+                    engineParams += ", " + StringUtils.quoteJavaString(FileEngine.MEMORY_MAPPED_OPTION);
+                }
                 st.execute(String.format("CREATE TABLE %s COMMENT %s ENGINE %s WITH %s",
                         TableLocation.parse(tableName, isH2).toString(isH2),StringUtils.quoteStringSQL(fileName),
-                        StringUtils.quoteJavaString(driverDef.getClassName()),StringUtils.quoteJavaString(fileName)));
+                        StringUtils.quoteJavaString(driverDef.getClassName()),engineParams));
                 st.close();
                 return;
             }
@@ -0,0 +1,55 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io;
+
+import org.h2gis.functions.io.utility.PackedRTree;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+
+/**
+ * A {@link FileDriver} that is able to provide a spatial index of its geometry field.
+ * A {@link org.h2gis.functions.io.file_table.H2Table} linked with this driver uses this index instead of building
+ * an index in memory when a spatial index is created on the geometry field.
+ */
+public interface SpatialFileDriver extends FileDriver {
+
+    /**
+     * @return The geometry field index in getRow() array.
+     */
+    int getGeometryFieldIndex();
+
+    /**
+     * Read the envelope of the geometry of a row, without reading the geometry itself.
+     * @param rowId Row index [0-getRowCount()[
+     * @return The envelope of the geometry, null if the geometry is null
+     * @throws IOException Read error
+     */
+    Envelope getEnvelope(long rowId) throws IOException;
+
+    /**
+     * Open the spatial index of the geometry field. The index is built if it does not exist or if it is out of
+     * date. The item identifiers of the index are the row index [0-getRowCount()[
+     * @return The spatial index
+     * @throws IOException Read error
+     */
+    PackedRTree getSpatialIndex() throws IOException;
+}
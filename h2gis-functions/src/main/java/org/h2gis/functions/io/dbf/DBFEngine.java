@@ -39,7 +39,8 @@ public class DBFEngine extends FileEngine<DBFDriver> {
     @Override
     protected DBFDriver createDriver(File filePath, List<String> args) throws IOException {
         DBFDriver driver = new DBFDriver();
-        driver.initDriverFromFile(filePath,  args.size() > 1 ? args.get(1) : null);
+        driver.setMemoryMapped(isMemoryMapped(args));
+        driver.initDriverFromFile(filePath, getEncoding(args));
         return driver;
     }
 
@@ -20,7 +20,7 @@
 
 package org.h2gis.functions.io.dbf.internal;
 
-import org.h2gis.functions.io.FileDriver;
+import org.h2gis.functions.io.ColumnMaskFileDriver;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -31,10 +31,25 @@ import java.io.IOException;
  * Manage DBFReader and DBFWriter
  * @author Nicolas Fortin
  */
-public class DBFDriver implements FileDriver {
+public class DBFDriver implements ColumnMaskFileDriver {
     private File dbfFile;
     private DbaseFileReader dbaseFileReader;
     private DbaseFileWriter dbaseFileWriter;
+    private boolean memoryMapped = false;
+
+    /**
+     * @param memoryMapped If true the file read by {@link #initDriverFromFile(File, String)} is mapped in memory
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * @return True if the file is mapped in memory when read
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
 
     /**
      * Init file header for DBF File
@@ -55,7 +70,7 @@ public class DBFDriver implements FileDriver {
         // Read columns from files metadata
         this.dbfFile = dbfFile;
         FileInputStream fis = new FileInputStream(dbfFile);
-        dbaseFileReader = new DbaseFileReader(fis.getChannel(), forceEncoding);
+        dbaseFileReader = new DbaseFileReader(fis.getChannel(), forceEncoding, memoryMapped);
     }
 
     public void initDriver(File dbfFile, DbaseFileHeader dbaseHeader) throws IOException {
@@ -137,10 +152,17 @@ public class DBFDriver implements FileDriver {
 
     @Override
     public Object[] getRow(long rowId) throws IOException {
+        return getRow(rowId, null);
+    }
+
+    @Override
+    public Object[] getRow(long rowId, boolean[] columnMask) throws IOException {
         final int fieldCount = dbaseFileReader.getFieldCount();
         Object[] values = new Object[fieldCount];
         for(int fieldId=0;fieldId<fieldCount;fieldId++) {
-            values[fieldId] = dbaseFileReader.getFieldValue((int)rowId, fieldId);
+            if(columnMask == null || columnMask[fieldId]) {
+                values[fieldId] = dbaseFileReader.getFieldValue((int) rowId, fieldId);
+            }
         }
         return values;
     }
@@ -70,6 +70,8 @@ public class DbaseFileReader {
         private CharsetDecoder decoder;
         private char[] fieldTypes;
         private int[] fieldLengths;
+        private int[] fieldOffsets;
+        private final boolean memoryMapped;
     private static final Logger LOG = LoggerFactory.getLogger(DbaseFileReader.class);
 
         /**
@@ -81,8 +83,27 @@ public class DbaseFileReader {
          *             If an error occurs while initializing.
          */
         public DbaseFileReader(FileChannel channel,String forceEncoding)
+                throws IOException {
+                this(channel, forceEncoding, false);
+        }
+
+        /**
+         * Creates a new instance of DBaseFileReader
+         *
+         * @param channel
+         *            The readable channel to use.
+         * @param forceEncoding
+         *            If defined use this encoding instead of the one defined in dbf header.
+         * @param memoryMapped
+         *            If true the file content is mapped in memory instead of
+         *            being copied in a heap buffer.
+         * @throws java.io.IOException
+         *             If an error occurs while initializing.
+         */
+        public DbaseFileReader(FileChannel channel, String forceEncoding, boolean memoryMapped)
                 throws IOException {
                 this.channel = channel;
+                this.memoryMapped = memoryMapped;
 
                 header = new DbaseFileHeader();
                 header.readHeader(channel, forceEncoding);
@@ -91,7 +112,7 @@ public class DbaseFileReader {
         }
 
         private void init() throws IOException {
-                buffer = new ReadBufferManager(channel);
+                buffer = memoryMapped ? ReadBufferManager.memoryMapped(channel) : new ReadBufferManager(channel);
 
                 // The entire file is in little endian
                 buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -99,9 +120,13 @@ public class DbaseFileReader {
                 // Set up some buffers and lookups for efficiency
                 fieldTypes = new char[header.getNumFields()];
                 fieldLengths = new int[header.getNumFields()];
+                fieldOffsets = new int[header.getNumFields()];
+                int fieldOffset = 0;
                 for (int i = 0, ii = header.getNumFields(); i < ii; i++) {
                         fieldTypes[i] = header.getFieldType(i);
                         fieldLengths[i] = header.getFieldLength(i);
+                        fieldOffsets[i] = fieldOffset;
+                        fieldOffset += fieldLengths[i];
                 }
 
                 charBuffer = CharBuffer.allocate(header.getRecordLength() - 1);
@@ -138,23 +163,11 @@ public class DbaseFileReader {
                 header = null;
         }
 
-        /**
-         * @param pos Pos index in the buffer
-         * @param length Array length to extract
-         * @return byte array extracted from the buffer
-         * @throws IOException
-         */
-        private byte[] getBytes(int pos, int length) throws IOException {
-                byte[] bytes = new byte[length];
-                buffer.get(pos, bytes);
-                return bytes;
-        }
-
         public Object getFieldValue(int row, int column) throws IOException {
-                int fieldPosition = getPositionFor(row, column);
+                long fieldPosition = getPositionFor(row, column);
                 int fieldLength = getLengthFor(column);
-                byte[] fieldBytes = getBytes(fieldPosition, fieldLength);
-                ByteBuffer field = ByteBuffer.wrap(fieldBytes);
+                // Decode directly from the file buffer, without intermediate copy
+                ByteBuffer field = buffer.slice(fieldPosition, fieldLength);
 
                 charBuffer.clear();
                 decoder.decode(field, charBuffer, true);
@@ -165,18 +178,13 @@ public class DbaseFileReader {
         }
 
         private int getLengthFor(int column) {
-                return header.getFieldLength(column);
+                return fieldLengths[column];
         }
 
-        private int getPositionFor(int row, int column) {
-                int recordOffset = header.getHeaderLength() + row
+        private long getPositionFor(int row, int column) {
+                long recordOffset = header.getHeaderLength() + (long) row
                         * header.getRecordLength() + 1;
-                int fieldOffset = 0;
-                for (int i = 0; i < column; i++) {
-                        fieldOffset += header.getFieldLength(i);
-                }
-
-                return fieldOffset + recordOffset;
+                return fieldOffsets[column] + recordOffset;
         }
 
         private Object readObject(final int fieldOffset, final int fieldNum) throws IOException {
@@ -358,6 +366,13 @@ public class DbaseFileReader {
                 return header.getNumRecords();
         }
 
+        /**
+         * @return True if the file content is mapped in memory
+         */
+        public boolean isMemoryMapped() {
+                return memoryMapped;
+        }
+
 
         /**
          * @return The number of columns
@@ -43,6 +43,10 @@ import java.util.List;
  * @param <Driver> file driver
  */
 public abstract class FileEngine<Driver extends FileDriver> implements TableEngine {
+    /**
+     * Table engine parameter that enables the memory mapped read mode of the file
+     */
+    public static final String MEMORY_MAPPED_OPTION = "MMAP";
     private Logger LOGGER = LoggerFactory.getLogger(FileEngine.class);
 
     @Override
@@ -99,6 +103,32 @@ public abstract class FileEngine<Driver extends FileDriver> implements TableEngi
         }
         return cursor;
     }
+    /**
+     * @param args Table engine parameters, the first one is the file name
+     * @return True if the file must be mapped in memory
+     */
+    public static boolean isMemoryMapped(List<String> args) {
+        for (int i = 1; i < args.size(); i++) {
+            if (MEMORY_MAPPED_OPTION.equalsIgnoreCase(args.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param args Table engine parameters, the first one is the file name
+     * @return The file encoding provided by the user, null if not provided
+     */
+    public static String getEncoding(List<String> args) {
+        for (int i = 1; i < args.size(); i++) {
+            if (!MEMORY_MAPPED_OPTION.equalsIgnoreCase(args.get(i))) {
+                return args.get(i);
+            }
+        }
+        return null;
+    }
+
     /**
      * Create the driver instance using the file name and additional arguments provided in SQL create table request.
      * @param filePath First argument, file name
@@ -0,0 +1,263 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.file_table;
+
+import org.h2.api.ErrorCode;
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.index.BaseIndex;
+import org.h2.index.Cursor;
+import org.h2.index.IndexCondition;
+import org.h2.index.IndexType;
+import org.h2.index.SpatialIndex;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueGeometry;
+import org.h2.value.ValueNull;
+import org.h2gis.functions.io.SpatialFileDriver;
+import org.h2gis.functions.io.utility.PackedRTree;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+
+/**
+ * Spatial index of a {@link SpatialFileDriver}, backed by the index file provided by the
+ * driver. Nothing is built or stored in the database.
+ * Without index file, the rows are filtered using the envelopes read by the driver, so the geometries that do not
+ * intersect the query envelope are never read.
+ */
+public class H2SpatialTableIndex extends BaseIndex implements SpatialIndex {
+    private final H2TableIndex scanIndex;
+    private final PackedRTree spatialIndex;
+
+    /**
+     * Constructor
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexName Unique index name
+     * @param columns Geometry column
+     * @param indexType Spatial index type
+     * @param scanIndex Scan index of the table, used to read the rows
+     * @param spatialIndex Index of the geometry field provided by the driver, null to filter the rows with the
+     *                     envelopes read by the driver
+     */
+    public H2SpatialTableIndex(Table table, int id, String indexName, IndexColumn[] columns, IndexType indexType,
+                               H2TableIndex scanIndex, PackedRTree spatialIndex) {
+        this.scanIndex = scanIndex;
+        this.spatialIndex = spatialIndex;
+        initBaseIndex(table, id, indexName, columns, indexType);
+    }
+
+    @Override
+    public void checkRename() {
+        // Nothing to check
+    }
+
+    @Override
+    public void close(Session session) {
+        // The index file is released with the driver
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "add in Shape files");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "remove in Shape files");
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        return new SpatialCursor(session, scanIndex, null, null, null);
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        return new SpatialCursor(filter.getSession(), scanIndex, null, null, H2TableIndex.getColumnMask(filter));
+    }
+
+    @Override
+    public Cursor findByGeometry(TableFilter filter, SearchRow first, SearchRow last, SearchRow intersection) {
+        Session session = filter.getSession();
+        boolean[] columnMask = H2TableIndex.getColumnMask(filter);
+        if (intersection == null) {
+            return new SpatialCursor(session, scanIndex, null, null, columnMask);
+        }
+        Value value = intersection.getValue(columns[0].getColumnId());
+        if (value == null || value == ValueNull.INSTANCE) {
+            return new SpatialCursor(session, scanIndex, new int[0], null, columnMask);
+        }
+        Envelope envelope = ((ValueGeometry) value.convertTo(Value.GEOMETRY)).getGeometry().getEnvelopeInternal();
+        if (spatialIndex == null) {
+            return new SpatialCursor(session, scanIndex, null, envelope, columnMask);
+        }
+        return new SpatialCursor(session, scanIndex, spatialIndex.query(envelope), null, columnMask);
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter[] tableFilters, int filter, SortOrder sortOrder,
+                          AllColumnsForPlan allColumnsSet) {
+        // Never use this index without spatial filter
+        if (masks == null) {
+            return Long.MAX_VALUE;
+        }
+        for (Column column : columns) {
+            int mask = masks[column.getColumnId()];
+            if ((mask & IndexCondition.SPATIAL_INTERSECTS) != IndexCondition.SPATIAL_INTERSECTS) {
+                return Long.MAX_VALUE;
+            }
+        }
+        if (spatialIndex == null) {
+            // All the envelopes are read, but this is much cheaper than reading all the rows
+            return scanIndex.getRowCountApproximation() + 20;
+        }
+        // Same cost as org.h2.index.SpatialTreeIndex
+        return 2;
+    }
+
+    @Override
+    public void remove(Session session) {
+        // The index file is kept, it is still valid for the linked file
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "truncate in Shape files");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("SPATIAL INDEX");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return scanIndex.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return scanIndex.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    /**
+     * Iterate over the rows found in the spatial index
+     */
+    private static class SpatialCursor implements Cursor {
+        private final Session session;
+        private final H2TableIndex scanIndex;
+        // Row index [0-n[, null for all rows
+        private final int[] rowIds;
+        // If not null, skip the rows with a geometry envelope that does not intersect this envelope
+        private final Envelope filter;
+        private final boolean[] columnMask;
+        private final long rowCount;
+        private long position = -1;
+        private Row current;
+
+        private SpatialCursor(Session session, H2TableIndex scanIndex, int[] rowIds, Envelope filter,
+                              boolean[] columnMask) {
+            this.session = session;
+            this.scanIndex = scanIndex;
+            this.rowIds = rowIds;
+            this.filter = filter;
+            this.columnMask = columnMask;
+            this.rowCount = rowIds == null ? scanIndex.getRowCount(session) : rowIds.length;
+        }
+
+        private long getKey() {
+            return rowIds == null ? position + 1 : rowIds[(int) position] + 1;
+        }
+
+        private boolean accept() {
+            if (filter == null) {
+                return true;
+            }
+            try {
+                Envelope envelope = ((SpatialFileDriver) scanIndex.getDriver()).getEnvelope(position);
+                return envelope != null && filter.intersects(envelope);
+            } catch (IOException ex) {
+                throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+            }
+        }
+
+        @Override
+        public Row get() {
+            if (current == null) {
+                current = scanIndex.getRow(session, getKey(), columnMask);
+            }
+            return current;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            current = null;
+            while (position + 1 < rowCount) {
+                position++;
+                if (accept()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            current = null;
+            while (position > 0) {
+                position--;
+                if (accept()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.h2.util.MathUtils;
 import org.h2.util.New;
 import org.h2.value.Value;
 import org.h2gis.functions.io.FileDriver;
+import org.h2gis.functions.io.SpatialFileDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,11 +66,29 @@ public class H2Table extends TableBase {
         this.driver = driver;
     }
     /**
-     * Create row index
+     * Create row index.
+     * If the driver reads geometries, an implicit envelope index named {@code <TABLE>_ENVELOPE_INDEX_} is also
+     * added. It reads the record envelopes provided by the driver and stores nothing, it is not a schema object so
+     * it is not dropped with DROP INDEX and lives as long as the linked table.
      * @param session database session
      */
     public void init(Session session) {
-        indexes.add(0, new H2TableIndex(driver,this,this.getId()));
+        H2TableIndex scanIndex = new H2TableIndex(driver,this,this.getId());
+        indexes.add(0, scanIndex);
+        if (driver instanceof SpatialFileDriver) {
+            // Spatial filters read the envelopes of the geometries before reading the rows
+            int geometryColumnId = ((SpatialFileDriver) driver).getGeometryFieldIndex() + 1;
+            Column[] columns = getColumns();
+            if (geometryColumnId < columns.length && columns[geometryColumnId].getType() == Value.GEOMETRY) {
+                IndexColumn indexColumn = new IndexColumn();
+                indexColumn.columnName = columns[geometryColumnId].getName();
+                indexColumn.column = columns[geometryColumnId];
+                // Distinct object id, the database does not expect duplicated ids
+                indexes.add(new H2SpatialTableIndex(this, database.allocateObjectId(), getName() + "_ENVELOPE_INDEX_",
+                        new IndexColumn[]{indexColumn}, IndexType.createNonUnique(false, false, true), scanIndex,
+                        null));
+            }
+        }
     }
 
     @Override
@@ -106,7 +125,16 @@ public class H2Table extends TableBase {
             database.lockMeta(session);
         }
         Index index;
-        if (isPersistIndexes() && indexType.isPersistent()) {
+        if (indexType.isSpatial() && driver instanceof SpatialFileDriver && cols.length == 1
+                && cols[0].column.getColumnId() - 1 == ((SpatialFileDriver) driver).getGeometryFieldIndex()) {
+            // The driver provides its own index, there is nothing to build
+            try {
+                index = new H2SpatialTableIndex(this, indexId, indexName, cols, indexType,
+                        (H2TableIndex) getScanIndex(session), ((SpatialFileDriver) driver).getSpatialIndex());
+            } catch (IOException ex) {
+                throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+            }
+        } else if (isPersistIndexes() && indexType.isPersistent()) {
             if (indexType.isSpatial()) {
                 index = new SpatialTreeIndex(this, indexId, indexName, cols,
                         indexType, true, create, session);
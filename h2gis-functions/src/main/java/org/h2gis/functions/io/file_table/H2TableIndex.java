@@ -37,10 +37,15 @@ import org.h2.table.TableFilter;
 import org.h2.value.DataType;
 import org.h2.value.Value;
 import org.h2.value.ValueLong;
+import org.h2gis.functions.io.ColumnMaskFileDriver;
 import org.h2gis.functions.io.FileDriver;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * ScanIndex of {@link org.h2gis.drivers.FileDriver}, the key is the row index [1-n].
@@ -48,6 +53,11 @@ import java.util.HashSet;
  */
 public class H2TableIndex extends BaseIndex {
     public static final String PK_COLUMN_NAME = "PK";
+    // Column mask of each table filter, find() is called for each row of the outer table of a join
+    private static final Map<TableFilter, boolean[]> COLUMN_MASKS =
+            Collections.synchronizedMap(new WeakHashMap<TableFilter, boolean[]>());
+    // Cached mask of the filters that read all the fields
+    private static final boolean[] ALL_COLUMNS = new boolean[0];
 
     private FileDriver driver;
     private final boolean isScanIndex;
@@ -96,8 +106,19 @@ public class H2TableIndex extends BaseIndex {
 
     @Override
     public Row getRow(Session session, long key) {
+        return getRow(session, key, null);
+    }
+
+    /**
+     * @param session Session
+     * @param key Row key [1-n]
+     * @param columnMask For each field of the driver row, true if the value has to be read. Null to read all fields.
+     * @return The row, not read values are NULL
+     */
+    Row getRow(Session session, long key, boolean[] columnMask) {
         try {
-            Object[] driverRow = driver.getRow(key - 1);
+            Object[] driverRow = columnMask != null && driver instanceof ColumnMaskFileDriver ?
+                    ((ColumnMaskFileDriver) driver).getRow(key - 1, columnMask) : driver.getRow(key - 1);
             Value[] values = new Value[driverRow.length + 1];
             Column[] columns = table.getColumns();
             values[0] = ValueLong.get(key);
@@ -130,6 +151,15 @@ public class H2TableIndex extends BaseIndex {
 
     @Override
     public Cursor find(Session session, SearchRow first, SearchRow last) {
+        return find(session, first, last, null);
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        return find(filter.getSession(), first, last, getColumnMask(filter));
+    }
+
+    private Cursor find(Session session, SearchRow first, SearchRow last, boolean[] columnMask) {
         if (!isScanIndex) {
             Row remakefirst = session.createRow(null, 0);
             if(first != null) {
@@ -146,7 +176,7 @@ public class H2TableIndex extends BaseIndex {
             first = remakefirst;
             last = remakeLast;
         }
-        return new SHPCursor(this, first, last, session);
+        return new SHPCursor(this, first, last, session, columnMask);
     }
 
     @Override
@@ -162,6 +192,41 @@ public class H2TableIndex extends BaseIndex {
         }
     }
 
+    /**
+     * @param filter Table filter of the query that reads the file table
+     * @return For each field of the driver row, true if the field is used by the query. Null to read all fields.
+     */
+    static boolean[] getColumnMask(TableFilter filter) {
+        if (filter == null || filter.getSelect() == null) {
+            return null;
+        }
+        // The columns used by the select do not change, the mask is computed once by filter
+        boolean[] columnMask = COLUMN_MASKS.get(filter);
+        if (columnMask == null) {
+            columnMask = computeColumnMask(filter);
+            COLUMN_MASKS.put(filter, columnMask == null ? ALL_COLUMNS : columnMask);
+        }
+        return columnMask == ALL_COLUMNS ? null : columnMask;
+    }
+
+    private static boolean[] computeColumnMask(TableFilter filter) {
+        // Columns of this table used by the select, in order to read only theses fields in the file
+        Table table = filter.getTable();
+        ArrayList<Column> queryColumns = new AllColumnsForPlan(new TableFilter[]{filter}).get(table);
+        if (queryColumns == null) {
+            return null;
+        }
+        // The first table column is the primary key, it is not provided by the driver
+        boolean[] columnMask = new boolean[table.getColumns().length - 1];
+        for (Column column : queryColumns) {
+            int columnId = column.getColumnId();
+            if (columnId > 0 && columnId <= columnMask.length) {
+                columnMask[columnId - 1] = true;
+            }
+        }
+        return columnMask;
+    }
+
     @Override
     public void remove(Session session) {
         throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1,"remove in Shape files");
@@ -214,6 +279,7 @@ public class H2TableIndex extends BaseIndex {
         private long rowIndex;
         private Session session;
         private SearchRow begin, end;
+        private boolean[] columnMask;
 
         private SHPCursor(H2TableIndex tIndex, long rowIndex, Session session) {
             this.tIndex = tIndex;
@@ -221,8 +287,9 @@ public class H2TableIndex extends BaseIndex {
             this.session = session;
         }
 
-        private SHPCursor(H2TableIndex tIndex, SearchRow begin, SearchRow end, Session session) {
+        private SHPCursor(H2TableIndex tIndex, SearchRow begin, SearchRow end, Session session, boolean[] columnMask) {
             this.tIndex = tIndex;
+            this.columnMask = columnMask;
             this.session = session;
             this.begin = begin;
             this.end = end;
@@ -231,7 +298,7 @@ public class H2TableIndex extends BaseIndex {
 
         @Override
         public Row get() {
-            return tIndex.getRow(session, rowIndex);
+            return tIndex.getRow(session, rowIndex, columnMask);
         }
 
         @Override
@@ -37,14 +37,22 @@ import org.locationtech.jts.geom.Polygon;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class is used to convert a geojon geometry to a JTS geometry.
+ * The reader reuses its coordinate buffer, an instance must not be shared by
+ * several threads.
  * 
  * @author Erwan Bocher
  */
 public class GJGeometryReader {
+    // Initial size of the ordinate buffer, 3 ordinates by coordinate
+    private static final int BUFFER_SIZE = 3 * 256;
+    // Larger buffers are released once the coordinates are read
+    private static final int MAX_BUFFER_SIZE = 3 * 65536;
     private final GeometryFactory GF;
+    private double[] ordinates = new double[BUFFER_SIZE];
     
     public GJGeometryReader(GeometryFactory GF) {
         this.GF=GF;        
@@ -64,6 +72,20 @@ public class GJGeometryReader {
      */
     public Geometry parseGeometry(JsonParser jsParser) throws IOException, SQLException {        
         jsParser.nextToken(); // START_OBJECT {        
+        return parseGeometryObject(jsParser);
+    }
+
+    /**
+     * Parses a GeoJSON geometry and returns its JTS representation. The
+     * current token must be the start of the geometry object, the current
+     * token is the end of the geometry object once parsed.
+     *
+     * @param jsParser
+     * @throws IOException
+     * @return Geometry
+     * @throws java.sql.SQLException
+     */
+    public Geometry parseGeometryObject(JsonParser jsParser) throws IOException, SQLException {
         jsParser.nextToken(); // FIELD_NAME type     
         jsParser.nextToken(); // VALUE_STRING Point or whatever supported
         String geomType = jsParser.getText();
@@ -103,7 +125,6 @@ public class GJGeometryReader {
         if (coordinatesField.equalsIgnoreCase(GeoJsonField.COORDINATES)) {
             jp.nextToken(); // START_ARRAY [ to parse the coordinate
             Point point = GF.createPoint(parseCoordinate(jp));
-            jp.nextToken();
             return point;
         } else {
             throw new SQLException("Malformed GeoJSON file. Expected 'coordinates', found '" + coordinatesField + "'");
@@ -309,10 +330,9 @@ public class GJGeometryReader {
         String coordinatesField = jp.getText();
         if (coordinatesField.equalsIgnoreCase(GeoJsonField.GEOMETRIES)) {
             jp.nextToken();//START array
-            //jp.nextToken();//START object
             ArrayList<Geometry> geometries = new ArrayList<Geometry>();
-            while (jp.getCurrentToken() != JsonToken.END_ARRAY) {
-                geometries.add(parseGeometry(jp));
+            while (jp.nextToken() != JsonToken.END_ARRAY) { //START object
+                geometries.add(parseGeometryObject(jp));
             }
             jp.nextToken();//END_OBJECT } geometry
             return GF.createGeometryCollection(geometries.toArray(new Geometry[geometries.size()]));
@@ -327,18 +347,32 @@ public class GJGeometryReader {
      *
      * [ [100.0, 0.0], [101.0, 1.0] ]
      *
+     * The ordinates are read in a buffer reused by the next arrays, then the
+     * coordinates are created at once.
+     *
      * @param jp
      * @throws IOException
-     * @throws SQLException
      * @return Coordinate[]
      */
     private Coordinate[] parseCoordinates(JsonParser jp) throws IOException {
         jp.nextToken(); // START_ARRAY [ to parse the each positions
-        ArrayList<Coordinate> coords = new ArrayList<Coordinate>();
+        int size = 0;
         while (jp.getCurrentToken() != JsonToken.END_ARRAY) {
-            coords.add(parseCoordinate(jp));
+            if ((size + 1) * 3 > ordinates.length) {
+                ordinates = Arrays.copyOf(ordinates, ordinates.length * 2);
+            }
+            parseOrdinates(jp, size * 3);
+            size++;
+        }
+        Coordinate[] coords = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coords[i] = new Coordinate(ordinates[i * 3], ordinates[i * 3 + 1], ordinates[i * 3 + 2]);
         }
-        return coords.toArray(new Coordinate[coords.size()]);
+        if (ordinates.length > MAX_BUFFER_SIZE) {
+            // Do not keep the memory of a huge geometry
+            ordinates = new double[BUFFER_SIZE];
+        }
+        return coords;
     }
 
     /**
@@ -355,22 +389,33 @@ public class GJGeometryReader {
      * @return Coordinate
      */
     private Coordinate parseCoordinate(JsonParser jp) throws IOException {
+        parseOrdinates(jp, 0);
+        return new Coordinate(ordinates[0], ordinates[1], ordinates[2]);
+    }
+
+    /**
+     * Parses a GeoJSON coordinate array and stores x, y and z in the ordinate
+     * buffer, z is NaN for 2D coordinates. The tokens are the same as
+     * {@link #parseCoordinate(JsonParser)}.
+     *
+     * @param jp
+     * @param offset Index of x in the ordinate buffer
+     * @throws IOException
+     */
+    private void parseOrdinates(JsonParser jp, int offset) throws IOException {
         jp.nextToken();
-        double x = jp.getDoubleValue();// VALUE_NUMBER_FLOAT
+        ordinates[offset] = jp.getDoubleValue();// VALUE_NUMBER_FLOAT
         jp.nextToken(); // second value
-        double y = jp.getDoubleValue();
-        Coordinate coord;
+        ordinates[offset + 1] = jp.getDoubleValue();
         //We look for a z value
         jp.nextToken();
         if (jp.getCurrentToken() == JsonToken.END_ARRAY) {
-            coord = new Coordinate(x, y);
+            ordinates[offset + 2] = Coordinate.NULL_ORDINATE;
         } else {
-            double z = jp.getDoubleValue();
+            ordinates[offset + 2] = jp.getDoubleValue();
             jp.nextToken(); // exit array
-            coord = new Coordinate(x, y, z);
         }
         jp.nextToken();
-        return coord;
     }
     
 }
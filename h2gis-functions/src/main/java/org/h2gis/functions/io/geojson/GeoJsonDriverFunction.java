@@ -71,9 +71,46 @@ public class GeoJsonDriverFunction implements DriverFunction {
         geoJsonDriver.write(progress);
     }
 
+    /**
+     * Export the table with several threads encoding the features.
+     *
+     * @param connection Active connection, do not close this connection.
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path to write
+     * @param progress Progress visitor following the execution.
+     * @param threadCount Number of threads encoding the features
+     * @throws SQLException Table read error
+     * @throws IOException File write error
+     */
+    public void exportTable(Connection connection, String tableReference, File fileName, ProgressVisitor progress,
+                            int threadCount) throws SQLException, IOException {
+        GeoJsonWriteDriver geoJsonDriver = new GeoJsonWriteDriver(connection, tableReference, fileName);
+        geoJsonDriver.setThreadCount(threadCount);
+        geoJsonDriver.write(progress);
+    }
+
     @Override
     public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress) throws SQLException, IOException {
         GeoJsonReaderDriver geoJsonReaderDriver = new GeoJsonReaderDriver(connection, fileName);
         geoJsonReaderDriver.read(progress, tableReference);
     }
+
+    /**
+     * Import the file in a single pass, the table is created from the first
+     * features.
+     *
+     * @param connection Active connection, do not close this connection.
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path to read
+     * @param progress Progress visitor following the execution.
+     * @param sampleSize Number of features read before creating the table
+     * @throws SQLException Table write error
+     * @throws IOException File read error
+     */
+    public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress,
+                           int sampleSize) throws SQLException, IOException {
+        GeoJsonReaderDriver geoJsonReaderDriver = new GeoJsonReaderDriver(connection, fileName);
+        geoJsonReaderDriver.setSampleSize(sampleSize);
+        geoJsonReaderDriver.read(progress, tableReference);
+    }
 }
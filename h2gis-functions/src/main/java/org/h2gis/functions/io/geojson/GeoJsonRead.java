@@ -38,7 +38,10 @@ import java.sql.SQLException;
 public class GeoJsonRead extends AbstractFunction implements ScalarFunction {
 
     public GeoJsonRead() {
-        addProperty(PROP_REMARKS, "Import a GeoJSON 1.0 file.");
+        addProperty(PROP_REMARKS, "Import a GeoJSON 1.0 file.\n" +
+                "An optional sample size reads the file in a single pass: the table is created from\n" +
+                "the given number of features, then altered when the next features have new properties\n" +
+                "or values of another type.");
     }
 
     @Override
@@ -59,4 +62,19 @@ public class GeoJsonRead extends AbstractFunction implements ScalarFunction {
         GeoJsonDriverFunction gjdf = new GeoJsonDriverFunction();
         gjdf.importFile(connection, tableReference, URIUtilities.fileFromString(fileName), new EmptyProgressVisitor());
     }
+
+    /**
+     * Read the GeoJSON file in a single pass.
+     *
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @param sampleSize Number of features read before creating the table
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void readGeoJson(Connection connection, String fileName, String tableReference, int sampleSize) throws IOException, SQLException {
+        GeoJsonDriverFunction gjdf = new GeoJsonDriverFunction();
+        gjdf.importFile(connection, tableReference, URIUtilities.fileFromString(fileName), new EmptyProgressVisitor(), sampleSize);
+    }
 }
@@ -90,6 +90,11 @@ public class GeoJsonReaderDriver {
     private Map<String, String> cachedColumnNames;
     private Map<String, Integer> cachedColumnIndex;
     private static final int BATCH_MAX_SIZE = 100;
+    // Number of features read before creating the table, 0 to read the whole file to create the table
+    private int sampleSize = 0;
+    // Columns of the table, and columns added or widened since the table has been created or altered
+    private Set<String> tableColumns;
+    private Set<String> alteredColumns;
     
     static {
         geomTypes = new ArrayList<String>();
@@ -114,6 +119,19 @@ public class GeoJsonReaderDriver {
         this.fileName = fileName;
     }
 
+    /**
+     * Read the file in a single pass. The table is created from the first
+     * features, then columns are added or widened when the next features
+     * have new properties or values of another type.
+     *
+     * @param sampleSize Number of features read before creating the table,
+     *                   0 to read the whole file once to create the table and
+     *                   a second time to insert the features
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
     /**
      * Read the GeoJSON file.
      *
@@ -162,7 +180,10 @@ public class GeoJsonReaderDriver {
     private void parseGeoJson(ProgressVisitor progress) throws SQLException, IOException {
         this.progress = progress.subProcess(100);
         init();
-        if (parseMetadata()) {
+        if (sampleSize > 0) {
+            parseDataSinglePass();
+            setGeometryTypeConstraints();
+        } else if (parseMetadata()) {
             GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
             parseData();
             setGeometryTypeConstraints();
@@ -220,35 +241,12 @@ public class GeoJsonReaderDriver {
         }
          // Now we create the table if there is at least one geometry field.          
          if (hasGeometryField) {              
-            StringBuilder createTable = new StringBuilder();
-            createTable.append("CREATE TABLE ");
-            createTable.append(tableLocation);
-            createTable.append(" (");
-            
-             //Add the geometry column
-             if (isH2) {
-                 createTable.append("THE_GEOM GEOMETRY");
-             } else {
-                 createTable.append("THE_GEOM GEOMETRY(geometry,").append(parsedSRID).append(")");
-             }
-            
              cachedColumnIndex = new HashMap<String, Integer>();
-             StringBuilder insertTable = new StringBuilder("INSERT INTO ");
-             insertTable.append(tableLocation).append(" VALUES(?");
              int i =1;
-             for (Map.Entry<String, String> columns : cachedColumnNames.entrySet()) {
-                 String columnName = columns.getKey();
+             for (String columnName : cachedColumnNames.keySet()) {
                  cachedColumnIndex.put(columnName, i++);
-                 createTable.append(",").append(columns.getKey()).append(" ").append(columns.getValue());
-                 insertTable.append(",").append("?");
-             }
-             createTable.append(")");
-             insertTable.append(")");
-
-             try (Statement stmt = connection.createStatement()) {
-                 stmt.execute(createTable.toString());
              }
-             preparedStatement = connection.prepareStatement(insertTable.toString());
+             createTable();
              return true;
 
         } else {
@@ -256,6 +254,78 @@ public class GeoJsonReaderDriver {
         }
          
     }
+
+    /**
+     * Creates the table with the geometry column and the collected
+     * properties, and prepares the insert statement.
+     *
+     * @throws SQLException
+     */
+    private void createTable() throws SQLException {
+        StringBuilder createTable = new StringBuilder();
+        createTable.append("CREATE TABLE ");
+        createTable.append(tableLocation);
+        createTable.append(" (");
+
+        //Add the geometry column
+        if (isH2) {
+            createTable.append("THE_GEOM GEOMETRY");
+        } else {
+            createTable.append("THE_GEOM GEOMETRY(geometry,").append(parsedSRID).append(")");
+        }
+        for (Map.Entry<String, String> columns : cachedColumnNames.entrySet()) {
+            createTable.append(",").append(columns.getKey()).append(" ").append(columns.getValue());
+        }
+        createTable.append(")");
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createTable.toString());
+        }
+        tableColumns = new HashSet<String>(cachedColumnNames.keySet());
+        alteredColumns = new LinkedHashSet<String>();
+        prepareInsert();
+    }
+
+    /**
+     * Prepares the insert statement for all the columns of the table.
+     *
+     * @throws SQLException
+     */
+    private void prepareInsert() throws SQLException {
+        StringBuilder insertTable = new StringBuilder("INSERT INTO ");
+        insertTable.append(tableLocation).append(" VALUES(?");
+        for (int i = 0; i < cachedColumnNames.size(); i++) {
+            insertTable.append(",").append("?");
+        }
+        insertTable.append(")");
+        if (preparedStatement != null) {
+            preparedStatement.close();
+        }
+        preparedStatement = connection.prepareStatement(insertTable.toString());
+    }
+
+    /**
+     * Adds the new columns and changes the type of the widened columns.
+     * The pending batch must have been executed.
+     *
+     * @throws SQLException
+     */
+    private void alterTable() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String columnName : alteredColumns) {
+                String columnType = cachedColumnNames.get(columnName);
+                if (tableColumns.add(columnName)) {
+                    stmt.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s", tableLocation, columnName, columnType));
+                } else if (isH2) {
+                    stmt.execute(String.format("ALTER TABLE %s ALTER COLUMN %s %s", tableLocation, columnName, columnType));
+                } else {
+                    stmt.execute(String.format("ALTER TABLE %s ALTER COLUMN %s SET DATA TYPE %s", tableLocation, columnName, columnType));
+                }
+            }
+        }
+        alteredColumns.clear();
+        prepareInsert();
+    }
     
     /**
      * Parses the featureCollection to collect the field properties
@@ -767,7 +837,7 @@ public class GeoJsonReaderDriver {
             setGeometry(jp, values);
             jp.nextToken();
         } else if (field.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
-            parseProperties(jp, values);
+            values = parseProperties(jp, values);
             jp.nextToken();
         }
         //If there is only one geometry field in the feature them the next
@@ -790,7 +860,7 @@ public class GeoJsonReaderDriver {
             if (secondParam.equalsIgnoreCase(GeoJsonField.GEOMETRY)) {
                 setGeometry(jp, values);
             } else if (secondParam.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
-                parseProperties(jp, values);
+                values = parseProperties(jp, values);
             }
             while (jp.nextToken() != JsonToken.END_OBJECT); //END_OBJECT } feature
         }
@@ -806,11 +876,14 @@ public class GeoJsonReaderDriver {
      * @throws SQLException 
      */
     private void setGeometry(JsonParser jp, Object[] values) throws IOException, SQLException {
+        hasGeometryField = true;
         if(jp.nextToken()!=JsonToken.VALUE_NULL){//START_OBJECT { in case of null geometry
         jp.nextToken(); // FIELD_NAME type     
         jp.nextToken(); //VALUE_STRING Point
         String geometryType = jp.getText();
-        values[0] = parseGeometry(jp, geometryType);
+        Geometry geometry = parseGeometry(jp, geometryType);
+        finalGeometryTypes.add(geometry.getGeometryType().toLowerCase());
+        values[0] = geometry;
         } 
     }
 
@@ -854,35 +927,115 @@ public class GeoJsonReaderDriver {
      *
      * @param jp
      */
-    private void parseProperties(JsonParser jp, Object[] values) throws IOException, SQLException {
+    private Object[] parseProperties(JsonParser jp, Object[] values) throws IOException, SQLException {
         jp.nextToken();//START_OBJECT {
         while (jp.nextToken() != JsonToken.END_OBJECT) {
             String fieldName = TableLocation.quoteIdentifier(jp.getText().toUpperCase(), isH2); //FIELD_NAME columnName 
             JsonToken value = jp.nextToken();
+            int index;
+            if (sampleSize > 0) {
+                index = updateColumn(fieldName, value);
+                if (index >= values.length) {
+                    values = Arrays.copyOf(values, cachedColumnIndex.size() + 1);
+                }
+            } else {
+                index = cachedColumnIndex.get(fieldName);
+            }
             if (value == JsonToken.VALUE_STRING) {                
-                values[cachedColumnIndex.get(fieldName)] =  jp.getText();
+                values[index] =  jp.getText();
             } else if (value == JsonToken.VALUE_TRUE) {
-                values[cachedColumnIndex.get(fieldName)] =  jp.getValueAsBoolean();
+                values[index] =  jp.getValueAsBoolean();
             } else if (value == JsonToken.VALUE_FALSE) {
-                values[cachedColumnIndex.get(fieldName)] =  jp.getValueAsBoolean();
+                values[index] =  jp.getValueAsBoolean();
             } else if (value == JsonToken.VALUE_NUMBER_FLOAT) {
-                values[cachedColumnIndex.get(fieldName)] =  jp.getValueAsDouble();
+                values[index] =  jp.getValueAsDouble();
             } else if (value == JsonToken.VALUE_NUMBER_INT) {
-                values[cachedColumnIndex.get(fieldName)] =  jp.getBigIntegerValue();
+                values[index] =  jp.getBigIntegerValue();
             } else if (value == JsonToken.START_ARRAY) {
                 ArrayList<Object> arrayList = parseArray(jp);
-                values[cachedColumnIndex.get(fieldName)] = arrayList.toArray();
+                values[index] = arrayList.toArray();
             } else if (value == JsonToken.START_OBJECT) {
                 String str = parseObject(jp);
-                values[cachedColumnIndex.get(fieldName)] = str;
+                values[index] = str;
             } else if (value == JsonToken.VALUE_NULL) {
-                values[cachedColumnIndex.get(fieldName)] = "null";
+                // A null value does not change the type of the column
+                values[index] = "VARCHAR".equals(cachedColumnNames.get(fieldName)) ? "null" : null;
             }
             else {
                 //ignore other value
             }
         }
+        return values;
+    }
 
+    /**
+     * Adds the property to the columns, or widens the type of its column if
+     * the value does not fit in.
+     *
+     * @param fieldName Quoted column name
+     * @param value Value token
+     * @return The index of the column
+     */
+    private int updateColumn(String fieldName, JsonToken value) {
+        String valueType = getColumnType(value);
+        String columnType = cachedColumnNames.get(fieldName);
+        if (columnType == null) {
+            cachedColumnNames.put(fieldName, valueType == null ? "VARCHAR" : valueType);
+            cachedColumnIndex.put(fieldName, cachedColumnIndex.size() + 1);
+            if (alteredColumns != null) {
+                alteredColumns.add(fieldName);
+            }
+        } else if (valueType != null) {
+            String widenedType = widenColumnType(columnType, valueType);
+            if (!widenedType.equals(columnType)) {
+                cachedColumnNames.put(fieldName, widenedType);
+                if (alteredColumns != null) {
+                    alteredColumns.add(fieldName);
+                }
+            }
+        }
+        return cachedColumnIndex.get(fieldName);
+    }
+
+    /**
+     * @param columnType Type of the column
+     * @param valueType Type of a value of the column
+     * @return The column type that fits both types: DOUBLE PRECISION for
+     * BIGINT and DOUBLE PRECISION values, VARCHAR for other different types.
+     */
+    static String widenColumnType(String columnType, String valueType) {
+        if (columnType.equals(valueType)) {
+            return columnType;
+        } else if (columnType.equals("BIGINT") && valueType.equals("DOUBLE PRECISION")) {
+            return valueType;
+        } else if (columnType.equals("DOUBLE PRECISION") && valueType.equals("BIGINT")) {
+            return columnType;
+        } else {
+            return "VARCHAR";
+        }
+    }
+
+    /**
+     * @param value Value token
+     * @return The column type of the value, null for a null value
+     */
+    private static String getColumnType(JsonToken value) {
+        switch (value) {
+            case VALUE_STRING:
+            case START_OBJECT:
+                return "VARCHAR";
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return "BOOLEAN";
+            case VALUE_NUMBER_FLOAT:
+                return "DOUBLE PRECISION";
+            case VALUE_NUMBER_INT:
+                return "BIGINT";
+            case START_ARRAY:
+                return "ARRAY";
+            default:
+                return null;
+        }
     }
 
     /**
@@ -943,14 +1096,14 @@ public class GeoJsonReaderDriver {
                             // Ignore
                         }
                     }
-                    if (batchSize > 0) {
-                        preparedStatement.executeBatch();
-                    }
                 } else {
                     throw new SQLException("Malformed GeoJSON file. Expected 'Feature', found '" + geomType + "'");
                 }
             }
             //LOOP END_ARRAY ]
+            if (batchSize > 0) {
+                preparedStatement.executeBatch();
+            }
             log.info(featureCounter+ " geojson features have been imported.");
         } else {
             throw new SQLException("Malformed GeoJSON file. Expected 'features', found '" + firstParam + "'");
@@ -1282,6 +1435,171 @@ public class GeoJsonReaderDriver {
         }
     }
 
+    /**
+     * Parses the GeoJSON data in a single pass. The table is created once
+     * {@link #sampleSize} features have been read, the next features alter
+     * the table when needed.
+     *
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void parseDataSinglePass() throws IOException, SQLException {
+        cachedColumnNames = new LinkedHashMap<String, String>();
+        cachedColumnIndex = new HashMap<String, Integer>();
+        finalGeometryTypes = new HashSet<String>();
+        try (FileInputStream fis = new FileInputStream(fileName)) {
+            this.fc = fis.getChannel();
+            this.fileSize = fc.size();
+            readFileSizeEachNode = Math.max(1, (this.fileSize / AVERAGE_NODE_SIZE) / 100);
+            nodeCountProgress = 0;
+            JsonParser jp = jsFactory.createParser(fis);
+            jp.nextToken();//START_OBJECT
+            jp.nextToken(); // field_name (type)
+            jp.nextToken(); // value_string (FeatureCollection)
+            String geomType = jp.getText();
+            if (geomType.equalsIgnoreCase(GeoJsonField.FEATURECOLLECTION)) {
+                parseFeaturesSinglePass(jp);
+            } else {
+                throw new SQLException("Malformed GeoJSON file. Expected 'FeatureCollection', found '" + geomType + "'");
+            }
+            jp.close();
+        } catch (FileNotFoundException ex) {
+            throw new SQLException(ex);
+        }
+        if (!hasGeometryField) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + tableLocation);
+            }
+            throw new SQLException("The geojson file  does not contain any geometry.");
+        }
+    }
+
+    /**
+     * Parses the featureCollection, creating the table after the first
+     * features.
+     *
+     * @param jp
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void parseFeaturesSinglePass(JsonParser jp) throws IOException, SQLException {
+        jp.nextToken(); // FIELD_NAME features
+        // Passes all the properties until "Feature" object is found
+        while(!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURES) &&
+                !jp.getText().equalsIgnoreCase(GeoJsonField.CRS)){
+            jp.nextToken();
+            if(jp.getCurrentToken().equals(JsonToken.START_ARRAY) || jp.getCurrentToken().equals(JsonToken.START_OBJECT)){
+                jp.skipChildren();
+            }
+            jp.nextToken();
+        }
+        if(jp.getText().equalsIgnoreCase(GeoJsonField.CRS)){
+            parsedSRID = readCRS(jp);
+        }
+        GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
+        if (jp.getText().equalsIgnoreCase(GeoJsonField.FEATURES)) {
+            jp.nextToken(); // START_ARRAY [
+            JsonToken token = jp.nextToken(); // START_OBJECT {
+            // Features read before the creation of the table
+            ArrayList<Object[]> sample = new ArrayList<Object[]>();
+            long batchSize = 0;
+            while (token != JsonToken.END_ARRAY) {
+                jp.nextToken(); // FIELD_NAME type
+                jp.nextToken(); // VALUE_STRING Feature
+                String geomType = jp.getText();
+                if (geomType.equalsIgnoreCase(GeoJsonField.FEATURE)) {
+                    if (progress.isCanceled()) {
+                        throw new SQLException("Canceled by user");
+                    }
+                    Object[] values = parseFeature(jp);
+                    if (preparedStatement == null) {
+                        sample.add(values);
+                        if (sample.size() >= sampleSize) {
+                            createTable();
+                            batchSize = addSample(sample);
+                        }
+                    } else {
+                        if (!alteredColumns.isEmpty()) {
+                            if (batchSize > 0) {
+                                preparedStatement.executeBatch();
+                                batchSize = 0;
+                            }
+                            alterTable();
+                        }
+                        addBatch(values);
+                        batchSize++;
+                    }
+                    if (batchSize >= BATCH_MAX_SIZE) {
+                        preparedStatement.executeBatch();
+                        preparedStatement.clearBatch();
+                        batchSize = 0;
+                    }
+
+                    token = jp.nextToken(); //START_OBJECT new feature
+                    featureCounter++;
+                    if (nodeCountProgress++ % readFileSizeEachNode == 0) {
+                        // Update Progress
+                        try {
+                            progress.setStep((int) (((double) fc.position() / fileSize) * 100));
+                        } catch (IOException ex) {
+                            // Ignore
+                        }
+                    }
+                } else {
+                    throw new SQLException("Malformed GeoJSON file. Expected 'Feature', found '" + geomType + "'");
+                }
+            }
+            //LOOP END_ARRAY ]
+            if (preparedStatement == null) {
+                createTable();
+                batchSize = addSample(sample);
+            }
+            if (batchSize > 0) {
+                preparedStatement.executeBatch();
+            }
+            log.info(featureCounter+ " geojson features have been imported.");
+        } else {
+            throw new SQLException("Malformed GeoJSON file. Expected 'features', found '" + jp.getText() + "'");
+        }
+    }
+
+    /**
+     * Inserts the features read before the creation of the table.
+     *
+     * @param sample Features
+     * @return Size of the pending batch
+     * @throws SQLException
+     */
+    private long addSample(ArrayList<Object[]> sample) throws SQLException {
+        long batchSize = 0;
+        for (Object[] values : sample) {
+            addBatch(values);
+            batchSize++;
+            if (batchSize >= BATCH_MAX_SIZE) {
+                preparedStatement.executeBatch();
+                preparedStatement.clearBatch();
+                batchSize = 0;
+            }
+        }
+        sample.clear();
+        return batchSize;
+    }
+
+    /**
+     * Adds a feature to the insert batch. The columns added after the
+     * feature has been read are set to null.
+     *
+     * @param values Feature values
+     * @throws SQLException
+     */
+    private void addBatch(Object[] values) throws SQLException {
+        final int columnCount = cachedColumnNames.size() + 1;
+        for (int i = 0; i < columnCount; i++) {
+            preparedStatement.setObject(i + 1, i < values.length ? values[i] : null);
+        }
+        preparedStatement.addBatch();
+    }
+
     /**
      * Reads the CRS element and return the database SRID.
      * 
@@ -1373,7 +1691,7 @@ public class GeoJsonReaderDriver {
      * @param jp the json parser
      * @return the array but written like a String
      */
-    private void parseArrayMetadata(JsonParser jp) throws IOException {
+    private static void parseArrayMetadata(JsonParser jp) throws IOException {
         JsonToken value = jp.nextToken();
         while(value != JsonToken.END_ARRAY) {
             if (value == JsonToken.START_OBJECT) {
@@ -1393,7 +1711,7 @@ public class GeoJsonReaderDriver {
      * @param jp the json parser
      * @return the object but written like a String
      */
-    private void parseObjectMetadata(JsonParser jp) throws IOException {
+    private static void parseObjectMetadata(JsonParser jp) throws IOException {
         JsonToken value;
         while (jp.nextToken() != JsonToken.END_OBJECT) {
             value = jp.nextToken();
@@ -1413,7 +1731,7 @@ public class GeoJsonReaderDriver {
      * @param jp the json parser
      * @return the array
      */
-    private ArrayList<Object> parseArray(JsonParser jp) throws IOException {
+    static ArrayList<Object> parseArray(JsonParser jp) throws IOException {
         JsonToken value = jp.nextToken();
         ArrayList<Object> ret = new ArrayList<>();
         while(value != JsonToken.END_ARRAY) {
@@ -1450,7 +1768,7 @@ public class GeoJsonReaderDriver {
      * @param jp the json parser
      * @return the object but written like a String
      */
-    private String parseObject(JsonParser jp) throws IOException {
+    static String parseObject(JsonParser jp) throws IOException {
         String ret = "{";
         JsonToken value;
         while (jp.nextToken() != JsonToken.END_OBJECT) {
@@ -0,0 +1,98 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.geojson;
+
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.URIUtilities;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * SQL function to read a newline delimited GeoJSON file or a GeoJSON text
+ * sequence file and create the corresponding spatial table.
+ */
+public class GeoJsonSeqRead extends AbstractFunction implements ScalarFunction {
+
+    public GeoJsonSeqRead() {
+        addProperty(PROP_REMARKS, "Import a newline delimited GeoJSON file (.geojsonl, .ndjson) or a GeoJSON\n" +
+                "text sequence file (.geojsons), one feature by line.\n" +
+                "GeoJsonSeqRead(path, tableName[, threadCount[, batchSize]])\n" +
+                "The features are parsed by threadCount threads (1 by default) and inserted by batches\n" +
+                "of batchSize rows (1000 by default).");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "readGeoJsonSeq";
+    }
+
+    /**
+     * Read the GeoJSON sequence file.
+     *
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void readGeoJsonSeq(Connection connection, String fileName, String tableReference) throws IOException, SQLException {
+        readGeoJsonSeq(connection, fileName, tableReference, 1);
+    }
+
+    /**
+     * Read the GeoJSON sequence file.
+     *
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @param threadCount Number of threads used to parse the features
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void readGeoJsonSeq(Connection connection, String fileName, String tableReference, int threadCount) throws IOException, SQLException {
+        GeoJsonSeqReaderDriver driver = new GeoJsonSeqReaderDriver(connection, URIUtilities.fileFromString(fileName));
+        driver.setThreadCount(threadCount);
+        driver.read(new EmptyProgressVisitor(), tableReference);
+    }
+
+    /**
+     * Read the GeoJSON sequence file.
+     *
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @param threadCount Number of threads used to parse the features
+     * @param batchSize Number of rows inserted by batch
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void readGeoJsonSeq(Connection connection, String fileName, String tableReference, int threadCount,
+                                      int batchSize) throws IOException, SQLException {
+        GeoJsonSeqReaderDriver driver = new GeoJsonSeqReaderDriver(connection, URIUtilities.fileFromString(fileName));
+        driver.setThreadCount(threadCount);
+        driver.setBatchSize(batchSize);
+        driver.read(new EmptyProgressVisitor(), tableReference);
+    }
+}
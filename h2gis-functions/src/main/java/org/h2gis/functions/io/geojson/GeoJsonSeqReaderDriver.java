@@ -0,0 +1,517 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.geojson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.FileUtil;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Driver to import a sequence of GeoJSON features into a spatial table:
+ * newline delimited GeoJSON (.geojsonl, .ndjson), or GeoJSON text sequence
+ * (.geojsons) where each feature is preceded by a record separator.
+ *
+ * The file is read in chunks that end at a line boundary. The features of
+ * the chunks are parsed by a pool of threads while the features of the
+ * previous chunks are inserted by the calling thread, in the order of the
+ * file. The table is created from the features of the first chunk, the next
+ * chunks add or widen columns when needed.
+ */
+public class GeoJsonSeqReaderDriver {
+    /**
+     * Extensions of the supported files
+     */
+    public static final String[] EXTENSIONS = new String[]{"geojsonl", "geojsons", "ndjson"};
+    private static final int CHUNK_SIZE = 1 << 22;
+    private static final char RECORD_SEPARATOR = '\u001e';
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final Connection connection;
+    private final File fileName;
+    private int threadCount = 1;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean isH2;
+    private TableLocation tableLocation;
+    private JsonFactory jsFactory;
+    private GeometryFactory geometryFactory;
+    // Columns of the table and their types, in the order of the table
+    private final Map<String, String> columnTypes = new LinkedHashMap<String, String>();
+    private final Set<String> geometryTypes = new HashSet<String>();
+    private PreparedStatement preparedStatement;
+    // Bytes read after the last line of the previous chunk
+    private byte[] remainder = new byte[0];
+
+    /**
+     * Driver to import a GeoJSON sequence file into a spatial table.
+     *
+     * @param connection
+     * @param fileName
+     */
+    public GeoJsonSeqReaderDriver(Connection connection, File fileName) {
+        this.connection = connection;
+        this.fileName = fileName;
+    }
+
+    /**
+     * @param threadCount Number of threads used to parse the features, 1 to
+     *                    parse them in the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * @param batchSize Number of rows inserted by batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @param file File
+     * @return True if the extension of the file is a GeoJSON sequence extension
+     */
+    public static boolean isSequenceFile(File file) {
+        for (String extension : EXTENSIONS) {
+            if (FileUtil.isExtensionWellFormated(file, extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the GeoJSON sequence file.
+     *
+     * @param progress
+     * @param tableReference
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void read(ProgressVisitor progress, String tableReference) throws SQLException, IOException {
+        if (!isSequenceFile(fileName)) {
+            throw new SQLException("Please use " + Arrays.toString(EXTENSIONS) + " extension.");
+        }
+        if (!fileName.exists()) {
+            throw new FileNotFoundException("The following file does not exists:\n" + fileName.getPath());
+        }
+        this.isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
+        this.tableLocation = TableLocation.parse(tableReference, isH2);
+        if (fileName.length() == 0) {
+            JDBCUtilities.createEmptyTable(connection, tableLocation.toString());
+            return;
+        }
+        jsFactory = new JsonFactory();
+        jsFactory.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        jsFactory.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+        jsFactory.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+        geometryFactory = new GeometryFactory();
+        ProgressVisitor copyProgress = progress.subProcess((int) (fileName.length() / CHUNK_SIZE) + 1);
+        ExecutorService executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+        try (InputStream fis = new FileInputStream(fileName)) {
+            LinkedList<Future<List<Feature>>> pending = new LinkedList<Future<List<Feature>>>();
+            boolean endOfFile = false;
+            while (!endOfFile || !pending.isEmpty()) {
+                if (progress.isCanceled()) {
+                    throw new SQLException("Canceled by user");
+                }
+                // Keep the workers busy while the features are inserted
+                while (!endOfFile && pending.size() < threadCount * 2) {
+                    byte[] chunk = readChunk(fis);
+                    if (chunk == null) {
+                        endOfFile = true;
+                    } else if (executor != null) {
+                        pending.add(executor.submit(new ParseChunkTask(chunk)));
+                    } else {
+                        // Parse the chunk in the calling thread
+                        FutureTask<List<Feature>> task = new FutureTask<List<Feature>>(new ParseChunkTask(chunk));
+                        task.run();
+                        pending.add(task);
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    insertFeatures(getFeatures(pending.removeFirst()));
+                    copyProgress.endStep();
+                }
+            }
+            if (preparedStatement == null) {
+                // No feature, only the geometry column
+                createTable();
+            }
+            setGeometryTypeConstraints();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("GeoJSON import has been interrupted", ex);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+            copyProgress.endOfProgress();
+        }
+    }
+
+    /**
+     * Read the next chunk of the file, that ends after the last line feed
+     * found in the chunk. The chunk grows if a line does not fit in it.
+     *
+     * @param is File stream
+     * @return The chunk, or null at the end of the file
+     * @throws IOException
+     */
+    private byte[] readChunk(InputStream is) throws IOException {
+        byte[] chunk = Arrays.copyOf(remainder, Math.max(CHUNK_SIZE, remainder.length * 2));
+        int length = remainder.length;
+        while (true) {
+            int read = is.read(chunk, length, chunk.length - length);
+            if (read < 0) {
+                remainder = new byte[0];
+                return length == 0 ? null : Arrays.copyOf(chunk, length);
+            }
+            length += read;
+            if (length == chunk.length) {
+                int end = length;
+                while (end > 0 && chunk[end - 1] != '\n') {
+                    end--;
+                }
+                if (end > 0) {
+                    remainder = Arrays.copyOfRange(chunk, end, length);
+                    return end == length ? chunk : Arrays.copyOf(chunk, end);
+                }
+                // The line does not fit in the chunk
+                chunk = Arrays.copyOf(chunk, chunk.length * 2);
+            }
+        }
+    }
+
+    private static List<Feature> getFeatures(Future<List<Feature>> future) throws SQLException, IOException,
+            InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Insert the features of a chunk, the table is created or altered first
+     * if the features have new properties or values of another type.
+     *
+     * @param features Parsed features
+     * @throws SQLException
+     */
+    private void insertFeatures(List<Feature> features) throws SQLException {
+        Map<String, String> newTypes = new LinkedHashMap<String, String>();
+        for (Feature feature : features) {
+            if (feature.geometry != null) {
+                geometryTypes.add(feature.geometry.getGeometryType().toLowerCase());
+            }
+            for (Map.Entry<String, Object> property : feature.properties.entrySet()) {
+                String valueType = getColumnType(property.getValue());
+                String columnType = newTypes.containsKey(property.getKey()) ?
+                        newTypes.get(property.getKey()) : columnTypes.get(property.getKey());
+                if (columnType == null) {
+                    newTypes.put(property.getKey(), valueType == null ? "VARCHAR" : valueType);
+                } else if (valueType != null && !columnType.equals(valueType)) {
+                    String widenedType = GeoJsonReaderDriver.widenColumnType(columnType, valueType);
+                    if (!widenedType.equals(columnType)) {
+                        newTypes.put(property.getKey(), widenedType);
+                    }
+                }
+            }
+        }
+        if (preparedStatement == null) {
+            columnTypes.putAll(newTypes);
+            createTable();
+        } else if (!newTypes.isEmpty()) {
+            alterTable(newTypes);
+        }
+        int pendingRows = 0;
+        for (Feature feature : features) {
+            preparedStatement.setObject(1, feature.geometry);
+            int columnId = 2;
+            for (Map.Entry<String, String> column : columnTypes.entrySet()) {
+                Object value = feature.properties.get(column.getKey());
+                if (value == null && feature.properties.containsKey(column.getKey())
+                        && column.getValue().equals("VARCHAR")) {
+                    value = "null";
+                }
+                preparedStatement.setObject(columnId++, value);
+            }
+            preparedStatement.addBatch();
+            if (++pendingRows >= batchSize) {
+                preparedStatement.executeBatch();
+                preparedStatement.clearBatch();
+                pendingRows = 0;
+            }
+        }
+        if (pendingRows > 0) {
+            preparedStatement.executeBatch();
+            preparedStatement.clearBatch();
+        }
+    }
+
+    /**
+     * @param value Parsed property value
+     * @return The column type of the value, null for a null value
+     */
+    private static String getColumnType(Object value) {
+        if (value instanceof String) {
+            return "VARCHAR";
+        } else if (value instanceof Boolean) {
+            return "BOOLEAN";
+        } else if (value instanceof Double) {
+            return "DOUBLE PRECISION";
+        } else if (value instanceof BigInteger) {
+            return "BIGINT";
+        } else if (value instanceof Object[]) {
+            return "ARRAY";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the table and prepares the insert statement.
+     *
+     * @throws SQLException
+     */
+    private void createTable() throws SQLException {
+        StringBuilder createTable = new StringBuilder("CREATE TABLE ");
+        createTable.append(tableLocation).append(" (");
+        if (isH2) {
+            createTable.append("THE_GEOM GEOMETRY");
+        } else {
+            createTable.append("THE_GEOM GEOMETRY(geometry,0)");
+        }
+        for (Map.Entry<String, String> column : columnTypes.entrySet()) {
+            createTable.append(",").append(column.getKey()).append(" ").append(column.getValue());
+        }
+        createTable.append(")");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createTable.toString());
+        }
+        prepareInsert();
+    }
+
+    /**
+     * Adds the new columns and changes the type of the widened columns.
+     *
+     * @param newTypes New columns and widened columns with their types
+     * @throws SQLException
+     */
+    private void alterTable(Map<String, String> newTypes) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (Map.Entry<String, String> column : newTypes.entrySet()) {
+                if (!columnTypes.containsKey(column.getKey())) {
+                    stmt.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s", tableLocation, column.getKey(), column.getValue()));
+                } else if (isH2) {
+                    stmt.execute(String.format("ALTER TABLE %s ALTER COLUMN %s %s", tableLocation, column.getKey(), column.getValue()));
+                } else {
+                    stmt.execute(String.format("ALTER TABLE %s ALTER COLUMN %s SET DATA TYPE %s", tableLocation, column.getKey(), column.getValue()));
+                }
+                columnTypes.put(column.getKey(), column.getValue());
+            }
+        }
+        preparedStatement.close();
+        prepareInsert();
+    }
+
+    private void prepareInsert() throws SQLException {
+        StringBuilder insertTable = new StringBuilder("INSERT INTO ");
+        insertTable.append(tableLocation).append(" VALUES(?");
+        for (int i = 0; i < columnTypes.size(); i++) {
+            insertTable.append(",?");
+        }
+        insertTable.append(")");
+        preparedStatement = connection.prepareStatement(insertTable.toString());
+    }
+
+    /**
+     * Adds the geometry type constraint
+     */
+    private void setGeometryTypeConstraints() throws SQLException {
+        if (!isH2 && geometryTypes.size() == 1) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(String.format("ALTER TABLE %s ALTER COLUMN the_geom SET DATA TYPE geometry(%s,0)",
+                        tableLocation, geometryTypes.iterator().next()));
+            }
+        }
+    }
+
+    /**
+     * Geometry and properties of a feature
+     */
+    private static class Feature {
+        private Geometry geometry;
+        private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    }
+
+    /**
+     * Parse the features of a chunk, one feature by line
+     */
+    private class ParseChunkTask implements Callable<List<Feature>> {
+        private final byte[] chunk;
+        // The geometry reader is not thread-safe, each task has its own reader
+        private final GJGeometryReader geometryReader;
+
+        private ParseChunkTask(byte[] chunk) {
+            this.chunk = chunk;
+            this.geometryReader = new GJGeometryReader(geometryFactory);
+        }
+
+        @Override
+        public List<Feature> call() throws IOException, SQLException {
+            List<Feature> features = new ArrayList<Feature>();
+            int lineStart = 0;
+            while (lineStart < chunk.length) {
+                int lineEnd = lineStart;
+                while (lineEnd < chunk.length && chunk[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                // Skip the record separators and the blank characters
+                int start = lineStart;
+                while (start < lineEnd && (chunk[start] == RECORD_SEPARATOR || chunk[start] == ' '
+                        || chunk[start] == '\t' || chunk[start] == '\r')) {
+                    start++;
+                }
+                if (start < lineEnd) {
+                    try (JsonParser jp = jsFactory.createParser(chunk, start, lineEnd - start)) {
+                        features.add(parseFeature(jp));
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return features;
+        }
+
+        /**
+         * Parses a feature
+         *
+         * Syntax:
+         *
+         * { "type": "Feature", "geometry":{"type": "Point", "coordinates": [102.0,
+         * 0.5]}, "properties": {"prop0": "value0"} }
+         *
+         * @param jp
+         */
+        private Feature parseFeature(JsonParser jp) throws IOException, SQLException {
+            if (jp.nextToken() != JsonToken.START_OBJECT) {
+                throw new SQLException("Malformed GeoJSON sequence. Expected a Feature object, found '" + jp.getText() + "'");
+            }
+            Feature feature = new Feature();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                JsonToken value = jp.nextToken();
+                if (field.equalsIgnoreCase(GeoJsonField.GEOMETRY)) {
+                    if (value != JsonToken.VALUE_NULL) {
+                        feature.geometry = geometryReader.parseGeometryObject(jp);
+                    }
+                } else if (field.equalsIgnoreCase(GeoJsonField.PROPERTIES) && value == JsonToken.START_OBJECT) {
+                    parseProperties(jp, feature.properties);
+                } else if (field.equalsIgnoreCase("type")) {
+                    if (!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURE)) {
+                        throw new SQLException("Malformed GeoJSON file. Expected 'Feature', found '" + jp.getText() + "'");
+                    }
+                } else {
+                    jp.skipChildren();
+                }
+            }
+            return feature;
+        }
+
+        /**
+         * Parses the properties of a feature
+         *
+         * Syntax:
+         *
+         * "properties": {"prop0": "value0"}
+         *
+         * @param jp
+         * @param properties Parsed values by quoted column name
+         */
+        private void parseProperties(JsonParser jp, Map<String, Object> properties) throws IOException {
+            while (jp.nextToken() != JsonToken.END_OBJECT) {
+                String fieldName = TableLocation.quoteIdentifier(jp.getText().toUpperCase(), isH2); //FIELD_NAME columnName
+                JsonToken value = jp.nextToken();
+                if (value == JsonToken.VALUE_STRING) {
+                    properties.put(fieldName, jp.getText());
+                } else if (value == JsonToken.VALUE_TRUE || value == JsonToken.VALUE_FALSE) {
+                    properties.put(fieldName, jp.getValueAsBoolean());
+                } else if (value == JsonToken.VALUE_NUMBER_FLOAT) {
+                    properties.put(fieldName, jp.getValueAsDouble());
+                } else if (value == JsonToken.VALUE_NUMBER_INT) {
+                    properties.put(fieldName, jp.getBigIntegerValue());
+                } else if (value == JsonToken.START_ARRAY) {
+                    properties.put(fieldName, GeoJsonReaderDriver.parseArray(jp).toArray());
+                } else if (value == JsonToken.START_OBJECT) {
+                    properties.put(fieldName, GeoJsonReaderDriver.parseObject(jp));
+                } else if (value == JsonToken.VALUE_NULL) {
+                    properties.put(fieldName, null);
+                }
+            }
+        }
+    }
+}
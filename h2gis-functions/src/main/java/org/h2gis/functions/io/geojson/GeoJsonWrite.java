@@ -38,7 +38,9 @@ public class GeoJsonWrite extends AbstractFunction implements ScalarFunction {
 
     
     public GeoJsonWrite(){
-        addProperty(PROP_REMARKS, "Export a spatial table to a GeoJSON 1.0 file.");
+        addProperty(PROP_REMARKS, "Export a spatial table to a GeoJSON 1.0 file, compressed if the file name ends with .gz.\n" +
+                "GeoJsonWrite(path, tableName[, threadCount])\n" +
+                "threadCount: Number of threads encoding the features");
     }
     
     @Override
@@ -59,4 +61,20 @@ public class GeoJsonWrite extends AbstractFunction implements ScalarFunction {
             GeoJsonDriverFunction gjdf = new GeoJsonDriverFunction();
             gjdf.exportTable(connection, tableReference,  URIUtilities.fileFromString(fileName), new EmptyProgressVisitor());
     }
+
+    /**
+     * Write the GeoJSON file, the features are encoded by several threads.
+     *
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @param threadCount Number of threads encoding the features
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void writeGeoJson(Connection connection, String fileName, String tableReference, int threadCount) throws IOException, SQLException {
+        GeoJsonDriverFunction gjdf = new GeoJsonDriverFunction();
+        gjdf.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName), new EmptyProgressVisitor(),
+                threadCount);
+    }
 }
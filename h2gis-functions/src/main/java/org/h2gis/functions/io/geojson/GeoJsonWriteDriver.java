@@ -31,10 +31,12 @@ import org.h2gis.utilities.TableLocation;
 
 import java.io.*;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.h2gis.functions.io.utility.EncodingPipeline;
 import org.h2gis.functions.io.utility.FileUtil;
 
 /**
@@ -61,6 +63,9 @@ public class GeoJsonWriteDriver {
     private final Connection connection;
     private Map<String, Integer> cachedColumnNames;
     private int columnCountProperties = -1;
+    private int columnCount;
+    private int threadCount = 1;
+    private static final char RECORD_SEPARATOR = '\u001e';
 
     /**
      * A simple GeoJSON driver to write a spatial table to a GeoJSON file.
@@ -76,20 +81,84 @@ public class GeoJsonWriteDriver {
     }
 
     /**
-     * Write the spatial table to GeoJSON format.
+     * @param threadCount Number of threads encoding the features, 1 to encode
+     * the features in the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Write the spatial table to GeoJSON format. The file is compressed if its
+     * name ends with .gz.
      *
      * @param progress
      * @throws SQLException
      * @throws java.io.IOException
      */
     public void write(ProgressVisitor progress) throws SQLException, IOException {        
-        if (FileUtil.isExtensionWellFormated(fileName, "geojson")) {
+        if (FileUtil.isExtensionWellFormated(FileUtil.removeGZipExtension(fileName), "geojson")) {
             writeGeoJson(progress);
         } else {
             throw new SQLException("Only .geojson extension is supported");
         }
     }
 
+    /**
+     * Write the spatial table to a GeoJSON sequence file, one feature by
+     * line. In .geojsons files each feature is preceded by a record
+     * separator. The file is compressed if its name ends with .gz.
+     *
+     * @param progress
+     * @throws SQLException
+     * @throws java.io.IOException
+     */
+    public void writeSequence(ProgressVisitor progress) throws SQLException, IOException {
+        File sequenceFile = FileUtil.removeGZipExtension(fileName);
+        if (!GeoJsonSeqReaderDriver.isSequenceFile(sequenceFile)) {
+            throw new SQLException("Only " + Arrays.toString(GeoJsonSeqReaderDriver.EXTENSIONS) + " extensions are supported");
+        }
+        final boolean recordSeparator = FileUtil.isExtensionWellFormated(sequenceFile, "geojsons");
+        try (OutputStream fos = FileUtil.createOutputStream(fileName)) {
+            int recordCount = JDBCUtilities.getRowCount(connection, tableName);
+            if (recordCount > 0) {
+                ProgressVisitor copyProgress = progress.subProcess(recordCount);
+                final TableLocation parse = TableLocation.parse(tableName, JDBCUtilities.isH2DataBase(connection.getMetaData()));
+                List<String> spatialFieldNames = SFSUtilities.getGeometryFields(connection, parse);
+                if (spatialFieldNames.isEmpty()) {
+                    throw new SQLException(String.format("The table %s does not contain a geometry field", tableName));
+                }
+                JsonFactory jsonFactory = new JsonFactory();
+                // The features are separated by line feeds
+                jsonFactory.setRootValueSeparator(null);
+                try (Statement st = connection.createStatement();
+                     ResultSet rs = st.executeQuery(String.format("select * from %s", tableName))) {
+                    BufferedOutputStream bos = new BufferedOutputStream(fos);
+                    ResultSetMetaData resultSetMetaData = rs.getMetaData();
+                    int geoFieldIndex = JDBCUtilities.getFieldIndex(resultSetMetaData, spatialFieldNames.get(0));
+                    cacheMetadata(resultSetMetaData);
+                    if (threadCount > 1) {
+                        EncodingPipeline.write(rs, new FeatureEncoder(jsonFactory, geoFieldIndex, true, recordSeparator),
+                                bos, null, threadCount, copyProgress);
+                        bos.close();
+                    } else {
+                        JsonGenerator jsonGenerator = jsonFactory.createGenerator(bos, JsonEncoding.UTF8);
+                        while (rs.next()) {
+                            if (recordSeparator) {
+                                jsonGenerator.writeRaw(RECORD_SEPARATOR);
+                            }
+                            writeFeature(jsonGenerator, readRow(rs), geoFieldIndex);
+                            jsonGenerator.writeRaw('\n');
+                            copyProgress.endStep();
+                        }
+                        jsonGenerator.close();
+                    }
+                    copyProgress.endOfProgress();
+                }
+            }
+        }
+    }
+
     /**
      * Write the spatial table to GeoJSON format.
      *
@@ -97,9 +166,9 @@ public class GeoJsonWriteDriver {
      * @throws SQLException
      */
     private void writeGeoJson(ProgressVisitor progress) throws SQLException, IOException {        
-        FileOutputStream fos = null;
+        OutputStream fos = null;
         try {
-            fos = new FileOutputStream(fileName);
+            fos = FileUtil.createOutputStream(fileName);
             int recordCount = JDBCUtilities.getRowCount(connection, tableName);
             if (recordCount > 0) {
                 ProgressVisitor copyProgress = progress.subProcess(recordCount);
@@ -114,7 +183,8 @@ public class GeoJsonWriteDriver {
                 Statement st = connection.createStatement();
                 try {
                     JsonFactory jsonFactory = new JsonFactory();
-                    JsonGenerator jsonGenerator = jsonFactory.createGenerator(new BufferedOutputStream(fos), JsonEncoding.UTF8);
+                    BufferedOutputStream bos = new BufferedOutputStream(fos);
+                    JsonGenerator jsonGenerator = jsonFactory.createGenerator(bos, JsonEncoding.UTF8);
 
                     // header of the GeoJSON file
                     jsonGenerator.writeStartObject();
@@ -128,9 +198,18 @@ public class GeoJsonWriteDriver {
                         ResultSetMetaData resultSetMetaData = rs.getMetaData();
                         int geoFieldIndex = JDBCUtilities.getFieldIndex(resultSetMetaData, spatialFieldNames.get(0));
                         cacheMetadata(resultSetMetaData);
-                        while (rs.next()) {
-                            writeFeature(jsonGenerator, rs, geoFieldIndex);
-                            copyProgress.endStep();
+                        if (threadCount > 1) {
+                            // The encoded features are appended after the start of the array
+                            jsonGenerator.flush();
+                            JsonFactory featureFactory = new JsonFactory();
+                            featureFactory.setRootValueSeparator(null);
+                            EncodingPipeline.write(rs, new FeatureEncoder(featureFactory, geoFieldIndex, false, false),
+                                    bos, new byte[]{','}, threadCount, copyProgress);
+                        } else {
+                            while (rs.next()) {
+                                writeFeature(jsonGenerator, readRow(rs), geoFieldIndex);
+                                copyProgress.endStep();
+                            }
                         }
                         copyProgress.endOfProgress();
                         // footer
@@ -178,22 +257,37 @@ public class GeoJsonWriteDriver {
      * { "type": "Feature", "geometry":{"type": "Point", "coordinates": [102.0,
      * 0.5]}, "properties": {"prop0": "value0"} }
      *
-     * @param writer
-     * @param resultSetMetaData
+     * @param jsonGenerator
+     * @param row Values of the row, see {@link #readRow(ResultSet)}
      * @param geoFieldIndex
      */
-    private void writeFeature(JsonGenerator jsonGenerator, ResultSet rs, int geoFieldIndex) throws IOException, SQLException {
+    private void writeFeature(JsonGenerator jsonGenerator, Object[] row, int geoFieldIndex) throws IOException, SQLException {
         // feature header
         jsonGenerator.writeStartObject();
         jsonGenerator.writeStringField("type", "Feature");
         //Write the first geometry
-        writeGeometry((Geometry) rs.getObject(geoFieldIndex), jsonGenerator);
+        writeGeometry((Geometry) row[geoFieldIndex - 1], jsonGenerator);
         //Write the properties
-        writeProperties(jsonGenerator, rs);
+        writeProperties(jsonGenerator, row);
         // feature footer
         jsonGenerator.writeEndObject();
     }
 
+    /**
+     * Read the values of the current row.
+     *
+     * @param rs
+     * @return The values, the value of the column i is at the index i - 1
+     * @throws SQLException
+     */
+    private Object[] readRow(ResultSet rs) throws SQLException {
+        Object[] row = new Object[columnCount];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = rs.getObject(i + 1);
+        }
+        return row;
+    }
+
     /**
      * Cache the column name and its index.
      *
@@ -202,6 +296,7 @@ public class GeoJsonWriteDriver {
      */
     private void cacheMetadata(ResultSetMetaData resultSetMetaData) throws SQLException {
         cachedColumnNames = new LinkedHashMap<String, Integer>();
+        columnCount = resultSetMetaData.getColumnCount();
         for (int i = 1; i <= resultSetMetaData.getColumnCount(); i++) {
             final String fieldTypeName = resultSetMetaData.getColumnTypeName(i);
             if (!fieldTypeName.equalsIgnoreCase("geometry")
@@ -455,29 +550,29 @@ public class GeoJsonWriteDriver {
      * Write the GeoJSON properties.
      *
      * @param jsonGenerator
-     * @param rs
+     * @param row
      * @throws IOException
      */
-    private void writeProperties(JsonGenerator jsonGenerator, ResultSet rs) throws IOException, SQLException {
+    private void writeProperties(JsonGenerator jsonGenerator, Object[] row) throws IOException, SQLException {
         if (columnCountProperties != -1) {
             jsonGenerator.writeObjectFieldStart("properties");
             for (Map.Entry<String, Integer> entry : cachedColumnNames.entrySet()) {
                 String string = entry.getKey();
                 string = string.toLowerCase();
-                Integer fieldId = entry.getValue();
-                if (rs.getObject(fieldId) instanceof Object[]) {
-                    Object[] array = (Object[]) rs.getObject(fieldId);
+                Object value = row[entry.getValue() - 1];
+                if (value instanceof Object[]) {
+                    Object[] array = (Object[]) value;
                     jsonGenerator.writeArrayFieldStart(string);
                     writeArray(jsonGenerator, array, true);
                     jsonGenerator.writeEndArray();
-                } else if (rs.getObject(fieldId) != null && rs.getObject(fieldId).equals("{}")){
+                } else if (value != null && value.equals("{}")){
                     jsonGenerator.writeObjectFieldStart(string);
                     jsonGenerator.writeEndObject();
-                } else if (rs.getObject(fieldId) == "null") {
+                } else if (value == "null") {
                     jsonGenerator.writeFieldName(string);
                     jsonGenerator.writeNull();
                 } else {
-                    jsonGenerator.writeObjectField(string, rs.getObject(fieldId));
+                    jsonGenerator.writeObjectField(string, value);
                 }
             }
             jsonGenerator.writeEndObject();
@@ -571,4 +666,53 @@ public class GeoJsonWriteDriver {
         }
     }
 
+    /**
+     * Encode features for the {@link EncodingPipeline}, each batch is written
+     * by its own generator.
+     */
+    private class FeatureEncoder implements EncodingPipeline.RowEncoder {
+        private final JsonFactory jsonFactory;
+        private final int geoFieldIndex;
+        private final boolean sequence;
+        private final boolean recordSeparator;
+
+        /**
+         * @param jsonFactory Factory without root value separator
+         * @param geoFieldIndex Index of the geometry field
+         * @param sequence True to end each feature with a line feed, false to
+         * separate the features with a comma
+         * @param recordSeparator True to start each feature with a record
+         * separator
+         */
+        private FeatureEncoder(JsonFactory jsonFactory, int geoFieldIndex, boolean sequence, boolean recordSeparator) {
+            this.jsonFactory = jsonFactory;
+            this.geoFieldIndex = geoFieldIndex;
+            this.sequence = sequence;
+            this.recordSeparator = recordSeparator;
+        }
+
+        @Override
+        public Object[] readRow(ResultSet rs) throws SQLException {
+            return GeoJsonWriteDriver.this.readRow(rs);
+        }
+
+        @Override
+        public byte[] encode(List<Object[]> rows) throws IOException, SQLException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (JsonGenerator jsonGenerator = jsonFactory.createGenerator(bos, JsonEncoding.UTF8)) {
+                for (int i = 0; i < rows.size(); i++) {
+                    if (recordSeparator) {
+                        jsonGenerator.writeRaw(RECORD_SEPARATOR);
+                    } else if (!sequence && i > 0) {
+                        jsonGenerator.writeRaw(',');
+                    }
+                    writeFeature(jsonGenerator, rows.get(i), geoFieldIndex);
+                    if (sequence) {
+                        jsonGenerator.writeRaw('\n');
+                    }
+                }
+            }
+            return bos.toByteArray();
+        }
+    }
 }
@@ -21,6 +21,7 @@
 package org.h2gis.functions.io.geojson;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
@@ -38,11 +39,35 @@ import org.h2gis.api.DeterministicScalarFunction;
  * @author Erwan Bocher
  */
 public class ST_AsGeoJSON extends DeterministicScalarFunction {
+    // Maximal number of decimals of the coordinates
+    private static final int MAX_DECIMAL_DIGITS = 15;
+    // Integers up to this value are exactly represented by a double
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+    // Powers of ten, all exactly represented by a double
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+    // Larger builders are not kept by the thread
+    private static final int MAX_BUILDER_CAPACITY = 1 << 20;
+    // Builder reused by the calls of a thread
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
 
     public ST_AsGeoJSON() {
         addProperty(PROP_REMARKS, "Return the geometry as a Geometry Javascript Object Notation (GeoJSON 1.0) element.\n"
                 + "2D and 3D Geometries are both supported.\n"
-                + "GeoJSON only supports SFS 1.1 geometry types (POINT, LINESTRING, POLYGON and COLLECTION).");
+                + "GeoJSON only supports SFS 1.1 geometry types (POINT, LINESTRING, POLYGON and COLLECTION).\n"
+                + "ST_AsGeoJSON(geom[, maxdecimaldigits])\n"
+                + "maxdecimaldigits: Round the coordinates to this number of decimals (at most 15)"
+                + ", by default the shortest decimals that read back to the same coordinates are written.");
     }
 
     @Override
@@ -57,9 +82,26 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @return
      */
     public static String toGeojson(Geometry geom) {
-        StringBuilder sb = new StringBuilder();
-        toGeojsonGeometry(geom, sb);
-        return sb.toString();
+        return toGeojson(geom, -1);
+    }
+
+    /**
+     * Convert the geometry to a GeoJSON representation.
+     *
+     * @param geom
+     * @param maxdecimaldigits Number of decimals of the coordinates, -1 for
+     * the shortest decimals that read back to the same coordinates
+     * @return
+     */
+    public static String toGeojson(Geometry geom, int maxdecimaldigits) {
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        toGeojsonGeometry(geom, maxdecimaldigits, sb);
+        String geojson = sb.toString();
+        if (sb.capacity() > MAX_BUILDER_CAPACITY) {
+            BUILDER.remove();
+        }
+        return geojson;
     }
     
     
@@ -70,20 +112,32 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonGeometry(Geometry geom, StringBuilder sb) {
+        toGeojsonGeometry(geom, -1, sb);
+    }
+
+    /**
+     * Transform a JTS geometry to a GeoJSON representation.
+     *
+     * @param geom
+     * @param maxdecimaldigits Number of decimals of the coordinates, -1 for
+     * the shortest decimals that read back to the same coordinates
+     * @param sb
+     */
+    public static void toGeojsonGeometry(Geometry geom, int maxdecimaldigits, StringBuilder sb) {
         if (geom instanceof Point) {
-            toGeojsonPoint((Point) geom, sb);
+            toGeojsonPoint((Point) geom, maxdecimaldigits, sb);
         } else if (geom instanceof LineString) {
-            toGeojsonLineString((LineString) geom, sb);
+            toGeojsonLineString((LineString) geom, maxdecimaldigits, sb);
         } else if (geom instanceof Polygon) {
-            toGeojsonPolygon((Polygon) geom, sb);
+            toGeojsonPolygon((Polygon) geom, maxdecimaldigits, sb);
         } else if (geom instanceof MultiPoint) {
-            toGeojsonMultiPoint((MultiPoint) geom, sb);
+            toGeojsonMultiPoint((MultiPoint) geom, maxdecimaldigits, sb);
         } else if (geom instanceof MultiLineString) {
-            toGeojsonMultiLineString((MultiLineString) geom, sb);
+            toGeojsonMultiLineString((MultiLineString) geom, maxdecimaldigits, sb);
         } else if (geom instanceof MultiPolygon) {
-            toGeojsonMultiPolygon((MultiPolygon) geom, sb);
+            toGeojsonMultiPolygon((MultiPolygon) geom, maxdecimaldigits, sb);
         } else {
-            toGeojsonGeometryCollection((GeometryCollection) geom, sb);
+            toGeojsonGeometryCollection((GeometryCollection) geom, maxdecimaldigits, sb);
         }
     }
 
@@ -113,13 +167,20 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonPoint(Point point, StringBuilder sb) {
-        Coordinate coord = point.getCoordinate();
-        sb.append("{\"type\":\"Point\",\"coordinates\":[");
-        sb.append(coord.x).append(",").append(coord.y);
-        if (!Double.isNaN(coord.z)) {
-            sb.append(",").append(coord.z);
-        }
-        sb.append("]}");
+        toGeojsonPoint(point, -1, sb);
+    }
+
+    /**
+     * Point with rounded coordinates, see {@link #toGeojsonPoint(Point, StringBuilder)}.
+     *
+     * @param point
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonPoint(Point point, int maxdecimaldigits, StringBuilder sb) {
+        sb.append("{\"type\":\"Point\",\"coordinates\":");
+        toGeojsonCoordinate(point.getCoordinate(), maxdecimaldigits, sb);
+        sb.append("}");
     }
 
     /**
@@ -133,9 +194,25 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonMultiPoint(MultiPoint multiPoint, StringBuilder sb) {
-        sb.append("{\"type\":\"MultiPoint\",\"coordinates\":");
-        toGeojsonCoordinates(multiPoint.getCoordinates(), sb);
-        sb.append("}");
+        toGeojsonMultiPoint(multiPoint, -1, sb);
+    }
+
+    /**
+     * MultiPoint with rounded coordinates, see {@link #toGeojsonMultiPoint(MultiPoint, StringBuilder)}.
+     *
+     * @param multiPoint
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonMultiPoint(MultiPoint multiPoint, int maxdecimaldigits, StringBuilder sb) {
+        sb.append("{\"type\":\"MultiPoint\",\"coordinates\":[");
+        for (int i = 0; i < multiPoint.getNumGeometries(); i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            toGeojsonCoordinate(((Point) multiPoint.getGeometryN(i)).getCoordinateSequence(), 0, maxdecimaldigits, sb);
+        }
+        sb.append("]}");
     }
 
     /**
@@ -149,8 +226,19 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonLineString(LineString lineString, StringBuilder sb) {
+        toGeojsonLineString(lineString, -1, sb);
+    }
+
+    /**
+     * LineString with rounded coordinates, see {@link #toGeojsonLineString(LineString, StringBuilder)}.
+     *
+     * @param lineString
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonLineString(LineString lineString, int maxdecimaldigits, StringBuilder sb) {
         sb.append("{\"type\":\"LineString\",\"coordinates\":");
-        toGeojsonCoordinates(lineString.getCoordinates(), sb);
+        toGeojsonCoordinates(lineString.getCoordinateSequence(), maxdecimaldigits, sb);
         sb.append("}");
     }
 
@@ -167,9 +255,21 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonMultiLineString(MultiLineString multiLineString, StringBuilder sb) {
+        toGeojsonMultiLineString(multiLineString, -1, sb);
+    }
+
+    /**
+     * MultiLineString with rounded coordinates, see
+     * {@link #toGeojsonMultiLineString(MultiLineString, StringBuilder)}.
+     *
+     * @param multiLineString
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonMultiLineString(MultiLineString multiLineString, int maxdecimaldigits, StringBuilder sb) {
         sb.append("{\"type\":\"MultiLineString\",\"coordinates\":[");
         for (int i = 0; i < multiLineString.getNumGeometries(); i++) {
-            toGeojsonCoordinates(multiLineString.getGeometryN(i).getCoordinates(), sb);
+            toGeojsonCoordinates(((LineString) multiLineString.getGeometryN(i)).getCoordinateSequence(), maxdecimaldigits, sb);
             if (i < multiLineString.getNumGeometries() - 1) {
                 sb.append(",");
             }
@@ -200,13 +300,24 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonPolygon(Polygon polygon, StringBuilder sb) {
+        toGeojsonPolygon(polygon, -1, sb);
+    }
+
+    /**
+     * Polygon with rounded coordinates, see {@link #toGeojsonPolygon(Polygon, StringBuilder)}.
+     *
+     * @param polygon
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonPolygon(Polygon polygon, int maxdecimaldigits, StringBuilder sb) {
         sb.append("{\"type\":\"Polygon\",\"coordinates\":[");
         //Process exterior ring
-        toGeojsonCoordinates(polygon.getExteriorRing().getCoordinates(), sb);
+        toGeojsonCoordinates(polygon.getExteriorRing().getCoordinateSequence(), maxdecimaldigits, sb);
         //Process interior rings
         for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
             sb.append(",");
-            toGeojsonCoordinates(polygon.getInteriorRingN(i).getCoordinates(), sb);
+            toGeojsonCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence(), maxdecimaldigits, sb);
         }
         sb.append("]}");
     }
@@ -225,17 +336,29 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonMultiPolygon(MultiPolygon multiPolygon, StringBuilder sb) {
+        toGeojsonMultiPolygon(multiPolygon, -1, sb);
+    }
+
+    /**
+     * MultiPolygon with rounded coordinates, see
+     * {@link #toGeojsonMultiPolygon(MultiPolygon, StringBuilder)}.
+     *
+     * @param multiPolygon
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonMultiPolygon(MultiPolygon multiPolygon, int maxdecimaldigits, StringBuilder sb) {
         sb.append("{\"type\":\"MultiPolygon\",\"coordinates\":[");
 
         for (int i = 0; i < multiPolygon.getNumGeometries(); i++) {
             Polygon p = (Polygon) multiPolygon.getGeometryN(i);
             sb.append("[");
             //Process exterior ring
-            toGeojsonCoordinates(p.getExteriorRing().getCoordinates(), sb);
+            toGeojsonCoordinates(p.getExteriorRing().getCoordinateSequence(), maxdecimaldigits, sb);
             //Process interior rings
             for (int j = 0; j < p.getNumInteriorRing(); j++) {
                 sb.append(",");
-                toGeojsonCoordinates(p.getInteriorRingN(j).getCoordinates(), sb);
+                toGeojsonCoordinates(p.getInteriorRingN(j).getCoordinateSequence(), maxdecimaldigits, sb);
             }
             sb.append("]");
             if (i < multiPolygon.getNumGeometries() - 1) {
@@ -263,15 +386,28 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonGeometryCollection(GeometryCollection geometryCollection, StringBuilder sb) {
+        toGeojsonGeometryCollection(geometryCollection, -1, sb);
+    }
+
+    /**
+     * GeometryCollection with rounded coordinates, see
+     * {@link #toGeojsonGeometryCollection(GeometryCollection, StringBuilder)}.
+     *
+     * @param geometryCollection
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonGeometryCollection(GeometryCollection geometryCollection, int maxdecimaldigits,
+                                                   StringBuilder sb) {
         sb.append("{\"type\":\"GeometryCollection\",\"geometries\":[");
         for (int i = 0; i < geometryCollection.getNumGeometries(); i++) {
             Geometry geom = geometryCollection.getGeometryN(i);
             if (geom instanceof Point) {
-                toGeojsonPoint((Point) geom, sb);
+                toGeojsonPoint((Point) geom, maxdecimaldigits, sb);
             } else if (geom instanceof LineString) {
-                toGeojsonLineString((LineString) geom, sb);
+                toGeojsonLineString((LineString) geom, maxdecimaldigits, sb);
             } else if (geom instanceof Polygon) {
-                toGeojsonPolygon((Polygon) geom, sb);
+                toGeojsonPolygon((Polygon) geom, maxdecimaldigits, sb);
             }
             if (i < geometryCollection.getNumGeometries() - 1) {
                 sb.append(",");
@@ -302,6 +438,29 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
         sb.append("]");
     }
 
+    /**
+     * Convert a jts coordinate sequence to a GeoJSON coordinates
+     * representation, the coordinates are read without copy.
+     *
+     * Syntax:
+     *
+     * [[X1,Y1],[X2,Y2]]
+     *
+     * @param coords
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonCoordinates(CoordinateSequence coords, int maxdecimaldigits, StringBuilder sb) {
+        sb.append("[");
+        for (int i = 0; i < coords.size(); i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            toGeojsonCoordinate(coords, i, maxdecimaldigits, sb);
+        }
+        sb.append("]");
+    }
+
     /**
      * Convert a JTS coordinate to a GeoJSON representation.
      *
@@ -315,14 +474,159 @@ public class ST_AsGeoJSON extends DeterministicScalarFunction {
      * @param sb
      */
     public static void toGeojsonCoordinate(Coordinate coord, StringBuilder sb) {
+        toGeojsonCoordinate(coord, -1, sb);
+    }
+
+    /**
+     * Coordinate with rounded ordinates, see {@link #toGeojsonCoordinate(Coordinate, StringBuilder)}.
+     *
+     * @param coord
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    public static void toGeojsonCoordinate(Coordinate coord, int maxdecimaldigits, StringBuilder sb) {
         sb.append("[");
-        sb.append(coord.x).append(",").append(coord.y);
+        appendNumber(coord.x, maxdecimaldigits, sb);
+        sb.append(",");
+        appendNumber(coord.y, maxdecimaldigits, sb);
         if (!Double.isNaN(coord.z)) {
-            sb.append(",").append(coord.z);
+            sb.append(",");
+            appendNumber(coord.z, maxdecimaldigits, sb);
         }
         sb.append("]");
     }
 
+    /**
+     * Convert a coordinate of a JTS coordinate sequence to a GeoJSON
+     * representation.
+     *
+     * @param coords
+     * @param index Index of the coordinate in the sequence
+     * @param maxdecimaldigits
+     * @param sb
+     */
+    private static void toGeojsonCoordinate(CoordinateSequence coords, int index, int maxdecimaldigits, StringBuilder sb) {
+        sb.append("[");
+        appendNumber(coords.getOrdinate(index, CoordinateSequence.X), maxdecimaldigits, sb);
+        sb.append(",");
+        appendNumber(coords.getOrdinate(index, CoordinateSequence.Y), maxdecimaldigits, sb);
+        if (coords.getDimension() > 2) {
+            double z = coords.getOrdinate(index, CoordinateSequence.Z);
+            if (!Double.isNaN(z)) {
+                sb.append(",");
+                appendNumber(z, maxdecimaldigits, sb);
+            }
+        }
+        sb.append("]");
+    }
+
+    /**
+     * Append a coordinate value.
+     *
+     * @param value
+     * @param maxdecimaldigits Round the value to this number of decimals,
+     * trailing zeros are not written. -1 to write the same digits as
+     * {@link Double#toString(double)}.
+     * @param sb
+     */
+    static void appendNumber(double value, int maxdecimaldigits, StringBuilder sb) {
+        if (maxdecimaldigits < 0) {
+            appendShortest(value, sb);
+            return;
+        }
+        int decimals = Math.min(maxdecimaldigits, MAX_DECIMAL_DIGITS);
+        double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+        if (!(scaled < MAX_EXACT_INTEGER)) {
+            // Not enough precision for the requested decimals, or NaN
+            appendShortest(value, sb);
+            return;
+        }
+        long mantissa = Math.round(scaled);
+        while (decimals > 0 && mantissa % 10 == 0) {
+            mantissa /= 10;
+            decimals--;
+        }
+        if (value < 0 && mantissa != 0) {
+            sb.append('-');
+        }
+        appendDecimal(mantissa, decimals, sb);
+    }
+
+    /**
+     * Append the shortest decimal representation that reads back to the same
+     * value, with at least one decimal. The value is rounded to 15 then 16
+     * significant digits, the first rounding that reads back to the value is
+     * written without its trailing zeros. Out of the [1e-3, 1e7[ range, or if
+     * 17 digits are required, {@link Double#toString(double)} is used.
+     *
+     * @param value
+     * @param sb
+     */
+    private static void appendShortest(double value, StringBuilder sb) {
+        double abs = Math.abs(value);
+        // Double.toString uses the scientific notation out of this range
+        if (abs >= 1e-3 && abs < 1e7) {
+            // Number of digits of the integer part, negative for the leading zeros of the decimals
+            int integerDigits = 0;
+            if (abs >= 1) {
+                integerDigits = 1;
+                while (abs >= POWERS_OF_TEN[integerDigits]) {
+                    integerDigits++;
+                }
+            } else {
+                while (abs * POWERS_OF_TEN[1 - integerDigits] < 1) {
+                    integerDigits--;
+                }
+            }
+            for (int significantDigits = 15; significantDigits <= 16; significantDigits++) {
+                int decimals = significantDigits - integerDigits;
+                double scaled = abs * POWERS_OF_TEN[decimals];
+                if (scaled >= MAX_EXACT_INTEGER) {
+                    break;
+                }
+                double mantissa = Math.rint(scaled);
+                // Both numbers are exact, so the division is rounded like the parsing of the decimals
+                if (mantissa / POWERS_OF_TEN[decimals] == abs) {
+                    long digits = (long) mantissa;
+                    while (decimals > 0 && digits % 10 == 0) {
+                        digits /= 10;
+                        decimals--;
+                    }
+                    if (value < 0) {
+                        sb.append('-');
+                    }
+                    if (decimals == 0) {
+                        sb.append(digits).append(".0");
+                    } else {
+                        appendDecimal(digits, decimals, sb);
+                    }
+                    return;
+                }
+            }
+        }
+        sb.append(value);
+    }
+
+    /**
+     * Append mantissa * 10^-decimals
+     *
+     * @param mantissa Positive value
+     * @param decimals Number of decimals
+     * @param sb
+     */
+    private static void appendDecimal(long mantissa, int decimals, StringBuilder sb) {
+        long unit = POWERS_OF_TEN[decimals];
+        sb.append(mantissa / unit);
+        if (decimals > 0) {
+            sb.append('.');
+            long fraction = mantissa % unit;
+            for (long digit = unit / 10; digit > fraction && digit > 1; digit /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+    }
+
     /**
      * Convert a JTS Envelope to a GeoJSON representation.
      *
@@ -34,8 +34,20 @@ import org.h2gis.api.DeterministicScalarFunction;
  * @author Erwan Bocher
  */
 public class ST_GeomFromGeoJSON extends DeterministicScalarFunction{
-    private static JsonFactory jsFactory;
-    private static GJGeometryReader reader;
+    // The factory is thread-safe once configured
+    private static final JsonFactory JS_FACTORY = new JsonFactory();
+    static {
+        JS_FACTORY.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        JS_FACTORY.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+        JS_FACTORY.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+    }
+    // The geometry reader keeps its coordinate buffer between calls, one reader by thread
+    private static final ThreadLocal<GJGeometryReader> READER = new ThreadLocal<GJGeometryReader>() {
+        @Override
+        protected GJGeometryReader initialValue() {
+            return new GJGeometryReader(new GeometryFactory());
+        }
+    };
 
     public ST_GeomFromGeoJSON() {
         addProperty(PROP_REMARKS, "Convert a geojson representation of a geometry to a geometry object.");
@@ -58,14 +70,9 @@ public class ST_GeomFromGeoJSON extends DeterministicScalarFunction{
         if (geojson == null) {
             return null;
         }
-        if (jsFactory == null) {
-            jsFactory = new JsonFactory();
-            jsFactory.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            jsFactory.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
-            jsFactory.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
-            reader = new GJGeometryReader(new GeometryFactory());
+        // Closing the parser gives its buffers back to the buffer recycler of the thread
+        try (JsonParser jp = JS_FACTORY.createParser(geojson)) {
+            return READER.get().parseGeometry(jp);
         }
-        JsonParser jp = jsFactory.createParser(geojson);
-        return reader.parseGeometry(jp);
     }
 }
@@ -67,6 +67,24 @@ public class  JsonDriverFunction implements DriverFunction{
         jsonDriver.write(progress);
     }
 
+    /**
+     * Export the table with several threads encoding the rows.
+     *
+     * @param connection Active connection, do not close this connection.
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path to write
+     * @param progress Progress visitor following the execution.
+     * @param threadCount Number of threads encoding the rows
+     * @throws SQLException Table read error
+     * @throws IOException File write error
+     */
+    public void exportTable(Connection connection, String tableReference, File fileName, ProgressVisitor progress,
+                            int threadCount) throws SQLException, IOException {
+        JsonWriteDriver jsonDriver = new JsonWriteDriver(connection, tableReference, fileName);
+        jsonDriver.setThreadCount(threadCount);
+        jsonDriver.write(progress);
+    }
+
     @Override
     public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress) throws SQLException, IOException {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -35,7 +35,9 @@ import org.h2gis.utilities.URIUtilities;
 public class JsonWrite extends AbstractFunction implements ScalarFunction{
 
     public JsonWrite(){
-         addProperty(PROP_REMARKS, "Export a table to a JSON file.");
+         addProperty(PROP_REMARKS, "Export a table to a JSON file, compressed if the file name ends with .gz.\n" +
+                 "JsonWrite(path, tableName[, threadCount])\n" +
+                 "threadCount: Number of threads encoding the rows");
     }
     
     @Override
@@ -56,5 +58,21 @@ public class JsonWrite extends AbstractFunction implements ScalarFunction{
             JsonDriverFunction jdf = new JsonDriverFunction();
             jdf.exportTable(connection, tableReference,  URIUtilities.fileFromString(fileName), new EmptyProgressVisitor());
     }
+
+    /**
+     * Write the JSON file, the rows are encoded by several threads.
+     *
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @param threadCount Number of threads encoding the rows
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static void writeGeoJson(Connection connection, String fileName, String tableReference, int threadCount) throws IOException, SQLException {
+        JsonDriverFunction jdf = new JsonDriverFunction();
+        jdf.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName), new EmptyProgressVisitor(),
+                threadCount);
+    }
     
 }
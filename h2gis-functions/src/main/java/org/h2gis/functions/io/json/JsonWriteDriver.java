@@ -23,16 +23,19 @@ import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.EncodingPipeline;
 import org.h2gis.functions.io.utility.FileUtil;
 import org.h2gis.utilities.JDBCUtilities;
 
@@ -46,6 +49,7 @@ public class JsonWriteDriver {
     private final String tableName;
     private final File fileName;
     private final Connection connection;
+    private int threadCount = 1;
 
     /**
      * A JSON driver to write a  table to a JSON file.
@@ -59,15 +63,25 @@ public class JsonWriteDriver {
         this.tableName = tableName;
         this.fileName = fileName;
     }
+
+    /**
+     * @param threadCount Number of threads encoding the rows, 1 to encode
+     * the rows in the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     /**
-     * Write a table to JSON format.
+     * Write a table to JSON format. The file is compressed if its name ends
+     * with .gz.
      *
      * @param progress
      * @throws SQLException
      * @throws java.io.IOException
      */
     public void write(ProgressVisitor progress) throws SQLException, IOException {        
-        if (FileUtil.isExtensionWellFormated(fileName, "json")) {
+        if (FileUtil.isExtensionWellFormated(FileUtil.removeGZipExtension(fileName), "json")) {
             writeJson(progress);
         } else {
             throw new SQLException("Only .json extension is supported");
@@ -81,139 +95,34 @@ public class JsonWriteDriver {
      * @throws SQLException
      */
     private void writeJson(ProgressVisitor progress) throws SQLException, IOException {
-        FileOutputStream fos = null;
+        OutputStream fos = null;
         try {
-            fos = new FileOutputStream(fileName);
+            fos = FileUtil.createOutputStream(fileName);
             int recordCount = JDBCUtilities.getRowCount(connection, tableName);
             if (recordCount > 0) {
                 // Read table content
                 Statement st = connection.createStatement();
                 try {
                     JsonFactory jsonFactory = new JsonFactory();
-                    JsonGenerator jsonGenerator = jsonFactory.createGenerator(new BufferedOutputStream(fos), JsonEncoding.UTF8);
+                    BufferedOutputStream bos = new BufferedOutputStream(fos);
                     ResultSet rs = st.executeQuery(String.format("select * from %s", tableName));
                     try {
-                        ResultSetMetaData rsmd = rs.getMetaData();
-                        int numColumns = rsmd.getColumnCount();
+                        JsonRowEncoder encoder = new JsonRowEncoder(jsonFactory, rs.getMetaData());
                         ProgressVisitor copyProgress = progress.subProcess(recordCount);
-
-                        while (rs.next()) {
-                            jsonGenerator.writeStartObject();
-                            for (int i = 1; i < numColumns + 1; i++) {
-                                String column_name = rsmd.getColumnName(i);
-                                switch (rsmd.getColumnType(i)) {
-                                    case java.sql.Types.ARRAY:
-                                        Object[] values = (Object[]) rs.getArray(i).getArray();
-                                        if(values !=null){
-                                            jsonGenerator.writeArrayFieldStart(column_name);
-                                            for (Object value : values) {
-                                                jsonGenerator.writeObject(value);
-                                            }
-                                            jsonGenerator.writeEndArray();
-                                        }
-                                        break;
-                                    case java.sql.Types.BIGINT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getLong(i));
-                                        break;
-                                    case java.sql.Types.REAL:
-                                        jsonGenerator.writeObjectField(column_name, rs.getFloat(i));
-                                        break;
-                                    case java.sql.Types.BOOLEAN:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBoolean(i));
-                                        break;
-                                    case java.sql.Types.BLOB:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBlob(i));
-                                        break;
-                                    case java.sql.Types.DOUBLE:
-                                        jsonGenerator.writeObjectField(column_name, rs.getDouble(i));
-                                        break;
-                                    case java.sql.Types.FLOAT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getDouble(i));
-                                        break;
-                                    case java.sql.Types.INTEGER:
-                                        jsonGenerator.writeObjectField(column_name, rs.getInt(i));
-                                        break;
-                                    case java.sql.Types.NVARCHAR:
-                                        jsonGenerator.writeObjectField(column_name, rs.getNString(i));
-                                        break;
-                                    case java.sql.Types.VARCHAR:
-                                        jsonGenerator.writeObjectField(column_name, rs.getString(i));
-                                        break;
-                                    case java.sql.Types.CHAR:
-                                        jsonGenerator.writeObjectField(column_name, rs.getString(i));
-                                        break;
-                                    case java.sql.Types.NCHAR:
-                                        jsonGenerator.writeObjectField(column_name, rs.getNString(i));
-                                        break;
-                                    case java.sql.Types.LONGNVARCHAR:
-                                        jsonGenerator.writeObjectField(column_name, rs.getNString(i));
-                                        break;
-                                    case java.sql.Types.LONGVARCHAR:
-                                        jsonGenerator.writeObjectField(column_name, rs.getString(i));
-                                        break;
-                                    case java.sql.Types.TINYINT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getByte(i));
-                                        break;
-                                    case java.sql.Types.SMALLINT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getShort(i));
-                                        break;
-                                    case java.sql.Types.DATE:
-                                        jsonGenerator.writeObjectField(column_name, rs.getDate(i));
-                                        break;
-                                    case java.sql.Types.TIME:
-                                        jsonGenerator.writeObjectField(column_name, rs.getTime(i));
-                                        break;
-                                    case java.sql.Types.TIMESTAMP:
-                                        jsonGenerator.writeObjectField(column_name, rs.getTimestamp(i));
-                                        break;
-                                    case java.sql.Types.BINARY:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBytes(i));
-                                        break;
-                                    case java.sql.Types.VARBINARY:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBytes(i));
-                                        break;
-                                    case java.sql.Types.LONGVARBINARY:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBinaryStream(i));
-                                        break;
-                                    case java.sql.Types.BIT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBoolean(i));
-                                        break;
-                                    case java.sql.Types.CLOB:
-                                        jsonGenerator.writeObjectField(column_name, rs.getClob(i));
-                                        break;
-                                    case java.sql.Types.NUMERIC:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBigDecimal(i));
-                                        break;
-                                    case java.sql.Types.DECIMAL:
-                                        jsonGenerator.writeObjectField(column_name, rs.getBigDecimal(i));
-                                        break;
-                                    case java.sql.Types.DATALINK:
-                                        jsonGenerator.writeObjectField(column_name, rs.getURL(i));
-                                        break;
-                                    case java.sql.Types.REF:
-                                        jsonGenerator.writeObjectField(column_name, rs.getRef(i));
-                                        break;
-                                    case java.sql.Types.STRUCT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getObject(i));
-                                        break;
-                                    case java.sql.Types.DISTINCT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getObject(i));
-                                        break;
-                                    case java.sql.Types.JAVA_OBJECT:
-                                        jsonGenerator.writeObjectField(column_name, rs.getObject(i));
-                                        break;
-                                    default:
-                                        jsonGenerator.writeObjectField(column_name, rs.getString(i));
-                                        break;
-                                }
+                        if (threadCount > 1) {
+                            // The objects are separated by the default root value separator
+                            EncodingPipeline.write(rs, encoder, bos, new byte[]{' '}, threadCount, copyProgress);
+                            bos.close();
+                        } else {
+                            JsonGenerator jsonGenerator = jsonFactory.createGenerator(bos, JsonEncoding.UTF8);
+                            while (rs.next()) {
+                                encoder.writeRow(jsonGenerator, encoder.readRow(rs));
+                                copyProgress.endStep();
                             }
-                            jsonGenerator.writeEndObject();
-
-                            copyProgress.endStep();
+                            jsonGenerator.flush();
+                            jsonGenerator.close();
                         }
                         copyProgress.endOfProgress();
-                        jsonGenerator.flush();
-                        jsonGenerator.close();
                     } finally {
                         rs.close();
                     }
@@ -234,4 +143,148 @@ public class JsonWriteDriver {
             }
         }
     }
+
+    /**
+     * Read the value of a column with the getter of its type.
+     *
+     * @param rs
+     * @param columnIndex
+     * @param columnType SQL type of the column
+     * @return The value
+     * @throws SQLException
+     */
+    private static Object getValue(ResultSet rs, int columnIndex, int columnType) throws SQLException {
+        switch (columnType) {
+            case java.sql.Types.ARRAY:
+                return rs.getArray(columnIndex).getArray();
+            case java.sql.Types.BIGINT:
+                return rs.getLong(columnIndex);
+            case java.sql.Types.REAL:
+                return rs.getFloat(columnIndex);
+            case java.sql.Types.BOOLEAN:
+                return rs.getBoolean(columnIndex);
+            case java.sql.Types.BLOB:
+                return rs.getBlob(columnIndex);
+            case java.sql.Types.DOUBLE:
+                return rs.getDouble(columnIndex);
+            case java.sql.Types.FLOAT:
+                return rs.getDouble(columnIndex);
+            case java.sql.Types.INTEGER:
+                return rs.getInt(columnIndex);
+            case java.sql.Types.NVARCHAR:
+                return rs.getNString(columnIndex);
+            case java.sql.Types.VARCHAR:
+                return rs.getString(columnIndex);
+            case java.sql.Types.CHAR:
+                return rs.getString(columnIndex);
+            case java.sql.Types.NCHAR:
+                return rs.getNString(columnIndex);
+            case java.sql.Types.LONGNVARCHAR:
+                return rs.getNString(columnIndex);
+            case java.sql.Types.LONGVARCHAR:
+                return rs.getString(columnIndex);
+            case java.sql.Types.TINYINT:
+                return rs.getByte(columnIndex);
+            case java.sql.Types.SMALLINT:
+                return rs.getShort(columnIndex);
+            case java.sql.Types.DATE:
+                return rs.getDate(columnIndex);
+            case java.sql.Types.TIME:
+                return rs.getTime(columnIndex);
+            case java.sql.Types.TIMESTAMP:
+                return rs.getTimestamp(columnIndex);
+            case java.sql.Types.BINARY:
+                return rs.getBytes(columnIndex);
+            case java.sql.Types.VARBINARY:
+                return rs.getBytes(columnIndex);
+            case java.sql.Types.LONGVARBINARY:
+                return rs.getBinaryStream(columnIndex);
+            case java.sql.Types.BIT:
+                return rs.getBoolean(columnIndex);
+            case java.sql.Types.CLOB:
+                return rs.getClob(columnIndex);
+            case java.sql.Types.NUMERIC:
+                return rs.getBigDecimal(columnIndex);
+            case java.sql.Types.DECIMAL:
+                return rs.getBigDecimal(columnIndex);
+            case java.sql.Types.DATALINK:
+                return rs.getURL(columnIndex);
+            case java.sql.Types.REF:
+                return rs.getRef(columnIndex);
+            case java.sql.Types.STRUCT:
+                return rs.getObject(columnIndex);
+            case java.sql.Types.DISTINCT:
+                return rs.getObject(columnIndex);
+            case java.sql.Types.JAVA_OBJECT:
+                return rs.getObject(columnIndex);
+            default:
+                return rs.getString(columnIndex);
+        }
+    }
+
+    /**
+     * Write the rows as JSON objects, one field by column.
+     */
+    private static class JsonRowEncoder implements EncodingPipeline.RowEncoder {
+        private final JsonFactory jsonFactory;
+        private final String[] columnNames;
+        private final int[] columnTypes;
+
+        private JsonRowEncoder(JsonFactory jsonFactory, ResultSetMetaData rsmd) throws SQLException {
+            this.jsonFactory = jsonFactory;
+            int numColumns = rsmd.getColumnCount();
+            columnNames = new String[numColumns];
+            columnTypes = new int[numColumns];
+            for (int i = 0; i < numColumns; i++) {
+                columnNames[i] = rsmd.getColumnName(i + 1);
+                columnTypes[i] = rsmd.getColumnType(i + 1);
+            }
+        }
+
+        @Override
+        public Object[] readRow(ResultSet rs) throws SQLException {
+            Object[] row = new Object[columnTypes.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = getValue(rs, i + 1, columnTypes[i]);
+            }
+            return row;
+        }
+
+        /**
+         * Write a row as a JSON object.
+         *
+         * @param jsonGenerator
+         * @param row Values returned by {@link #readRow(ResultSet)}
+         * @throws IOException
+         */
+        private void writeRow(JsonGenerator jsonGenerator, Object[] row) throws IOException {
+            jsonGenerator.writeStartObject();
+            for (int i = 0; i < row.length; i++) {
+                if (columnTypes[i] == java.sql.Types.ARRAY) {
+                    Object[] values = (Object[]) row[i];
+                    if (values != null) {
+                        jsonGenerator.writeArrayFieldStart(columnNames[i]);
+                        for (Object value : values) {
+                            jsonGenerator.writeObject(value);
+                        }
+                        jsonGenerator.writeEndArray();
+                    }
+                } else {
+                    jsonGenerator.writeObjectField(columnNames[i], row[i]);
+                }
+            }
+            jsonGenerator.writeEndObject();
+        }
+
+        @Override
+        public byte[] encode(List<Object[]> rows) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (JsonGenerator jsonGenerator = jsonFactory.createGenerator(bos, JsonEncoding.UTF8)) {
+                for (Object[] row : rows) {
+                    writeRow(jsonGenerator, row);
+                }
+            }
+            return bos.toByteArray();
+        }
+    }
 }
@@ -66,6 +66,24 @@ public class KMLDriverFunction implements DriverFunction {
         kMLWriter.write(progress);
     }
 
+    /**
+     * Export the table with several threads encoding the placemarks.
+     *
+     * @param connection Active connection, do not close this connection.
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path to write
+     * @param progress Progress visitor following the execution.
+     * @param threadCount Number of threads encoding the placemarks
+     * @throws SQLException Table read error
+     * @throws IOException File write error
+     */
+    public void exportTable(Connection connection, String tableReference, File fileName, ProgressVisitor progress,
+                            int threadCount) throws SQLException, IOException {
+        KMLWriterDriver kMLWriter = new KMLWriterDriver(connection, tableReference, fileName);
+        kMLWriter.setThreadCount(threadCount);
+        kMLWriter.write(progress);
+    }
+
     @Override
     public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress) throws SQLException, IOException {
        throw new UnsupportedOperationException("Not supported yet.");
@@ -36,7 +36,9 @@ import org.h2gis.utilities.URIUtilities;
 public class KMLWrite extends AbstractFunction implements ScalarFunction {
 
     public KMLWrite() {
-        addProperty(PROP_REMARKS, "Export a spatial table to a KML or KMZ file.");
+        addProperty(PROP_REMARKS, "Export a spatial table to a KML or KMZ file.\n" +
+                "KMLWrite(path, tableName[, threadCount])\n" +
+                "threadCount: Number of threads encoding the placemarks");
     }
 
     @Override
@@ -56,4 +58,20 @@ public class KMLWrite extends AbstractFunction implements ScalarFunction {
         KMLDriverFunction kMLDriverFunction = new KMLDriverFunction();
         kMLDriverFunction.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName), new EmptyProgressVisitor());
     }
+
+    /**
+     * This method is used to write a spatial table into a KML file, the
+     * placemarks are encoded by several threads.
+     * @param connection
+     * @param fileName
+     * @param tableReference
+     * @param threadCount Number of threads encoding the placemarks
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static void writeKML(Connection connection, String fileName, String tableReference, int threadCount) throws SQLException, IOException {
+        KMLDriverFunction kMLDriverFunction = new KMLDriverFunction();
+        kMLDriverFunction.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName),
+                new EmptyProgressVisitor(), threadCount);
+    }
 }
@@ -22,6 +22,7 @@ package org.h2gis.functions.io.kml;
 
 import org.locationtech.jts.geom.Geometry;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -41,6 +42,7 @@ import java.util.zip.ZipOutputStream;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import org.h2gis.functions.io.utility.EncodingPipeline;
 import org.h2gis.functions.io.utility.FileUtil;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.utilities.JDBCUtilities;
@@ -58,6 +60,7 @@ public class KMLWriterDriver {
     private final Connection connection;
     private HashMap<Integer, String> kmlFields;
     private int columnCount = -1;
+    private int threadCount = 1;
 
     public KMLWriterDriver(Connection connection, String tableName, File fileName) {
         this.connection = connection;
@@ -65,6 +68,14 @@ public class KMLWriterDriver {
         this.fileName = fileName;
     }
 
+    /**
+     * @param threadCount Number of threads encoding the placemarks, 1 to
+     * encode the placemarks in the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     /**
      * Write spatial table to kml or kmz file format.
      *
@@ -165,8 +176,8 @@ public class KMLWriterDriver {
         try {
             final XMLOutputFactory streamWriterFactory = XMLOutputFactory.newFactory();
             streamWriterFactory.setProperty("escapeCharacters", false);
-            XMLStreamWriter xmlOut = streamWriterFactory.createXMLStreamWriter(
-                    new BufferedOutputStream(outputStream), "UTF-8");
+            BufferedOutputStream bos = new BufferedOutputStream(outputStream);
+            XMLStreamWriter xmlOut = streamWriterFactory.createXMLStreamWriter(bos, "UTF-8");
             xmlOut.writeStartDocument("UTF-8", "1.0");
             xmlOut.writeStartElement("kml");
             xmlOut.writeDefaultNamespace("http://www.opengis.net/kml/2.2");
@@ -192,9 +203,16 @@ public class KMLWriterDriver {
                     xmlOut.writeStartElement("name");
                     xmlOut.writeCharacters(tableName);
                     xmlOut.writeEndElement();//Name
-                    while (rs.next()) {
-                        writePlacemark(xmlOut, rs, geoFieldIndex, spatialFieldNames.get(0));
-                        copyProgress.endStep();
+                    if (threadCount > 1) {
+                        // The encoded placemarks are appended in the folder
+                        xmlOut.flush();
+                        EncodingPipeline.write(rs, new PlacemarkEncoder(streamWriterFactory, geoFieldIndex,
+                                spatialFieldNames.get(0)), bos, null, threadCount, copyProgress);
+                    } else {
+                        while (rs.next()) {
+                            writePlacemark(xmlOut, readRow(rs, geoFieldIndex), geoFieldIndex, spatialFieldNames.get(0));
+                            copyProgress.endStep();
+                        }
                     }
 
                 } finally {
@@ -209,7 +227,31 @@ public class KMLWriterDriver {
             xmlOut.close();
         } catch (XMLStreamException ex) {
             throw new SQLException(ex);
+        } catch (IOException ex) {
+            throw new SQLException(ex);
+        }
+    }
+
+    /**
+     * Read the values of the current row written in the placemark.
+     *
+     * @param rs
+     * @param geoFieldIndex Index of the geometry field, -1 to read only the
+     * extended data
+     * @return The values, the value of the column i is at the index i - 1
+     * @throws SQLException
+     */
+    private Object[] readRow(ResultSet rs, int geoFieldIndex) throws SQLException {
+        Object[] row = new Object[Math.max(columnCount, geoFieldIndex)];
+        if (columnCount > 1) {
+            for (Integer fieldIndex : kmlFields.keySet()) {
+                row[fieldIndex - 1] = rs.getString(fieldIndex);
+            }
+        }
+        if (geoFieldIndex > 0) {
+            row[geoFieldIndex - 1] = rs.getObject(geoFieldIndex);
         }
+        return row;
     }
 
     /**
@@ -305,12 +347,24 @@ public class KMLWriterDriver {
      * @param xmlOut
      */
     public void writePlacemark(XMLStreamWriter xmlOut, ResultSet rs, int geoFieldIndex, String spatialFieldName) throws XMLStreamException, SQLException {
+        writePlacemark(xmlOut, readRow(rs, geoFieldIndex), geoFieldIndex, spatialFieldName);
+    }
+
+    /**
+     * Write a Placemark from the values of a row.
+     *
+     * @param xmlOut
+     * @param row Values returned by {@link #readRow(ResultSet, int)}
+     * @param geoFieldIndex
+     * @param spatialFieldName
+     */
+    private void writePlacemark(XMLStreamWriter xmlOut, Object[] row, int geoFieldIndex, String spatialFieldName) throws XMLStreamException, SQLException {
         xmlOut.writeStartElement("Placemark");
         if (columnCount > 1) {
-            writeExtendedData(xmlOut, rs);
+            writeExtendedData(xmlOut, row);
         }
         StringBuilder sb = new StringBuilder();
-        Geometry geom = (Geometry) rs.getObject(geoFieldIndex);
+        Geometry geom = (Geometry) row[geoFieldIndex - 1];
         int inputSRID = geom.getSRID();
         if (inputSRID == 0) {
             throw new SQLException("A coordinate reference system must be set to save the KML file");
@@ -354,13 +408,23 @@ public class KMLWriterDriver {
      * @param xmlOut
      */
     public void writeExtendedData(XMLStreamWriter xmlOut, ResultSet rs) throws XMLStreamException, SQLException {
+        writeExtendedData(xmlOut, readRow(rs, -1));
+    }
+
+    /**
+     * Write the ExtendedData from the values of a row.
+     *
+     * @param xmlOut
+     * @param row Values returned by {@link #readRow(ResultSet, int)}
+     */
+    private void writeExtendedData(XMLStreamWriter xmlOut, Object[] row) throws XMLStreamException {
         xmlOut.writeStartElement("ExtendedData");
         xmlOut.writeStartElement("SchemaData");
         xmlOut.writeAttribute("schemaUrl", "#" + tableName);
         for (Map.Entry<Integer, String> entry : kmlFields.entrySet()) {
             Integer fieldIndex = entry.getKey();
             String fieldName = entry.getValue();
-            writeSimpleData(xmlOut, fieldName, rs.getString(fieldIndex));
+            writeSimpleData(xmlOut, fieldName, (String) row[fieldIndex - 1]);
         }
         xmlOut.writeEndElement();//Write SchemaData
         xmlOut.writeEndElement();//Write ExtendedData
@@ -408,4 +472,44 @@ public class KMLWriterDriver {
                 throw new SQLException("Field type not supported by KML : " + sqlTypeName);
         }
     }
+
+    /**
+     * Encode placemarks for the {@link EncodingPipeline}, each batch is
+     * written by its own stream writer.
+     */
+    private class PlacemarkEncoder implements EncodingPipeline.RowEncoder {
+        private final XMLOutputFactory streamWriterFactory;
+        private final int geoFieldIndex;
+        private final String spatialFieldName;
+
+        private PlacemarkEncoder(XMLOutputFactory streamWriterFactory, int geoFieldIndex, String spatialFieldName) {
+            this.streamWriterFactory = streamWriterFactory;
+            this.geoFieldIndex = geoFieldIndex;
+            this.spatialFieldName = spatialFieldName;
+        }
+
+        @Override
+        public Object[] readRow(ResultSet rs) throws SQLException {
+            return KMLWriterDriver.this.readRow(rs, geoFieldIndex);
+        }
+
+        @Override
+        public byte[] encode(List<Object[]> rows) throws SQLException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try {
+                XMLStreamWriter xmlOut;
+                // The factory is not documented as thread-safe
+                synchronized (streamWriterFactory) {
+                    xmlOut = streamWriterFactory.createXMLStreamWriter(bos, "UTF-8");
+                }
+                for (Object[] row : rows) {
+                    writePlacemark(xmlOut, row, geoFieldIndex, spatialFieldName);
+                }
+                xmlOut.close();
+            } catch (XMLStreamException ex) {
+                throw new SQLException(ex);
+            }
+            return bos.toByteArray();
+        }
+    }
 }
@@ -24,7 +24,18 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.h2.table.Column;
 import org.h2gis.functions.io.dbf.DBFDriverFunction;
 import org.h2gis.functions.io.dbf.internal.DbaseFileHeader;
@@ -269,8 +280,45 @@ public class SHPDriverFunction implements DriverFunction {
      * @throws IOException File read error
      */
     public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress,String forceEncoding) throws SQLException, IOException {
+        importFile(connection, tableReference, fileName, progress, forceEncoding, false);
+    }
+
+    /**
+     *
+     * @param connection Active connection, do not close this connection.
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path to read
+     * @param progress
+     * @param forceEncoding If defined use this encoding instead of the one defined in dbf header.
+     * @param memoryMapped True to map the files in memory instead of reading them through a heap buffer
+     * @throws SQLException Table write error
+     * @throws IOException File read error
+     */
+    public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress,String forceEncoding, boolean memoryMapped) throws SQLException, IOException {
+        importFile(connection, tableReference, fileName, progress, forceEncoding, memoryMapped, 1, true);
+    }
+
+    /**
+     * Import the shape file using a pool of threads. The rows are read by the worker threads, in chunks of
+     * records located with the shx file, while the rows already read are inserted by the calling thread.
+     * @param connection Active connection, do not close this connection.
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path to read
+     * @param progress
+     * @param forceEncoding If defined use this encoding instead of the one defined in dbf header.
+     * @param memoryMapped True to map the files in memory instead of reading them through a heap buffer
+     * @param threadCount Number of threads used to read the file, 1 to read the file in the calling thread
+     * @param keepOrder If false, the rows are inserted as soon as they are read, so the primary key does not follow
+     *                  the order of the records in the file.
+     * @throws SQLException Table write error
+     * @throws IOException File read error
+     */
+    public void importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress,
+                           String forceEncoding, boolean memoryMapped, int threadCount, boolean keepOrder)
+            throws SQLException, IOException {
         final boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
         SHPDriver shpDriver = new SHPDriver();
+        shpDriver.setMemoryMapped(memoryMapped);
         shpDriver.initDriverFromFile(fileName, forceEncoding);
         ProgressVisitor copyProgress = progress.subProcess((int)(shpDriver.getRowCount() / BATCH_MAX_SIZE));
         // PostGIS does not show sql
@@ -309,24 +357,29 @@ public class SHPDriverFunction implements DriverFunction {
                                 DBFDriverFunction.getQuestionMark(dbfHeader.getNumFields() + 1));
                         PreparedStatement preparedStatement = connection.prepareStatement(lastSql);
                 try {
-                    long batchSize = 0;
-                    for (int rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
-                        Object[] values = shpDriver.getRow(rowId);
-                        for (int columnId = 0; columnId < values.length; columnId++) {
-                            preparedStatement.setObject(columnId + 1, values[columnId]);
+                    if (threadCount > 1) {
+                        insertRows(preparedStatement, fileName, forceEncoding, memoryMapped, srid,
+                                shpDriver.getRowCount(), threadCount, keepOrder, copyProgress);
+                    } else {
+                        long batchSize = 0;
+                        for (int rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
+                            Object[] values = shpDriver.getRow(rowId);
+                            for (int columnId = 0; columnId < values.length; columnId++) {
+                                preparedStatement.setObject(columnId + 1, values[columnId]);
+                            }
+                            preparedStatement.addBatch();
+                            batchSize++;
+                            if (batchSize >= BATCH_MAX_SIZE) {
+                                preparedStatement.executeBatch();
+                                preparedStatement.clearBatch();
+                                batchSize = 0;
+                                copyProgress.endStep();
+                            }
                         }
-                        preparedStatement.addBatch();
-                        batchSize++;
-                        if (batchSize >= BATCH_MAX_SIZE) {
+                        if(batchSize > 0) {
                             preparedStatement.executeBatch();
-                            preparedStatement.clearBatch();
-                            batchSize = 0;
-                            copyProgress.endStep();
                         }
                     }
-                    if(batchSize > 0) {
-                        preparedStatement.executeBatch();
-                    }
                 } finally {
                     preparedStatement.close();
                 }
@@ -347,6 +400,128 @@ public class SHPDriverFunction implements DriverFunction {
         }
     }
 
+    /**
+     * Read the rows with a pool of threads and insert them with the prepared statement.
+     * Each thread read the rows with its own driver, at most two chunks of rows by thread are kept in memory.
+     * @param preparedStatement Insert statement
+     * @param fileName Shape file
+     * @param forceEncoding If defined use this encoding instead of the one defined in dbf header.
+     * @param memoryMapped True to map the files in memory instead of reading them through a heap buffer
+     * @param srid Geometry SRID
+     * @param rowCount Number of rows
+     * @param threadCount Number of threads
+     * @param keepOrder True to insert the rows in the order of the file
+     * @param progress Progress, one step by batch
+     * @throws SQLException Table write error
+     * @throws IOException File read error
+     */
+    private static void insertRows(PreparedStatement preparedStatement, File fileName, String forceEncoding,
+                                   boolean memoryMapped, int srid, long rowCount, int threadCount, boolean keepOrder,
+                                   ProgressVisitor progress) throws SQLException, IOException {
+        BlockingQueue<SHPDriver> drivers = new ArrayBlockingQueue<SHPDriver>(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                SHPDriver driver = new SHPDriver();
+                // Add before init in order to close it if init fails
+                drivers.add(driver);
+                driver.setMemoryMapped(memoryMapped);
+                driver.initDriverFromFile(fileName, forceEncoding);
+                driver.setSRID(srid);
+            }
+            // The ordered mode waits on the oldest task, a completion service would keep every finished task
+            // in its queue until the end of the import
+            CompletionService<Object[][]> completionService = keepOrder ? null
+                    : new ExecutorCompletionService<Object[][]>(executor);
+            LinkedList<Future<Object[][]>> pending = new LinkedList<Future<Object[][]>>();
+            long nextRowId = 0;
+            while (nextRowId < rowCount || !pending.isEmpty()) {
+                // Keep the workers busy while the rows are inserted
+                while (nextRowId < rowCount && pending.size() < threadCount * 2) {
+                    long endRowId = Math.min(rowCount, nextRowId + BATCH_MAX_SIZE);
+                    ReadRowsTask task = new ReadRowsTask(drivers, nextRowId, endRowId);
+                    pending.add(keepOrder ? executor.submit(task) : completionService.submit(task));
+                    nextRowId = endRowId;
+                }
+                Future<Object[][]> done;
+                if (keepOrder) {
+                    done = pending.removeFirst();
+                } else {
+                    done = completionService.take();
+                    pending.remove(done);
+                }
+                for (Object[] values : getRows(done)) {
+                    for (int columnId = 0; columnId < values.length; columnId++) {
+                        preparedStatement.setObject(columnId + 1, values[columnId]);
+                    }
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                preparedStatement.clearBatch();
+                progress.endStep();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Shape file import has been interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            for (SHPDriver driver : drivers) {
+                driver.close();
+            }
+        }
+    }
+
+    private static Object[][] getRows(Future<Object[][]> future) throws SQLException, IOException,
+            InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Read a range of rows with one of the available drivers
+     */
+    private static class ReadRowsTask implements Callable<Object[][]> {
+        private final BlockingQueue<SHPDriver> drivers;
+        private final long firstRowId;
+        private final long endRowId;
+
+        /**
+         * @param drivers Drivers that are not used by the other tasks
+         * @param firstRowId First row to read
+         * @param endRowId Last row to read, excluded
+         */
+        public ReadRowsTask(BlockingQueue<SHPDriver> drivers, long firstRowId, long endRowId) {
+            this.drivers = drivers;
+            this.firstRowId = firstRowId;
+            this.endRowId = endRowId;
+        }
+
+        @Override
+        public Object[][] call() throws Exception {
+            SHPDriver driver = drivers.take();
+            try {
+                Object[][] rows = new Object[(int) (endRowId - firstRowId)][];
+                for (long rowId = firstRowId; rowId < endRowId; rowId++) {
+                    rows[(int) (rowId - firstRowId)] = driver.getRow(rowId);
+                }
+                return rows;
+            } finally {
+                drivers.put(driver);
+            }
+        }
+    }
+
     /**
      * Return the shape type supported by the shapefile format
      * @param meta
@@ -44,7 +44,8 @@ public class SHPEngine extends FileEngine<SHPDriver> {
     @Override
     protected SHPDriver createDriver(File filePath, List<String> args) throws IOException {
         SHPDriver driver = new SHPDriver();
-        driver.initDriverFromFile(filePath, args.size() > 1 ? args.get(1) : null);        
+        driver.setMemoryMapped(isMemoryMapped(args));
+        driver.initDriverFromFile(filePath, getEncoding(args));
         int srid = PRJUtil.getSRID(driver.prjFile);
         driver.setSRID(srid);
         return driver;
@@ -56,11 +56,61 @@ public class SHPRead  extends AbstractFunction implements ScalarFunction {
      * @throws java.sql.SQLException
      */
     public static void readShape(Connection connection, String fileName, String tableReference,String forceEncoding) throws IOException, SQLException {
+        readShape(connection, fileName, tableReference, forceEncoding, false);
+    }
+
+    /**
+     * Copy data from Shape File into a new table in specified connection.
+     * @param connection Active connection
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path of the SHP file or URI
+     * @param forceEncoding Use this encoding instead of DBF file header encoding property.
+     * @param memoryMapped True to map the files in memory instead of reading them through a heap buffer
+     * @throws java.io.IOException
+     * @throws java.sql.SQLException
+     */
+    public static void readShape(Connection connection, String fileName, String tableReference,String forceEncoding,
+                                 boolean memoryMapped) throws IOException, SQLException {
+        readShape(connection, fileName, tableReference, forceEncoding, memoryMapped, 1);
+    }
+
+    /**
+     * Copy data from Shape File into a new table in specified connection.
+     * @param connection Active connection
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path of the SHP file or URI
+     * @param forceEncoding Use this encoding instead of DBF file header encoding property.
+     * @param memoryMapped True to map the files in memory instead of reading them through a heap buffer
+     * @param threadCount Number of threads used to read the file
+     * @throws java.io.IOException
+     * @throws java.sql.SQLException
+     */
+    public static void readShape(Connection connection, String fileName, String tableReference,String forceEncoding,
+                                 boolean memoryMapped, int threadCount) throws IOException, SQLException {
+        readShape(connection, fileName, tableReference, forceEncoding, memoryMapped, threadCount, true);
+    }
+
+    /**
+     * Copy data from Shape File into a new table in specified connection.
+     * @param connection Active connection
+     * @param tableReference [[catalog.]schema.]table reference
+     * @param fileName File path of the SHP file or URI
+     * @param forceEncoding Use this encoding instead of DBF file header encoding property.
+     * @param memoryMapped True to map the files in memory instead of reading them through a heap buffer
+     * @param threadCount Number of threads used to read the file
+     * @param keepOrder False to insert the rows as soon as they are read, the primary key will not follow the order
+     *                  of the file records
+     * @throws java.io.IOException
+     * @throws java.sql.SQLException
+     */
+    public static void readShape(Connection connection, String fileName, String tableReference,String forceEncoding,
+                                 boolean memoryMapped, int threadCount, boolean keepOrder)
+            throws IOException, SQLException {
         File file = URIUtilities.fileFromString(fileName);
         if (FileUtil.isFileImportable(file, "shp")) {
             SHPDriverFunction shpDriverFunction = new SHPDriverFunction();
             shpDriverFunction.importFile(connection, TableLocation.parse(tableReference, true).toString(true),
-                    file, new EmptyProgressVisitor(), forceEncoding);
+                    file, new EmptyProgressVisitor(), forceEncoding, memoryMapped, threadCount, keepOrder);
         }
     }
 
@@ -62,9 +62,25 @@ public class IndexFile {
 	 */
 	public IndexFile(FileChannel channel)
 			throws IOException {
+		this(channel, false);
+	}
+
+	/**
+	 * Load the index file from the given channel.
+	 *
+	 * @param channel
+	 *            The channel to read from.
+	 * @param memoryMapped
+	 *            If true the file content is mapped in memory instead of
+	 *            being copied in a heap buffer.
+	 * @throws java.io.IOException
+	 *             If an error occurs.
+	 */
+	public IndexFile(FileChannel channel, boolean memoryMapped)
+			throws IOException {
 		readHeader(channel);
 		this.channel = channel;
-		this.buf = new ReadBufferManager(channel, 8 * 128);
+		this.buf = memoryMapped ? ReadBufferManager.memoryMapped(channel) : new ReadBufferManager(channel, 8 * 128);
 	}
 
 	/**
@@ -87,7 +103,7 @@ public class IndexFile {
 	}
 
 	private void readRecord(int index) throws IOException {
-		int pos = 100 + index * 8;
+		long pos = 100 + index * 8L;
 		this.recOffset = buf.getInt(pos);
 		this.recLen = buf.getInt(pos + 4);
 		this.lastIndex = index;
@@ -110,23 +126,19 @@ public class IndexFile {
 	}
 
 	/**
-	 * Get the offset of the record (in 16-bit words).
+	 * Get the offset of the record (in bytes).
 	 *
 	 * @param index
 	 *            The index, from 0 to getRecordCount - 1
-	 * @return The offset in 16-bit words.
+	 * @return The offset in bytes.
 	 * @throws java.io.IOException
 	 */
-	public int getOffset(int index) throws IOException {
-		int ret = -1;
-
+	public long getOffset(int index) throws IOException {
 		if (this.lastIndex != index) {
 			this.readRecord(index);
 		}
-
-		ret = this.recOffset;
-
-		return 2 * ret;
+		// The offset is stored in 16-bit words, as an unsigned value
+		return 2 * (this.recOffset & 0xFFFFFFFFL);
 	}
 
 	/**
@@ -137,7 +149,7 @@ public class IndexFile {
 	 * @return The offset in bytes.
 	 * @throws java.io.IOException
 	 */
-	public int getOffsetInBytes(int index) throws IOException {
+	public long getOffsetInBytes(int index) throws IOException {
 		return this.getOffset(index) * 2;
 	}
 
@@ -20,10 +20,15 @@
 
 package org.h2gis.functions.io.shp.internal;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.h2gis.functions.io.FileDriver;
+import org.h2gis.functions.io.ColumnMaskFileDriver;
+import org.h2gis.functions.io.SpatialFileDriver;
 import org.h2gis.functions.io.dbf.internal.DBFDriver;
 import org.h2gis.functions.io.dbf.internal.DbaseFileHeader;
+import org.h2gis.functions.io.utility.PackedRTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -33,6 +38,7 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * Merge ShapeFileReader and DBFReader.
@@ -47,7 +53,8 @@ import java.nio.file.Path;
  *
  * @author Nicolas Fortin
  */
-public class SHPDriver implements FileDriver {
+public class SHPDriver implements SpatialFileDriver, ColumnMaskFileDriver {
+    private static final Logger LOG = LoggerFactory.getLogger(SHPDriver.class);
     private DBFDriver dbfDriver = new DBFDriver();
     private File shpFile;
     private File shxFile;
@@ -59,6 +66,23 @@ public class SHPDriver implements FileDriver {
     private ShapeType shapeType;
     public File prjFile;
     private int srid =0;
+    private boolean memoryMapped = false;
+
+    /**
+     * @param memoryMapped If true the SHP, SHX and DBF files read by {@link #initDriverFromFile(File, String)}
+     *                     are mapped in memory
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        dbfDriver.setMemoryMapped(memoryMapped);
+    }
+
+    /**
+     * @return True if the files are mapped in memory when read
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
 
     /**
      * @param geometryFieldIndex The geometry field index in getRow() array.
@@ -99,6 +123,7 @@ public class SHPDriver implements FileDriver {
     /**
      * @return The geometry field index in getRow() array.
      */
+    @Override
     public int getGeometryFieldIndex() {
         return geometryFieldIndex;
     }
@@ -187,9 +212,9 @@ public class SHPDriver implements FileDriver {
             throw new IllegalArgumentException("SHX File not found");
         }
         FileInputStream shpFis = new FileInputStream(shpFile);
-        shapefileReader = new ShapefileReader(shpFis.getChannel());
+        shapefileReader = new ShapefileReader(shpFis.getChannel(), memoryMapped);
         FileInputStream shxFis = new FileInputStream(shxFile);
-        shxFileReader = new IndexFile(shxFis.getChannel());
+        shxFileReader = new IndexFile(shxFis.getChannel(), memoryMapped);
     }
 
     /**
@@ -230,26 +255,112 @@ public class SHPDriver implements FileDriver {
 
     @Override
     public Object[] getRow(long rowId) throws IOException {
+        return getRow(rowId, null);
+    }
+
+    @Override
+    public Object[] getRow(long rowId, boolean[] columnMask) throws IOException {
         final int fieldCount = getFieldCount();
         Object[] values = new Object[fieldCount];
-        // Copy dbf values
-        Object[] dbfValues = dbfDriver.getRow(rowId);
-        // Copy dbf values before geometryFieldIndex
-        if(geometryFieldIndex > 0) {
-            System.arraycopy(dbfValues, 0, values, 0, geometryFieldIndex);
+        // Split the mask between the dbf fields and the geometry field
+        boolean[] dbfMask = null;
+        boolean readDbf = true;
+        if(columnMask != null) {
+            dbfMask = new boolean[fieldCount - 1];
+            readDbf = false;
+            for(int fieldId = 0; fieldId < fieldCount; fieldId++) {
+                if(fieldId != geometryFieldIndex && columnMask[fieldId]) {
+                    dbfMask[fieldId < geometryFieldIndex ? fieldId : fieldId - 1] = true;
+                    readDbf = true;
+                }
+            }
         }
-        Geometry geom = shapefileReader.geomAt(shxFileReader.getOffset((int)rowId));
-        if(geom!=null){
-        geom.setSRID(getSrid());
+        if(readDbf) {
+            // Copy dbf values
+            Object[] dbfValues = dbfDriver.getRow(rowId, dbfMask);
+            // Copy dbf values before geometryFieldIndex
+            if(geometryFieldIndex > 0) {
+                System.arraycopy(dbfValues, 0, values, 0, geometryFieldIndex);
+            }
+            // Copy dbf values after geometryFieldIndex
+            if(geometryFieldIndex < dbfValues.length) {
+                System.arraycopy(dbfValues, geometryFieldIndex, values, geometryFieldIndex + 1,
+                        dbfValues.length - geometryFieldIndex);
+            }
         }
-        values[geometryFieldIndex] = geom;
-        // Copy dbf values after geometryFieldIndex
-        if(geometryFieldIndex < dbfValues.length) {
-            System.arraycopy(dbfValues, geometryFieldIndex, values, geometryFieldIndex + 1, dbfValues.length);
+        if(columnMask == null || columnMask[geometryFieldIndex]) {
+            Geometry geom = shapefileReader.geomAt(shxFileReader.getOffset((int) rowId));
+            if (geom != null) {
+                geom.setSRID(getSrid());
+            }
+            values[geometryFieldIndex] = geom;
         }
         return values;
     }
 
+    /**
+     * @return The spatial index file, next to the shape file
+     */
+    public File getSpatialIndexFile() {
+        String path = shpFile.getAbsolutePath();
+        return new File(path.substring(0, path.lastIndexOf('.')) + "." + PackedRTree.FILE_EXTENSION);
+    }
+
+    /**
+     * Open the spatial index file of the shape file. If the index file does not exist or if the shape file has been
+     * modified since, the index is rebuilt then written next to the shape file.
+     * @return The spatial index
+     * @throws IOException Read error
+     */
+    @Override
+    public PackedRTree getSpatialIndex() throws IOException {
+        File indexFile = getSpatialIndexFile();
+        final long shpLength = shpFile.length();
+        final long shpLastModified = shpFile.lastModified();
+        PackedRTree spatialIndex = null;
+        try {
+            spatialIndex = PackedRTree.open(indexFile, shpLength, shpLastModified);
+        } catch (IOException ex) {
+            LOG.warn("Invalid spatial index file " + indexFile.getPath() + ", the index will be rebuilt", ex);
+        }
+        if (spatialIndex == null || spatialIndex.getItemCount() != getRowCount()) {
+            spatialIndex = PackedRTree.build(readEnvelopes());
+            try {
+                spatialIndex.write(indexFile, shpLength, shpLastModified);
+            } catch (IOException ex) {
+                // Read only folder, the index will be rebuilt the next time
+                LOG.warn("Cannot write the spatial index file " + indexFile.getPath(), ex);
+            }
+        }
+        return spatialIndex;
+    }
+
+    @Override
+    public Envelope getEnvelope(long rowId) throws IOException {
+        return shapefileReader.envelopeAt(shxFileReader.getOffset((int) rowId));
+    }
+
+    /**
+     * @return The envelope of each record (minX, minY, maxX, maxY), NaN for null geometries
+     * @throws IOException Read error
+     */
+    private double[] readEnvelopes() throws IOException {
+        final int rowCount = (int) getRowCount();
+        double[] envelopes = new double[rowCount * 4];
+        for (int rowId = 0; rowId < rowCount; rowId++) {
+            Envelope envelope = getEnvelope(rowId);
+            if (envelope == null || envelope.isNull()) {
+                Arrays.fill(envelopes, rowId * 4, rowId * 4 + 4, Double.NaN);
+            } else {
+                envelopes[rowId * 4] = envelope.getMinX();
+                envelopes[rowId * 4 + 1] = envelope.getMinY();
+                envelopes[rowId * 4 + 2] = envelope.getMaxX();
+                envelopes[rowId * 4 + 3] = envelope.getMaxY();
+            }
+        }
+        return envelopes;
+    }
+
     /**
      * Set a SRID code that will be used for geometries.
      * @param srid 
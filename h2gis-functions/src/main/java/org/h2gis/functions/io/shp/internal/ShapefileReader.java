@@ -20,6 +20,7 @@
 
 package org.h2gis.functions.io.shp.internal;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.h2gis.functions.io.utility.ReadBufferManager;
 
@@ -55,6 +56,7 @@ public class ShapefileReader {
         private FileChannel channel;
         private ReadBufferManager buffer;
         private ShapeType fileShapeType = ShapeType.UNDEFINED;
+        private final boolean memoryMapped;
 
         /**
          * Creates a new instance of ShapeFile.
@@ -67,8 +69,27 @@ public class ShapefileReader {
          *             If for some reason the file contains invalid records.
          */
         public ShapefileReader(FileChannel channel) throws IOException,
+                ShapefileException {
+                this(channel, false);
+        }
+
+        /**
+         * Creates a new instance of ShapeFile.
+         *
+         * @param channel
+         *            The ReadableByteChannel this reader will use.
+         * @param memoryMapped
+         *            If true the file content is mapped in memory instead of
+         *            being copied in a heap buffer.
+         * @throws java.io.IOException
+         *             If problems arise.
+         * @throws ShapefileException
+         *             If for some reason the file contains invalid records.
+         */
+        public ShapefileReader(FileChannel channel, boolean memoryMapped) throws IOException,
                 ShapefileException {
                 this.channel = channel;
+                this.memoryMapped = memoryMapped;
                 init();
         }
 
@@ -104,7 +125,7 @@ public class ShapefileReader {
                 if (handler == null) {
                         throw new IOException("Unsuported shape type:" + fileShapeType);
                 }
-                buffer = new ReadBufferManager(channel);
+                buffer = memoryMapped ? ReadBufferManager.memoryMapped(channel) : new ReadBufferManager(channel);
         }
 
         /**
@@ -135,11 +156,11 @@ public class ShapefileReader {
         /**
          * Fetch the next record information.
          *
-         * @param offset
+         * @param offset Record offset in bytes
          * @throws java.io.IOException
          * @return The record instance associated with this reader.
          */
-        public Geometry geomAt(int offset) throws IOException {
+        public Geometry geomAt(long offset) throws IOException {
 
                 // need to update position
                 buffer.position(offset);
@@ -163,6 +184,37 @@ public class ShapefileReader {
                 return handler.read(buffer, recordType);
         }
 
+        /**
+         * Read only the bounding box of a record, stored in the record header.
+         * The coordinates of the shape are not read.
+         *
+         * @param offset Record offset in bytes
+         * @throws java.io.IOException
+         * @return The envelope of the record, null for a null shape
+         */
+        public Envelope envelopeAt(long offset) throws IOException {
+                buffer.position(offset);
+                // record header
+                buffer.skip(8);
+                // shape record is all little endian
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                ShapeType recordType = ShapeType.forID(buffer.getInt());
+                if (recordType == ShapeType.NULL) {
+                        return null;
+                }
+                if (recordType.isPointType()) {
+                        // A point has no bounding box
+                        double x = buffer.getDouble();
+                        double y = buffer.getDouble();
+                        return new Envelope(x, x, y, y);
+                }
+                double minX = buffer.getDouble();
+                double minY = buffer.getDouble();
+                double maxX = buffer.getDouble();
+                double maxY = buffer.getDouble();
+                return new Envelope(minX, maxX, minY, maxY);
+        }
+
         /**
          * @param handler
          *            The handler to set.
@@ -0,0 +1,163 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2gis.api.ProgressVisitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export the rows of a result set with several threads. The calling thread reads the rows by batch, the batches are
+ * encoded by a pool of threads, then the calling thread appends the encoded batches to the output stream in the
+ * order of the result set. At most two batches by thread are kept in memory.
+ * <p>
+ * The calling thread does both the reading and the writing, there is no separate reader thread: the JDBC connection
+ * is used by the calling thread only. When the queue of pending batches is full, the calling thread waits on the
+ * oldest batch to write it, and the reading stalls until that batch is encoded.
+ */
+public class EncodingPipeline {
+    /** Number of rows encoded by a task */
+    public static final int BATCH_SIZE = 1000;
+
+    /**
+     * Encode the rows of an exported table
+     */
+    public interface RowEncoder {
+        /**
+         * Copy the values of the current row, called by the thread that reads the result set.
+         * @param rs Result set on the current row
+         * @return Values used by {@link #encode(List)}
+         * @throws SQLException Read error
+         */
+        Object[] readRow(ResultSet rs) throws SQLException;
+
+        /**
+         * Encode rows, called concurrently by the worker threads.
+         * @param rows Rows returned by {@link #readRow(ResultSet)}
+         * @return Encoded rows
+         * @throws IOException Encoding error
+         * @throws SQLException Unsupported value
+         */
+        byte[] encode(List<Object[]> rows) throws IOException, SQLException;
+    }
+
+    private EncodingPipeline() {
+    }
+
+    /**
+     * Encode the remaining rows of the result set and write them in the output stream.
+     * @param rs Result set, before the first row to export
+     * @param encoder Row encoder
+     * @param outputStream Output stream, not closed
+     * @param separator Bytes written between two batches, null for none
+     * @param threadCount Number of encoding threads
+     * @param progress Progress, one step by row
+     * @throws SQLException Read error
+     * @throws IOException Write error
+     */
+    public static void write(ResultSet rs, RowEncoder encoder, OutputStream outputStream, byte[] separator,
+                             int threadCount, ProgressVisitor progress) throws SQLException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+            LinkedList<Integer> pendingRowCounts = new LinkedList<Integer>();
+            boolean hasNext = true;
+            boolean first = true;
+            while (hasNext || !pending.isEmpty()) {
+                // Keep the workers busy while the encoded rows are written
+                while (hasNext && pending.size() < threadCount * 2) {
+                    List<Object[]> rows = new ArrayList<Object[]>(BATCH_SIZE);
+                    while (rows.size() < BATCH_SIZE && (hasNext = rs.next())) {
+                        rows.add(encoder.readRow(rs));
+                    }
+                    if (!rows.isEmpty()) {
+                        pending.add(executor.submit(new EncodeTask(encoder, rows)));
+                        pendingRowCounts.add(rows.size());
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    byte[] encoded = getBytes(pending.removeFirst());
+                    if (!first && separator != null) {
+                        outputStream.write(separator);
+                    }
+                    outputStream.write(encoded);
+                    first = false;
+                    for (int i = pendingRowCounts.removeFirst(); i > 0; i--) {
+                        progress.endStep();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The export has been interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static byte[] getBytes(Future<byte[]> future) throws SQLException, IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Encode a batch of rows
+     */
+    private static class EncodeTask implements Callable<byte[]> {
+        private final RowEncoder encoder;
+        private final List<Object[]> rows;
+
+        private EncodeTask(RowEncoder encoder, List<Object[]> rows) {
+            this.encoder = encoder;
+            this.rows = rows;
+        }
+
+        @Override
+        public byte[] call() throws IOException, SQLException {
+            return encoder.encode(rows);
+        }
+    }
+}
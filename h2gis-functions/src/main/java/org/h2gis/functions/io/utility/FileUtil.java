@@ -22,7 +22,11 @@ package org.h2gis.functions.io.utility;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Some utilities
@@ -68,4 +72,48 @@ public class FileUtil {
         }
         return extension.equalsIgnoreCase(prefix);
     }
+
+    /**
+     * @param file
+     * @return True if the file has the .gz extension
+     */
+    public static boolean isGZipFile(File file) {
+        return isExtensionWellFormated(file, "gz");
+    }
+
+    /**
+     * Remove the .gz extension, in order to check the extension of the
+     * compressed file.
+     *
+     * @param file
+     * @return The file without the .gz extension, or the same file
+     */
+    public static File removeGZipExtension(File file) {
+        if (isGZipFile(file)) {
+            String path = file.getPath();
+            return new File(path.substring(0, path.lastIndexOf('.')));
+        }
+        return file;
+    }
+
+    /**
+     * Open a file for writing, the content is compressed if the file has the
+     * .gz extension.
+     *
+     * @param file
+     * @return The output stream
+     * @throws IOException
+     */
+    public static OutputStream createOutputStream(File file) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        if (isGZipFile(file)) {
+            try {
+                return new GZIPOutputStream(fos, 65536);
+            } catch (IOException ex) {
+                fos.close();
+                throw ex;
+            }
+        }
+        return fos;
+    }
 }
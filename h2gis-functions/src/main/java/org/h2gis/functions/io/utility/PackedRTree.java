@@ -0,0 +1,387 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Static R-Tree packed along a Hilbert curve. The tree is stored in a single buffer that can be written in a file
+ * then memory mapped back, so a spatial index of a linked file does not have to be rebuilt when the database is
+ * opened.
+ *
+ * The file starts with the length and the last modification date of the indexed file, in order to detect an out
+ * of date index.
+ */
+public class PackedRTree {
+    /**
+     * Extension of the index file, next to the indexed file
+     */
+    public static final String FILE_EXTENSION = "h2rtree";
+    private static final int MAGIC = 0x48325254;
+    private static final int VERSION = 1;
+    private static final int DEFAULT_NODE_SIZE = 16;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private final ByteBuffer data;
+    private final int numItems;
+    private final int nodeSize;
+    private final int[] levelBounds;
+    private final int boxesOffset;
+    private final int indicesOffset;
+
+    private PackedRTree(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.capacity() < 36 || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a packed R-Tree file");
+        }
+        numItems = data.getInt(24);
+        nodeSize = data.getInt(28);
+        int numLevels = data.getInt(32);
+        levelBounds = new int[numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            levelBounds[level] = data.getInt(36 + level * 4);
+        }
+        int numNodes = numLevels > 0 ? levelBounds[numLevels - 1] : 0;
+        boxesOffset = headerSize(numLevels);
+        indicesOffset = boxesOffset + numNodes * 32;
+        if (data.capacity() < indicesOffset + numNodes * 4L) {
+            throw new IOException("Truncated packed R-Tree file");
+        }
+    }
+
+    private static int headerSize(int numLevels) {
+        return 36 + numLevels * 4;
+    }
+
+    /**
+     * Build the tree
+     * @param envelopes Item envelopes, 4 values (minX, minY, maxX, maxY) by item. NaN values for an item without
+     *                  envelope.
+     * @return The packed tree
+     * @throws IOException If the tree does not fit in a single buffer
+     */
+    public static PackedRTree build(double[] envelopes) throws IOException {
+        return build(envelopes, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Build the tree
+     * @param envelopes Item envelopes, 4 values (minX, minY, maxX, maxY) by item. NaN values for an item without
+     *                  envelope.
+     * @param nodeSize Maximum number of children of a node
+     * @return The packed tree
+     * @throws IOException If the tree does not fit in a single buffer
+     */
+    public static PackedRTree build(double[] envelopes, int nodeSize) throws IOException {
+        final int numItems = envelopes.length / 4;
+        // Compute the number of nodes of each level
+        int[] bounds = new int[32];
+        int numLevels = 0;
+        long numNodes = 0;
+        if (numItems > 0) {
+            int count = numItems;
+            numNodes = count;
+            bounds[numLevels++] = (int) numNodes;
+            do {
+                count = (count + nodeSize - 1) / nodeSize;
+                numNodes += count;
+                bounds[numLevels++] = (int) numNodes;
+            } while (count != 1);
+        }
+        long size = headerSize(numLevels) + numNodes * 36;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Too many items for a packed R-Tree: " + numItems);
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) size);
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(24, numItems);
+        data.putInt(28, nodeSize);
+        data.putInt(32, numLevels);
+        for (int level = 0; level < numLevels; level++) {
+            data.putInt(36 + level * 4, bounds[level]);
+        }
+        final int boxesOffset = headerSize(numLevels);
+        final int indicesOffset = (int) (boxesOffset + numNodes * 32);
+        if (numItems > 0) {
+            // Sort items along the Hilbert curve of the full extent
+            Envelope extent = new Envelope();
+            for (int i = 0; i < numItems; i++) {
+                if (!Double.isNaN(envelopes[i * 4])) {
+                    extent.expandToInclude(envelopes[i * 4], envelopes[i * 4 + 1]);
+                    extent.expandToInclude(envelopes[i * 4 + 2], envelopes[i * 4 + 3]);
+                }
+            }
+            double width = extent.getWidth() > 0 ? extent.getWidth() : 1;
+            double height = extent.getHeight() > 0 ? extent.getHeight() : 1;
+            long[] keys = new long[numItems];
+            for (int i = 0; i < numItems; i++) {
+                long hilbertValue = 0;
+                if (!Double.isNaN(envelopes[i * 4])) {
+                    double centerX = (envelopes[i * 4] + envelopes[i * 4 + 2]) / 2;
+                    double centerY = (envelopes[i * 4 + 1] + envelopes[i * 4 + 3]) / 2;
+                    int x = (int) (HILBERT_MAX * (centerX - extent.getMinX()) / width);
+                    int y = (int) (HILBERT_MAX * (centerY - extent.getMinY()) / height);
+                    hilbertValue = hilbert(x, y) & 0xFFFFFFFFL;
+                }
+                keys[i] = (hilbertValue << 31) | i;
+            }
+            Arrays.sort(keys);
+            // Leaves
+            for (int pos = 0; pos < numItems; pos++) {
+                int item = (int) (keys[pos] & Integer.MAX_VALUE);
+                int boxPos = boxesOffset + pos * 32;
+                data.putDouble(boxPos, envelopes[item * 4]);
+                data.putDouble(boxPos + 8, envelopes[item * 4 + 1]);
+                data.putDouble(boxPos + 16, envelopes[item * 4 + 2]);
+                data.putDouble(boxPos + 24, envelopes[item * 4 + 3]);
+                data.putInt(indicesOffset + pos * 4, item);
+            }
+            // Upper levels, a node contains the envelope of its children and the position of its first child
+            int pos = 0;
+            int nodePos = numItems;
+            for (int level = 0; level < numLevels - 1; level++) {
+                int end = bounds[level];
+                while (pos < end) {
+                    int firstChild = pos;
+                    double minX = Double.POSITIVE_INFINITY;
+                    double minY = Double.POSITIVE_INFINITY;
+                    double maxX = Double.NEGATIVE_INFINITY;
+                    double maxY = Double.NEGATIVE_INFINITY;
+                    for (int child = 0; child < nodeSize && pos < end; child++, pos++) {
+                        int boxPos = boxesOffset + pos * 32;
+                        // Comparisons with NaN are false, so items without envelope are ignored
+                        double value = data.getDouble(boxPos);
+                        if (value < minX) {
+                            minX = value;
+                        }
+                        value = data.getDouble(boxPos + 8);
+                        if (value < minY) {
+                            minY = value;
+                        }
+                        value = data.getDouble(boxPos + 16);
+                        if (value > maxX) {
+                            maxX = value;
+                        }
+                        value = data.getDouble(boxPos + 24);
+                        if (value > maxY) {
+                            maxY = value;
+                        }
+                    }
+                    int boxPos = boxesOffset + nodePos * 32;
+                    data.putDouble(boxPos, minX);
+                    data.putDouble(boxPos + 8, minY);
+                    data.putDouble(boxPos + 16, maxX);
+                    data.putDouble(boxPos + 24, maxY);
+                    data.putInt(indicesOffset + nodePos * 4, firstChild);
+                    nodePos++;
+                }
+            }
+        }
+        return new PackedRTree(data);
+    }
+
+    /**
+     * Open an index file
+     * @param file Index file
+     * @param sourceLength Length of the indexed file
+     * @param sourceLastModified Last modification date of the indexed file
+     * @return The tree, or null if the index file does not exist or if it is out of date
+     * @throws IOException Read error
+     */
+    public static PackedRTree open(File file, long sourceLength, long sourceLastModified) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileChannel channel = fis.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid when the channel is closed
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.capacity() < 36 || data.getInt(0) != MAGIC || data.getInt(4) != VERSION
+                    || data.getLong(8) != sourceLength || data.getLong(16) != sourceLastModified) {
+                return null;
+            }
+            return new PackedRTree(data);
+        }
+    }
+
+    /**
+     * Write this tree into a file
+     * @param file Index file, replaced if it exists
+     * @param sourceLength Length of the indexed file
+     * @param sourceLastModified Last modification date of the indexed file
+     * @throws IOException Write error
+     */
+    public void write(File file, long sourceLength, long sourceLastModified) throws IOException {
+        ByteBuffer content = data.duplicate();
+        content.clear();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putLong(0, sourceLength);
+        header.putLong(8, sourceLastModified);
+        // Write in a temporary file first, in order to never leave a partial index file
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            FileChannel channel = fos.getChannel();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.position(8);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return Number of indexed items
+     */
+    public int getItemCount() {
+        return numItems;
+    }
+
+    /**
+     * Find the items that intersects the provided envelope
+     * @param envelope Query envelope
+     * @return Item identifiers, in ascending order
+     */
+    public int[] query(Envelope envelope) {
+        int[] result = new int[16];
+        int resultSize = 0;
+        if (numItems == 0 || envelope.isNull()) {
+            return new int[0];
+        }
+        final double minX = envelope.getMinX();
+        final double minY = envelope.getMinY();
+        final double maxX = envelope.getMaxX();
+        final double maxY = envelope.getMaxY();
+        // Stack of (first node position, level)
+        int[] stack = new int[levelBounds.length * nodeSize * 2];
+        int stackSize = 0;
+        int level = levelBounds.length - 1;
+        int nodePos = levelBounds[level] - 1;
+        while (true) {
+            int end = Math.min(nodePos + nodeSize, levelBounds[level]);
+            for (int pos = nodePos; pos < end; pos++) {
+                int boxPos = boxesOffset + pos * 32;
+                if (maxX < data.getDouble(boxPos) || maxY < data.getDouble(boxPos + 8)
+                        || minX > data.getDouble(boxPos + 16) || minY > data.getDouble(boxPos + 24)
+                        || Double.isNaN(data.getDouble(boxPos))) {
+                    continue;
+                }
+                int index = data.getInt(indicesOffset + pos * 4);
+                if (nodePos < numItems) {
+                    if (resultSize == result.length) {
+                        result = Arrays.copyOf(result, result.length * 2);
+                    }
+                    result[resultSize++] = index;
+                } else {
+                    if (stackSize + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[stackSize++] = index;
+                    stack[stackSize++] = level - 1;
+                }
+            }
+            if (stackSize == 0) {
+                break;
+            }
+            level = stack[--stackSize];
+            nodePos = stack[--stackSize];
+        }
+        result = Arrays.copyOf(result, resultSize);
+        // Read the file rows in sequential order
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Hilbert curve index of a cell of a 2^16 x 2^16 grid.
+     * @see "https://github.com/rawrunprotected/hilbert_curves"
+     */
+    private static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = (a & (a >> 2)) ^ (b & (b >> 2));
+        B = (a & (b >> 2)) ^ (b & ((a ^ b) >> 2));
+        C ^= (a & (c >> 2)) ^ (b & (d >> 2));
+        D ^= (b & (c >> 2)) ^ ((a ^ b) & (d >> 2));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = (a & (a >> 4)) ^ (b & (b >> 4));
+        B = (a & (b >> 4)) ^ (b & ((a ^ b) >> 4));
+        C ^= (a & (c >> 4)) ^ (b & (d >> 4));
+        D ^= (b & (c >> 4)) ^ ((a ^ b) & (d >> 4));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= (a & (c >> 8)) ^ (b & (d >> 8));
+        D ^= (b & (c >> 8)) ^ ((a ^ b) & (d >> 8));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+}
@@ -23,15 +23,35 @@ package org.h2gis.functions.io.utility;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
+/**
+ * Random access reader over a file channel. By default the content is copied
+ * into a heap window that is moved on demand. In memory mapped mode the whole
+ * file is mapped by segments of {@link #SEGMENT_SIZE} bytes, then values are
+ * read directly from the mapped memory.
+ */
 public final class ReadBufferManager {
 
+        /**
+         * Size of a memory mapped segment, a single mapping cannot exceed 2GB
+         */
+        static final long SEGMENT_SIZE = 1L << 30;
+        /**
+         * Each segment overlaps the next one by this number of bytes, values
+         * shorter than this length never cross a segment boundary
+         */
+        static final int SEGMENT_OVERLAP = 1 << 20;
+
         private int bufferSize;
         private ByteBuffer buffer;
         private FileChannel channel;
         private long windowStart;
         private long positionInFile;
+        private final long fileSize;
+        private ByteOrder order = ByteOrder.BIG_ENDIAN;
+        private MappedByteBuffer[] segments;
 
         /**
          * Instantiates a ReadBufferManager to read the specified channel
@@ -54,12 +74,48 @@ public final class ReadBufferManager {
         public ReadBufferManager(FileChannel channel, int bufferSize)
                 throws IOException {
                 this.channel = channel;
+                this.fileSize = channel.size();
                 buffer = ByteBuffer.allocate(0);
                 windowStart = 0;
                 this.bufferSize = bufferSize;
                 getWindowOffset(0, bufferSize);
         }
 
+        /**
+         * Instantiates a ReadBufferManager that maps the whole content of the
+         * specified channel in memory. The channel must be opened for reading
+         * and its content must not change while this buffer is in use.
+         *
+         * @param channel
+         * @return The memory mapped ReadBufferManager
+         * @throws java.io.IOException
+         */
+        public static ReadBufferManager memoryMapped(FileChannel channel) throws IOException {
+                return new ReadBufferManager(channel, FileChannel.MapMode.READ_ONLY);
+        }
+
+        private ReadBufferManager(FileChannel channel, FileChannel.MapMode mapMode) throws IOException {
+                this.channel = channel;
+                this.fileSize = channel.size();
+                this.bufferSize = 0;
+                int segmentCount = (int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+                segments = new MappedByteBuffer[segmentCount];
+                for (int i = 0; i < segmentCount; i++) {
+                        long start = i * SEGMENT_SIZE;
+                        long length = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, fileSize - start);
+                        segments[i] = channel.map(mapMode, start, length);
+                }
+                windowStart = 0;
+                buffer = segmentCount > 0 ? segments[0] : ByteBuffer.allocate(0);
+        }
+
+        /**
+         * @return True if the file content is memory mapped
+         */
+        public boolean isMemoryMapped() {
+                return segments != null;
+        }
+
         /**
          * Moves the window if necessary to contain the desired byte and returns the
          * position of the byte in the window
@@ -78,11 +134,22 @@ public final class ReadBufferManager {
                         } else {
                                 throw new IOException("This buffer is quite large...");
                         }
+                } else if (segments != null) {
+                        int segmentIndex = (int) (bytePos / SEGMENT_SIZE);
+                        long segmentStart = segmentIndex * SEGMENT_SIZE;
+                        if (bytePos < 0 || segmentIndex >= segments.length
+                                || desiredMax >= segmentStart + segments[segmentIndex].capacity()) {
+                                throw new IOException("Cannot read " + length + " bytes at position " + bytePos
+                                        + " of a memory mapped file of " + fileSize + " bytes");
+                        }
+                        windowStart = segmentStart;
+                        buffer = segments[segmentIndex];
+                        buffer.order(order);
+                        return (int) (desiredMin - windowStart);
                 } else {
                         long bufferCapacity = Math.max(bufferSize, length);
-                        long size = channel.size();
 
-                        bufferCapacity = Math.min(bufferCapacity, size - bytePos);
+                        bufferCapacity = Math.min(bufferCapacity, fileSize - bytePos);
                         if (bufferCapacity > Integer.MAX_VALUE) {
                                 throw new IOException("Woaw ! You want to have a REALLY LARGE buffer !");
                         }
@@ -121,7 +188,7 @@ public final class ReadBufferManager {
          * @throws java.io.IOException
          */
         public long getLength() throws IOException {
-                return channel.size();
+                return fileSize;
         }
 
         /**
@@ -130,6 +197,7 @@ public final class ReadBufferManager {
          * @param order
          */
         public void order(ByteOrder order) {
+                this.order = order;
                 buffer.order(order);
         }
 
@@ -232,6 +300,25 @@ public final class ReadBufferManager {
                 return this.buffer.get(buffer);
         }
 
+        /**
+         * Gets a read only view of the bytes at the specified position, without
+         * copying them. The view is only valid until the next read on this
+         * buffer.
+         *
+         * @param pos
+         * @param length
+         * @return A buffer with the requested bytes between its position and
+         * its limit
+         * @throws java.io.IOException
+         */
+        public ByteBuffer slice(long pos, int length) throws IOException {
+                int windowOffset = getWindowOffset(pos, length);
+                ByteBuffer view = buffer.asReadOnlyBuffer();
+                view.limit(windowOffset + length);
+                view.position(windowOffset);
+                return view;
+        }
+
         /**
          * Moves the current position to the specified one
          *
@@ -282,7 +369,7 @@ public final class ReadBufferManager {
          */
         public boolean isEOF() throws IOException {
                 return (buffer.remaining() == 0)
-                        && (windowStart + buffer.capacity() >= channel.size());
+                        && (windowStart + buffer.capacity() >= fileSize);
         }
 
         /**
@@ -293,6 +380,6 @@ public final class ReadBufferManager {
          * @throws java.io.IOException
          */
         public long remaining() throws IOException {
-                return channel.size() - windowStart - buffer.position();
+                return fileSize - windowStart - buffer.position();
         }
 }
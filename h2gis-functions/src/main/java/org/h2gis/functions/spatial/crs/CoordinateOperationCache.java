@@ -0,0 +1,193 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.cts.CRSFactory;
+import org.cts.crs.CRSException;
+import org.cts.crs.CoordinateReferenceSystem;
+import org.cts.crs.GeodeticCRS;
+import org.cts.op.CoordinateOperation;
+import org.cts.op.CoordinateOperationFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the {@link CoordinateReferenceSystem} and {@link CoordinateOperation} read from the
+ * spatial_ref_sys table. The cache can be shared by all the sessions: the CRS are read with a registry bound to the
+ * connection of the caller, and the least recently used entries are removed when the cache is full.
+ */
+public class CoordinateOperationCache {
+    public static final int DEFAULT_SIZE = 64;
+    /** System property that overrides {@link #DEFAULT_SIZE} */
+    public static final String SIZE_PROPERTY = "h2gis.transformCacheSize";
+    private volatile int maximumSize;
+    private volatile Map<Integer, CoordinateReferenceSystem> crsCache;
+    private volatile Map<EPSGTuple, CoordinateOperation> copCache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param maximumSize Maximum number of CRS and of coordinate operations kept in the cache
+     */
+    public CoordinateOperationCache(int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * @return The cache size set with the {@link #SIZE_PROPERTY} system property, or {@link #DEFAULT_SIZE}
+     */
+    public static int getDefaultSize() {
+        return Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+    }
+
+    /**
+     * @return Maximum number of CRS and of coordinate operations kept in the cache
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Change the size of the cache, the cached entries are cleared
+     * @param maximumSize Maximum number of CRS and of coordinate operations kept in the cache
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The cache size must be greater than 0");
+        }
+        crsCache = Collections.synchronizedMap(new LRUMap<Integer, CoordinateReferenceSystem>(maximumSize));
+        copCache = Collections.synchronizedMap(new LRUMap<EPSGTuple, CoordinateOperation>(maximumSize));
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return Number of coordinate operations found in the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of coordinate operations created because they were not in the cache
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Remove all the cached entries and reset the counters
+     */
+    public void clear() {
+        crsCache.clear();
+        copCache.clear();
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * Return the CRS of the provided SRID
+     * @param connection Active connection, used to read the spatial_ref_sys table if the CRS is not cached
+     * @param srid SRID code available in the spatial_ref_sys table
+     * @return The coordinate reference system
+     * @throws CRSException If the CRS cannot be created
+     */
+    public CoordinateReferenceSystem getCRS(Connection connection, int srid) throws CRSException {
+        CoordinateReferenceSystem crs = crsCache.get(srid);
+        if (crs == null) {
+            // The registry is not shared, so concurrent sessions can read their own table
+            SpatialRefRegistry registry = new SpatialRefRegistry(connection);
+            CRSFactory crsFactory = new CRSFactory();
+            crsFactory.getRegistryManager().addRegistry(registry);
+            crs = crsFactory.getCRS(registry.getRegistryName() + ":" + String.valueOf(srid));
+            crsCache.put(srid, crs);
+        }
+        return crs;
+    }
+
+    /**
+     * Return the operation that transform the coordinates from a CRS to another
+     * @param connection Active connection, used to read the spatial_ref_sys table if the CRS are not cached
+     * @param inputSRID SRID of the input coordinates
+     * @param targetSRID SRID of the output coordinates
+     * @return The coordinate operation or null if both SRID are the same CRS
+     * @throws CRSException If a CRS cannot be created
+     * @throws SQLException If the transformation is not supported
+     */
+    public CoordinateOperation getCoordinateOperation(Connection connection, int inputSRID, int targetSRID)
+            throws CRSException, SQLException {
+        // Identity transforms are not counted, they are neither a hit nor a miss of the operation cache
+        if (inputSRID == targetSRID) {
+            // Still fails if the CRS is unknown
+            getCRS(connection, inputSRID);
+            return null;
+        }
+        EPSGTuple epsg = new EPSGTuple(inputSRID, targetSRID);
+        CoordinateOperation op = copCache.get(epsg);
+        if (op != null) {
+            hitCount.incrementAndGet();
+            return op;
+        }
+        CoordinateReferenceSystem inputCRS = getCRS(connection, inputSRID);
+        CoordinateReferenceSystem targetCRS = getCRS(connection, targetSRID);
+        if (inputCRS.equals(targetCRS)) {
+            return null;
+        }
+        missCount.incrementAndGet();
+        if (inputCRS instanceof GeodeticCRS && targetCRS instanceof GeodeticCRS) {
+            List<CoordinateOperation> ops = CoordinateOperationFactory
+                    .createCoordinateOperations((GeodeticCRS) inputCRS, (GeodeticCRS) targetCRS);
+            if (ops.isEmpty()) {
+                throw new SQLException("Cannot find a coordinate operation from "
+                        + inputCRS + " to " + targetSRID + ".");
+            }
+            op = ops.get(0);
+            copCache.put(epsg, op);
+            return op;
+        } else {
+            throw new SQLException("The transformation from "
+                    + inputCRS + " to " + targetSRID + " is not yet supported.");
+        }
+    }
+
+    /**
+     * Map that remove the least recently accessed entry when the size limit is reached
+     */
+    private static class LRUMap<K, V> extends LinkedHashMap<K, V> {
+        private final int limit;
+
+        public LRUMap(int limit) {
+            super(16, 0.75f, true);
+            this.limit = limit;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > limit;
+        }
+    }
+}
@@ -21,20 +21,17 @@
 package org.h2gis.functions.spatial.crs;
 
 import org.locationtech.jts.geom.*;
-import org.cts.CRSFactory;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+import org.locationtech.jts.geom.util.GeometryEditor;
 import org.cts.IllegalCoordinateException;
 import org.cts.crs.CRSException;
-import org.cts.crs.CoordinateReferenceSystem;
-import org.cts.crs.GeodeticCRS;
 import org.cts.op.CoordinateOperation;
-import org.cts.op.CoordinateOperationFactory;
 import org.h2gis.api.AbstractFunction;
 import org.h2gis.api.ScalarFunction;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 
@@ -48,9 +45,8 @@ import java.util.Map;
  */
 public class ST_Transform extends AbstractFunction implements ScalarFunction {
 
-    private static CRSFactory crsf;
-    private static SpatialRefRegistry srr = new SpatialRefRegistry();
-    private static Map<EPSGTuple, CoordinateOperation> copPool = new CopCache(5);
+    private static final CoordinateOperationCache CACHE =
+            new CoordinateOperationCache(CoordinateOperationCache.getDefaultSize());
 
     /**
      * Constructor
@@ -81,60 +77,31 @@ public class ST_Transform extends AbstractFunction implements ScalarFunction {
         if (codeEpsg == null) {
             throw new IllegalArgumentException("The SRID code cannot be null.");
         }
-        if (crsf == null) {
-            crsf = new CRSFactory();
-            //Activate the CRSFactory and the internal H2 spatial_ref_sys registry to
-            // manage Coordinate Reference Systems.
-            crsf.getRegistryManager().addRegistry(srr);
+        int inputSRID = geom.getSRID();
+        if (inputSRID == 0) {
+            throw new SQLException("Cannot find a CRS");
         }
-        srr.setConnection(connection);
         try {
-            int inputSRID = geom.getSRID();
-            if (inputSRID == 0) {
-                throw new SQLException("Cannot find a CRS");
-            } else {
-                CoordinateReferenceSystem inputCRS = crsf.getCRS(srr.getRegistryName() + ":" + String.valueOf(inputSRID));
-                CoordinateReferenceSystem targetCRS = crsf.getCRS(srr.getRegistryName() + ":" + String.valueOf(codeEpsg));
-                if (inputCRS.equals(targetCRS)) {
-                    return geom;
-                }
-                EPSGTuple epsg = new EPSGTuple(inputSRID, codeEpsg);
-                CoordinateOperation op = copPool.get(epsg);
-                if (op != null) {
-                    Geometry outPutGeom = geom.copy();
-                    outPutGeom.geometryChanged();
-                    outPutGeom.apply(new CRSTransformFilter(op));
-                    outPutGeom.setSRID(codeEpsg);
-                    return outPutGeom;
-                } else {
-                    if (inputCRS instanceof GeodeticCRS && targetCRS instanceof GeodeticCRS) {
-                        List<CoordinateOperation> ops = CoordinateOperationFactory
-                                .createCoordinateOperations((GeodeticCRS) inputCRS, (GeodeticCRS) targetCRS);
-                        if (!ops.isEmpty()) {
-                            op = ops.get(0);
-                            Geometry outPutGeom = (Geometry) geom.copy();
-                            outPutGeom.geometryChanged();
-                            outPutGeom.apply(new CRSTransformFilter(op));
-                            copPool.put(epsg, op);
-                            outPutGeom.setSRID(codeEpsg);
-                            return outPutGeom;
-                        }
-                    } else {
-                        throw new SQLException("The transformation from "
-                                + inputCRS + " to " + codeEpsg + " is not yet supported.");
-                    }
-                }
+            CoordinateOperation op = CACHE.getCoordinateOperation(connection, inputSRID, codeEpsg);
+            if (op == null) {
+                return geom;
             }
+            Geometry outPutGeom = new GeometryEditor().edit(geom, new CRSTransformSequenceOperation(op));
+            outPutGeom.setSRID(codeEpsg);
+            return outPutGeom;
         } catch (CRSException ex) {
             throw new SQLException("Cannot create the CRS", ex);
-        } finally {
-            srr.setConnection(null);
         }
-        return null;
-
     }
 
   
+    /**
+     * @return The cache of coordinate operations shared by all the sessions
+     */
+    public static CoordinateOperationCache getCache() {
+        return CACHE;
+    }
+
     /**
      * This method is used to apply a {@link CoordinateOperation} to a geometry.
      * The transformation loops on each coordinate. 
@@ -171,9 +138,50 @@ public class ST_Transform extends AbstractFunction implements ScalarFunction {
     
     }
 
+    /**
+     * This operation is used to apply a {@link CoordinateOperation} to a geometry.
+     * Each coordinate sequence is transformed into a new packed sequence, the input geometry is not modified.
+     */
+    public static class CRSTransformSequenceOperation extends GeometryEditor.CoordinateSequenceOperation {
+        private final CoordinateOperation coordinateOperation;
+
+        public CRSTransformSequenceOperation(final CoordinateOperation coordinateOperation) {
+            this.coordinateOperation = coordinateOperation;
+        }
+
+        @Override
+        public CoordinateSequence edit(CoordinateSequence coordSeq, Geometry geometry) {
+            final int size = coordSeq.size();
+            final boolean hasZ = coordSeq.getDimension() > 2;
+            double[] packed = new double[size * 3];
+            // Reused for each coordinate, the operation may transform it in place
+            double[] xyz = new double[3];
+            for (int i = 0; i < size; i++) {
+                xyz[0] = coordSeq.getOrdinate(i, CoordinateSequence.X);
+                xyz[1] = coordSeq.getOrdinate(i, CoordinateSequence.Y);
+                xyz[2] = hasZ ? coordSeq.getOrdinate(i, CoordinateSequence.Z) : 0;
+                if (Double.isNaN(xyz[2])) {
+                    xyz[2] = 0;
+                }
+                double[] result;
+                try {
+                    result = coordinateOperation.transform(xyz);
+                } catch (IllegalCoordinateException ice) {
+                    throw new RuntimeException("Cannot transform the coordinate" + coordSeq.getCoordinate(i).toString(), ice);
+                }
+                packed[i * 3] = result[0];
+                packed[i * 3 + 1] = result[1];
+                packed[i * 3 + 2] = result.length > 2 ? result[2] : Double.NaN;
+            }
+            return PackedCoordinateSequenceFactory.DOUBLE_FACTORY.create(packed, 3);
+        }
+    }
+
     /**
      * A simple cache to manage {@link CoordinateOperation}
+     * @deprecated Not thread safe, replaced by {@link CoordinateOperationCache}
      */
+    @Deprecated
     public static class CopCache extends LinkedHashMap<EPSGTuple, CoordinateOperation> {
 
         private final int limit;
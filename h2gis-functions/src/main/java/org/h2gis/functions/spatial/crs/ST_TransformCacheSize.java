@@ -0,0 +1,101 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.h2.engine.Session;
+import org.h2.engine.SessionInterface;
+import org.h2.jdbc.JdbcConnection;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Read or change the size of the coordinate operation cache shared by the sessions that call ST_Transform.
+ */
+public class ST_TransformCacheSize extends AbstractFunction implements ScalarFunction {
+
+    /**
+     * Constructor
+     */
+    public ST_TransformCacheSize() {
+        addProperty(PROP_REMARKS, "Return the maximum number of coordinate operations kept in the cache of " +
+                "ST_Transform.\nST_TransformCacheSize(size) changes this size and clears the cache, the cache is shared " +
+                "by all the sessions of the JVM so it requires admin rights. The initial size " +
+                "is read from the " + CoordinateOperationCache.SIZE_PROPERTY + " system property, " +
+                CoordinateOperationCache.DEFAULT_SIZE + " by default.");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "cacheSize";
+    }
+
+    /**
+     * @return The size of the cache
+     */
+    public static int cacheSize() {
+        return ST_Transform.getCache().getMaximumSize();
+    }
+
+    /**
+     * Change the size of the cache, the cached entries are cleared
+     * @param connection Connection of an admin user
+     * @param size Maximum number of CRS and of coordinate operations kept in the cache
+     * @return The size of the cache
+     * @throws SQLException If the user is not an admin
+     */
+    public static int cacheSize(Connection connection, int size) throws SQLException {
+        if (!isAdmin(connection)) {
+            throw new SQLException("Admin rights are required to change the size of the ST_Transform cache");
+        }
+        ST_Transform.getCache().setMaximumSize(size);
+        return size;
+    }
+
+    /**
+     * @param connection Connection
+     * @return True if the user of the connection is an admin
+     * @throws SQLException
+     */
+    private static boolean isAdmin(Connection connection) throws SQLException {
+        if (connection.isWrapperFor(JdbcConnection.class)) {
+            final SessionInterface session = connection.unwrap(JdbcConnection.class).getSession();
+            if (session instanceof Session) {
+                return ((Session) session).getUser().isAdmin();
+            }
+        }
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("SELECT ADMIN FROM INFORMATION_SCHEMA.USERS WHERE NAME = USER()");
+            try {
+                return rs.next() && rs.getBoolean(1);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+    }
+}
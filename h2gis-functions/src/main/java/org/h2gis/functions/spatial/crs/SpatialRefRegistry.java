@@ -45,6 +45,20 @@ public class SpatialRefRegistry implements Registry {
     private Connection connection;
     private static final Pattern regex = Pattern.compile("\\s+");
 
+    /**
+     * Create a registry without connection, {@link #setConnection(Connection)} must be called before reading it
+     */
+    public SpatialRefRegistry() {
+    }
+
+    /**
+     * Create a registry that reads the spatial_ref_sys table of the provided connection
+     * @param connection Active connection
+     */
+    public SpatialRefRegistry(Connection connection) {
+        this.connection = connection;
+    }
+
     @Override
     public String getRegistryName() {
         return "epsg";
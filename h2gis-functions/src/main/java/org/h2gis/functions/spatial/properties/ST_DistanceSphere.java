@@ -26,11 +26,10 @@ import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 
-import org.cts.CRSFactory;
 import org.cts.crs.CRSException;
 import org.cts.crs.CoordinateReferenceSystem;
 import org.h2gis.api.DeterministicScalarFunction;
-import org.h2gis.functions.spatial.crs.SpatialRefRegistry;
+import org.h2gis.functions.spatial.crs.ST_Transform;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -41,9 +40,6 @@ import java.sql.SQLException;
  */
 public class ST_DistanceSphere extends DeterministicScalarFunction {
 
-    private static CRSFactory crsf;
-    private static SpatialRefRegistry srr = new SpatialRefRegistry();
-
     /**
      * Default constructor
      */
@@ -67,17 +63,12 @@ public class ST_DistanceSphere extends DeterministicScalarFunction {
             return null;
         }
 
-        if (crsf == null) {
-            crsf = new CRSFactory();
-            crsf.getRegistryManager().addRegistry(srr);
-        }
-        srr.setConnection(connection);
         try {
             int srid = a.getSRID();
             if (srid <= 0) {
                 srid = 4326;
             }
-            CoordinateReferenceSystem crs = crsf.getCRS(srr.getRegistryName() + ":" + String.valueOf(srid));
+            CoordinateReferenceSystem crs = ST_Transform.getCache().getCRS(connection, srid);
 
             if (!CoordinateReferenceSystem.Type.GEOGRAPHIC2D.equals(crs.getType())) {
                 throw new SQLException("ERROR: only lon/lag coordinate system are supported in geography");
@@ -93,8 +84,6 @@ public class ST_DistanceSphere extends DeterministicScalarFunction {
             return distance * radius;
         } catch (CRSException e) {
             throw new SQLException("Cannot find SRID", e);
-        } finally {
-            srr.setConnection(null);
         }
     }
 
@@ -0,0 +1,341 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.topology;
+
+import java.util.Arrays;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Snap the first and last coordinates of the edges of {@link ST_Graph} in
+ * memory. The endpoints are stored in primitive arrays and indexed in a hash
+ * grid whose cells have the snapping distance as side length, or by their
+ * exact coordinates if the tolerance is zero, so the snapping is linear in
+ * the number of edges.
+ *
+ * <p>The nodes are the same as the ones of the SQL queries of
+ * {@link ST_Graph}: the endpoints are visited in order, the first
+ * coordinates of all the edges then their last coordinates, and an endpoint
+ * is a node if no previous endpoint has its envelope, expanded by the
+ * tolerance, intersecting its own expanded envelope. Each endpoint is then
+ * snapped to the closest node within this distance.
+ */
+final class NodeSnapper {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    // Number of doubles stored per edge: x, y and z of the first and last coordinates
+    private static final int EDGE_STRIDE = 6;
+    private static final int EMPTY = -1;
+
+    // Two endpoints are snapped together if their distance along x and y is
+    // lower or equal to this distance, twice the tolerance
+    private final double distance;
+    private int edgeCount = 0;
+    private int[] edgeIds = new int[DEFAULT_CAPACITY];
+    private double[] coordinates = new double[DEFAULT_CAPACITY * EDGE_STRIDE];
+    // Results of snap(), node ids start at 1, 0 if the endpoint has no node
+    private int nodeCount = 0;
+    private int[] nodePoints;
+    private int[] startNodes;
+    private int[] endNodes;
+    // Node id of each point while snapping, 0 if the point is not a node
+    private int[] pointNodes;
+    // Hash grid, the points of a cell are chained from cellHeads with nextPoint
+    private long[] cellKeys;
+    private int[] cellHeads;
+    private int[] nextPoint;
+    private int cellMask;
+
+    /**
+     * Constructor
+     *
+     * @param tolerance Snapping tolerance, 0 to snap only the equal coordinates
+     */
+    NodeSnapper(double tolerance) {
+        this.distance = 2 * tolerance;
+    }
+
+    /**
+     * Add an edge.
+     *
+     * @param edgeId   Edge id
+     * @param geometry LINESTRING or MULTILINESTRING, the first coordinate of
+     *                 the first line and the last coordinate of the last line
+     *                 are the endpoints. Null or empty geometries have no
+     *                 endpoints.
+     */
+    void add(int edgeId, Geometry geometry) {
+        if (edgeCount == edgeIds.length) {
+            final int capacity = edgeCount + (edgeCount >> 1);
+            edgeIds = Arrays.copyOf(edgeIds, capacity);
+            coordinates = Arrays.copyOf(coordinates, capacity * EDGE_STRIDE);
+        }
+        edgeIds[edgeCount] = edgeId;
+        final int offset = edgeCount * EDGE_STRIDE;
+        if (geometry == null || geometry.isEmpty()) {
+            Arrays.fill(coordinates, offset, offset + EDGE_STRIDE, Double.NaN);
+        } else {
+            setCoordinate(offset, getFirstCoordinate(geometry));
+            setCoordinate(offset + 3, getLastCoordinate(geometry));
+        }
+        edgeCount++;
+    }
+
+    /**
+     * @param geometry Non empty LINESTRING or MULTILINESTRING
+     * @return First coordinate of the first line
+     */
+    static Coordinate getFirstCoordinate(Geometry geometry) {
+        return ((LineString) geometry.getGeometryN(0)).getCoordinateN(0);
+    }
+
+    /**
+     * @param geometry Non empty LINESTRING or MULTILINESTRING
+     * @return Last coordinate of the last line
+     */
+    static Coordinate getLastCoordinate(Geometry geometry) {
+        final LineString last = (LineString) geometry.getGeometryN(geometry.getNumGeometries() - 1);
+        return last.getCoordinateN(last.getNumPoints() - 1);
+    }
+
+    private void setCoordinate(int offset, Coordinate coordinate) {
+        coordinates[offset] = coordinate.x;
+        coordinates[offset + 1] = coordinate.y;
+        coordinates[offset + 2] = coordinate.z;
+    }
+
+    /**
+     * Find the nodes and the start and end node of each edge.
+     */
+    void snap() {
+        final int pointCount = edgeCount * 2;
+        final int capacity = Integer.highestOneBit(Math.max(16, pointCount + (pointCount >> 1))) << 1;
+        cellKeys = new long[capacity];
+        cellHeads = new int[capacity];
+        Arrays.fill(cellHeads, EMPTY);
+        cellMask = capacity - 1;
+        nextPoint = new int[pointCount];
+        pointNodes = new int[pointCount];
+        nodePoints = new int[pointCount];
+        nodeCount = 0;
+        for (int point = 0; point < pointCount; point++) {
+            if (Double.isNaN(getX(point))) {
+                // Edges without endpoints are not snapped
+                continue;
+            }
+            // The grid only contains the previous points
+            if (findPoint(point, false) == EMPTY) {
+                nodePoints[nodeCount++] = point;
+                pointNodes[point] = nodeCount;
+            }
+            insert(point);
+        }
+        startNodes = new int[edgeCount];
+        endNodes = new int[edgeCount];
+        for (int point = 0; point < pointCount; point++) {
+            int node = pointNodes[point];
+            if (node == 0 && !Double.isNaN(getX(point))) {
+                final int nodePoint = findPoint(point, true);
+                node = nodePoint == EMPTY ? 0 : pointNodes[nodePoint];
+            }
+            if (point < edgeCount) {
+                startNodes[point] = node;
+            } else {
+                endNodes[point - edgeCount] = node;
+            }
+        }
+        // Release the grid
+        cellKeys = null;
+        cellHeads = null;
+        nextPoint = null;
+        pointNodes = null;
+    }
+
+    /**
+     * Find a point of the grid within the snapping distance of the given
+     * point.
+     *
+     * @param point     Point index
+     * @param nodesOnly If true, return the closest node, else any point
+     * @return Point index, {@link #EMPTY} if not found
+     */
+    private int findPoint(int point, boolean nodesOnly) {
+        final double x = getX(point);
+        final double y = getY(point);
+        final int range = distance > 0 ? 1 : 0;
+        int found = EMPTY;
+        double foundDistance = Double.MAX_VALUE;
+        for (int i = -range; i <= range; i++) {
+            for (int j = -range; j <= range; j++) {
+                for (int other = getCellHead(cellKey(x, y, i, j)); other != EMPTY; other = nextPoint[other]) {
+                    final double dx = Math.abs(getX(other) - x);
+                    final double dy = Math.abs(getY(other) - y);
+                    if (dx > distance || dy > distance || (nodesOnly && pointNodes[other] == 0)) {
+                        continue;
+                    }
+                    if (!nodesOnly) {
+                        return other;
+                    }
+                    // Closest node, then lowest node id
+                    final double d = dx * dx + dy * dy;
+                    if (d < foundDistance || (d == foundDistance && other < found)) {
+                        found = other;
+                        foundDistance = d;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Key of the cell at the given offset from the cell containing
+     * the coordinate. Distinct cells may have the same key, the points of the
+     * cell are then compared to the coordinate anyway.
+     */
+    private long cellKey(double x, double y, int offsetX, int offsetY) {
+        final long cellX;
+        final long cellY;
+        if (distance > 0) {
+            cellX = (long) Math.floor(x / distance) + offsetX;
+            cellY = (long) Math.floor(y / distance) + offsetY;
+        } else {
+            // Adding 0 gives the same bits to -0 and 0
+            cellX = Double.doubleToLongBits(x + 0.0);
+            cellY = Double.doubleToLongBits(y + 0.0);
+        }
+        return cellX * 0x9E3779B97F4A7C15L + cellY;
+    }
+
+    private int getSlot(long key) {
+        long hash = key * 0xC2B2AE3D27D4EB4FL;
+        int slot = (int) (hash ^ (hash >>> 32)) & cellMask;
+        while (cellHeads[slot] != EMPTY && cellKeys[slot] != key) {
+            slot = (slot + 1) & cellMask;
+        }
+        return slot;
+    }
+
+    private int getCellHead(long key) {
+        return cellHeads[getSlot(key)];
+    }
+
+    private void insert(int point) {
+        final long key = cellKey(getX(point), getY(point), 0, 0);
+        final int slot = getSlot(key);
+        cellKeys[slot] = key;
+        nextPoint[point] = cellHeads[slot];
+        cellHeads[slot] = point;
+    }
+
+    /**
+     * Swap the start and end node of the edges whose start node is lower
+     * than their end node.
+     */
+    void orientBySlope() {
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (startNodes[edge] != 0 && endNodes[edge] != 0
+                    && getZ(nodePoints[startNodes[edge] - 1]) < getZ(nodePoints[endNodes[edge] - 1])) {
+                final int node = startNodes[edge];
+                startNodes[edge] = endNodes[edge];
+                endNodes[edge] = node;
+            }
+        }
+    }
+
+    // Points [0-edgeCount[ are the first coordinates, the next ones are the last coordinates
+    private int getOffset(int point) {
+        return point < edgeCount ? point * EDGE_STRIDE : (point - edgeCount) * EDGE_STRIDE + 3;
+    }
+
+    private double getX(int point) {
+        return coordinates[getOffset(point)];
+    }
+
+    private double getY(int point) {
+        return coordinates[getOffset(point) + 1];
+    }
+
+    private double getZ(int point) {
+        return coordinates[getOffset(point) + 2];
+    }
+
+    /**
+     * @return Number of edges
+     */
+    int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @param edge Edge index [0-edgeCount[
+     * @return Edge id
+     */
+    int getEdgeId(int edge) {
+        return edgeIds[edge];
+    }
+
+    /**
+     * @param edge Edge index [0-edgeCount[
+     * @return Start node id, 0 if the first coordinate is not snapped to a node
+     */
+    int getStartNode(int edge) {
+        return startNodes[edge];
+    }
+
+    /**
+     * @param edge Edge index [0-edgeCount[
+     * @return End node id, 0 if the last coordinate is not snapped to a node
+     */
+    int getEndNode(int edge) {
+        return endNodes[edge];
+    }
+
+    /**
+     * @return Number of edges having a start or end node equal to 0
+     */
+    int getNullEndpointCount() {
+        int count = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (startNodes[edge] == 0 || endNodes[edge] == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of nodes
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param nodeId Node id [1-nodeCount]
+     * @return Coordinate of the node
+     */
+    Coordinate getNodeCoordinate(int nodeId) {
+        final int point = nodePoints[nodeId - 1];
+        return new Coordinate(getX(point), getY(point), getZ(point));
+    }
+}
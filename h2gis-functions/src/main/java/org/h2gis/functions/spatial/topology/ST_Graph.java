@@ -26,6 +26,9 @@ import org.h2gis.api.AbstractFunction;
 import org.h2gis.api.ScalarFunction;
 
 import org.h2gis.utilities.*;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,7 +57,9 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
             "The nodes table consists of an integer `node_id` and a `POINT` geometry\n" +
             "representing each node. The edges table is a copy of the input table with three\n" +
             "extra columns: `edge_id`, `start_node`, and `end_node`. The `start_node` and\n" +
-            "`end_node` correspond to the `node_id`s in the nodes table.\n" +
+            "`end_node` correspond to the `node_id`s in the nodes table. The `edge_id`\n" +
+            "column is indexed, so the graph functions read the geometries of the edges\n" +
+            "they return by their ids.\n" +
             "\n" +
             "If the specified geometry column of the input table contains geometries other\n" +
             "than `LINESTRING`s, the operation will fail.\n" +
@@ -70,6 +75,7 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
             "A boolean value may be set to true to specify that edges should be oriented by\n" +
             "the z-value of their first and last coordinates (decreasing).\n";
 
+    static final int BATCH_SIZE = 1000;
     private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_Graph.class);
     public static final String TYPE_ERROR = "Only LINESTRINGs " +
             "are accepted. Type code: ";
@@ -268,6 +274,11 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
         spatialFieldName = (String) spatialFieldIndexAndName[0];
         checkGeometryType(connection, tableName, spatialFieldIndex);
         final String geomCol = JDBCUtilities.getFieldName(md, tableName.getTable(), spatialFieldIndex);
+        if (isH2) {
+            int srid = SFSUtilities.getSRID(connection, tableName, spatialFieldName);
+            snapNodes(connection, tableName, nodesName, edgesName, pkColName, geomCol, tolerance, orientBySlope, srid);
+            return true;
+        }
         final Statement st = connection.createStatement();
         try {
             firstFirstLastLast(st, tableName, pkColName, geomCol, tolerance);            
@@ -286,7 +297,103 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
         return true;
     }
 
-    private static void checkGeometryType(Connection connection,
+    /**
+     * Create the nodes and edges tables by snapping the first and last
+     * coordinates in memory with a {@link NodeSnapper}. The input table is
+     * read once and the output tables are written with batched inserts, no
+     * intermediate table is created. As in the SQL path, the nodes table gets
+     * a spatial index, {@link ST_GraphUpdate} uses it to find the nodes near
+     * the endpoints of the updated edges, and the edge ids are indexed once
+     * the edges are inserted.
+     */
+    private static void snapNodes(Connection connection,
+                                  TableLocation tableName,
+                                  TableLocation nodesName,
+                                  TableLocation edgesName,
+                                  String pkCol,
+                                  String geomCol,
+                                  double tolerance,
+                                  boolean orientBySlope,
+                                  int srid) throws SQLException {
+        LOGGER.info("Snapping the first and last coordinates...");
+        final NodeSnapper snapper = new NodeSnapper(tolerance);
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("SELECT " + pkCol + ", " + geomCol + " FROM " + tableName);
+            try {
+                while (rs.next()) {
+                    snapper.add(rs.getInt(1), (Geometry) rs.getObject(2));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+        snapper.snap();
+        final int nullEdges = snapper.getNullEndpointCount();
+        if (nullEdges > 0) {
+            throw nullEdgeEndpointsError(nullEdges);
+        }
+        if (orientBySlope) {
+            LOGGER.info("Orienting edges by slope...");
+            snapper.orientBySlope();
+        }
+        LOGGER.info("Creating the nodes and edges tables...");
+        final Statement createSt = connection.createStatement();
+        try {
+            createSt.execute("CREATE TABLE " + nodesName + "(NODE_ID SERIAL PRIMARY KEY, THE_GEOM POINT)");
+            createSt.execute("CREATE TABLE " + edgesName + "(EDGE_ID INT, START_NODE INT, END_NODE INT)");
+        } finally {
+            createSt.close();
+        }
+        final GeometryFactory factory = new GeometryFactory();
+        final PreparedStatement nodeSt = connection.prepareStatement("INSERT INTO " + nodesName + " VALUES(?, ?)");
+        try {
+            for (int node = 1; node <= snapper.getNodeCount(); node++) {
+                final Point point = factory.createPoint(snapper.getNodeCoordinate(node));
+                point.setSRID(srid);
+                nodeSt.setInt(1, node);
+                nodeSt.setObject(2, point);
+                nodeSt.addBatch();
+                if (node % BATCH_SIZE == 0) {
+                    nodeSt.executeBatch();
+                }
+            }
+            nodeSt.executeBatch();
+        } finally {
+            nodeSt.close();
+        }
+        final Statement indexSt = connection.createStatement();
+        try {
+            indexSt.execute("CREATE SPATIAL INDEX ON " + nodesName + "(THE_GEOM)");
+        } finally {
+            indexSt.close();
+        }
+        final PreparedStatement edgeSt = connection.prepareStatement("INSERT INTO " + edgesName + " VALUES(?, ?, ?)");
+        try {
+            for (int edge = 0; edge < snapper.getEdgeCount(); edge++) {
+                edgeSt.setInt(1, snapper.getEdgeId(edge));
+                edgeSt.setInt(2, snapper.getStartNode(edge));
+                edgeSt.setInt(3, snapper.getEndNode(edge));
+                edgeSt.addBatch();
+                if ((edge + 1) % BATCH_SIZE == 0) {
+                    edgeSt.executeBatch();
+                }
+            }
+            edgeSt.executeBatch();
+        } finally {
+            edgeSt.close();
+        }
+        final Statement edgesIndexSt = connection.createStatement();
+        try {
+            edgesIndexSt.execute("CREATE INDEX ON " + edgesName + "(EDGE_ID)");
+        } finally {
+            edgesIndexSt.close();
+        }
+    }
+
+    static void checkGeometryType(Connection connection,
             TableLocation tableName,
             int spatialFieldIndex) throws SQLException {
         final String fieldName
@@ -308,7 +415,7 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
      * @return Spatial field index and its name
      * @throws SQLException
      */
-    private static Object[] getSpatialFieldIndexAndName(Connection connection,
+    static Object[] getSpatialFieldIndexAndName(Connection connection,
                                             TableLocation tableName,
                                             String spatialFieldName) throws SQLException {
         // Find the name of the first geometry column if not provided by the user.
@@ -506,7 +613,7 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
     }
 
     /**
-     * Create the edges table.
+     * Create the edges table and index its edge ids.
      */
     private static void edgesTable(Statement st,
                                    TableLocation nodesName,
@@ -553,6 +660,7 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
                     "AND " + nodesName + ".THE_GEOM="+ COORDS_TABLE+".END_POINT LIMIT 1) END_NODE " +
                     "FROM "+ COORDS_TABLE+";");
         }
+        st.execute("CREATE INDEX ON " + edgesName + "(EDGE_ID);");
     }
 
     /**
@@ -583,12 +691,16 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
             nullEdges.next();
             final int n = nullEdges.getInt(1);
             if (n > 0) {
-                String msg = "There " + (n == 1 ? "is one edge " : "are " + n + " edges ");
-                throw new IllegalStateException(msg + "with a null start node or end node. " +
-                        "Try using a slightly smaller tolerance.");
+                throw nullEdgeEndpointsError(n);
             }
         } finally {
             nullEdges.close();
         }
     }
+
+    private static IllegalStateException nullEdgeEndpointsError(int n) {
+        String msg = "There " + (n == 1 ? "is one edge " : "are " + n + " edges ");
+        return new IllegalStateException(msg + "with a null start node or end node. " +
+                "Try using a slightly smaller tolerance.");
+    }
 }
@@ -0,0 +1,511 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.topology;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.h2gis.functions.spatial.topology.ST_Graph.EDGES_SUFFIX;
+import static org.h2gis.functions.spatial.topology.ST_Graph.NODES_SUFFIX;
+
+/**
+ * Update the nodes and edges tables produced by {@link ST_Graph} after some
+ * rows of the input table have been inserted, modified or deleted. Only the
+ * edges of the given primary keys are updated, their endpoints are snapped to
+ * the existing nodes found with the spatial index of the nodes table, new
+ * nodes are created for the endpoints that are not snapped.
+ */
+public class ST_GraphUpdate extends AbstractFunction implements ScalarFunction {
+
+    // Number of keys given to each query
+    private static final int KEY_BATCH_SIZE = 128;
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_GraphUpdate.class);
+    public static final String NOT_RUN_ERROR = "ST_Graph has not been called on table ";
+
+    public static final String REMARKS =
+            "ST_GraphUpdate updates the nodes and edges tables produced by ST_Graph after\n" +
+            "rows of the input table have been inserted, modified or deleted, without\n" +
+            "building the whole graph again. Signatures:\n" +
+            "* `ST_GraphUpdate('input', keys)`\n" +
+            "* `ST_GraphUpdate('input', keys, 'geom')`\n" +
+            "* `ST_GraphUpdate('input', keys, 'geom', tolerance)`\n" +
+            "* `ST_GraphUpdate('input', keys, 'geom', tolerance, orientBySlope)`\n" +
+            "\n" +
+            "where\n" +
+            "* `keys` = Primary key of the changed row, comma-separated primary keys\n" +
+            "  ('1, 5, 7') or name of a table whose first column holds the primary keys\n" +
+            "* `geom`, `tolerance` and `orientBySlope` must be the values given to ST_Graph.\n" +
+            "\n" +
+            "The edges of the deleted rows are removed. The first and last coordinates of\n" +
+            "the other rows are snapped to the closest node within the tolerance, a new\n" +
+            "node is created if there is none. The nodes that are no longer used by any\n" +
+            "edge are kept.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphUpdate() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "updateGraph";
+    }
+
+    /**
+     * Update the graph of the first geometry column of the input table.
+     *
+     * @param connection Connection
+     * @param inputTable Input table
+     * @param keys       Primary key, comma-separated primary keys or table of
+     *                   primary keys of the changed rows
+     * @return true if the graph has been updated
+     * @throws SQLException
+     */
+    public static boolean updateGraph(Connection connection,
+                                      String inputTable,
+                                      Value keys) throws SQLException {
+        return updateGraph(connection, inputTable, keys, null);
+    }
+
+    /**
+     * Update the graph of the given geometry column of the input table.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param keys             Primary key, comma-separated primary keys or
+     *                         table of primary keys of the changed rows
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @return true if the graph has been updated
+     * @throws SQLException
+     */
+    public static boolean updateGraph(Connection connection,
+                                      String inputTable,
+                                      Value keys,
+                                      String spatialFieldName) throws SQLException {
+        return updateGraph(connection, inputTable, keys, spatialFieldName, 0.0);
+    }
+
+    /**
+     * Update the graph built with the given tolerance.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param keys             Primary key, comma-separated primary keys or
+     *                         table of primary keys of the changed rows
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @param tolerance        Tolerance given to ST_Graph
+     * @return true if the graph has been updated
+     * @throws SQLException
+     */
+    public static boolean updateGraph(Connection connection,
+                                      String inputTable,
+                                      Value keys,
+                                      String spatialFieldName,
+                                      double tolerance) throws SQLException {
+        return updateGraph(connection, inputTable, keys, spatialFieldName, tolerance, false);
+    }
+
+    /**
+     * Update the graph built with the given tolerance and orientation.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param keys             Primary key, comma-separated primary keys or
+     *                         table of primary keys of the changed rows
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @param tolerance        Tolerance given to ST_Graph
+     * @param orientBySlope    True if the edges are oriented by the z-value of
+     *                         their first and last coordinates (decreasing)
+     * @return true if the graph has been updated
+     * @throws SQLException
+     */
+    public static boolean updateGraph(Connection connection,
+                                      String inputTable,
+                                      Value keys,
+                                      String spatialFieldName,
+                                      double tolerance,
+                                      boolean orientBySlope) throws SQLException {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Only positive tolerances are allowed.");
+        }
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODES_SUFFIX);
+        final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGES_SUFFIX);
+        if (!JDBCUtilities.tableExists(connection, nodesName.getTable()) ||
+                !JDBCUtilities.tableExists(connection, edgesName.getTable())) {
+            throw new IllegalArgumentException(NOT_RUN_ERROR + tableName.getTable());
+        }
+        final int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, tableName.getTable());
+        if (pkIndex == 0) {
+            throw new IllegalStateException("Table " + tableName.getTable()
+                    + " must contain a single integer primary key.");
+        }
+        final DatabaseMetaData md = connection.getMetaData();
+        final String pkColName = JDBCUtilities.getFieldName(md, tableName.getTable(), pkIndex);
+        final Object[] spatialFieldIndexAndName =
+                ST_Graph.getSpatialFieldIndexAndName(connection, tableName, spatialFieldName);
+        final int spatialFieldIndex = (int) spatialFieldIndexAndName[1];
+        ST_Graph.checkGeometryType(connection, tableName, spatialFieldIndex);
+        final String geomCol = JDBCUtilities.getFieldName(md, tableName.getTable(), spatialFieldIndex);
+        final int srid = SFSUtilities.getSRID(connection, tableName, (String) spatialFieldIndexAndName[0]);
+        final int[] changedKeys = parseKeys(connection, keys);
+        createNodesIndex(connection, nodesName);
+        createEdgesIndex(connection, edgesName);
+
+        LOGGER.info("Updating " + changedKeys.length + " edges...");
+        final boolean previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            final NodeFinder nodeFinder = new NodeFinder(connection, nodesName, tolerance, srid);
+            try {
+                for (int from = 0; from < changedKeys.length; from += KEY_BATCH_SIZE) {
+                    final int[] batch = Arrays.copyOfRange(changedKeys, from,
+                            Math.min(changedKeys.length, from + KEY_BATCH_SIZE));
+                    updateEdges(connection, tableName, edgesName, pkColName, geomCol, batch, nodeFinder,
+                            orientBySlope);
+                }
+            } finally {
+                nodeFinder.close();
+            }
+            connection.commit();
+            // Restarting the identity is a DDL statement, it is run once the
+            // changes are committed
+            nodeFinder.restartNodeIds(connection);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } catch (RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        return true;
+    }
+
+    /**
+     * Replace the edges of the given primary keys.
+     */
+    private static void updateEdges(Connection connection,
+                                    TableLocation tableName,
+                                    TableLocation edgesName,
+                                    String pkCol,
+                                    String geomCol,
+                                    int[] keys,
+                                    NodeFinder nodeFinder,
+                                    boolean orientBySlope) throws SQLException {
+        final String inList = getInList(keys.length);
+        final PreparedStatement deleteSt =
+                connection.prepareStatement("DELETE FROM " + edgesName + " WHERE EDGE_ID IN " + inList);
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                deleteSt.setInt(i + 1, keys[i]);
+            }
+            deleteSt.executeUpdate();
+        } finally {
+            deleteSt.close();
+        }
+        final PreparedStatement selectSt = connection.prepareStatement(
+                "SELECT " + pkCol + ", " + geomCol + " FROM " + tableName + " WHERE " + pkCol + " IN " + inList);
+        final PreparedStatement insertSt =
+                connection.prepareStatement("INSERT INTO " + edgesName + " VALUES(?, ?, ?)");
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                selectSt.setInt(i + 1, keys[i]);
+            }
+            // Rows that are not found have been deleted
+            final ResultSet rs = selectSt.executeQuery();
+            try {
+                while (rs.next()) {
+                    final int edgeId = rs.getInt(1);
+                    final Geometry geometry = (Geometry) rs.getObject(2);
+                    if (geometry == null || geometry.isEmpty()) {
+                        throw new IllegalStateException("The edge " + edgeId + " has no first and last coordinates.");
+                    }
+                    final Point startNode = nodeFinder.getNode(NodeSnapper.getFirstCoordinate(geometry));
+                    final Point endNode = nodeFinder.getNode(NodeSnapper.getLastCoordinate(geometry));
+                    insertSt.setInt(1, edgeId);
+                    // Same orientation as ST_Graph#orientBySlope
+                    if (orientBySlope && startNode.getCoordinate().z < endNode.getCoordinate().z) {
+                        insertSt.setInt(2, nodeFinder.getNodeId(endNode));
+                        insertSt.setInt(3, nodeFinder.getNodeId(startNode));
+                    } else {
+                        insertSt.setInt(2, nodeFinder.getNodeId(startNode));
+                        insertSt.setInt(3, nodeFinder.getNodeId(endNode));
+                    }
+                    insertSt.addBatch();
+                }
+            } finally {
+                rs.close();
+            }
+            insertSt.executeBatch();
+        } finally {
+            selectSt.close();
+            insertSt.close();
+        }
+    }
+
+    private static String getInList(int count) {
+        final StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Create a spatial index on the nodes table if there is none, so that the
+     * nodes near the endpoints are found without reading the whole table.
+     */
+    private static void createNodesIndex(Connection connection, TableLocation nodesName) throws SQLException {
+        final Statement st = connection.createStatement();
+        try {
+            if (JDBCUtilities.isH2DataBase(connection.getMetaData())) {
+                final PreparedStatement indexSt = connection.prepareStatement(
+                        "SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? " +
+                        "AND COLUMN_NAME = 'THE_GEOM' AND INDEX_TYPE_NAME = 'SPATIAL INDEX'");
+                final boolean indexed;
+                try {
+                    indexSt.setString(1, nodesName.getSchema("PUBLIC"));
+                    indexSt.setString(2, nodesName.getTable());
+                    final ResultSet rs = indexSt.executeQuery();
+                    try {
+                        indexed = rs.next() && rs.getInt(1) > 0;
+                    } finally {
+                        rs.close();
+                    }
+                } finally {
+                    indexSt.close();
+                }
+                if (!indexed) {
+                    LOGGER.info("Creating the spatial index of the nodes table...");
+                    st.execute("CREATE SPATIAL INDEX ON " + nodesName + "(THE_GEOM)");
+                }
+            } else {
+                st.execute("CREATE INDEX IF NOT EXISTS " +
+                        TableLocation.quoteIdentifier(nodesName.getTable() + "_THE_GEOM_GIST", false) +
+                        " ON " + nodesName + " USING GIST(THE_GEOM)");
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * Create an index on the edge ids of the edges table if there is none,
+     * so that the edges of each batch of keys are deleted without reading the
+     * whole table.
+     */
+    private static void createEdgesIndex(Connection connection, TableLocation edgesName) throws SQLException {
+        if (!JDBCUtilities.isIndexed(connection, edgesName.toString(), "EDGE_ID")) {
+            LOGGER.info("Creating the index of the edge ids...");
+            final Statement st = connection.createStatement();
+            try {
+                st.execute("CREATE INDEX ON " + edgesName + "(EDGE_ID)");
+            } finally {
+                st.close();
+            }
+        }
+    }
+
+    /**
+     * Parse the primary keys of the changed rows.
+     *
+     * @return Sorted and distinct primary keys
+     */
+    private static int[] parseKeys(Connection connection, Value keys) throws SQLException {
+        if (keys instanceof ValueInt) {
+            return new int[]{keys.getInt()};
+        }
+        final String string = keys.getString();
+        final String[] parts = string.split(",");
+        int[] array = new int[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                array[i] = Integer.parseInt(parts[i].trim());
+            }
+        } catch (NumberFormatException ex) {
+            // Not a list of keys, read the first column of the keys table
+            final TableLocation keysTable = TableUtilities.parseInputTable(connection, string);
+            final List<Integer> ids = new ArrayList<Integer>();
+            final Statement st = connection.createStatement();
+            try {
+                final ResultSet rs = st.executeQuery("SELECT * FROM " + keysTable);
+                try {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                st.close();
+            }
+            array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+        }
+        Arrays.sort(array);
+        int count = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (i == 0 || array[i] != array[i - 1]) {
+                array[count++] = array[i];
+            }
+        }
+        return Arrays.copyOf(array, count);
+    }
+
+    /**
+     * Find or create the node of an endpoint, with the same snapping distance
+     * as {@link NodeSnapper}.
+     */
+    private static class NodeFinder {
+        private final PreparedStatement findSt;
+        private final PreparedStatement insertSt;
+        private final GeometryFactory factory = new GeometryFactory();
+        private final TableLocation nodesName;
+        private final double distance;
+        private final int srid;
+        private final int firstNodeId;
+        private int nextNodeId;
+
+        private NodeFinder(Connection connection, TableLocation nodesName, double tolerance, int srid)
+                throws SQLException {
+            this.nodesName = nodesName;
+            this.distance = 2 * tolerance;
+            this.srid = srid;
+            final Statement st = connection.createStatement();
+            try {
+                final ResultSet rs = st.executeQuery("SELECT MAX(NODE_ID) FROM " + nodesName);
+                try {
+                    rs.next();
+                    nextNodeId = rs.getInt(1) + 1;
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                st.close();
+            }
+            firstNodeId = nextNodeId;
+            findSt = connection.prepareStatement("SELECT NODE_ID, THE_GEOM FROM " + nodesName +
+                    " WHERE THE_GEOM && ?");
+            insertSt = connection.prepareStatement("INSERT INTO " + nodesName + "(NODE_ID, THE_GEOM) VALUES(?, ?)");
+        }
+
+        /**
+         * @param coordinate Endpoint
+         * @return Closest node within the snapping distance, created if there
+         * is none. The node id is stored as user data.
+         */
+        private Point getNode(Coordinate coordinate) throws SQLException {
+            final Envelope envelope = new Envelope(coordinate);
+            envelope.expandBy(distance);
+            final Geometry area = factory.toGeometry(envelope);
+            area.setSRID(srid);
+            findSt.setObject(1, area);
+            Point closest = null;
+            int closestId = 0;
+            double closestDistance = Double.MAX_VALUE;
+            final ResultSet rs = findSt.executeQuery();
+            try {
+                while (rs.next()) {
+                    final int nodeId = rs.getInt(1);
+                    final Point node = (Point) rs.getObject(2);
+                    final double d = node.getCoordinate().distance(coordinate);
+                    if (d < closestDistance || (d == closestDistance && nodeId < closestId)) {
+                        closest = node;
+                        closestId = nodeId;
+                        closestDistance = d;
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+            if (closest == null) {
+                closest = factory.createPoint(coordinate);
+                closest.setSRID(srid);
+                closestId = nextNodeId++;
+                insertSt.setInt(1, closestId);
+                insertSt.setObject(2, closest);
+                insertSt.executeUpdate();
+            }
+            closest.setUserData(closestId);
+            return closest;
+        }
+
+        private int getNodeId(Point node) {
+            return (Integer) node.getUserData();
+        }
+
+        private void close() throws SQLException {
+            findSt.close();
+            insertSt.close();
+        }
+
+        /**
+         * The new nodes are given explicit ids after the greatest node id,
+         * move the NODE_ID sequence after them so that the rows inserted
+         * later with a default id do not collide with these nodes.
+         */
+        private void restartNodeIds(Connection connection) throws SQLException {
+            if (nextNodeId == firstNodeId) {
+                return;
+            }
+            final Statement st = connection.createStatement();
+            try {
+                if (JDBCUtilities.isH2DataBase(connection.getMetaData())) {
+                    st.execute("ALTER TABLE " + nodesName + " ALTER COLUMN NODE_ID RESTART WITH " + nextNodeId);
+                } else {
+                    final String nodesReference = nodesName.toString(false).replace("'", "''");
+                    st.execute("SELECT setval(pg_get_serial_sequence('" + nodesReference + "', 'node_id'), "
+                            + (nextNodeId - 1) + ")");
+                }
+            } finally {
+                st.close();
+            }
+        }
+    }
+}
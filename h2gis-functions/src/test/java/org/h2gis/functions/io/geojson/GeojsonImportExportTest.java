@@ -23,8 +23,13 @@ package org.h2gis.functions.io.geojson;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.io.WKTReader;
 
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.util.zip.GZIPInputStream;
 
+import org.h2.util.IOUtils;
 import org.h2.util.StringUtils;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
@@ -53,6 +58,8 @@ public class GeojsonImportExportTest {
         H2GISFunctions.registerFunction(connection.createStatement(), new GeoJsonWrite(), "");
         H2GISFunctions.registerFunction(connection.createStatement(), new GeoJsonRead(), "");
         H2GISFunctions.registerFunction(connection.createStatement(), new ST_GeomFromGeoJSON(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new GeoJsonSeqWrite(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new GeoJsonSeqRead(), "");
         
     }
 
@@ -741,4 +748,141 @@ public class GeojsonImportExportTest {
         stat.close();
     }
 
+    @Test
+    public void testReadSinglePass() throws Exception {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS TABLE_SINGLE_PASS_READ");
+        // The table is created from the first two features, then the next features add and widen columns
+        stat.execute("CALL GeoJsonRead("+ StringUtils.quoteStringSQL(GeojsonImportExportTest.class.getResource("singlePass.geojson").getPath()) + ", 'TABLE_SINGLE_PASS_READ', 2);");
+        ResultSet res = stat.executeQuery("SELECT * FROM TABLE_SINGLE_PASS_READ;");
+        ResultSetMetaData rsmd = res.getMetaData();
+        assertEquals(4, rsmd.getColumnCount());
+        assertEquals(Types.DOUBLE, rsmd.getColumnType(2));
+        assertEquals(Types.VARCHAR, rsmd.getColumnType(3));
+        assertEquals("NAME", rsmd.getColumnName(4));
+        res.next();
+        assertTrue(((Geometry) res.getObject(1)).equals(WKTREADER.read("POINT(1 2)")));
+        assertEquals(1, res.getDouble(2), 0);
+        assertEquals("TRUE", res.getString(3).toUpperCase());
+        assertNull(res.getObject(4));
+        res.next();
+        assertEquals(2, res.getDouble(2), 0);
+        assertEquals("FALSE", res.getString(3).toUpperCase());
+        res.next();
+        assertEquals(3.5, res.getDouble(2), 0);
+        assertEquals("maybe", res.getString(3));
+        assertEquals("c", res.getString(4));
+        res.next();
+        assertTrue(((Geometry) res.getObject(1)).equals(WKTREADER.read("LINESTRING(5 6, 7 8)")));
+        assertEquals(4, res.getDouble(2), 0);
+        assertNull(res.getObject(3));
+        assertEquals("null", res.getString(4));
+        assertFalse(res.next());
+        res.close();
+        stat.execute("DROP TABLE IF EXISTS TABLE_SINGLE_PASS_READ");
+        stat.close();
+    }
+
+    @Test
+    public void testWriteReadGeoJsonSeq() throws Exception {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS TABLE_SEQ, TABLE_SEQ_READ");
+        stat.execute("create table TABLE_SEQ(id int, the_geom GEOMETRY, name varchar)");
+        for (int i = 0; i < 50; i++) {
+            stat.execute("insert into TABLE_SEQ values(" + i + ", 'POINT(" + i + " 2)', 'p" + i + "')");
+        }
+        stat.execute("insert into TABLE_SEQ values(50, 'LINESTRING(1 2, 5 3)', null)");
+        for (String extension : new String[]{"geojsonl", "geojsons"}) {
+            stat.execute("CALL GeoJsonSeqWrite('target/points_seq." + extension + "', 'TABLE_SEQ');");
+            // Small batches and several threads to insert features parsed by different threads
+            stat.execute("CALL GeoJsonSeqRead('target/points_seq." + extension + "', 'TABLE_SEQ_READ', 4, 10);");
+            ResultSet res = stat.executeQuery("SELECT * FROM TABLE_SEQ_READ ORDER BY ID;");
+            for (int i = 0; i < 50; i++) {
+                assertTrue(res.next());
+                assertTrue(((Geometry) res.getObject(1)).equals(WKTREADER.read("POINT(" + i + " 2)")));
+                assertEquals(i, res.getInt("ID"));
+                assertEquals("p" + i, res.getString("NAME"));
+            }
+            assertTrue(res.next());
+            assertTrue(((Geometry) res.getObject(1)).equals(WKTREADER.read("LINESTRING(1 2, 5 3)")));
+            assertNull(res.getString("NAME"));
+            assertFalse(res.next());
+            res.close();
+            stat.execute("DROP TABLE TABLE_SEQ_READ");
+        }
+        stat.execute("DROP TABLE IF EXISTS TABLE_SEQ");
+        stat.close();
+    }
+
+    @Test
+    public void testGeojsonMaxDecimalDigits() throws Exception {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS TABLE_LINE_DECIMALS");
+        stat.execute("create table TABLE_LINE_DECIMALS(the_geom LINESTRING)");
+        stat.execute("insert into TABLE_LINE_DECIMALS values('LINESTRING(1.123456 2.5, 3 -4.0049)')");
+        ResultSet res = stat.executeQuery("SELECT ST_AsGeoJSON(the_geom), ST_AsGeoJSON(the_geom, 2), "
+                + "ST_AsGeoJSON(the_geom, 0) from TABLE_LINE_DECIMALS;");
+        res.next();
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[1.123456,2.5],[3.0,-4.0049]]}", res.getString(1));
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[1.12,2.5],[3,-4]]}", res.getString(2));
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[1,3],[3,-4]]}", res.getString(3));
+        res.close();
+        stat.execute("DROP TABLE IF EXISTS TABLE_LINE_DECIMALS");
+        stat.close();
+    }
+
+    @Test
+    public void testWriteGeoJsonParallelGzip() throws Exception {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL");
+        stat.execute("create table TABLE_PARALLEL(id int, the_geom GEOMETRY, name varchar)");
+        // More rows than a batch of the encoding pipeline
+        stat.execute("insert into TABLE_PARALLEL select x, 'POINT(' || x || ' 2)', 'p' || x "
+                + "from system_range(1, 2500)");
+        stat.execute("CALL GeoJsonWrite('target/points_parallel_1.geojson', 'TABLE_PARALLEL', 1);");
+        stat.execute("CALL GeoJsonWrite('target/points_parallel_4.geojson', 'TABLE_PARALLEL', 4);");
+        stat.execute("CALL GeoJsonWrite('target/points_parallel_4.geojson.gz', 'TABLE_PARALLEL', 4);");
+        byte[] expected = Files.readAllBytes(Paths.get("target/points_parallel_1.geojson"));
+        assertArrayEquals(expected, Files.readAllBytes(Paths.get("target/points_parallel_4.geojson")));
+        assertArrayEquals(expected, IOUtils.readBytesAndClose(
+                new GZIPInputStream(new FileInputStream("target/points_parallel_4.geojson.gz")), -1));
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL_READ");
+        stat.execute("CALL GeoJsonRead('target/points_parallel_4.geojson', 'TABLE_PARALLEL_READ');");
+        ResultSet res = stat.executeQuery("SELECT COUNT(*) FROM TABLE_PARALLEL_READ;");
+        assertTrue(res.next());
+        assertEquals(2500, res.getInt(1));
+        res.close();
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL, TABLE_PARALLEL_READ");
+        stat.close();
+    }
+
+    @Test
+    public void testWriteGeoJsonSeqParallel() throws Exception {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL");
+        stat.execute("create table TABLE_PARALLEL(id int, the_geom GEOMETRY, name varchar)");
+        // More rows than a batch of the encoding pipeline
+        stat.execute("insert into TABLE_PARALLEL select x, 'POINT(' || x || ' 2)', 'p' || x "
+                + "from system_range(1, 2500)");
+        for (String extension : new String[]{"geojsonl", "geojsons"}) {
+            stat.execute("CALL GeoJsonSeqWrite('target/points_seq_parallel_1." + extension + "', 'TABLE_PARALLEL', 1);");
+            stat.execute("CALL GeoJsonSeqWrite('target/points_seq_parallel_4." + extension + "', 'TABLE_PARALLEL', 4);");
+            byte[] expected = Files.readAllBytes(Paths.get("target/points_seq_parallel_1." + extension));
+            assertArrayEquals(expected, Files.readAllBytes(Paths.get("target/points_seq_parallel_4." + extension)));
+            // Each feature of a GeoJSON text sequence is preceded by a record separator
+            int separators = 0;
+            for (byte b : expected) {
+                if (b == 0x1E) {
+                    separators++;
+                }
+            }
+            assertEquals("geojsons".equals(extension) ? 2500 : 0, separators);
+            if ("geojsons".equals(extension)) {
+                assertEquals(0x1E, expected[0]);
+            }
+        }
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL");
+        stat.close();
+    }
+
 }
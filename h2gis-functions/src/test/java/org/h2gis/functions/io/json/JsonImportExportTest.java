@@ -75,5 +75,21 @@ public class JsonImportExportTest {
         Assert.assertEquals("{\"IDAREA\":1,\"THE_GEOM\":\"POINT (1 2)\",\"CODES\":[10000,20000,30000,10000]}",result);
         stat.close();
     }
+
+    @Test
+    public void testWriteJsonParallel() throws Exception {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL");
+        stat.execute("create table TABLE_PARALLEL(id int primary key, the_geom GEOMETRY, name varchar)");
+        // More rows than a batch of the encoding pipeline
+        stat.execute("insert into TABLE_PARALLEL select x, 'POINT(' || x || ' 2)', 'p' || x "
+                + "from system_range(1, 2500)");
+        stat.execute("CALL JSONWrite('target/result_parallel_1.json', 'TABLE_PARALLEL', 1);");
+        stat.execute("CALL JSONWrite('target/result_parallel_4.json', 'TABLE_PARALLEL', 4);");
+        Assert.assertArrayEquals(Files.readAllBytes(Paths.get("target/result_parallel_1.json")),
+                Files.readAllBytes(Paths.get("target/result_parallel_4.json")));
+        stat.execute("DROP TABLE IF EXISTS TABLE_PARALLEL");
+        stat.close();
+    }
     
 }
@@ -23,12 +23,17 @@ package org.h2gis.functions.io.kml;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.io.WKTReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.zip.ZipInputStream;
 import org.h2.jdbc.JdbcSQLException;
+import org.h2.util.IOUtils;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.junit.AfterClass;
@@ -116,6 +121,40 @@ public class KMLImporterExporterTest {
         }
     }
 
+    @Test
+    public void exportKMLParallel() throws Exception {
+        Statement stat = connection.createStatement();
+        try {
+            stat.execute("DROP TABLE IF EXISTS KML_PARALLEL");
+            stat.execute("create table KML_PARALLEL(id int primary key, the_geom POINT, name varchar)");
+            // More rows than a batch of the encoding pipeline
+            stat.execute("insert into KML_PARALLEL select x, ST_Geomfromtext('POINT (' || (x / 1000.0) || ' 47)', 4326), "
+                    + "'p' || x from system_range(1, 2500)");
+            stat.execute("CALL KMLWrite('target/kml_parallel_1.kml', 'KML_PARALLEL', 1)");
+            stat.execute("CALL KMLWrite('target/kml_parallel_4.kml', 'KML_PARALLEL', 4)");
+            byte[] expected = Files.readAllBytes(Paths.get("target/kml_parallel_1.kml"));
+            assertArrayEquals(expected, Files.readAllBytes(Paths.get("target/kml_parallel_4.kml")));
+            // The time of the zip entry changes, compare the KML documents of the KMZ files
+            stat.execute("CALL KMLWrite('target/kml_parallel_1.kmz', 'KML_PARALLEL', 1)");
+            stat.execute("CALL KMLWrite('target/kml_parallel_4.kmz', 'KML_PARALLEL', 4)");
+            byte[] expectedKmz = readKMZDocument("target/kml_parallel_1.kmz");
+            assertArrayEquals(expectedKmz, readKMZDocument("target/kml_parallel_4.kmz"));
+            stat.execute("DROP TABLE IF EXISTS KML_PARALLEL");
+        } finally {
+            stat.close();
+        }
+    }
+
+    private static byte[] readKMZDocument(String fileName) throws IOException {
+        ZipInputStream zis = new ZipInputStream(new FileInputStream(fileName));
+        try {
+            assertNotNull(zis.getNextEntry());
+            return IOUtils.readBytesAndClose(zis, -1);
+        } finally {
+            zis.close();
+        }
+    }
+
     @Test
     public void createKMLPoint() throws Exception {
         Geometry geom = WKT_READER.read("POINT(1 2)");
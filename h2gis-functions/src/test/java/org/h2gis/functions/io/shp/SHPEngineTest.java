@@ -24,7 +24,10 @@ import org.locationtech.jts.geom.Geometry;
 import org.apache.commons.io.FileUtils;
 import org.h2.util.StringUtils;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.file_table.H2SpatialTableIndex;
 import org.h2gis.functions.io.file_table.H2TableIndex;
+import org.h2gis.functions.io.shp.internal.SHPDriver;
+import org.h2gis.functions.io.utility.PackedRTree;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.utilities.GeometryTypeCodes;
@@ -109,6 +112,29 @@ public class SHPEngineTest {
         st.execute("drop table shptable");
     }
 
+    @Test
+    public void readSHPDataMemoryMappedTest() throws SQLException {
+        Statement st = connection.createStatement();
+        st.execute("drop table if exists shptable");
+        st.execute("CALL FILE_TABLE('"+SHPEngineTest.class.getResource("waternetwork.shp").getPath()+"', 'SHPTABLE', true);");
+        ResultSet rs = st.executeQuery("SELECT * FROM shptable");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt("gid"));
+        assertEquals("river",rs.getString("type_axe"));
+        assertEquals("MULTILINESTRING ((183299.71875 2425074.75, 183304.828125 2425066.75))",rs.getObject("the_geom").toString());
+        rs.close();
+        // Compare with the heap buffer read mode
+        st.execute("drop table if exists shptable_heap");
+        st.execute("CALL FILE_TABLE('"+SHPEngineTest.class.getResource("waternetwork.shp").getPath()+"', 'SHPTABLE_HEAP');");
+        rs = st.executeQuery("SELECT COUNT(*) FROM shptable a, shptable_heap b WHERE a.PK = b.PK AND " +
+                "ST_EQUALS(a.the_geom, b.the_geom) AND a.type_axe = b.type_axe AND a.gid = b.gid");
+        assertTrue(rs.next());
+        assertEquals(382, rs.getInt(1));
+        rs.close();
+        st.execute("drop table shptable_heap");
+        st.execute("drop table shptable");
+    }
+
     @Test
     public void readPartialSHPDataTest() throws SQLException {
         Statement st = connection.createStatement();
@@ -124,6 +150,46 @@ public class SHPEngineTest {
         st.execute("drop table shptable");
     }
 
+    @Test
+    public void readProjectedSHPDataTest() throws Exception {
+        SHPDriver driver = new SHPDriver();
+        driver.initDriverFromFile(new File(SHPEngineTest.class.getResource("waternetwork.shp").getPath()));
+        try {
+            // THE_GEOM, TYPE_AXE, GID, LENGTH
+            Object[] row = driver.getRow(0, new boolean[]{false, false, true, false});
+            assertEquals(4, row.length);
+            assertEquals(null, row[0]);
+            assertEquals(null, row[1]);
+            assertEquals(1, ((Number) row[2]).intValue());
+            assertEquals(null, row[3]);
+            row = driver.getRow(0, new boolean[]{true, false, false, false});
+            assertTrue(row[0] instanceof Geometry);
+            assertEquals(null, row[2]);
+        } finally {
+            driver.close();
+        }
+        Statement st = connection.createStatement();
+        st.execute("drop table if exists shptable");
+        st.execute("CALL FILE_TABLE('"+SHPEngineTest.class.getResource("waternetwork.shp").getPath()+"', 'SHPTABLE');");
+        ResultSet rs = st.executeQuery("SELECT THE_GEOM FROM SHPTABLE WHERE GID = 1");
+        try {
+            assertTrue(rs.next());
+            assertEquals("MULTILINESTRING ((183299.71875 2425074.75, 183304.828125 2425066.75))", rs.getObject(1).toString());
+            assertFalse(rs.next());
+        } finally {
+            rs.close();
+        }
+        rs = st.executeQuery("SELECT A.TYPE_AXE, B.GID FROM SHPTABLE A, SHPTABLE B WHERE A.PK = B.PK AND A.PK = 1");
+        try {
+            assertTrue(rs.next());
+            assertEquals("river", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+        } finally {
+            rs.close();
+        }
+        st.execute("drop table shptable");
+    }
+
     @Test
     public void testRowIdHiddenColumn() throws SQLException {
         Statement st = connection.createStatement();
@@ -294,7 +360,7 @@ public class SHPEngineTest {
         rs = st.executeQuery("select * from INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'SHPTABLE' and COLUMN_NAME='THE_GEOM'");
         try {
             assertTrue(rs.next());
-            assertEquals("org.h2.index.SpatialTreeIndex", rs.getString("INDEX_CLASS"));
+            assertEquals(H2SpatialTableIndex.class.getName(), rs.getString("INDEX_CLASS"));
         } finally {
             rs.close();
         }
@@ -308,6 +374,26 @@ public class SHPEngineTest {
         }
     }
 
+    @Test
+    public void testEnvelopeFilterOnTableLink() throws SQLException {
+        Statement st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS shptable");
+        st.execute("CALL FILE_TABLE("+ StringUtils.quoteStringSQL(SHPEngineTest.class.getResource("waternetwork.shp").getPath()) + ", 'shptable');");
+        // Without spatial index the envelopes of the records are used to filter the rows
+        try (ResultSet rs = st.executeQuery("EXPLAIN SELECT * FROM SHPTABLE WHERE THE_GEOM && ST_BUFFER('POINT(183541 2426015)', 15)")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getString(1).contains("SHPTABLE_ENVELOPE_INDEX_"));
+        }
+        try (ResultSet rs = st.executeQuery("SELECT PK FROM SHPTABLE WHERE THE_GEOM && ST_BUFFER('POINT(183541 2426015)', 15) ORDER BY PK")) {
+            assertTrue(rs.next());
+            assertEquals(128, rs.getLong(1));
+            assertTrue(rs.next());
+            assertEquals(326, rs.getLong(1));
+            assertFalse(rs.next());
+        }
+        st.execute("DROP TABLE IF EXISTS shptable");
+    }
+
     /**
      * Check the call of special case {@link H2TableIndex#find(org.h2.engine.Session, org.h2.result.SearchRow, org.h2.result.SearchRow)} with null at first and last
      * @throws SQLException
@@ -386,4 +472,45 @@ public class SHPEngineTest {
             assertTrue( "Expected contains PK_INDEX but result is " + rs.getString(1) , rs.getString(1).contains("PK_INDEX"));
         }
     }
+
+    @Test
+    public void linkedShpSpatialIndexFileTest() throws Exception {
+        File shpFile = new File("target/spatial_index_file/waternetwork.shp");
+        FileUtils.deleteDirectory(shpFile.getParentFile());
+        for(String extension : new String[] {"shp", "shx", "dbf"}) {
+            FileUtils.copyFile(new File(SHPEngineTest.class.getResource("waternetwork." + extension).getPath()),
+                    new File(shpFile.getParentFile(), "waternetwork." + extension));
+        }
+        File indexFile = new File(shpFile.getParentFile(), "waternetwork." + PackedRTree.FILE_EXTENSION);
+        Statement st = connection.createStatement();
+        st.execute("drop table if exists shptable");
+        st.execute("CALL FILE_TABLE('"+shpFile.getAbsolutePath()+"', 'SHPTABLE');");
+        st.execute("CREATE SPATIAL INDEX ON SHPTABLE(THE_GEOM)");
+        assertTrue(indexFile.exists());
+        try (ResultSet rs = st.executeQuery("SELECT PK FROM SHPTABLE WHERE THE_GEOM && ST_BUFFER('POINT(183541 2426015)', 15) ORDER BY PK")) {
+            assertTrue(rs.next());
+            assertEquals(128, rs.getLong(1));
+            assertTrue(rs.next());
+            assertEquals(326, rs.getLong(1));
+            assertFalse(rs.next());
+        }
+        // The index file is reused while the shape file is not modified
+        long indexLastModified = indexFile.lastModified();
+        st.execute("drop table shptable");
+        Thread.sleep(1000);
+        st.execute("CALL FILE_TABLE('"+shpFile.getAbsolutePath()+"', 'SHPTABLE');");
+        st.execute("CREATE SPATIAL INDEX ON SHPTABLE(THE_GEOM)");
+        assertEquals(indexLastModified, indexFile.lastModified());
+        st.execute("drop table shptable");
+        // The index file is rebuilt when the shape file is modified
+        assertTrue(shpFile.setLastModified(shpFile.lastModified() + 2000));
+        st.execute("CALL FILE_TABLE('"+shpFile.getAbsolutePath()+"', 'SHPTABLE');");
+        st.execute("CREATE SPATIAL INDEX ON SHPTABLE(THE_GEOM)");
+        assertNotEquals(indexLastModified, indexFile.lastModified());
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM SHPTABLE WHERE THE_GEOM && ST_BUFFER('POINT(183541 2426015)', 15)")) {
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+        }
+        st.execute("drop table shptable");
+    }
 }
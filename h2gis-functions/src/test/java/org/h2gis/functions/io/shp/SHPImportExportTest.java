@@ -142,6 +142,73 @@ public class SHPImportExportTest {
         checkSHPReadResult(st);
     }
 
+    @Test
+    public void copySHPParallelTest() throws SQLException {
+        Statement st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS WATERNETWORK, WATERNETWORK_SEQ");
+        final String path = StringUtils.quoteStringSQL(SHPEngineTest.class.getResource("waternetwork.shp").getPath());
+        st.execute("CALL SHPRead(" + path + ", 'WATERNETWORK', null, false, 4);");
+        checkSHPReadResult(st);
+        // Rows are inserted in the order of the file
+        st.execute("CALL SHPRead(" + path + ", 'WATERNETWORK_SEQ');");
+        st.execute("CALL SHPRead(" + path + ", 'WATERNETWORK', null, false, 4);");
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM WATERNETWORK A, WATERNETWORK_SEQ B WHERE A.PK = B.PK" +
+                " AND A.TYPE_AXE = B.TYPE_AXE AND A.GID = B.GID AND ST_EQUALS(A.THE_GEOM, B.THE_GEOM)");
+        try {
+            assertTrue(rs.next());
+            assertEquals(382, rs.getInt(1));
+        } finally {
+            rs.close();
+        }
+        // Without order the same rows are inserted
+        st.execute("DROP TABLE WATERNETWORK");
+        st.execute("CALL SHPRead(" + path + ", 'WATERNETWORK', null, false, 4, false);");
+        rs = st.executeQuery("SELECT COUNT(*) FROM WATERNETWORK A, WATERNETWORK_SEQ B WHERE A.GID = B.GID" +
+                " AND ST_EQUALS(A.THE_GEOM, B.THE_GEOM)");
+        try {
+            assertTrue(rs.next());
+            assertEquals(382, rs.getInt(1));
+        } finally {
+            rs.close();
+        }
+        st.execute("DROP TABLE WATERNETWORK, WATERNETWORK_SEQ");
+    }
+
+    @Test
+    public void copySHPParallelManyBatchesTest() throws SQLException {
+        Statement st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS POINTS_PARALLEL, POINTS_PARALLEL_READ");
+        // More rows than the batches kept in memory by 4 threads
+        st.execute("create table POINTS_PARALLEL(id int primary key, the_geom POINT)");
+        st.execute("insert into POINTS_PARALLEL select x, 'POINT(' || x || ' 2)' from system_range(1, 2500)");
+        st.execute("CALL SHPWrite('target/points_parallel.shp', 'POINTS_PARALLEL')");
+        // Rows are inserted in the order of the file
+        st.execute("CALL SHPRead('target/points_parallel.shp', 'POINTS_PARALLEL_READ', null, false, 4);");
+        ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(CASE WHEN PK = ID AND ST_X(THE_GEOM) = ID THEN 1 ELSE 0 END)"
+                + " FROM POINTS_PARALLEL_READ");
+        try {
+            assertTrue(rs.next());
+            assertEquals(2500, rs.getInt(1));
+            assertEquals(2500, rs.getInt(2));
+        } finally {
+            rs.close();
+        }
+        // Without order the same rows are inserted
+        st.execute("DROP TABLE POINTS_PARALLEL_READ");
+        st.execute("CALL SHPRead('target/points_parallel.shp', 'POINTS_PARALLEL_READ', null, false, 4, false);");
+        rs = st.executeQuery("SELECT COUNT(DISTINCT ID), SUM(CASE WHEN ST_X(THE_GEOM) = ID THEN 1 ELSE 0 END)"
+                + " FROM POINTS_PARALLEL_READ");
+        try {
+            assertTrue(rs.next());
+            assertEquals(2500, rs.getInt(1));
+            assertEquals(2500, rs.getInt(2));
+        } finally {
+            rs.close();
+        }
+        st.execute("DROP TABLE POINTS_PARALLEL, POINTS_PARALLEL_READ");
+        st.close();
+    }
+
     private void checkSHPReadResult(Statement st) throws SQLException {
         // Query declared Table columns
         ResultSet rs = st.executeQuery("SELECT * FROM INFORMATION_SCHEMA.COLUMNS where TABLE_NAME = 'WATERNETWORK'");
@@ -20,23 +20,38 @@
 
 package org.h2gis.functions.spatial.crs;
 
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.WKTReader;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.utilities.SFSUtilities;
 import org.junit.*;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.h2.jdbc.JdbcSQLException;
 
 import static org.h2gis.unitTest.GeometryAsserts.assertGeometryBarelyEquals;
 import static org.h2gis.unitTest.GeometryAsserts.assertGeometryEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  *
@@ -204,6 +219,121 @@ public class CRSFunctionTest {
     }
     
         
+    @Test
+    public void testCoordinateOperationCache() throws Exception {
+        CoordinateOperationCache cache = new CoordinateOperationCache(2);
+        assertNotNull(cache.getCoordinateOperation(connection, 4326, 2154));
+        assertNotNull(cache.getCoordinateOperation(connection, 4326, 2154));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // Same CRS, nothing to do and not counted
+        assertNull(cache.getCoordinateOperation(connection, 4326, 4326));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // The least recently used operation is removed
+        cache.getCoordinateOperation(connection, 27572, 4326);
+        cache.getCoordinateOperation(connection, 27572, 3857);
+        cache.getCoordinateOperation(connection, 4326, 2154);
+        assertEquals(4, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testST_TransformCacheSize() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT ST_TransformCacheSize()");
+        assertTrue(rs.next());
+        int size = rs.getInt(1);
+        assertEquals(ST_Transform.getCache().getMaximumSize(), size);
+        rs.close();
+        try {
+            rs = st.executeQuery("SELECT ST_TransformCacheSize(2)");
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            rs.close();
+            assertEquals(2, ST_Transform.getCache().getMaximumSize());
+            checkProjectedGeom("POINT(2.114551393 50.345609791)", 4326, 2154,
+                    "POINT(636890.7403226076 7027895.263553156)");
+        } finally {
+            st.execute("CALL ST_TransformCacheSize(" + size + ")");
+        }
+    }
+
+    @Test
+    public void testST_TransformCacheSizeNotAdmin() throws Exception {
+        int size = ST_Transform.getCache().getMaximumSize();
+        st.execute("CREATE USER IF NOT EXISTS CRS_READER PASSWORD 'reader'");
+        try {
+            Connection readerConnection = DriverManager.getConnection(connection.getMetaData().getURL(),
+                    "CRS_READER", "reader");
+            try {
+                Statement readerSt = readerConnection.createStatement();
+                ResultSet rs = readerSt.executeQuery("SELECT ST_TransformCacheSize()");
+                assertTrue(rs.next());
+                assertEquals(size, rs.getInt(1));
+                rs.close();
+                try {
+                    readerSt.execute("CALL ST_TransformCacheSize(1)");
+                    fail();
+                } catch (SQLException ex) {
+                    assertEquals(size, ST_Transform.getCache().getMaximumSize());
+                }
+            } finally {
+                readerConnection.close();
+            }
+        } finally {
+            st.execute("DROP USER IF EXISTS CRS_READER");
+        }
+    }
+
+    @Test
+    public void testST_TransformSequenceOperation() throws Exception {
+        Geometry geom = new WKTReader().read("POLYGON ((2.11 50.34, 2.15 51, 2.2 50.3, 2.11 50.34), " +
+                "(2.14 50.4, 2.15 50.5, 2.16 50.4, 2.14 50.4))");
+        geom.setSRID(4326);
+        Geometry result = ST_Transform.ST_Transform(connection, geom, 2154);
+        // The input geometry is not modified
+        assertEquals(4326, geom.getSRID());
+        assertEquals(2.11, geom.getCoordinate().x, 0);
+        // Same result than the transformation of each coordinate
+        Geometry expected = geom.copy();
+        expected.apply(new ST_Transform.CRSTransformFilter(ST_Transform.getCache().getCoordinateOperation(connection,
+                4326, 2154)));
+        expected.geometryChanged();
+        assertEquals(2154, result.getSRID());
+        assertTrue(expected.equalsExact(result, 1e-9));
+    }
+
+    @Test
+    public void testST_TransformConcurrent() throws Exception {
+        final GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Geometry>> results = new ArrayList<Future<Geometry>>();
+            for (int i = 0; i < 40; i++) {
+                final int targetSRID = i % 2 == 0 ? 2154 : 3857;
+                results.add(executorService.submit(new Callable<Geometry>() {
+                    @Override
+                    public Geometry call() throws Exception {
+                        return ST_Transform.ST_Transform(connection,
+                                factory.createPoint(new Coordinate(2.114551393, 50.345609791)), targetSRID);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Geometry geom = results.get(i).get();
+                if (i % 2 == 0) {
+                    assertEquals(2154, geom.getSRID());
+                    assertEquals(636890.7403226076, geom.getCoordinate().x, 1e-6);
+                    assertEquals(7027895.263553156, geom.getCoordinate().y, 1e-6);
+                } else {
+                    assertEquals(3857, geom.getSRID());
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
     private void checkProjectedGeom(String inputGeom, int inProj, int outProj, String expectedGeom) throws SQLException {
         check(compute(inputGeom, inProj, outProj), expectedGeom, outProj);
     }
@@ -27,6 +27,7 @@ import java.sql.Statement;
 import org.h2.jdbc.JdbcSQLException;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
+import org.h2gis.utilities.JDBCUtilities;
 import static org.h2gis.unitTest.GeometryAsserts.assertGeometryEquals;
 import org.junit.*;
 
@@ -124,6 +125,15 @@ public class ST_GraphTest {
         assertFalse(edgesResult.next());
         edgesResult.close();
         rs.close();
+
+        // The nodes table has a spatial index
+        ResultSet indexResult = st.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES " +
+                "WHERE TABLE_NAME = 'TEST_NODES' AND COLUMN_NAME = 'THE_GEOM' AND INDEX_TYPE_NAME = 'SPATIAL INDEX'");
+        assertTrue(indexResult.next());
+        assertEquals(1, indexResult.getInt(1));
+        indexResult.close();
+        // The edge ids are indexed
+        assertTrue(JDBCUtilities.isIndexed(connection, "TEST_EDGES", "EDGE_ID"));
     }
 
     @Test
@@ -279,6 +289,28 @@ public class ST_GraphTest {
         rs.close();
     }
 
+    @Test
+    public void test_ST_Graph_SnapAcrossCells() throws Exception {
+        // The last coordinate of each edge is 0.01 before the first coordinate
+        // of the next edge, often in another cell of the snapping grid.
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+        st.execute("CREATE TABLE test(road LINESTRING, id INT AUTO_INCREMENT PRIMARY KEY);" +
+                "INSERT INTO test(road) SELECT ST_MakeLine(ST_MakePoint(X, 0), ST_MakePoint(X + 0.99, 0)) " +
+                "FROM SYSTEM_RANGE(0, 99);");
+        ResultSet rs = st.executeQuery("SELECT ST_Graph('TEST', 'road', 0.01)");
+        assertTrue(rs.next());
+        assertTrue(rs.getBoolean(1));
+        rs.close();
+        rs = st.executeQuery("SELECT COUNT(*) FROM TEST_NODES");
+        assertTrue(rs.next());
+        assertEquals(101, rs.getInt(1));
+        rs.close();
+        rs = st.executeQuery("SELECT COUNT(*) FROM TEST_EDGES WHERE START_NODE = EDGE_ID AND END_NODE = EDGE_ID + 1");
+        assertTrue(rs.next());
+        assertEquals(100, rs.getInt(1));
+        rs.close();
+    }
+
     @Test
     public void test_ST_Graph_BigTolerance() throws Exception {
         // This test shows that the results from using a large tolerance value
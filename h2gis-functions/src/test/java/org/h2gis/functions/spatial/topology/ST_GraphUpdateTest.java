@@ -0,0 +1,182 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.topology;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.h2.jdbc.JdbcSQLException;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.h2gis.utilities.JDBCUtilities;
+import static org.h2gis.unitTest.GeometryAsserts.assertGeometryEquals;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class ST_GraphUpdateTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final String DB_NAME = "ST_GraphUpdateTest";
+
+    @BeforeClass
+    public static void tearUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase(DB_NAME, true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_Graph(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphUpdate(), "");
+    }
+
+    @Before
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+    }
+
+    @After
+    public void tearDownStatement() throws Exception {
+        st.close();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private void checkNode(ResultSet nodesResult, int nodeID, String nodeGeom) throws SQLException {
+        assertTrue(nodesResult.next());
+        assertEquals(nodeID, nodesResult.getInt("NODE_ID"));
+        assertGeometryEquals(nodeGeom, nodesResult.getBytes("THE_GEOM"));
+    }
+
+    private void checkEdge(ResultSet edgesResult, int gid, int startNode, int endNode) throws SQLException {
+        assertTrue(edgesResult.next());
+        assertEquals(gid, edgesResult.getInt("EDGE_ID"));
+        assertEquals(startNode, edgesResult.getInt("START_NODE"));
+        assertEquals(endNode, edgesResult.getInt("END_NODE"));
+    }
+
+    private void checkBoolean(ResultSet rs) throws SQLException {
+        try {
+            assertTrue(rs.next());
+            assertTrue(rs.getBoolean(1));
+            assertFalse(rs.next());
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Test
+    public void test_ST_GraphUpdate() throws Exception {
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+        st.execute("CREATE TABLE test(road LINESTRING, description VARCHAR, id INT AUTO_INCREMENT PRIMARY KEY);" +
+                "INSERT INTO test VALUES "
+                + "('LINESTRING (0 0, 1 2)', 'road1', DEFAULT),"
+                + "('LINESTRING (1 2, 2 3, 4 3)', 'road2', DEFAULT),"
+                + "('LINESTRING (4 3, 4 4, 1 4, 1 2)', 'road3', DEFAULT),"
+                + "('LINESTRING (4 3, 5 2)', 'road4', DEFAULT),"
+                + "('LINESTRING (4.05 4.1, 7 5)', 'road5', DEFAULT),"
+                + "('LINESTRING (7.1 5, 8 4)', 'road6', DEFAULT);");
+        checkBoolean(st.executeQuery("SELECT ST_Graph('TEST', 'road', 0.1, false)"));
+        // Modify, delete and insert an edge
+        st.execute("UPDATE test SET road = 'LINESTRING (4 3, 6 0)' WHERE id = 4;" +
+                "DELETE FROM test WHERE id = 6;" +
+                "INSERT INTO test VALUES ('LINESTRING (5 2, 8 4.05)', 'road7', DEFAULT);");
+        checkBoolean(st.executeQuery("SELECT ST_GraphUpdate('TEST', '4, 6, 7', 'road', 0.1)"));
+
+        // The nodes are kept, a node is added for the new endpoint.
+        ResultSet nodesResult = st.executeQuery("SELECT * FROM TEST_NODES ORDER BY NODE_ID");
+        checkNode(nodesResult, 1, "POINT (0 0)");
+        checkNode(nodesResult, 2, "POINT (1 2)");
+        checkNode(nodesResult, 3, "POINT (4 3)");
+        checkNode(nodesResult, 4, "POINT (4.05 4.1)");
+        checkNode(nodesResult, 5, "POINT (7.1 5)");
+        checkNode(nodesResult, 6, "POINT (5 2)");
+        checkNode(nodesResult, 7, "POINT (8 4)");
+        checkNode(nodesResult, 8, "POINT (6 0)");
+        assertFalse(nodesResult.next());
+        nodesResult.close();
+        // The node id sequence continues after the new node
+        st.execute("INSERT INTO TEST_NODES(THE_GEOM) VALUES ('POINT (9 9)')");
+        nodesResult = st.executeQuery("SELECT NODE_ID FROM TEST_NODES WHERE THE_GEOM = 'POINT (9 9)'");
+        assertTrue(nodesResult.next());
+        assertEquals(9, nodesResult.getInt(1));
+        nodesResult.close();
+        st.execute("DELETE FROM TEST_NODES WHERE NODE_ID = 9");
+
+        ResultSet edgesResult = st.executeQuery("SELECT * FROM TEST_EDGES ORDER BY EDGE_ID");
+        checkEdge(edgesResult, 1, 1, 2);
+        checkEdge(edgesResult, 2, 2, 3);
+        checkEdge(edgesResult, 3, 3, 2);
+        checkEdge(edgesResult, 4, 3, 8);
+        checkEdge(edgesResult, 5, 4, 5);
+        checkEdge(edgesResult, 7, 6, 7);
+        assertFalse(edgesResult.next());
+        edgesResult.close();
+    }
+
+    @Test
+    public void test_ST_GraphUpdateKeys() throws Exception {
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES;" +
+                "DROP TABLE IF EXISTS CHANGES");
+        st.execute("CREATE TABLE test(road LINESTRING, id INT AUTO_INCREMENT PRIMARY KEY);" +
+                "INSERT INTO test VALUES "
+                + "('LINESTRING (0 0, 0 2)', DEFAULT),"
+                + "('LINESTRING (1 0, 1 2)', DEFAULT);");
+        checkBoolean(st.executeQuery("SELECT ST_Graph('TEST')"));
+        // Primary key of a single row
+        st.execute("INSERT INTO test VALUES ('LINESTRING (0 2, 1 2)', DEFAULT);");
+        // ST_Graph indexes the edge ids
+        assertTrue(JDBCUtilities.isIndexed(connection, "TEST_EDGES", "EDGE_ID"));
+        checkBoolean(st.executeQuery("SELECT ST_GraphUpdate('TEST', 3)"));
+        // The edges are deleted through the index on their ids
+        assertTrue(JDBCUtilities.isIndexed(connection, "TEST_EDGES", "EDGE_ID"));
+        // Table of primary keys
+        st.execute("UPDATE test SET road = 'LINESTRING (0 0, 1 2)' WHERE id = 1;" +
+                "CREATE TABLE CHANGES(ID INT); INSERT INTO CHANGES VALUES (1);");
+        checkBoolean(st.executeQuery("SELECT ST_GraphUpdate('TEST', 'CHANGES')"));
+        ResultSet edgesResult = st.executeQuery("SELECT * FROM TEST_EDGES ORDER BY EDGE_ID");
+        checkEdge(edgesResult, 1, 1, 4);
+        checkEdge(edgesResult, 2, 2, 4);
+        checkEdge(edgesResult, 3, 3, 4);
+        assertFalse(edgesResult.next());
+        edgesResult.close();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM TEST_NODES");
+        assertTrue(rs.next());
+        assertEquals(4, rs.getInt(1));
+        rs.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_ST_GraphUpdateErrorWithoutGraph() throws Throwable {
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+        st.execute("CREATE TABLE test(road LINESTRING, id INT AUTO_INCREMENT PRIMARY KEY);" +
+                "INSERT INTO test VALUES ('LINESTRING (0 0, 0 2)', DEFAULT);");
+        try {
+            st.executeQuery("SELECT ST_GraphUpdate('TEST', 1)");
+        } catch (JdbcSQLException e) {
+            final Throwable originalCause = e.getOriginalCause();
+            assertTrue(originalCause.getMessage().equals(ST_GraphUpdate.NOT_RUN_ERROR + "TEST"));
+            throw originalCause;
+        }
+    }
+}
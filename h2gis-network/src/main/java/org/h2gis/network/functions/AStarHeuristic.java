@@ -0,0 +1,120 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+/**
+ * Estimate of the remaining weight used by {@link CSRAStar}: the straight
+ * line distance between the vertex coordinates, Euclidean for projected
+ * coordinates or great-circle for geographic coordinates.
+ *
+ * <p>The straight line distance is scaled by the lowest ratio between the
+ * weight and the straight line length of the arcs, so the estimate never
+ * exceeds the remaining weight. Computing the scale reads all the arcs of
+ * the graph, so a heuristic is computed once for a graph and its nodes
+ * table and shared by the searches of all the threads.
+ */
+public class AStarHeuristic {
+
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    private final double[] x;
+    private final double[] y;
+    private final boolean geographic;
+    // Factor applied to the straight line distance, 0 to disable the estimate
+    private final double scale;
+
+    /**
+     * Constructor
+     *
+     * @param graph      Graph
+     * @param x          X (or longitude) of each vertex index, NaN if unknown
+     * @param y          Y (or latitude) of each vertex index, NaN if unknown
+     * @param geographic True if the coordinates are longitudes and latitudes
+     *                   in degrees
+     */
+    public AStarHeuristic(CSRGraph graph, double[] x, double[] y, boolean geographic) {
+        this.x = x;
+        this.y = y;
+        this.geographic = geographic;
+        this.scale = computeScale(graph);
+    }
+
+    /**
+     * @return True if the coordinates are longitudes and latitudes
+     */
+    public boolean isGeographic() {
+        return geographic;
+    }
+
+    /**
+     * @return Factor applied to the straight line distance, 0 if the
+     * coordinates cannot be used and the search is a plain Dijkstra
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @param from Vertex index
+     * @param to   Destination vertex index
+     * @return A lower bound of the weight of the shortest path
+     */
+    public double estimate(int from, int to) {
+        return scale == 0 ? 0 : scale * straightLineDistance(from, to);
+    }
+
+    /**
+     * @return The lowest ratio between the weight and the straight line
+     * length of the arcs, or 0 if the coordinates cannot be used
+     */
+    private double computeScale(CSRGraph graph) {
+        double minRatio = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            if (Double.isNaN(x[v]) || Double.isNaN(y[v])) {
+                return 0;
+            }
+            for (int arc = graph.getFirstArc(v); arc < graph.getEndArc(v); arc++) {
+                final double length = straightLineDistance(v, graph.getTarget(arc));
+                if (length > 0) {
+                    minRatio = Math.min(minRatio, graph.getWeight(arc) / length);
+                }
+            }
+        }
+        if (Double.isInfinite(minRatio) || !(minRatio > 0)) {
+            return 0;
+        }
+        return minRatio;
+    }
+
+    private double straightLineDistance(int from, int to) {
+        if (geographic) {
+            // Haversine formula
+            final double lat1 = Math.toRadians(y[from]);
+            final double lat2 = Math.toRadians(y[to]);
+            final double sinLat = Math.sin((lat2 - lat1) / 2);
+            final double sinLon = Math.sin(Math.toRadians(x[to] - x[from]) / 2);
+            final double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+            return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+        }
+        final double dx = x[to] - x[from];
+        final double dy = y[to] - y[from];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
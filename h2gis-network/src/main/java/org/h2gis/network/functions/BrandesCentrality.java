@@ -0,0 +1,423 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Closeness and betweenness centrality of the vertices and betweenness
+ * centrality of the edges of a {@link CSRGraph}, computed with Brandes'
+ * algorithm. The results are the ones of the java-network-analyzer
+ * analyzers:
+ * <ul>
+ * <li>parallel edges are counted as distinct shortest paths, the dependency
+ * of a vertex on a predecessor vertex is accumulated once;</li>
+ * <li>betweenness values are normalized to [0-1] by their minimum and
+ * maximum;</li>
+ * <li>the closeness of a vertex is (n-1) divided by the sum of its distances
+ * to the other vertices, all the closeness values are zero if a vertex
+ * cannot reach all the other vertices.</li>
+ * </ul>
+ *
+ * <p>The sources are distributed among several threads, each thread having
+ * its own search state and accumulators, summed once all the sources have
+ * been searched. The centrality can also be estimated from a random sample
+ * of sources (pivots), the closeness values are then unknown.
+ */
+public class BrandesCentrality {
+
+    // Number of consecutive sources given to a thread at once
+    private static final int CHUNK_SIZE = 64;
+
+    private final CSRGraph graph;
+    private final CSRGraph reverse;
+    // Sorted distinct edge ids
+    private final int[] edgeIds;
+    // Edge index of each arc of the reversed graph
+    private final int[] reverseArcEdges;
+    private double[] nodeBetweenness;
+    private double[] edgeBetweenness;
+    private double[] closeness;
+
+    /**
+     * Constructor
+     *
+     * @param graph Graph
+     */
+    public BrandesCentrality(CSRGraph graph) {
+        this.graph = graph;
+        this.reverse = graph.getReverse();
+        final int arcCount = graph.getArcCount();
+        int[] ids = new int[arcCount];
+        for (int arc = 0; arc < arcCount; arc++) {
+            ids[arc] = graph.getEdgeId(arc);
+        }
+        Arrays.sort(ids);
+        int edgeCount = 0;
+        for (int i = 0; i < arcCount; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[edgeCount++] = ids[i];
+            }
+        }
+        edgeIds = Arrays.copyOf(ids, edgeCount);
+        reverseArcEdges = new int[arcCount];
+        for (int arc = 0; arc < arcCount; arc++) {
+            reverseArcEdges[arc] = Arrays.binarySearch(edgeIds, reverse.getEdgeId(arc));
+        }
+    }
+
+    /**
+     * Compute the centrality from all the sources.
+     *
+     * @param threadCount Number of threads, 1 to compute in the calling thread
+     * @throws InterruptedException
+     */
+    public void compute(int threadCount) throws InterruptedException {
+        final int[] sources = new int[graph.getVertexCount()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = i;
+        }
+        compute(sources, threadCount, true);
+    }
+
+    /**
+     * Estimate the betweenness from a random sample of sources. The
+     * closeness is not computed, see {@link #getCloseness()}.
+     *
+     * @param sampleSize  Number of sources, all the sources are used if it is
+     *                    greater than or equal to the number of vertices
+     * @param random      Random generator used to pick the sources
+     * @param threadCount Number of threads, 1 to compute in the calling thread
+     * @throws InterruptedException
+     */
+    public void computeSampled(int sampleSize, Random random, int threadCount) throws InterruptedException {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("The sample size must be at least 1");
+        }
+        final int vertexCount = graph.getVertexCount();
+        if (sampleSize >= vertexCount) {
+            compute(threadCount);
+            return;
+        }
+        // Partial Fisher-Yates shuffle
+        final int[] vertices = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            vertices[i] = i;
+        }
+        for (int i = 0; i < sampleSize; i++) {
+            final int j = i + random.nextInt(vertexCount - i);
+            final int vertex = vertices[j];
+            vertices[j] = vertices[i];
+            vertices[i] = vertex;
+        }
+        final int[] sources = Arrays.copyOf(vertices, sampleSize);
+        Arrays.sort(sources);
+        compute(sources, threadCount, false);
+    }
+
+    private void compute(int[] sources, int threadCount, boolean withCloseness) throws InterruptedException {
+        final int vertexCount = graph.getVertexCount();
+        final int chunkCount = (sources.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final int workerCount = Math.max(1, Math.min(threadCount, chunkCount));
+        final double[] sums = withCloseness ? new double[vertexCount] : null;
+        final List<Accumulator> accumulators = new ArrayList<Accumulator>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            // Chunks are given in turn to the threads, so that the result
+            // does not depend on the scheduling
+            accumulators.add(new Accumulator(sources, i, workerCount, sums));
+        }
+        if (workerCount == 1) {
+            accumulators.get(0).call();
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "ST_GraphAnalysis");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            try {
+                for (Future<Accumulator> future : executor.invokeAll(accumulators)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException ex) {
+                        if (ex.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) ex.getCause();
+                        }
+                        throw new IllegalStateException(ex.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        // Sum the accumulators in a fixed order
+        nodeBetweenness = new double[vertexCount];
+        edgeBetweenness = new double[edgeIds.length];
+        boolean connected = true;
+        for (Accumulator accumulator : accumulators) {
+            add(nodeBetweenness, accumulator.nodeBetweenness);
+            add(edgeBetweenness, accumulator.edgeBetweenness);
+            connected &= accumulator.connected;
+        }
+        normalize(nodeBetweenness);
+        normalize(edgeBetweenness);
+        if (withCloseness) {
+            closeness = new double[vertexCount];
+            if (connected) {
+                for (int v = 0; v < vertexCount; v++) {
+                    closeness[v] = sums[v] > 0 ? (vertexCount - 1) / sums[v] : 0;
+                }
+            }
+        } else {
+            closeness = null;
+        }
+    }
+
+    private static void add(double[] sum, double[] values) {
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += values[i];
+        }
+    }
+
+    private static void normalize(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        final double range = max - min;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = range > 0 ? (values[i] - min) / range : 0;
+        }
+    }
+
+    /**
+     * @return The computed graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return Normalized betweenness of each vertex index
+     */
+    public double[] getNodeBetweenness() {
+        return nodeBetweenness;
+    }
+
+    /**
+     * @return Closeness of each vertex index, null if the centrality has been
+     * estimated from a sample of sources
+     */
+    public double[] getCloseness() {
+        return closeness;
+    }
+
+    /**
+     * @return Sorted edge ids, in the order of {@link #getEdgeBetweenness()}
+     */
+    public int[] getEdgeIds() {
+        return edgeIds;
+    }
+
+    /**
+     * @return Normalized betweenness of each edge of {@link #getEdgeIds()}
+     */
+    public double[] getEdgeBetweenness() {
+        return edgeBetweenness;
+    }
+
+    /**
+     * Search state and betweenness sums of a thread.
+     */
+    private class Accumulator implements Callable<Accumulator> {
+        private final int[] sources;
+        private final int firstChunk;
+        private final int chunkStep;
+        // Sum of the distances of each source, null if not computed
+        private final double[] sums;
+        private final double[] nodeBetweenness;
+        private final double[] edgeBetweenness;
+        private boolean connected = true;
+        private final double[] distances;
+        // Number of shortest paths from the source
+        private final double[] sigma;
+        // Dependencies of the source on the vertices and on the edges
+        private final double[] nodeDelta;
+        private final double[] edgeDelta;
+        // Vertices in the order they have been settled
+        private final int[] order;
+        private final int[] positions;
+        private int orderCount;
+        // Predecessor vertex already accounted for, by vertex
+        private final int[] lastSuccessor;
+        private final VertexHeap heap;
+
+        private Accumulator(int[] sources, int firstChunk, int chunkStep, double[] sums) {
+            this.sources = sources;
+            this.firstChunk = firstChunk;
+            this.chunkStep = chunkStep;
+            this.sums = sums;
+            final int vertexCount = graph.getVertexCount();
+            nodeBetweenness = new double[vertexCount];
+            edgeBetweenness = new double[edgeIds.length];
+            distances = new double[vertexCount];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            sigma = new double[vertexCount];
+            nodeDelta = new double[vertexCount];
+            edgeDelta = new double[vertexCount];
+            order = new int[vertexCount];
+            positions = new int[vertexCount];
+            lastSuccessor = new int[vertexCount];
+            Arrays.fill(lastSuccessor, -1);
+            heap = graph.isWeighted() ? new VertexHeap(vertexCount) : null;
+        }
+
+        @Override
+        public Accumulator call() {
+            for (int chunk = firstChunk; chunk * CHUNK_SIZE < sources.length; chunk += chunkStep) {
+                final int end = Math.min(sources.length, (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return this;
+                    }
+                    search(sources[i]);
+                    accumulate(sources[i]);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Compute the distances and the number of shortest paths from the
+         * source.
+         */
+        private void search(int source) {
+            // Reset the vertices reached by the previous search
+            for (int i = 0; i < orderCount; i++) {
+                final int v = order[i];
+                distances[v] = Double.POSITIVE_INFINITY;
+                sigma[v] = 0;
+                nodeDelta[v] = 0;
+                edgeDelta[v] = 0;
+                lastSuccessor[v] = -1;
+            }
+            orderCount = 0;
+            distances[source] = 0;
+            sigma[source] = 1;
+            if (heap != null) {
+                heap.push(source, 0);
+                while (!heap.isEmpty()) {
+                    final int v = heap.pop();
+                    settle(v);
+                    final double distance = distances[v];
+                    for (int arc = graph.getFirstArc(v); arc < graph.getEndArc(v); arc++) {
+                        final int w = graph.getTarget(arc);
+                        if (w == v || (distances[w] != Double.POSITIVE_INFINITY && !heap.contains(w))) {
+                            // Self loop or settled vertex
+                            continue;
+                        }
+                        final double newDistance = distance + graph.getWeight(arc);
+                        if (newDistance < distances[w]) {
+                            distances[w] = newDistance;
+                            sigma[w] = sigma[v];
+                            heap.push(w, newDistance);
+                        } else if (newDistance == distances[w]) {
+                            sigma[w] += sigma[v];
+                        }
+                    }
+                }
+            } else {
+                // Breadth first search, the settled vertices are the queue
+                settle(source);
+                for (int head = 0; head < orderCount; head++) {
+                    final int v = order[head];
+                    final double distance = distances[v] + 1;
+                    for (int arc = graph.getFirstArc(v); arc < graph.getEndArc(v); arc++) {
+                        final int w = graph.getTarget(arc);
+                        if (distances[w] == Double.POSITIVE_INFINITY) {
+                            distances[w] = distance;
+                            settle(w);
+                        }
+                        if (distances[w] == distance) {
+                            sigma[w] += sigma[v];
+                        }
+                    }
+                }
+            }
+        }
+
+        private void settle(int v) {
+            positions[v] = orderCount;
+            order[orderCount++] = v;
+        }
+
+        /**
+         * Accumulate the dependencies of the source, from the farthest
+         * vertices to the source.
+         */
+        private void accumulate(int source) {
+            for (int i = orderCount - 1; i > 0; i--) {
+                final int w = order[i];
+                final double distance = distances[w];
+                // Predecessors are found among the sources of the arcs to w
+                for (int arc = reverse.getFirstArc(w); arc < reverse.getEndArc(w); arc++) {
+                    final int v = reverse.getTarget(arc);
+                    if (distances[v] == Double.POSITIVE_INFINITY || positions[v] >= i
+                            || distances[v] + reverse.getWeight(arc) != distance) {
+                        continue;
+                    }
+                    final double edgeDependency = sigma[v] / sigma[w] * (1 + edgeDelta[w]);
+                    edgeDelta[v] += edgeDependency;
+                    edgeBetweenness[reverseArcEdges[arc]] += edgeDependency;
+                    if (lastSuccessor[v] != w) {
+                        // Parallel arcs from v to w count once
+                        lastSuccessor[v] = w;
+                        nodeDelta[v] += sigma[v] / sigma[w] * (1 + nodeDelta[w]);
+                    }
+                }
+                nodeBetweenness[w] += nodeDelta[w];
+            }
+            if (sums != null) {
+                if (orderCount < graph.getVertexCount()) {
+                    connected = false;
+                }
+                double sum = 0;
+                for (int i = 0; i < orderCount; i++) {
+                    sum += distances[order[i]];
+                }
+                sums[source] = sum;
+            }
+        }
+    }
+}
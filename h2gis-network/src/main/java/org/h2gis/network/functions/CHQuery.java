@@ -0,0 +1,189 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path lengths in a {@link ContractionHierarchy}. A forward search
+ * goes up the hierarchy from the source and a backward search goes up the
+ * hierarchy from the destination, the shortest path goes through the vertex
+ * of highest rank where both searches meet.
+ *
+ * <p>Many-to-many queries run one backward search per destination, storing
+ * the reached vertices in buckets, then one forward search per source that
+ * reads the buckets of the vertices it reaches.
+ *
+ * <p>Not thread safe, the search state is reused between queries and only
+ * the vertices reached by the previous search are reset. Use
+ * {@link ContractionHierarchy#acquireQuery()} to reuse the queries of a
+ * hierarchy.
+ */
+public class CHQuery {
+
+    private final ContractionHierarchy hierarchy;
+    private final SearchState forward;
+    private final SearchState backward;
+    // Destinations reached from each vertex by the backward searches
+    private int[] bucketOffsets;
+    private int[] bucketDestinations;
+    private double[] bucketDistances;
+    private int destinationCount;
+
+    /**
+     * Constructor
+     *
+     * @param hierarchy Contraction hierarchy
+     */
+    public CHQuery(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        forward = new SearchState(hierarchy.getUpwardGraph());
+        backward = new SearchState(hierarchy.getDownwardGraph());
+    }
+
+    /**
+     * @return The contraction hierarchy
+     */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Compute the distance between two vertices.
+     *
+     * @param source      Source vertex index
+     * @param destination Destination vertex index
+     * @return The distance, or infinity if the destination is not reachable
+     */
+    public double oneToOne(int source, int destination) {
+        forward.init(source);
+        backward.init(destination);
+        double best = source == destination ? 0 : Double.POSITIVE_INFINITY;
+        // Each search stops once it cannot find a shorter path
+        while (true) {
+            final boolean forwardActive = !forward.heap.isEmpty() && forward.heap.peekKey() < best;
+            final boolean backwardActive = !backward.heap.isEmpty() && backward.heap.peekKey() < best;
+            if (!forwardActive && !backwardActive) {
+                return best;
+            }
+            if (forwardActive) {
+                final int vertex = forward.settleNext();
+                best = Math.min(best, forward.distances[vertex] + backward.distances[vertex]);
+            }
+            if (backwardActive) {
+                final int vertex = backward.settleNext();
+                best = Math.min(best, forward.distances[vertex] + backward.distances[vertex]);
+            }
+        }
+    }
+
+    /**
+     * Compute the distances from each source to each destination.
+     *
+     * @param sources      Source vertex indices
+     * @param destinations Destination vertex indices
+     * @return Distances indexed by source then destination, infinity for
+     * the destinations that are not reachable
+     */
+    public double[][] manyToMany(int[] sources, int[] destinations) {
+        setDestinations(destinations);
+        final double[][] distances = new double[sources.length][];
+        for (int s = 0; s < sources.length; s++) {
+            distances[s] = oneToDestinations(sources[s]);
+        }
+        return distances;
+    }
+
+    /**
+     * Run the backward searches of the destinations used by
+     * {@link #oneToDestinations(int)}.
+     *
+     * @param destinations Destination vertex indices
+     */
+    public void setDestinations(int[] destinations) {
+        // Buckets of (destination, distance) built from the backward searches
+        final int vertexCount = hierarchy.getGraph().getVertexCount();
+        int[] entryVertices = new int[Math.max(16, destinations.length)];
+        int[] entryDestinations = new int[entryVertices.length];
+        double[] entryDistances = new double[entryVertices.length];
+        int entryCount = 0;
+        for (int d = 0; d < destinations.length; d++) {
+            backward.init(destinations[d]);
+            while (!backward.heap.isEmpty()) {
+                final int vertex = backward.settleNext();
+                if (entryCount == entryVertices.length) {
+                    final int capacity = entryCount * 2;
+                    entryVertices = Arrays.copyOf(entryVertices, capacity);
+                    entryDestinations = Arrays.copyOf(entryDestinations, capacity);
+                    entryDistances = Arrays.copyOf(entryDistances, capacity);
+                }
+                entryVertices[entryCount] = vertex;
+                entryDestinations[entryCount] = d;
+                entryDistances[entryCount++] = backward.distances[vertex];
+            }
+        }
+        // Sort the entries by vertex
+        bucketOffsets = new int[vertexCount + 1];
+        for (int i = 0; i < entryCount; i++) {
+            bucketOffsets[entryVertices[i] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        bucketDestinations = new int[entryCount];
+        bucketDistances = new double[entryCount];
+        final int[] position = Arrays.copyOf(bucketOffsets, vertexCount);
+        for (int i = 0; i < entryCount; i++) {
+            final int index = position[entryVertices[i]]++;
+            bucketDestinations[index] = entryDestinations[i];
+            bucketDistances[index] = entryDistances[i];
+        }
+        destinationCount = destinations.length;
+    }
+
+    /**
+     * Compute the distances from the source to the destinations given to
+     * {@link #setDestinations(int[])}.
+     *
+     * @param source Source vertex index
+     * @return Distances in the order of the destinations, infinity for the
+     * destinations that are not reachable
+     */
+    public double[] oneToDestinations(int source) {
+        if (bucketOffsets == null) {
+            throw new IllegalStateException("The destinations have not been set");
+        }
+        final double[] distances = new double[destinationCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        forward.init(source);
+        while (!forward.heap.isEmpty()) {
+            final int vertex = forward.settleNext();
+            final double distance = forward.distances[vertex];
+            for (int i = bucketOffsets[vertex]; i < bucketOffsets[vertex + 1]; i++) {
+                final double total = distance + bucketDistances[i];
+                if (total < distances[bucketDestinations[i]]) {
+                    distances[bucketDestinations[i]] = total;
+                }
+            }
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * One-to-one shortest path search in a {@link CSRGraph} with the A*
+ * algorithm. The search is guided toward the destination by the straight
+ * line distance between the vertex coordinates, see {@link AStarHeuristic}.
+ * The estimate never exceeds the remaining weight, so the returned path is
+ * always a shortest path. If a vertex has no coordinates the estimate is not
+ * used and the search is a plain Dijkstra.
+ *
+ * <p>An instance can be reused for many searches in the same graph, only
+ * the vertices reached by the previous search are reset. It must not be
+ * used by several threads at the same time, but the heuristic can be shared.
+ */
+public class CSRAStar {
+
+    private final CSRGraph graph;
+    private final AStarHeuristic heuristic;
+    private final double[] distances;
+    private final int[] predecessorArcs;
+    private final boolean[] settled;
+    private final VertexHeap heap;
+    private final int[] reached;
+    private int reachedCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param graph      Graph
+     * @param x          X (or longitude) of each vertex index, NaN if unknown
+     * @param y          Y (or latitude) of each vertex index, NaN if unknown
+     * @param geographic True if the coordinates are longitudes and latitudes
+     *                   in degrees
+     */
+    public CSRAStar(CSRGraph graph, double[] x, double[] y, boolean geographic) {
+        this(graph, new AStarHeuristic(graph, x, y, geographic));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param graph     Graph
+     * @param heuristic Estimate computed for this graph
+     */
+    public CSRAStar(CSRGraph graph, AStarHeuristic heuristic) {
+        this.graph = graph;
+        this.heuristic = heuristic;
+        final int vertexCount = graph.getVertexCount();
+        distances = new double[vertexCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        predecessorArcs = new int[vertexCount];
+        Arrays.fill(predecessorArcs, -1);
+        settled = new boolean[vertexCount];
+        heap = new VertexHeap(vertexCount);
+        reached = new int[vertexCount];
+    }
+
+    /**
+     * @return The estimate guiding the searches
+     */
+    public AStarHeuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * Compute the shortest path from the source to the destination.
+     *
+     * @param source      Source vertex index
+     * @param destination Destination vertex index
+     * @return The shortest path, or null if the destination is not reachable
+     */
+    public CSRPath oneToOne(int source, int destination) {
+        reset();
+        update(source, 0, -1, destination);
+        while (!heap.isEmpty()) {
+            final int vertex = heap.pop();
+            if (vertex == destination) {
+                return CSRPath.fromPredecessors(graph, predecessorArcs, destination, distances[destination]);
+            }
+            settled[vertex] = true;
+            final double distance = distances[vertex];
+            for (int arc = graph.getFirstArc(vertex); arc < graph.getEndArc(vertex); arc++) {
+                final int target = graph.getTarget(arc);
+                if (settled[target]) {
+                    continue;
+                }
+                final double newDistance = distance + graph.getWeight(arc);
+                if (newDistance < distances[target]) {
+                    update(target, newDistance, arc, destination);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void update(int vertex, double distance, int arc, int destination) {
+        if (distances[vertex] == Double.POSITIVE_INFINITY) {
+            reached[reachedCount++] = vertex;
+        }
+        distances[vertex] = distance;
+        predecessorArcs[vertex] = arc;
+        heap.push(vertex, distance + heuristic.estimate(vertex, destination));
+    }
+
+    /**
+     * Reset the vertices reached by the previous search.
+     */
+    private void reset() {
+        for (int i = 0; i < reachedCount; i++) {
+            final int vertex = reached[i];
+            distances[vertex] = Double.POSITIVE_INFINITY;
+            predecessorArcs[vertex] = -1;
+            settled[vertex] = false;
+        }
+        reachedCount = 0;
+        heap.clear();
+    }
+}
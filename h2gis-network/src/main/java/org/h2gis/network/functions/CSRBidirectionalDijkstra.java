@@ -0,0 +1,125 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+/**
+ * One-to-one shortest path search in a {@link CSRGraph}, searching forward
+ * from the source and backward from the destination at the same time. The
+ * search stops when the two searches have met on the shortest path, so it
+ * settles far fewer vertices than a search from the source only.
+ *
+ * <p>An instance can be reused for many searches in the same graph, but
+ * must not be used by several threads at the same time.
+ */
+public class CSRBidirectionalDijkstra {
+
+    private final SearchState forward;
+    private final SearchState backward;
+
+    /**
+     * Constructor
+     *
+     * @param graph Graph
+     */
+    public CSRBidirectionalDijkstra(CSRGraph graph) {
+        forward = new SearchState(graph);
+        backward = new SearchState(graph.getReverse());
+    }
+
+    /**
+     * Compute the shortest path from the source to the destination.
+     *
+     * @param source      Source vertex index
+     * @param destination Destination vertex index
+     * @return The shortest path, or null if the destination is not reachable
+     */
+    public CSRPath oneToOne(int source, int destination) {
+        forward.init(source);
+        backward.init(destination);
+        double bestDistance = source == destination ? 0 : Double.POSITIVE_INFINITY;
+        int meetingVertex = source == destination ? source : -1;
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            if (forward.heap.peekKey() + backward.heap.peekKey() >= bestDistance) {
+                break;
+            }
+            // Expand the search that is the closest to its origin
+            final SearchState search = forward.heap.peekKey() <= backward.heap.peekKey() ? forward : backward;
+            final SearchState other = search == forward ? backward : forward;
+            final int vertex = search.heap.pop();
+            search.settled[vertex] = true;
+            final double distance = search.distances[vertex];
+            final CSRGraph graph = search.graph;
+            for (int arc = graph.getFirstArc(vertex); arc < graph.getEndArc(vertex); arc++) {
+                final int target = graph.getTarget(arc);
+                if (search.settled[target]) {
+                    continue;
+                }
+                final double newDistance = distance + graph.getWeight(arc);
+                if (newDistance < search.distances[target]) {
+                    search.update(target, newDistance, arc);
+                    final double pathDistance = newDistance + other.distances[target];
+                    if (pathDistance < bestDistance) {
+                        bestDistance = pathDistance;
+                        meetingVertex = target;
+                    }
+                }
+            }
+        }
+        if (meetingVertex == -1) {
+            return null;
+        }
+        return buildPath(meetingVertex, bestDistance);
+    }
+
+    /**
+     * Join the paths of the two searches at the meeting vertex.
+     */
+    private CSRPath buildPath(int meetingVertex, double length) {
+        final CSRPath toMeeting = CSRPath.fromPredecessors(forward.graph, forward.predecessorArcs,
+                meetingVertex, forward.distances[meetingVertex]);
+        final CSRGraph reverse = backward.graph;
+        int edgeCount = toMeeting.getEdgeCount();
+        for (int v = meetingVertex; backward.predecessorArcs[v] != -1;
+             v = reverse.getSource(backward.predecessorArcs[v])) {
+            edgeCount++;
+        }
+        final int[] vertexIds = new int[edgeCount + 1];
+        final int[] edgeIds = new int[edgeCount];
+        final double[] weights = new double[edgeCount];
+        int i = 0;
+        for (; i < toMeeting.getEdgeCount(); i++) {
+            vertexIds[i] = toMeeting.getVertexId(i);
+            edgeIds[i] = toMeeting.getEdgeId(i);
+            weights[i] = toMeeting.getWeight(i);
+        }
+        int v = meetingVertex;
+        vertexIds[i] = reverse.getVertexId(v);
+        // The reversed arcs lead from the meeting vertex to the destination
+        for (; i < edgeCount; i++) {
+            final int arc = backward.predecessorArcs[v];
+            v = reverse.getSource(arc);
+            edgeIds[i] = reverse.getEdgeId(arc);
+            weights[i] = reverse.getWeight(arc);
+            vertexIds[i + 1] = reverse.getVertexId(v);
+        }
+        return new CSRPath(vertexIds, edgeIds, weights, length);
+    }
+}
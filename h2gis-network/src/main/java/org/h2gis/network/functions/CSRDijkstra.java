@@ -0,0 +1,306 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path search in a {@link CSRGraph}. Weighted graphs are searched
+ * with Dijkstra's algorithm using a {@link VertexHeap}, unweighted graphs
+ * with a breadth first search.
+ *
+ * <p>The state of the search is kept in primitive arrays allocated once, and
+ * only the vertices reached by the previous search are reset, so an instance
+ * can be reused for many searches in the same graph. An instance must not be
+ * used by several threads at the same time, but several instances can search
+ * the same graph concurrently.
+ */
+public class CSRDijkstra {
+
+    private final CSRGraph graph;
+    private final double[] distances;
+    private final int[] predecessorArcs;
+    // Source of the shortest path to each vertex
+    private final int[] closestSources;
+    private final boolean[] settled;
+    private final VertexHeap heap;
+    private final boolean[] targets;
+    // Vertices to reset before the next search, in the order they have been
+    // reached, also used as the queue of the breadth first search
+    private final int[] reached;
+    private int reachedCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param graph Graph
+     */
+    public CSRDijkstra(CSRGraph graph) {
+        this.graph = graph;
+        final int vertexCount = graph.getVertexCount();
+        distances = new double[vertexCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        predecessorArcs = new int[vertexCount];
+        Arrays.fill(predecessorArcs, -1);
+        closestSources = new int[vertexCount];
+        Arrays.fill(closestSources, -1);
+        settled = new boolean[vertexCount];
+        heap = graph.isWeighted() ? new VertexHeap(vertexCount) : null;
+        targets = new boolean[vertexCount];
+        reached = new int[vertexCount];
+    }
+
+    /**
+     * @return The searched graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Compute the distance from the source to the target.
+     *
+     * @param source Source vertex index
+     * @param target Target vertex index
+     * @return The distance, {@link Double#POSITIVE_INFINITY} if the target is
+     * not reachable
+     */
+    public double oneToOne(int source, int target) {
+        return oneToMany(source, new int[]{target})[0];
+    }
+
+    /**
+     * Compute the distances from the source to the targets. The search stops
+     * as soon as the distances of all the targets are known.
+     *
+     * @param source     Source vertex index
+     * @param targetList Target vertex indices
+     * @return The distance to each target, {@link Double#POSITIVE_INFINITY}
+     * if the target is not reachable
+     */
+    public double[] oneToMany(int source, int[] targetList) {
+        if (targetList.length == 0) {
+            return new double[0];
+        }
+        int targetCount = 0;
+        for (int target : targetList) {
+            if (!targets[target]) {
+                targets[target] = true;
+                targetCount++;
+            }
+        }
+        try {
+            search(new int[]{source}, targetCount, Double.POSITIVE_INFINITY);
+        } finally {
+            for (int target : targetList) {
+                targets[target] = false;
+            }
+        }
+        final double[] result = new double[targetList.length];
+        for (int i = 0; i < targetList.length; i++) {
+            result[i] = distances[targetList[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Compute the distances from the source to all the vertices, read them
+     * with {@link #getDistance(int)}.
+     *
+     * @param source Source vertex index
+     */
+    public void oneToAll(int source) {
+        search(new int[]{source}, -1, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Compute the distances from the closest source to all the vertices, in
+     * a single search. Read them with {@link #getDistance(int)} and the
+     * closest source with {@link #getClosestSource(int)}.
+     *
+     * @param sources     Source vertex indices
+     * @param maxDistance Vertices farther from the sources are not reached,
+     *                    {@link Double#POSITIVE_INFINITY} to reach all the
+     *                    vertices
+     */
+    public void manyToAll(int[] sources, double maxDistance) {
+        search(sources, -1, maxDistance);
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The distance from the source of the last search,
+     * {@link Double#POSITIVE_INFINITY} if the vertex has not been reached
+     */
+    public double getDistance(int vertex) {
+        return distances[vertex];
+    }
+
+    /**
+     * @return Number of vertices reached by the last search
+     */
+    public int getReachedCount() {
+        return reachedCount;
+    }
+
+    /**
+     * @param i Index [0-{@link #getReachedCount()}[
+     * @return Vertex index of the i-th vertex reached by the last search
+     */
+    public int getReachedVertex(int i) {
+        return reached[i];
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The source of the last search closest to the vertex, -1 if the
+     * vertex has not been reached
+     */
+    public int getClosestSource(int vertex) {
+        return closestSources[vertex];
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The arc used to reach the vertex in the last search, -1 for
+     * the source and the vertices not reached
+     */
+    public int getPredecessorArc(int vertex) {
+        return predecessorArcs[vertex];
+    }
+
+    /**
+     * @param destination Destination vertex index
+     * @return The shortest path from the source of the last search to the
+     * destination, or null if the destination has not been reached
+     */
+    public CSRPath getPath(int destination) {
+        final double distance = distances[destination];
+        if (distance == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        return CSRPath.fromPredecessors(graph, predecessorArcs, destination, distance);
+    }
+
+    /**
+     * Run a search from the sources.
+     *
+     * @param sources     Source vertex indices
+     * @param targetCount Number of target vertices to reach before stopping,
+     *                    -1 to reach all the vertices
+     * @param maxDistance Vertices farther from the sources are not reached
+     */
+    private void search(int[] sources, int targetCount, double maxDistance) {
+        reset();
+        for (int source : sources) {
+            if (distances[source] != 0) {
+                distances[source] = 0;
+                closestSources[source] = source;
+                reached[reachedCount++] = source;
+            }
+        }
+        if (graph.isWeighted()) {
+            dijkstra(targetCount, maxDistance);
+        } else {
+            breadthFirstSearch(targetCount, maxDistance);
+        }
+    }
+
+    private void dijkstra(int targetCount, double maxDistance) {
+        for (int i = 0; i < reachedCount; i++) {
+            heap.push(reached[i], 0);
+        }
+        while (!heap.isEmpty()) {
+            final int vertex = heap.pop();
+            settled[vertex] = true;
+            if (targets[vertex] && --targetCount == 0) {
+                return;
+            }
+            final double distance = distances[vertex];
+            for (int arc = graph.getFirstArc(vertex); arc < graph.getEndArc(vertex); arc++) {
+                final int target = graph.getTarget(arc);
+                if (settled[target]) {
+                    continue;
+                }
+                final double newDistance = distance + graph.getWeight(arc);
+                if (newDistance < distances[target] && newDistance <= maxDistance) {
+                    if (distances[target] == Double.POSITIVE_INFINITY) {
+                        reached[reachedCount++] = target;
+                    }
+                    distances[target] = newDistance;
+                    predecessorArcs[target] = arc;
+                    closestSources[target] = closestSources[vertex];
+                    heap.push(target, newDistance);
+                }
+            }
+        }
+    }
+
+    private void breadthFirstSearch(int targetCount, double maxDistance) {
+        // The sources are the first reached vertices, the reached vertices
+        // are the queue
+        for (int i = 0; i < reachedCount; i++) {
+            settled[reached[i]] = true;
+            if (targets[reached[i]] && --targetCount == 0) {
+                return;
+            }
+        }
+        int head = 0;
+        while (head < reachedCount) {
+            final int vertex = reached[head++];
+            final double distance = distances[vertex] + 1;
+            if (distance > maxDistance) {
+                return;
+            }
+            for (int arc = graph.getFirstArc(vertex); arc < graph.getEndArc(vertex); arc++) {
+                final int target = graph.getTarget(arc);
+                if (settled[target]) {
+                    continue;
+                }
+                settled[target] = true;
+                distances[target] = distance;
+                predecessorArcs[target] = arc;
+                closestSources[target] = closestSources[vertex];
+                reached[reachedCount++] = target;
+                if (targets[target] && --targetCount == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reset the vertices reached by the previous search.
+     */
+    private void reset() {
+        for (int i = 0; i < reachedCount; i++) {
+            final int vertex = reached[i];
+            distances[vertex] = Double.POSITIVE_INFINITY;
+            predecessorArcs[vertex] = -1;
+            closestSources[vertex] = -1;
+            settled[vertex] = false;
+        }
+        reachedCount = 0;
+        if (heap != null) {
+            heap.clear();
+        }
+    }
+}
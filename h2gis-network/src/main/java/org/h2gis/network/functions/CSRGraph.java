@@ -0,0 +1,368 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Graph stored in compressed sparse row (CSR) arrays. The outgoing arcs of
+ * the vertex at index {@code i} are the arcs {@code [offsets[i],
+ * offsets[i + 1][}. There is no object per vertex or per edge, so this graph
+ * needs far less memory than a {@link org.javanetworkanalyzer.model.KeyedGraph}.
+ *
+ * <p>Vertices are identified by their index [0-n[ in the algorithms, use
+ * {@link #getVertexIndex(int)} and {@link #getVertexId(int)} to convert from
+ * and to the vertex ids of the edges table. Instances are not modified once
+ * built, so they can be shared between sessions.
+ *
+ * <p>As in the graphs prepared by {@link GraphCreator}, undirected edges of
+ * directed graphs are stored as two arcs, the reversed arc having the
+ * opposite edge id.
+ */
+public class CSRGraph {
+
+    private final boolean directed;
+    // Sorted vertex ids
+    private final int[] vertexIds;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] edgeIds;
+    // Null for unweighted graphs
+    private final double[] weights;
+    // Graph with the arcs reversed, built on demand
+    private CSRGraph reverse;
+
+    private CSRGraph(boolean directed, int[] vertexIds, int[] offsets, int[] targets, int[] edgeIds,
+                     double[] weights) {
+        this.directed = directed;
+        this.vertexIds = vertexIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.edgeIds = edgeIds;
+        this.weights = weights;
+    }
+
+    /**
+     * Build the graph of the given edges.
+     *
+     * @param edges             Edges read by {@link GraphCreator#readEdges()}
+     * @param globalOrientation Global orientation
+     * @return The graph
+     */
+    public static CSRGraph build(GraphEdges edges, GraphFunctionParser.Orientation globalOrientation) {
+        final int edgeCount = edges.size();
+        final boolean directed = !globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED);
+        final boolean reversed = globalOrientation.equals(GraphFunctionParser.Orientation.REVERSED);
+        final int[] vertexIds = edges.getVertexIds();
+        // Arcs of each edge: from, to and signed edge id. The second arc is
+        // only used by undirected edges.
+        final int[] from = new int[edgeCount * 2];
+        final int[] to = new int[edgeCount * 2];
+        final int[] arcEdgeIds = new int[edgeCount * 2];
+        final double[] arcWeights = edges.isWeighted() ? new double[edgeCount * 2] : null;
+        int arcCount = 0;
+        for (int i = 0; i < edgeCount; i++) {
+            final int start = Arrays.binarySearch(vertexIds, edges.getStartNode(i));
+            final int end = Arrays.binarySearch(vertexIds, edges.getEndNode(i));
+            final int edgeId = edges.getEdgeId(i);
+            final int edgeOrientation = edges.getEdgeOrientation(i);
+            final int firstArc = arcCount;
+            if (!directed || edgeOrientation == GraphCreator.UNDIRECTED_EDGE) {
+                // Same ids as GraphCreator#loadDoubleEdge in directed graphs
+                final int reverseId = directed ? -edgeId : edgeId;
+                from[arcCount] = reversed ? end : start;
+                to[arcCount] = reversed ? start : end;
+                arcEdgeIds[arcCount++] = edgeId;
+                from[arcCount] = reversed ? start : end;
+                to[arcCount] = reversed ? end : start;
+                arcEdgeIds[arcCount++] = reverseId;
+            } else if (edgeOrientation == GraphCreator.DIRECTED_EDGE
+                    || edgeOrientation == GraphCreator.REVERSED_EDGE) {
+                // Reversing twice is the same as no reversal
+                final boolean reverse = reversed != (edgeOrientation == GraphCreator.REVERSED_EDGE);
+                from[arcCount] = reverse ? end : start;
+                to[arcCount] = reverse ? start : end;
+                arcEdgeIds[arcCount++] = edgeId;
+            } else {
+                throw new IllegalArgumentException("Invalid edge orientation: " + edgeOrientation);
+            }
+            if (arcWeights != null) {
+                Arrays.fill(arcWeights, firstArc, arcCount, edges.getWeight(i));
+            }
+        }
+        return fromArcs(directed, vertexIds, arcCount, from, to, arcEdgeIds, arcWeights);
+    }
+
+    /**
+     * Build a graph from a list of arcs.
+     *
+     * @param directed  True if the graph is directed. The arcs of undirected
+     *                  edges must be given in both directions in any case
+     * @param vertexIds Sorted and distinct vertex ids
+     * @param arcCount  Number of arcs
+     * @param from      Source vertex index of each arc
+     * @param to        Target vertex index of each arc
+     * @param arcEdgeIds Edge id of each arc
+     * @param arcWeights Weight of each arc, null for unweighted graphs
+     * @return The graph
+     */
+    public static CSRGraph fromArcs(boolean directed, int[] vertexIds, int arcCount, int[] from, int[] to,
+                                    int[] arcEdgeIds, double[] arcWeights) {
+        final int vertexCount = vertexIds.length;
+        // Counting sort of the arcs by source vertex
+        final int[] offsets = new int[vertexCount + 1];
+        for (int arc = 0; arc < arcCount; arc++) {
+            offsets[from[arc] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        final int[] position = Arrays.copyOf(offsets, vertexCount);
+        final int[] targets = new int[arcCount];
+        final int[] edgeIds = new int[arcCount];
+        final double[] weights = arcWeights == null ? null : new double[arcCount];
+        for (int arc = 0; arc < arcCount; arc++) {
+            final int index = position[from[arc]]++;
+            targets[index] = to[arc];
+            edgeIds[index] = arcEdgeIds[arc];
+            if (weights != null) {
+                weights[index] = arcWeights[arc];
+            }
+        }
+        return new CSRGraph(directed, vertexIds, offsets, targets, edgeIds, weights);
+    }
+
+    /**
+     * Build a graph from the arrays of another graph, read by
+     * {@link GraphSnapshot}.
+     */
+    static CSRGraph fromArrays(boolean directed, int[] vertexIds, int[] offsets, int[] targets, int[] edgeIds,
+                               double[] weights) {
+        return new CSRGraph(directed, vertexIds, offsets, targets, edgeIds, weights);
+    }
+
+    /**
+     * Return the graph with the same vertices and all the arcs reversed,
+     * used to search backward from a target. The reversed arcs keep the edge
+     * id and weight of the original arcs. Undirected graphs are their own
+     * reverse.
+     *
+     * @return The reversed graph
+     */
+    public synchronized CSRGraph getReverse() {
+        if (!directed) {
+            return this;
+        }
+        if (reverse == null) {
+            final int vertexCount = vertexIds.length;
+            final int arcCount = targets.length;
+            final int[] reverseOffsets = new int[vertexCount + 1];
+            for (int arc = 0; arc < arcCount; arc++) {
+                reverseOffsets[targets[arc] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                reverseOffsets[v + 1] += reverseOffsets[v];
+            }
+            final int[] position = Arrays.copyOf(reverseOffsets, vertexCount);
+            final int[] reverseTargets = new int[arcCount];
+            final int[] reverseEdgeIds = new int[arcCount];
+            final double[] reverseWeights = weights == null ? null : new double[arcCount];
+            for (int v = 0; v < vertexCount; v++) {
+                for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                    final int index = position[targets[arc]]++;
+                    reverseTargets[index] = v;
+                    reverseEdgeIds[index] = edgeIds[arc];
+                    if (reverseWeights != null) {
+                        reverseWeights[index] = weights[arc];
+                    }
+                }
+            }
+            reverse = new CSRGraph(true, vertexIds, reverseOffsets, reverseTargets, reverseEdgeIds,
+                    reverseWeights);
+            reverse.reverse = this;
+        }
+        return reverse;
+    }
+
+    /**
+     * @return True if the graph is directed
+     */
+    public boolean isDirected() {
+        return directed;
+    }
+
+    /**
+     * @return True if the arcs have a weight, otherwise all the weights are 1
+     */
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int getVertexCount() {
+        return vertexIds.length;
+    }
+
+    /**
+     * @return Number of arcs, undirected edges being counted twice
+     */
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return Sorted vertex ids, indexed by vertex index. The array is shared
+     * and must not be modified.
+     */
+    public int[] getVertexIds() {
+        return vertexIds;
+    }
+
+    /**
+     * @param vertexId Vertex id
+     * @return Vertex index, or -1 if the graph does not contain this vertex
+     */
+    public int getVertexIndex(int vertexId) {
+        final int index = Arrays.binarySearch(vertexIds, vertexId);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Vertex id
+     */
+    public int getVertexId(int vertex) {
+        return vertexIds[vertex];
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Index of the first outgoing arc of the vertex
+     */
+    public int getFirstArc(int vertex) {
+        return offsets[vertex];
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Index following the last outgoing arc of the vertex
+     */
+    public int getEndArc(int vertex) {
+        return offsets[vertex + 1];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Index of the source vertex of the arc
+     */
+    public int getSource(int arc) {
+        // Last vertex with its first arc before or at this arc
+        int low = 0;
+        int high = vertexIds.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= arc) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Index of the target vertex of the arc
+     */
+    public int getTarget(int arc) {
+        return targets[arc];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Edge id of the arc, negative for the reversed arc of an
+     * undirected edge in a directed graph
+     */
+    public int getEdgeId(int arc) {
+        return edgeIds[arc];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Weight of the arc
+     */
+    public double getWeight(int arc) {
+        return weights == null ? 1 : weights[arc];
+    }
+
+    /**
+     * Compute a checksum of the arcs, independent of their order. Graphs
+     * built from other edges, with another orientation or with other weights
+     * have a different checksum, with a very high probability.
+     *
+     * @return Checksum of the vertex ids, edge ids and weights of the arcs
+     */
+    public long getChecksum() {
+        long checksum = mix(directed ? 1 : 2);
+        for (int v = 0; v < vertexIds.length; v++) {
+            for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                long hash = mix(((long) vertexIds[v] << 32) | (vertexIds[targets[arc]] & 0xFFFFFFFFL));
+                hash = mix(hash + edgeIds[arc]);
+                hash = mix(hash + Double.doubleToLongBits(getWeight(arc)));
+                // The sum does not depend on the order of the arcs
+                checksum += hash;
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Mix the bits of a hash, from the finalizer of MurmurHash3.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Arrays written by GraphSnapshot, they must not be modified
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int[] getTargets() {
+        return targets;
+    }
+
+    int[] getEdgeIds() {
+        return edgeIds;
+    }
+
+    double[] getWeights() {
+        return weights;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+/**
+ * Path found by a search in a {@link CSRGraph}, from the source to the
+ * destination.
+ */
+public class CSRPath {
+
+    private final int[] vertexIds;
+    private final int[] edgeIds;
+    private final double[] weights;
+    private final double length;
+
+    /**
+     * Constructor
+     *
+     * @param vertexIds Ids of the vertices, from the source to the destination
+     * @param edgeIds   Edge ids, the edge i goes from the vertex i to the vertex i + 1
+     * @param weights   Weight of each edge
+     * @param length    Length of the path
+     */
+    public CSRPath(int[] vertexIds, int[] edgeIds, double[] weights, double length) {
+        this.vertexIds = vertexIds;
+        this.edgeIds = edgeIds;
+        this.weights = weights;
+        this.length = length;
+    }
+
+    /**
+     * Build a path from the arcs used to reach each vertex.
+     *
+     * @param graph           Searched graph
+     * @param predecessorArcs Arc used to reach each vertex, -1 for the source
+     * @param destination     Destination vertex index
+     * @param length          Length of the path
+     * @return The path from the source to the destination
+     */
+    public static CSRPath fromPredecessors(CSRGraph graph, int[] predecessorArcs, int destination,
+                                           double length) {
+        int edgeCount = 0;
+        for (int v = destination; predecessorArcs[v] != -1; v = graph.getSource(predecessorArcs[v])) {
+            edgeCount++;
+        }
+        final int[] vertexIds = new int[edgeCount + 1];
+        final int[] edgeIds = new int[edgeCount];
+        final double[] weights = new double[edgeCount];
+        int v = destination;
+        vertexIds[edgeCount] = graph.getVertexId(v);
+        for (int i = edgeCount - 1; i >= 0; i--) {
+            final int arc = predecessorArcs[v];
+            v = graph.getSource(arc);
+            vertexIds[i] = graph.getVertexId(v);
+            edgeIds[i] = graph.getEdgeId(arc);
+            weights[i] = graph.getWeight(arc);
+        }
+        return new CSRPath(vertexIds, edgeIds, weights, length);
+    }
+
+    /**
+     * @return Number of edges of the path
+     */
+    public int getEdgeCount() {
+        return edgeIds.length;
+    }
+
+    /**
+     * @param index Vertex index in the path [0-edge count]
+     * @return Vertex id
+     */
+    public int getVertexId(int index) {
+        return vertexIds[index];
+    }
+
+    /**
+     * @param index Edge index in the path [0-edge count[
+     * @return Edge id, negative for the reversed arc of an undirected edge in
+     * a directed graph
+     */
+    public int getEdgeId(int index) {
+        return edgeIds[index];
+    }
+
+    /**
+     * @param index Edge index in the path [0-edge count[
+     * @return Edge weight
+     */
+    public double getWeight(int index) {
+        return weights[index];
+    }
+
+    /**
+     * @return Length of the path
+     */
+    public double getLength() {
+        return length;
+    }
+}
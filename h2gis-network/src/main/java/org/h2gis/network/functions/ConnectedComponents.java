@@ -0,0 +1,167 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Connected components computed on primitive arrays, without any object per
+ * vertex or per edge and without recursion, so that the graphs too large
+ * for {@link org.jgrapht.alg.ConnectivityInspector} and
+ * {@link org.jgrapht.alg.StrongConnectivityInspector} can be labelled.
+ *
+ * <p>Components are numbered from 1, the vertices are identified by their
+ * index [0-n[.
+ */
+public final class ConnectedComponents {
+
+    private ConnectedComponents() {
+        // Utility class
+    }
+
+    /**
+     * Connected components of an undirected graph, computed with a
+     * union-find (disjoint set) structure.
+     *
+     * @param edges     Edges, the orientations are ignored
+     * @param vertexIds Vertex ids returned by {@link GraphEdges#getVertexIds()}
+     * @return Component number of each vertex
+     */
+    public static int[] unionFind(GraphEdges edges, int[] vertexIds) {
+        final int vertexCount = vertexIds.length;
+        final int[] parent = new int[vertexCount];
+        final int[] rank = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            parent[v] = v;
+        }
+        for (int i = 0; i < edges.size(); i++) {
+            final int a = find(parent, Arrays.binarySearch(vertexIds, edges.getStartNode(i)));
+            final int b = find(parent, Arrays.binarySearch(vertexIds, edges.getEndNode(i)));
+            if (a != b) {
+                // Union by rank
+                if (rank[a] < rank[b]) {
+                    parent[a] = b;
+                } else if (rank[a] > rank[b]) {
+                    parent[b] = a;
+                } else {
+                    parent[b] = a;
+                    rank[a]++;
+                }
+            }
+        }
+        // Number the roots in vertex order, the rank array is reused
+        final int[] components = rank;
+        Arrays.fill(components, 0);
+        int componentCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            final int root = find(parent, v);
+            if (components[root] == 0) {
+                components[root] = ++componentCount;
+            }
+        }
+        final int[] result = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            result[v] = components[parent[v]];
+        }
+        return result;
+    }
+
+    private static int find(int[] parent, int v) {
+        int root = v;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Path compression
+        while (parent[v] != root) {
+            final int next = parent[v];
+            parent[v] = root;
+            v = next;
+        }
+        return root;
+    }
+
+    /**
+     * Strongly connected components of a directed graph, computed with
+     * Tarjan's algorithm. The depth-first search uses an explicit stack
+     * instead of recursion.
+     *
+     * @param graph Graph
+     * @return Component number of each vertex
+     */
+    public static int[] tarjan(CSRGraph graph) {
+        final int vertexCount = graph.getVertexCount();
+        // Discovery order of each vertex, -1 if not visited yet
+        final int[] order = new int[vertexCount];
+        final int[] lowLink = new int[vertexCount];
+        // Component of each vertex, 0 while it is on the component stack
+        final int[] components = new int[vertexCount];
+        // Depth-first search stack: vertex and next arc to explore
+        final int[] callStack = new int[vertexCount];
+        final int[] nextArc = new int[vertexCount];
+        // Vertices not assigned to a component yet
+        final int[] componentStack = new int[vertexCount];
+        Arrays.fill(order, -1);
+        int visited = 0;
+        int componentCount = 0;
+        int componentSize = 0;
+        for (int root = 0; root < vertexCount; root++) {
+            if (order[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callStack[0] = root;
+            nextArc[0] = graph.getFirstArc(root);
+            order[root] = lowLink[root] = visited++;
+            componentStack[componentSize++] = root;
+            while (depth >= 0) {
+                final int v = callStack[depth];
+                if (nextArc[depth] < graph.getEndArc(v)) {
+                    final int w = graph.getTarget(nextArc[depth]++);
+                    if (order[w] == -1) {
+                        order[w] = lowLink[w] = visited++;
+                        componentStack[componentSize++] = w;
+                        depth++;
+                        callStack[depth] = w;
+                        nextArc[depth] = graph.getFirstArc(w);
+                    } else if (components[w] == 0) {
+                        lowLink[v] = Math.min(lowLink[v], order[w]);
+                    }
+                } else {
+                    if (lowLink[v] == order[v]) {
+                        // v is the root of a component
+                        componentCount++;
+                        int w;
+                        do {
+                            w = componentStack[--componentSize];
+                            components[w] = componentCount;
+                        } while (w != v);
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        final int parent = callStack[depth];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+}
@@ -0,0 +1,448 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Contraction hierarchy of a {@link CSRGraph}. The vertices are contracted
+ * one after the other, from the least to the most important, and shortcut
+ * arcs are added so that the distances between the remaining vertices are
+ * kept. A shortest path then only goes up the hierarchy from the source and
+ * down to the destination, so a query only searches the few vertices of
+ * higher rank, see {@link CHQuery}.
+ *
+ * <p>Instances are not modified once built, so they can be shared between
+ * sessions. The queries of a hierarchy are kept by {@link #releaseQuery}
+ * so that the next queries reuse their search state.
+ */
+public class ContractionHierarchy {
+
+    private final CSRGraph graph;
+    private final int[] ranks;
+    private final int[] shortcutSources;
+    private final int[] shortcutTargets;
+    private final int[] shortcutMiddles;
+    private final double[] shortcutWeights;
+    // Arcs going to a vertex of higher rank
+    private final CSRGraph upwardGraph;
+    // Reversed arcs coming from a vertex of higher rank
+    private final CSRGraph downwardGraph;
+    // Queries not used at the moment
+    private final Queue<CHQuery> idleQueries = new ConcurrentLinkedQueue<CHQuery>();
+
+    /**
+     * Constructor
+     *
+     * @param graph           Contracted graph
+     * @param ranks           Rank of each vertex index
+     * @param shortcutSources Source vertex index of each shortcut
+     * @param shortcutTargets Target vertex index of each shortcut
+     * @param shortcutMiddles Index of the contracted vertex replaced by each shortcut
+     * @param shortcutWeights Weight of each shortcut
+     */
+    public ContractionHierarchy(CSRGraph graph, int[] ranks, int[] shortcutSources, int[] shortcutTargets,
+                                int[] shortcutMiddles, double[] shortcutWeights) {
+        this.graph = graph;
+        this.ranks = ranks;
+        this.shortcutSources = shortcutSources;
+        this.shortcutTargets = shortcutTargets;
+        this.shortcutMiddles = shortcutMiddles;
+        this.shortcutWeights = shortcutWeights;
+        // Split the arcs and the shortcuts between the upward and downward graphs
+        final int maxArcCount = graph.getArcCount() + shortcutSources.length;
+        final int[] upFrom = new int[maxArcCount];
+        final int[] upTo = new int[maxArcCount];
+        final double[] upWeights = new double[maxArcCount];
+        final int[] downFrom = new int[maxArcCount];
+        final int[] downTo = new int[maxArcCount];
+        final double[] downWeights = new double[maxArcCount];
+        int upCount = 0;
+        int downCount = 0;
+        for (int arc = 0; arc < maxArcCount; arc++) {
+            final int source;
+            final int target;
+            final double weight;
+            if (arc < graph.getArcCount()) {
+                source = graph.getSource(arc);
+                target = graph.getTarget(arc);
+                weight = graph.getWeight(arc);
+            } else {
+                source = shortcutSources[arc - graph.getArcCount()];
+                target = shortcutTargets[arc - graph.getArcCount()];
+                weight = shortcutWeights[arc - graph.getArcCount()];
+            }
+            if (ranks[target] > ranks[source]) {
+                upFrom[upCount] = source;
+                upTo[upCount] = target;
+                upWeights[upCount++] = weight;
+            } else if (ranks[source] > ranks[target]) {
+                downFrom[downCount] = target;
+                downTo[downCount] = source;
+                downWeights[downCount++] = weight;
+            }
+        }
+        // The edge ids are not used by the queries
+        upwardGraph = CSRGraph.fromArcs(true, graph.getVertexIds(), upCount, upFrom, upTo,
+                new int[upCount], upWeights);
+        downwardGraph = CSRGraph.fromArcs(true, graph.getVertexIds(), downCount, downFrom, downTo,
+                new int[downCount], downWeights);
+    }
+
+    /**
+     * Return a query of this hierarchy that is not used by another caller.
+     * The search state of a query is allocated once and only the vertices
+     * reached by the previous search are reset.
+     *
+     * @return A query, to give back with {@link #releaseQuery(CHQuery)}
+     */
+    public CHQuery acquireQuery() {
+        final CHQuery query = idleQueries.poll();
+        return query != null ? query : new CHQuery(this);
+    }
+
+    /**
+     * Give back a query returned by {@link #acquireQuery()}, it must not be
+     * used anymore by the caller.
+     *
+     * @param query Query of this hierarchy
+     */
+    public void releaseQuery(CHQuery query) {
+        if (query.getHierarchy() == this) {
+            idleQueries.offer(query);
+        }
+    }
+
+    /**
+     * Contract the graph.
+     *
+     * @param graph Graph
+     * @return The contraction hierarchy of the graph
+     */
+    public static ContractionHierarchy contract(CSRGraph graph) {
+        return new Contractor(graph).contract();
+    }
+
+    /**
+     * @return The contracted graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Rank of the vertex, the vertices of higher rank are contracted later
+     */
+    public int getRank(int vertex) {
+        return ranks[vertex];
+    }
+
+    /**
+     * @return Number of shortcuts
+     */
+    public int getShortcutCount() {
+        return shortcutSources.length;
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Source vertex index of the shortcut
+     */
+    public int getShortcutSource(int shortcut) {
+        return shortcutSources[shortcut];
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Target vertex index of the shortcut
+     */
+    public int getShortcutTarget(int shortcut) {
+        return shortcutTargets[shortcut];
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Index of the contracted vertex replaced by the shortcut
+     */
+    public int getShortcutMiddle(int shortcut) {
+        return shortcutMiddles[shortcut];
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Weight of the shortcut
+     */
+    public double getShortcutWeight(int shortcut) {
+        return shortcutWeights[shortcut];
+    }
+
+    /**
+     * @return Graph of the arcs and shortcuts going to a vertex of higher
+     * rank, searched from the source
+     */
+    public CSRGraph getUpwardGraph() {
+        return upwardGraph;
+    }
+
+    /**
+     * @return Graph of the reversed arcs and shortcuts coming from a vertex
+     * of higher rank, searched from the destination
+     */
+    public CSRGraph getDownwardGraph() {
+        return downwardGraph;
+    }
+
+    /**
+     * Contract the vertices of a graph, ordered by the number of shortcuts
+     * their contraction adds compared to the number of arcs it removes.
+     */
+    private static class Contractor {
+        // Number of vertices settled by a witness search before giving up,
+        // a shortcut is then added even if it may not be needed.
+        private static final int WITNESS_SETTLE_LIMIT = 500;
+
+        private final CSRGraph graph;
+        private final int vertexCount;
+        // Arcs of the graph being contracted, with the shortcuts
+        private final int[][] outTargets;
+        private final double[][] outWeights;
+        // Contracted vertex of each shortcut, -1 for the arcs of the graph
+        private final int[][] outMiddles;
+        private final int[] outSizes;
+        private final int[][] inSources;
+        private final double[][] inWeights;
+        private final int[] inSizes;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+        // Witness search
+        private final SearchState witness;
+        private int shortcutCount = 0;
+
+        private Contractor(CSRGraph graph) {
+            this.graph = graph;
+            vertexCount = graph.getVertexCount();
+            outTargets = new int[vertexCount][];
+            outWeights = new double[vertexCount][];
+            outMiddles = new int[vertexCount][];
+            outSizes = new int[vertexCount];
+            inSources = new int[vertexCount][];
+            inWeights = new double[vertexCount][];
+            inSizes = new int[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                final int degree = graph.getEndArc(v) - graph.getFirstArc(v);
+                outTargets[v] = new int[Math.max(2, degree)];
+                outWeights[v] = new double[Math.max(2, degree)];
+                outMiddles[v] = new int[Math.max(2, degree)];
+                inSources[v] = new int[2];
+                inWeights[v] = new double[2];
+            }
+            contracted = new boolean[vertexCount];
+            contractedNeighbors = new int[vertexCount];
+            witness = new SearchState(graph);
+            for (int v = 0; v < vertexCount; v++) {
+                for (int arc = graph.getFirstArc(v); arc < graph.getEndArc(v); arc++) {
+                    final int target = graph.getTarget(arc);
+                    if (target != v) {
+                        addArc(v, target, graph.getWeight(arc), -1);
+                    }
+                }
+            }
+        }
+
+        private ContractionHierarchy contract() {
+            final int[] ranks = new int[vertexCount];
+            final VertexHeap queue = new VertexHeap(vertexCount);
+            for (int v = 0; v < vertexCount; v++) {
+                queue.push(v, getPriority(v));
+            }
+            int rank = 0;
+            while (!queue.isEmpty()) {
+                final int vertex = queue.pop();
+                // Lazy update, the priority may have changed since the vertex was queued
+                final double priority = getPriority(vertex);
+                if (!queue.isEmpty() && priority > queue.peekKey()) {
+                    queue.push(vertex, priority);
+                    continue;
+                }
+                contractVertex(vertex, true);
+                contracted[vertex] = true;
+                ranks[vertex] = rank++;
+                for (int i = 0; i < outSizes[vertex]; i++) {
+                    contractedNeighbors[outTargets[vertex][i]]++;
+                }
+                for (int i = 0; i < inSizes[vertex]; i++) {
+                    contractedNeighbors[inSources[vertex][i]]++;
+                }
+            }
+            // Keep the shortcuts that have not been replaced by a shorter arc
+            final int[] sources = new int[shortcutCount];
+            final int[] targets = new int[shortcutCount];
+            final int[] middles = new int[shortcutCount];
+            final double[] weights = new double[shortcutCount];
+            int count = 0;
+            for (int v = 0; v < vertexCount; v++) {
+                for (int i = 0; i < outSizes[v]; i++) {
+                    if (outMiddles[v][i] != -1) {
+                        sources[count] = v;
+                        targets[count] = outTargets[v][i];
+                        middles[count] = outMiddles[v][i];
+                        weights[count++] = outWeights[v][i];
+                    }
+                }
+            }
+            return new ContractionHierarchy(graph, ranks, Arrays.copyOf(sources, count),
+                    Arrays.copyOf(targets, count), Arrays.copyOf(middles, count), Arrays.copyOf(weights, count));
+        }
+
+        /**
+         * @return The priority of the vertex, the vertex with the lowest
+         * priority is contracted first
+         */
+        private double getPriority(int vertex) {
+            int degree = 0;
+            for (int i = 0; i < outSizes[vertex]; i++) {
+                if (!contracted[outTargets[vertex][i]]) {
+                    degree++;
+                }
+            }
+            for (int i = 0; i < inSizes[vertex]; i++) {
+                if (!contracted[inSources[vertex][i]]) {
+                    degree++;
+                }
+            }
+            return contractVertex(vertex, false) - degree + contractedNeighbors[vertex];
+        }
+
+        /**
+         * Find the shortcuts needed to contract the vertex.
+         *
+         * @param vertex Vertex index
+         * @param add    True to add the shortcuts, false to only count them
+         * @return Number of shortcuts
+         */
+        private int contractVertex(int vertex, boolean add) {
+            int count = 0;
+            for (int i = 0; i < inSizes[vertex]; i++) {
+                final int source = inSources[vertex][i];
+                if (contracted[source]) {
+                    continue;
+                }
+                final double inWeight = inWeights[vertex][i];
+                double maxOutWeight = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < outSizes[vertex]; j++) {
+                    final int target = outTargets[vertex][j];
+                    if (!contracted[target] && target != source) {
+                        maxOutWeight = Math.max(maxOutWeight, outWeights[vertex][j]);
+                    }
+                }
+                if (maxOutWeight == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                witnessSearch(source, vertex, inWeight + maxOutWeight);
+                for (int j = 0; j < outSizes[vertex]; j++) {
+                    final int target = outTargets[vertex][j];
+                    if (contracted[target] || target == source) {
+                        continue;
+                    }
+                    final double weight = inWeight + outWeights[vertex][j];
+                    if (witness.distances[target] > weight) {
+                        count++;
+                        if (add) {
+                            addArc(source, target, weight, vertex);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Search the paths from the source that do not go through the
+         * excluded vertex, up to the maximum distance.
+         */
+        private void witnessSearch(int source, int excluded, double maxDistance) {
+            witness.init(source);
+            int settledCount = 0;
+            while (!witness.heap.isEmpty() && witness.heap.peekKey() <= maxDistance
+                    && settledCount < WITNESS_SETTLE_LIMIT) {
+                final int vertex = witness.heap.pop();
+                witness.settled[vertex] = true;
+                settledCount++;
+                final double distance = witness.distances[vertex];
+                for (int i = 0; i < outSizes[vertex]; i++) {
+                    final int target = outTargets[vertex][i];
+                    if (target == excluded || contracted[target] || witness.settled[target]) {
+                        continue;
+                    }
+                    final double newDistance = distance + outWeights[vertex][i];
+                    if (newDistance < witness.distances[target]) {
+                        witness.update(target, newDistance, -1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add an arc, or lower the weight of the existing arc.
+         */
+        private void addArc(int source, int target, double weight, int middle) {
+            for (int i = 0; i < outSizes[source]; i++) {
+                if (outTargets[source][i] == target) {
+                    if (weight < outWeights[source][i]) {
+                        if (outMiddles[source][i] == -1 && middle != -1) {
+                            shortcutCount++;
+                        }
+                        outWeights[source][i] = weight;
+                        outMiddles[source][i] = middle;
+                        for (int j = 0; j < inSizes[target]; j++) {
+                            if (inSources[target][j] == source) {
+                                inWeights[target][j] = weight;
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+            if (outSizes[source] == outTargets[source].length) {
+                final int capacity = outSizes[source] * 2;
+                outTargets[source] = Arrays.copyOf(outTargets[source], capacity);
+                outWeights[source] = Arrays.copyOf(outWeights[source], capacity);
+                outMiddles[source] = Arrays.copyOf(outMiddles[source], capacity);
+            }
+            outTargets[source][outSizes[source]] = target;
+            outWeights[source][outSizes[source]] = weight;
+            outMiddles[source][outSizes[source]++] = middle;
+            if (inSizes[target] == inSources[target].length) {
+                final int capacity = inSizes[target] * 2;
+                inSources[target] = Arrays.copyOf(inSources[target], capacity);
+                inWeights[target] = Arrays.copyOf(inWeights[target], capacity);
+            }
+            inSources[target][inSizes[target]] = source;
+            inWeights[target][inSizes[target]++] = weight;
+            if (middle != -1) {
+                shortcutCount++;
+            }
+        }
+    }
+}
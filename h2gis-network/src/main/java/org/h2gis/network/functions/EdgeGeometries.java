@@ -0,0 +1,151 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Geometry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static org.h2gis.network.functions.GraphConstants.EDGE_ID;
+
+/**
+ * Reads the geometries of a few edges of the edges table, by batches of
+ * edge ids, so that only the geometries of the edges returned by a graph
+ * function are read. The same prepared statement is used for all the
+ * batches, it is released by {@link #close()}.
+ *
+ * The batches are only used when the edge id column is indexed, otherwise
+ * each batch would scan the whole edges table. Without an index the edges
+ * table is read once and filtered on the requested edge ids, see
+ * {@link #isIndexed()}.
+ */
+public class EdgeGeometries {
+
+    /**
+     * Number of edge ids of a query.
+     */
+    public static final int BATCH_SIZE = 128;
+    private final PreparedStatement statement;
+    private final boolean indexed;
+
+    /**
+     * Constructor
+     *
+     * @param connection    Connection
+     * @param tableName     Edges table
+     * @param geometryField Geometry field of the edges table
+     * @throws SQLException
+     */
+    public EdgeGeometries(Connection connection, TableLocation tableName, String geometryField)
+            throws SQLException {
+        indexed = JDBCUtilities.isIndexed(connection, tableName.toString(), EDGE_ID);
+        final StringBuilder query = new StringBuilder("SELECT " + EDGE_ID + ", "
+                + TableLocation.quoteIdentifier(geometryField) + " FROM " + tableName);
+        if (indexed) {
+            query.append(" WHERE " + EDGE_ID + " IN (?");
+            for (int i = 1; i < BATCH_SIZE; i++) {
+                query.append(", ?");
+            }
+            query.append(")");
+        }
+        statement = connection.prepareStatement(query.toString());
+    }
+
+    /**
+     * @return True if the edge id column is indexed. If false, each call to
+     * {@link #read(Collection)} reads the whole edges table, the callers
+     * should then request all their edges at once.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Read the geometries of the edges.
+     *
+     * @param edgeIds Edge ids, the sign of the ids is ignored
+     * @return Geometry of each edge id, as a positive id
+     * @throws SQLException
+     */
+    public Map<Integer, Geometry> read(Collection<Integer> edgeIds) throws SQLException {
+        final Map<Integer, Geometry> geometries = new HashMap<Integer, Geometry>(edgeIds.size() * 2);
+        if (!indexed) {
+            final Set<Integer> ids = new HashSet<Integer>(edgeIds.size() * 2);
+            for (Integer edgeId : edgeIds) {
+                ids.add(Math.abs(edgeId));
+            }
+            final ResultSet rs = statement.executeQuery();
+            try {
+                while (rs.next() && geometries.size() < ids.size()) {
+                    final int edgeId = rs.getInt(1);
+                    if (ids.contains(edgeId)) {
+                        geometries.put(edgeId, (Geometry) rs.getObject(2));
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+            return geometries;
+        }
+        final Iterator<Integer> it = edgeIds.iterator();
+        while (it.hasNext()) {
+            int parameter = 0;
+            int lastId = 0;
+            while (parameter < BATCH_SIZE && it.hasNext()) {
+                lastId = Math.abs(it.next());
+                statement.setInt(++parameter, lastId);
+            }
+            // Fill the remaining parameters of the last batch
+            while (parameter < BATCH_SIZE) {
+                statement.setInt(++parameter, lastId);
+            }
+            final ResultSet rs = statement.executeQuery();
+            try {
+                while (rs.next()) {
+                    geometries.put(rs.getInt(1), (Geometry) rs.getObject(2));
+                }
+            } finally {
+                rs.close();
+            }
+        }
+        return geometries;
+    }
+
+    /**
+     * Release the prepared statement.
+     *
+     * @throws SQLException
+     */
+    public void close() throws SQLException {
+        statement.close();
+    }
+}
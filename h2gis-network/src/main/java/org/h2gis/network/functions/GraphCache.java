@@ -0,0 +1,646 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.engine.SessionInterface;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.schema.Schema;
+import org.h2.table.Table;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.javanetworkanalyzer.data.VDijkstra;
+import org.javanetworkanalyzer.model.Edge;
+import org.javanetworkanalyzer.model.KeyedGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Graphs loaded by {@link ST_GraphLoad} and reused by the graph functions.
+ * The edges of a loaded table are kept in memory. The compact graph is
+ * shared by the function calls. The JGraphT graphs are built from the cached
+ * edges, as the graph algorithms store their state in the vertices a graph
+ * is lent to a single call at a time, see {@link GraphLease}. The graphs are
+ * identified by their database, so the databases opened in the same JVM do
+ * not share them. The cached edges are read again when the edges table has
+ * been modified.
+ */
+public class GraphCache {
+
+    private static final Map<Key, Entry> ENTRIES = new ConcurrentHashMap<Key, Entry>();
+    // Identifier of each open database, the entries of the closed databases are removed on the next load
+    private static final Map<Database, String> DATABASE_IDS =
+            Collections.synchronizedMap(new WeakHashMap<Database, String>());
+    private static final AtomicLong NEXT_DATABASE_ID = new AtomicLong();
+    // Prefix of the identifiers of the embedded databases, the other databases are identified by their URL
+    private static final String DATABASE_PREFIX = "#";
+    // Constants of the hash of the edges, the products stay within a BIGINT
+    private static final long HASH_PRIME = 2147483647L;
+    private static final long HASH_MULTIPLIER = 1000003L;
+    private static final long HASH_WEIGHT_SCALE = 1L << 20;
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + GraphCache.class);
+
+    private GraphCache() {
+    }
+
+    /**
+     * Read the edges table and keep its edges in memory.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Number of loaded edges
+     * @throws SQLException
+     */
+    public static int load(Connection connection,
+                           String inputTable,
+                           String orientation,
+                           String weight) throws SQLException {
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final Key key = new Key(connection, TableUtilities.parseInputTable(connection, inputTable), parser);
+        final Entry entry = readEntry(connection, inputTable, key);
+        removeClosedDatabases();
+        ENTRIES.put(key, entry);
+        return entry.edges.size();
+    }
+
+    /**
+     * Load the edges and the compact graph from a snapshot file written by a
+     * previous call, instead of reading the edges table. If the snapshot
+     * file does not exist, or has been written for another graph or for
+     * other edges (number of rows or hash of the edge columns, see
+     * {@link #getEdgesHash}), the edges table is read and the snapshot file
+     * is written again.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param snapshot    Snapshot file
+     * @return Number of loaded edges
+     * @throws SQLException
+     */
+    public static int load(Connection connection,
+                           String inputTable,
+                           String orientation,
+                           String weight,
+                           File snapshot) throws SQLException {
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final TableLocation location = TableUtilities.parseInputTable(connection, inputTable);
+        final Key key = new Key(connection, location, parser);
+        // Read the modification identifier first, a concurrent modification will reload the edges.
+        final long modificationId = getModificationId(connection, location);
+        final long rowCount = getRowCount(connection, location);
+        final long hash = getEdgesHash(connection, location, key);
+        Entry entry;
+        try {
+            final GraphSnapshot graphSnapshot = GraphSnapshot.read(snapshot, key.getName(), rowCount, hash);
+            if (graphSnapshot != null) {
+                entry = new Entry(key, graphSnapshot.getEdges(), modificationId, graphSnapshot.getGraph());
+            } else {
+                LOGGER.info("No valid graph snapshot in " + snapshot + ", reading the edges table " + location);
+                entry = readEntry(connection, inputTable, key);
+                GraphSnapshot.write(snapshot, key.getName(), entry.edges.size(), hash, entry.edges,
+                        entry.getCSRGraph());
+            }
+        } catch (IOException ex) {
+            throw new SQLException("Cannot use the graph snapshot " + snapshot, ex);
+        }
+        removeClosedDatabases();
+        ENTRIES.put(key, entry);
+        return entry.edges.size();
+    }
+
+    /**
+     * Remove the graphs of the edges table from the cache.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @return True if at least one graph has been removed
+     * @throws SQLException
+     */
+    public static boolean drop(Connection connection, String inputTable) throws SQLException {
+        final String table = TableUtilities.parseInputTable(connection, inputTable).toString();
+        final String database = getDatabaseIdentifier(connection);
+        boolean removed = false;
+        Iterator<Key> it = ENTRIES.keySet().iterator();
+        while (it.hasNext()) {
+            Key key = it.next();
+            if (key.table.equals(table) && key.database.equals(database)) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the graph of the edges table with the given orientation and
+     * weight from the cache.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return True if the graph has been removed
+     * @throws SQLException
+     */
+    public static boolean drop(Connection connection,
+                               String inputTable,
+                               String orientation,
+                               String weight) throws SQLException {
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        return ENTRIES.remove(new Key(connection, TableUtilities.parseInputTable(connection, inputTable), parser))
+                != null;
+    }
+
+    /**
+     * Remove all the graphs from the cache.
+     */
+    public static void clear() {
+        ENTRIES.clear();
+    }
+
+    /**
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @param parser     Parsed orientation and weight
+     * @return The cached edges, or null if this graph has not been loaded
+     * @throws SQLException
+     */
+    public static GraphEdges getEdges(Connection connection,
+                                      String inputTable,
+                                      GraphFunctionParser parser) throws SQLException {
+        final Entry entry = getEntry(connection, inputTable, parser);
+        return entry == null ? null : entry.edges;
+    }
+
+    /**
+     * Return the compact graph of the cached edges. It is built once and
+     * shared by all the function calls.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @param parser     Parsed orientation and weight
+     * @return The graph, or null if this graph has not been loaded
+     * @throws SQLException
+     */
+    public static CSRGraph getCSRGraph(Connection connection,
+                                       String inputTable,
+                                       GraphFunctionParser parser) throws SQLException {
+        final Entry entry = getEntry(connection, inputTable, parser);
+        return entry == null ? null : entry.getCSRGraph();
+    }
+
+    /**
+     * Return the searches of the calling thread in the compact graph of the
+     * cached edges. They are allocated once for each thread and reset only
+     * the vertices reached by the previous search.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @param parser     Parsed orientation and weight
+     * @return The searches, or null if this graph has not been loaded
+     * @throws SQLException
+     */
+    public static GraphSearches getSearches(Connection connection,
+                                            String inputTable,
+                                            GraphFunctionParser parser) throws SQLException {
+        final Entry entry = getEntry(connection, inputTable, parser);
+        return entry == null ? null : entry.getSearches();
+    }
+
+    /**
+     * Return the contraction hierarchy stored by {@link ST_GraphContract} for
+     * the cached edges. It is read again when the hierarchy tables are
+     * modified, and refused if it has been built from other edges or with
+     * another orientation or weight.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @param parser     Parsed orientation and weight
+     * @return The contraction hierarchy, or null if this graph has not been loaded
+     * @throws SQLException
+     */
+    public static ContractionHierarchy getContractionHierarchy(Connection connection,
+                                                               String inputTable,
+                                                               GraphFunctionParser parser) throws SQLException {
+        final Entry entry = getEntry(connection, inputTable, parser);
+        if (entry == null) {
+            return null;
+        }
+        final TableLocation location = TableUtilities.parseInputTable(connection, inputTable);
+        final long nodesModificationId = getModificationId(connection,
+                TableUtilities.suffixTableLocation(location, GraphConstants.CH_NODES_SUFFIX));
+        final long shortcutsModificationId = getModificationId(connection,
+                TableUtilities.suffixTableLocation(location, GraphConstants.CH_SHORTCUTS_SUFFIX));
+        final long infoModificationId = getModificationId(connection,
+                TableUtilities.suffixTableLocation(location, GraphConstants.CH_INFO_SUFFIX));
+        synchronized (entry) {
+            if (entry.hierarchy == null || nodesModificationId == -1 || shortcutsModificationId == -1
+                    || infoModificationId == -1
+                    || nodesModificationId != entry.hierarchyModificationIds[0]
+                    || shortcutsModificationId != entry.hierarchyModificationIds[1]
+                    || infoModificationId != entry.hierarchyModificationIds[2]) {
+                // The hierarchy is checked against the cached graph, a stale hierarchy is refused
+                entry.hierarchy = ST_GraphContract.readHierarchy(connection, inputTable, parser,
+                        entry.getCSRGraph());
+                entry.hierarchyModificationIds =
+                        new long[]{nodesModificationId, shortcutsModificationId, infoModificationId};
+            }
+            return entry.hierarchy;
+        }
+    }
+
+    /**
+     * Lend a graph built from the cached edges. The graphs given back by the
+     * previous calls are lent again, a new graph is built when they are all
+     * in use. The searches of the caller must not keep any state outside of
+     * the search, see {@link #prepareGraph} otherwise.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param parser      Parsed orientation and weight
+     * @param vertexClass Vertex class
+     * @param edgeClass   Edge class
+     * @return The lent graph, or null if this graph has not been loaded
+     * @throws SQLException
+     */
+    public static GraphLease lendGraph(Connection connection,
+                                       String inputTable,
+                                       GraphFunctionParser parser,
+                                       Class vertexClass,
+                                       Class edgeClass) throws SQLException {
+        final Entry entry = getEntry(connection, inputTable, parser);
+        if (entry == null) {
+            return null;
+        }
+        final Queue<KeyedGraph> pool = entry.getGraphPool(vertexClass, edgeClass);
+        KeyedGraph graph = pool.poll();
+        if (graph == null) {
+            graph = new GraphCreator(connection,
+                    inputTable,
+                    parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
+                    vertexClass,
+                    edgeClass).prepareGraph(entry.edges);
+        }
+        return new GraphLease(graph, pool);
+    }
+
+    /**
+     * Return a new graph built from the cached edges. The graph belongs to
+     * the caller, the algorithms can change the state of its vertices and
+     * edges.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param parser      Parsed orientation and weight
+     * @param vertexClass Vertex class
+     * @param edgeClass   Edge class
+     * @return The graph, or null if this graph has not been loaded
+     * @throws SQLException
+     */
+    public static KeyedGraph prepareGraph(Connection connection,
+                                          String inputTable,
+                                          GraphFunctionParser parser,
+                                          Class vertexClass,
+                                          Class edgeClass) throws SQLException {
+        final Entry entry = getEntry(connection, inputTable, parser);
+        if (entry == null) {
+            return null;
+        }
+        return new GraphCreator(connection,
+                inputTable,
+                parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
+                vertexClass,
+                edgeClass).prepareGraph(entry.edges);
+    }
+
+    private static Entry getEntry(Connection connection,
+                                  String inputTable,
+                                  GraphFunctionParser parser) throws SQLException {
+        if (ENTRIES.isEmpty()) {
+            return null;
+        }
+        final TableLocation location = TableUtilities.parseInputTable(connection, inputTable);
+        final Key key = new Key(connection, location, parser);
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            return null;
+        }
+        final long modificationId = getModificationId(connection, location);
+        if (modificationId == -1 || modificationId != entry.modificationId) {
+            LOGGER.info("The edges table " + location + " has been modified, reloading the cached graph.");
+            Entry updated = readEntry(connection, inputTable, key);
+            // Replace only if the graph has not been dropped meanwhile
+            if (ENTRIES.containsKey(key)) {
+                ENTRIES.put(key, updated);
+            }
+            entry = updated;
+        }
+        return entry;
+    }
+
+    private static Entry readEntry(Connection connection, String inputTable, Key key) throws SQLException {
+        final TableLocation location = TableUtilities.parseInputTable(connection, inputTable);
+        // Read the modification identifier first, a concurrent modification will reload the edges.
+        final long modificationId = getModificationId(connection, location);
+        final GraphEdges edges = new GraphCreator<VDijkstra, Edge>(connection,
+                inputTable,
+                key.globalOrientation, key.edgeOrientation, key.weight,
+                VDijkstra.class,
+                Edge.class).readEdges();
+        return new Entry(key, edges, modificationId);
+    }
+
+    /**
+     * Return the identifier of the last modification of the table.
+     *
+     * @param connection Connection
+     * @param location   Table
+     * @return The modification identifier, or -1 if it is not available
+     * @throws SQLException
+     */
+    static long getModificationId(Connection connection, TableLocation location) throws SQLException {
+        final Session session = getSession(connection);
+        if (session == null) {
+            return -1;
+        }
+        final Schema schema = session.getDatabase().findSchema(location.getSchema(session.getCurrentSchemaName()));
+        if (schema == null) {
+            return -1;
+        }
+        final Table table = schema.findTableOrView(session, location.getTable());
+        if (table == null) {
+            return -1;
+        }
+        return table.getMaxDataModificationId();
+    }
+
+    /**
+     * @param connection Connection
+     * @return The session of an embedded connection, or null
+     * @throws SQLException
+     */
+    private static Session getSession(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(JdbcConnection.class)) {
+            return null;
+        }
+        final SessionInterface sessionInterface = connection.unwrap(JdbcConnection.class).getSession();
+        return sessionInterface instanceof Session ? (Session) sessionInterface : null;
+    }
+
+    /**
+     * Identify the database of the connection. A database closed and opened
+     * again gets another identifier, as its modification identifiers start
+     * again from the beginning.
+     *
+     * @param connection Connection
+     * @return Database identifier
+     * @throws SQLException
+     */
+    private static String getDatabaseIdentifier(Connection connection) throws SQLException {
+        final Session session = getSession(connection);
+        if (session == null) {
+            return connection.getMetaData().getURL();
+        }
+        final Database database = session.getDatabase();
+        synchronized (DATABASE_IDS) {
+            String id = DATABASE_IDS.get(database);
+            if (id == null) {
+                id = DATABASE_PREFIX + NEXT_DATABASE_ID.incrementAndGet() + ":" + database.getName();
+                DATABASE_IDS.put(database, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Remove the graphs of the databases that are not referenced anymore.
+     */
+    private static void removeClosedDatabases() {
+        final Set<String> openDatabases;
+        synchronized (DATABASE_IDS) {
+            openDatabases = new HashSet<String>(DATABASE_IDS.values());
+        }
+        Iterator<Key> it = ENTRIES.keySet().iterator();
+        while (it.hasNext()) {
+            Key key = it.next();
+            if (key.database.startsWith(DATABASE_PREFIX) && !openDatabases.contains(key.database)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long getRowCount(Connection connection, TableLocation location) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + location)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Hash the columns of the edges table read by the graph: edge id, start
+     * and end nodes, edge orientation and weight if they are used. The hash
+     * is computed by the database, so that a snapshot is checked without
+     * reading the edges. The columns of a row are mixed modulo a prime, the
+     * squares of the row values are summed so that the hash does not depend
+     * on the order of the rows. The weights are hashed with a precision of
+     * {@code 1 / 2^20}.
+     *
+     * @param connection Connection
+     * @param location   Edges table
+     * @param key        Graph key, giving the orientation and weight columns
+     * @return Hash of the edges
+     * @throws SQLException
+     */
+    private static long getEdgesHash(Connection connection, TableLocation location, Key key) throws SQLException {
+        String row = "CAST(" + GraphConstants.EDGE_ID + " AS BIGINT)";
+        row = mixHash(row, GraphConstants.START_NODE);
+        row = mixHash(row, GraphConstants.END_NODE);
+        if (!key.globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED)
+                && key.edgeOrientation != null) {
+            row = mixHash(row, TableLocation.quoteIdentifier(key.edgeOrientation));
+        }
+        if (key.weight != null) {
+            row = mixHash(row, "FLOOR(CAST(" + TableLocation.quoteIdentifier(key.weight)
+                    + " AS DECIMAL) * " + HASH_WEIGHT_SCALE + ")");
+        }
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT SUM(CAST(R AS DECIMAL) * R) FROM (SELECT CAST(" + row
+                     + " AS BIGINT) R FROM " + location + ") H")) {
+            rs.next();
+            final BigDecimal sum = rs.getBigDecimal(1);
+            return sum == null ? 0 : sum.longValue();
+        }
+    }
+
+    private static String mixHash(String hash, String value) {
+        return "MOD(MOD(" + hash + ", " + HASH_PRIME + ") * " + HASH_MULTIPLIER + " + " + value + ", "
+                + HASH_PRIME + ")";
+    }
+
+    /**
+     * Identify a graph by its database, table, orientation and weight.
+     */
+    private static class Key {
+        private final String database;
+        private final String table;
+        private final GraphFunctionParser.Orientation globalOrientation;
+        private final String edgeOrientation;
+        private final String weight;
+
+        private Key(Connection connection, TableLocation location, GraphFunctionParser parser) throws SQLException {
+            this.database = getDatabaseIdentifier(connection);
+            this.table = location.toString();
+            this.globalOrientation = parser.getGlobalOrientation();
+            this.edgeOrientation = parser.getEdgeOrientation() == null ?
+                    null : parser.getEdgeOrientation().toUpperCase(Locale.ROOT);
+            this.weight = parser.getWeightColumn() == null ?
+                    null : parser.getWeightColumn().toUpperCase(Locale.ROOT);
+        }
+
+        /**
+         * @return Name of the graph, without the database
+         */
+        private String getName() {
+            return table + ";" + globalOrientation + ";" + edgeOrientation + ";" + weight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return database.equals(other.database) && table.equals(other.table)
+                    && globalOrientation == other.globalOrientation
+                    && (edgeOrientation == null ? other.edgeOrientation == null :
+                    edgeOrientation.equals(other.edgeOrientation))
+                    && (weight == null ? other.weight == null : weight.equals(other.weight));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = database.hashCode();
+            hash = 31 * hash + table.hashCode();
+            hash = 31 * hash + globalOrientation.hashCode();
+            hash = 31 * hash + (edgeOrientation == null ? 0 : edgeOrientation.hashCode());
+            hash = 31 * hash + (weight == null ? 0 : weight.hashCode());
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return database + ";" + getName();
+        }
+    }
+
+    /**
+     * Cached edges, with the compact graph and the contraction hierarchy
+     * built from them, and the searches of each thread in the compact graph.
+     */
+    private static class Entry {
+        private final Key key;
+        private final GraphEdges edges;
+        private final long modificationId;
+        private final ThreadLocal<GraphSearches> searches = new ThreadLocal<GraphSearches>();
+        // JGraphT graphs given back by the function calls, by vertex and edge classes
+        private final ConcurrentMap<List<Class>, Queue<KeyedGraph>> graphPools =
+                new ConcurrentHashMap<List<Class>, Queue<KeyedGraph>>();
+        // A* heuristics shared by the searches of all the threads
+        private final ConcurrentMap<String, GraphSearches.CachedHeuristic> heuristics =
+                new ConcurrentHashMap<String, GraphSearches.CachedHeuristic>();
+        private CSRGraph csrGraph;
+        private ContractionHierarchy hierarchy;
+        // Modification identifiers of the nodes, shortcuts and info tables read by the hierarchy
+        private long[] hierarchyModificationIds;
+
+        private Entry(Key key, GraphEdges edges, long modificationId) {
+            this.key = key;
+            this.edges = edges;
+            this.modificationId = modificationId;
+        }
+
+        private Entry(Key key, GraphEdges edges, long modificationId, CSRGraph csrGraph) {
+            this(key, edges, modificationId);
+            this.csrGraph = csrGraph;
+        }
+
+        private synchronized CSRGraph getCSRGraph() {
+            if (csrGraph == null) {
+                csrGraph = CSRGraph.build(edges, key.globalOrientation);
+            }
+            return csrGraph;
+        }
+
+        private Queue<KeyedGraph> getGraphPool(Class vertexClass, Class edgeClass) {
+            final List<Class> classes = Arrays.asList(vertexClass, edgeClass);
+            Queue<KeyedGraph> pool = graphPools.get(classes);
+            if (pool == null) {
+                // At most one idle graph by processor
+                pool = new ArrayBlockingQueue<KeyedGraph>(Runtime.getRuntime().availableProcessors());
+                final Queue<KeyedGraph> previous = graphPools.putIfAbsent(classes, pool);
+                if (previous != null) {
+                    pool = previous;
+                }
+            }
+            return pool;
+        }
+
+        private GraphSearches getSearches() {
+            GraphSearches threadSearches = searches.get();
+            if (threadSearches == null) {
+                threadSearches = new GraphSearches(getCSRGraph(), heuristics);
+                searches.set(threadSearches);
+            }
+            return threadSearches;
+        }
+    }
+}
@@ -45,4 +45,9 @@ public interface GraphConstants {
     public static final String PATH_EDGE_ID = "PATH_EDGE_ID";
     public static final String TREE_ID = "TREE_ID";
     public static final String WEIGHT = "WEIGHT";
+    public static final String CH_RANK = "CH_RANK";
+    public static final String MIDDLE_NODE = "MIDDLE_NODE";
+    public static final String CH_NODES_SUFFIX = "_CH_NODES";
+    public static final String CH_SHORTCUTS_SUFFIX = "_CH_SHORTCUTS";
+    public static final String CH_INFO_SUFFIX = "_CH_INFO";
 }
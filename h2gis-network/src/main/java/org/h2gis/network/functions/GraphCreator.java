@@ -104,20 +104,7 @@ public class GraphCreator<V extends VId, E extends Edge> {
         LOGGER.info("Loading graph into memory...");
         final long start = System.currentTimeMillis();
         // Initialize the graph.
-        KeyedGraph<V, E> graph;
-        if (!globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED)) {
-            if (weightColumn != null) {
-                graph = new DirectedWeightedPseudoG<V, E>(vertexClass, edgeClass);
-            } else {
-                graph = new DirectedPseudoG<V, E>(vertexClass, edgeClass);
-            }
-        } else {
-            if (weightColumn != null) {
-                graph = new WeightedPseudoG<V, E>(vertexClass, edgeClass);
-            } else {
-                graph = new PseudoG<V, E>(vertexClass, edgeClass);
-            }
-        }
+        KeyedGraph<V, E> graph = createGraph();
         final Statement st = connection.createStatement();
         final ResultSet edges = st.executeQuery("SELECT * FROM " +
                 TableUtilities.parseInputTable(connection, inputTable));
@@ -139,6 +126,91 @@ public class GraphCreator<V extends VId, E extends Edge> {
         }
     }
 
+    /**
+     * Prepares a graph from edges already read from the edges table.
+     *
+     * @param graphEdges Edges read by {@link #readEdges()} with the same
+     *                   orientation and weight
+     *
+     * @return The newly prepared graph
+     */
+    protected KeyedGraph<V, E> prepareGraph(GraphEdges graphEdges) {
+        final long start = System.currentTimeMillis();
+        KeyedGraph<V, E> graph = createGraph();
+        final boolean weighted = graphEdges.isWeighted();
+        for (int i = 0; i < graphEdges.size(); i++) {
+            loadEdge(graph, graphEdges.getStartNode(i), graphEdges.getEndNode(i), graphEdges.getEdgeId(i),
+                    weighted ? graphEdges.getWeight(i) : WeightedGraph.DEFAULT_EDGE_WEIGHT,
+                    graphEdges.getEdgeOrientation(i));
+        }
+        logTime(LOGGER, start);
+        return graph;
+    }
+
+    /**
+     * Reads the edges table into primitive arrays, so that graphs can be
+     * prepared later without querying the database.
+     *
+     * @return The edges of the table
+     *
+     * @throws java.sql.SQLException
+     */
+    protected GraphEdges readEdges() throws SQLException {
+        LOGGER.info("Loading edges into memory...");
+        final long start = System.currentTimeMillis();
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet edges = st.executeQuery("SELECT * FROM " +
+                    TableUtilities.parseInputTable(connection, inputTable));
+            try {
+                initIndices(edges);
+                final boolean directed = !globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED);
+                GraphEdges graphEdges = new GraphEdges(weightColumnIndex != -1);
+                while (edges.next()) {
+                    double weight = WeightedGraph.DEFAULT_EDGE_WEIGHT;
+                    if (weightColumnIndex != -1) {
+                        weight = edges.getDouble(weightColumnIndex);
+                    }
+                    int edgeOrientation = DIRECTED_EDGE;
+                    if (directed && edgeOrientationIndex != -1) {
+                        edgeOrientation = edges.getInt(edgeOrientationIndex);
+                        if (edges.wasNull()) {
+                            throw new IllegalArgumentException("Invalid edge orientation: NULL.");
+                        }
+                    }
+                    graphEdges.add(edges.getInt(startNodeIndex), edges.getInt(endNodeIndex),
+                            edges.getInt(edgeIDIndex), weight, edgeOrientation);
+                }
+                graphEdges.trimToSize();
+                logTime(LOGGER, start);
+                return graphEdges;
+            } finally {
+                edges.close();
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * @return A new empty graph of the requested orientation and weight
+     */
+    private KeyedGraph<V, E> createGraph() {
+        if (!globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED)) {
+            if (weightColumn != null) {
+                return new DirectedWeightedPseudoG<V, E>(vertexClass, edgeClass);
+            } else {
+                return new DirectedPseudoG<V, E>(vertexClass, edgeClass);
+            }
+        } else {
+            if (weightColumn != null) {
+                return new WeightedPseudoG<V, E>(vertexClass, edgeClass);
+            } else {
+                return new PseudoG<V, E>(vertexClass, edgeClass);
+            }
+        }
+    }
+
     /**
      * Recovers the indices from the metadata.
      */
@@ -195,6 +267,36 @@ public class GraphCreator<V extends VId, E extends Edge> {
         if (weightColumnIndex != -1) {
             weight = edges.getDouble(weightColumnIndex);
         }
+        int edgeOrientation = DIRECTED_EDGE;
+        if (!globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED)) {
+            // Directed graphs must specify an orientation for each individual
+            // edge. If no orientations are specified, every edge is
+            // considered to be directed with orientation given by the
+            // geometry.
+            edgeOrientation = (edgeOrientationIndex == -1)
+                    ? DIRECTED_EDGE
+                    : edges.getInt(edgeOrientationIndex);
+            if (edges.wasNull()) {
+                throw new IllegalArgumentException("Invalid edge orientation: NULL.");
+            }
+        }
+        return loadEdge(graph, startNode, endNode, edgeID, weight, edgeOrientation);
+    }
+
+    /**
+     * Loads an edge into the graph.
+     *
+     * @param graph           The graph to which the edges will be added.
+     * @param startNode       Start node id
+     * @param endNode         End node id
+     * @param edgeID          Edge id
+     * @param weight          Edge weight
+     * @param edgeOrientation Edge orientation, ignored for undirected graphs
+     *
+     * @return The newly loaded edge.
+     */
+    private E loadEdge(KeyedGraph<V, E> graph, int startNode, int endNode, int edgeID,
+                       double weight, int edgeOrientation) {
         E edge;
         // Undirected graphs are either pseudographs or weighted pseudographs,
         // so there is no need to add edges in both directions.
@@ -202,16 +304,7 @@ public class GraphCreator<V extends VId, E extends Edge> {
             edge = graph.addEdge(endNode, startNode, edgeID);
         } else {
             // Directed graphs are either directed pseudographs or directed
-            // weighted pseudographs and must specify an orientation for each
-            // individual edge. If no orientations are specified, every edge
-            // is considered to be directed with orientation given by the
-            // geometry.
-            int edgeOrientation = (edgeOrientationIndex == -1)
-                    ? DIRECTED_EDGE
-                    : edges.getInt(edgeOrientationIndex);
-            if (edges.wasNull()) {
-                throw new IllegalArgumentException("Invalid edge orientation: NULL.");
-            }
+            // weighted pseudographs.
             if (edgeOrientation == UNDIRECTED_EDGE) {
                 if (globalOrientation.equals(GraphFunctionParser.Orientation.DIRECTED)) {
                     edge = loadDoubleEdge(graph, startNode, endNode, edgeID, weight);
@@ -259,7 +352,7 @@ public class GraphCreator<V extends VId, E extends Edge> {
                              final int startNode,
                              final int endNode,
                              final int edgeID,
-                             final double weight) throws SQLException {
+                             final double weight) {
 
         // Note: row is ignored since we only need it for weighted graphs.
         final E edgeTo = graph.addEdge(startNode, endNode, edgeID);
@@ -273,10 +366,9 @@ public class GraphCreator<V extends VId, E extends Edge> {
      * Set this edge's weight to the weight contained in the current row.
      *
      * @param edge Edge
-     * @throws SQLException If the weight cannot be retrieved
      */
-    private void setEdgeWeight(E edge, final double weight) throws SQLException {
-        if (edge != null && weightColumnIndex != -1) {
+    private void setEdgeWeight(E edge, final double weight) {
+        if (edge != null && weightColumn != null) {
             edge.setWeight(weight);
         }
     }
@@ -0,0 +1,201 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Edges of an edges table produced by {@link
+ * org.h2gis.functions.spatial.topology.ST_Graph}, stored in primitive arrays.
+ * Instances are not modified once read, so they can be shared between
+ * sessions.
+ */
+public class GraphEdges {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int size = 0;
+    private int[] startNodes = new int[DEFAULT_CAPACITY];
+    private int[] endNodes = new int[DEFAULT_CAPACITY];
+    private int[] edgeIds = new int[DEFAULT_CAPACITY];
+    private int[] edgeOrientations = new int[DEFAULT_CAPACITY];
+    private double[] weights;
+
+    /**
+     * Constructor.
+     *
+     * @param weighted True if the edges have a weight
+     */
+    public GraphEdges(boolean weighted) {
+        if (weighted) {
+            weights = new double[DEFAULT_CAPACITY];
+        }
+    }
+
+    /**
+     * Constructor of edges read by {@link GraphSnapshot}.
+     */
+    GraphEdges(int[] startNodes, int[] endNodes, int[] edgeIds, int[] edgeOrientations, double[] weights) {
+        this.size = startNodes.length;
+        this.startNodes = startNodes;
+        this.endNodes = endNodes;
+        this.edgeIds = edgeIds;
+        this.edgeOrientations = edgeOrientations;
+        this.weights = weights;
+    }
+
+    /**
+     * Add an edge.
+     *
+     * @param startNode       Start node id
+     * @param endNode         End node id
+     * @param edgeId          Edge id
+     * @param weight          Edge weight, ignored if the edges are not weighted
+     * @param edgeOrientation Edge orientation
+     */
+    public void add(int startNode, int endNode, int edgeId, double weight, int edgeOrientation) {
+        if (size == startNodes.length) {
+            int capacity = size + (size >> 1);
+            startNodes = Arrays.copyOf(startNodes, capacity);
+            endNodes = Arrays.copyOf(endNodes, capacity);
+            edgeIds = Arrays.copyOf(edgeIds, capacity);
+            edgeOrientations = Arrays.copyOf(edgeOrientations, capacity);
+            if (weights != null) {
+                weights = Arrays.copyOf(weights, capacity);
+            }
+        }
+        startNodes[size] = startNode;
+        endNodes[size] = endNode;
+        edgeIds[size] = edgeId;
+        edgeOrientations[size] = edgeOrientation;
+        if (weights != null) {
+            weights[size] = weight;
+        }
+        size++;
+    }
+
+    /**
+     * Release the unused capacity.
+     */
+    public void trimToSize() {
+        startNodes = Arrays.copyOf(startNodes, size);
+        endNodes = Arrays.copyOf(endNodes, size);
+        edgeIds = Arrays.copyOf(edgeIds, size);
+        edgeOrientations = Arrays.copyOf(edgeOrientations, size);
+        if (weights != null) {
+            weights = Arrays.copyOf(weights, size);
+        }
+    }
+
+    /**
+     * @return Number of edges
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Sorted and distinct ids of the start and end nodes
+     */
+    public int[] getVertexIds() {
+        int[] ids = new int[size * 2];
+        System.arraycopy(startNodes, 0, ids, 0, size);
+        System.arraycopy(endNodes, 0, ids, size, size);
+        Arrays.sort(ids);
+        int vertexCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[vertexCount++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, vertexCount);
+    }
+
+    /**
+     * @return True if the edges have a weight
+     */
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    /**
+     * @param index Edge index [0-size[
+     * @return Start node id
+     */
+    public int getStartNode(int index) {
+        return startNodes[index];
+    }
+
+    /**
+     * @param index Edge index [0-size[
+     * @return End node id
+     */
+    public int getEndNode(int index) {
+        return endNodes[index];
+    }
+
+    /**
+     * @param index Edge index [0-size[
+     * @return Edge id
+     */
+    public int getEdgeId(int index) {
+        return edgeIds[index];
+    }
+
+    /**
+     * @param index Edge index [0-size[
+     * @return Edge orientation, one of {@link GraphCreator#DIRECTED_EDGE},
+     * {@link GraphCreator#REVERSED_EDGE} or {@link GraphCreator#UNDIRECTED_EDGE}
+     */
+    public int getEdgeOrientation(int index) {
+        return edgeOrientations[index];
+    }
+
+    /**
+     * @param index Edge index [0-size[
+     * @return Edge weight
+     */
+    public double getWeight(int index) {
+        return weights[index];
+    }
+
+    // Arrays written by GraphSnapshot, only the first size() values are edges
+
+    int[] getStartNodes() {
+        return startNodes;
+    }
+
+    int[] getEndNodes() {
+        return endNodes;
+    }
+
+    int[] getEdgeIds() {
+        return edgeIds;
+    }
+
+    int[] getEdgeOrientations() {
+        return edgeOrientations;
+    }
+
+    double[] getWeights() {
+        return weights;
+    }
+}
@@ -19,12 +19,21 @@
  */
 package org.h2gis.network.functions;
 
+import org.h2.engine.Session;
+import org.h2.engine.SessionInterface;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
 import org.h2gis.api.AbstractFunction;
+import org.javanetworkanalyzer.data.VDijkstra;
+import org.javanetworkanalyzer.model.Edge;
 import org.javanetworkanalyzer.model.KeyedGraph;
 import org.slf4j.Logger;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * Helper class for Graph Functions.
@@ -35,6 +44,85 @@ public class GraphFunction extends AbstractFunction {
 
     public static final String ARG_ERROR  = "Unrecognized argument: ";
 
+    /**
+     * Session variable enabling the compact graphs in the functions that
+     * support both graph representations: {@code SET @H2GIS_COMPACT_GRAPH = TRUE}.
+     */
+    public static final String COMPACT_GRAPH_VARIABLE = "H2GIS_COMPACT_GRAPH";
+
+    /**
+     * Return the graph representation used by the functions that support
+     * both. Compact graphs ({@link CSRGraph}) store the edges in primitive
+     * arrays and need much less memory than JGraphT graphs.
+     *
+     * @param connection Connection
+     * @return True if the session variable {@value #COMPACT_GRAPH_VARIABLE}
+     * is set to true, false by default
+     * @throws SQLException
+     */
+    protected static boolean isCompactGraph(Connection connection) throws SQLException {
+        return isCompactGraph(connection, false);
+    }
+
+    /**
+     * Return the graph representation used by a function whose default
+     * representation is given.
+     *
+     * @param connection Connection
+     * @param byDefault  Representation used when the session variable
+     *                   {@value #COMPACT_GRAPH_VARIABLE} is not set
+     * @return True if compact graphs are used
+     * @throws SQLException
+     */
+    protected static boolean isCompactGraph(Connection connection, boolean byDefault) throws SQLException {
+        final Object value = getVariable(connection, COMPACT_GRAPH_VARIABLE);
+        return value == null ? byDefault : Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * Read a variable of the session, set with {@code SET @NAME = value}.
+     *
+     * @param connection Connection
+     * @param name       Variable name, in upper case
+     * @return The variable value, null if the variable is not set
+     * @throws SQLException
+     */
+    protected static Object getVariable(Connection connection, String name) throws SQLException {
+        if (connection.isWrapperFor(JdbcConnection.class)) {
+            final SessionInterface session = connection.unwrap(JdbcConnection.class).getSession();
+            if (session instanceof Session) {
+                final Value value = ((Session) session).getVariable(name);
+                return value == ValueNull.INSTANCE ? null : value.getObject();
+            }
+        }
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("SELECT @" + name);
+            try {
+                return rs.next() ? rs.getObject(1) : null;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * Check the number of threads given to the functions that can search a
+     * graph in parallel. These functions use compact graphs when more than
+     * one thread is used, as compact graphs can be shared between threads.
+     *
+     * @param threadCount Number of threads, 1 to search in the calling thread
+     * @return The number of threads
+     */
+    protected static int checkThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1: " + threadCount);
+        }
+        return threadCount;
+    }
+
     /**
      * Return a JGraphT graph from the input edges table.
      *
@@ -56,6 +144,11 @@ public class GraphFunction extends AbstractFunction {
         GraphFunctionParser parser = new GraphFunctionParser();
         parser.parseWeightAndOrientation(orientation, weight);
 
+        // Graph loaded by ST_GraphLoad
+        KeyedGraph graph = GraphCache.prepareGraph(connection, inputTable, parser, vertexClass, edgeClass);
+        if (graph != null) {
+            return graph;
+        }
         return new GraphCreator(connection,
                 inputTable,
                 parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
@@ -63,6 +156,100 @@ public class GraphFunction extends AbstractFunction {
                 edgeClass).prepareGraph();
     }
 
+    /**
+     * Lend a JGraphT graph from the input edges table to a function that
+     * only searches it. The graphs of the edges loaded by ST_GraphLoad are
+     * given back to the cache by {@link GraphLease#release()} and lent to the
+     * next calls, the other graphs are built for the call.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table name
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param vertexClass
+     * @param edgeClass
+     * @return Lent graph
+     * @throws java.sql.SQLException
+     */
+    protected static GraphLease lendGraph(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          Class vertexClass,
+                                          Class edgeClass) throws SQLException {
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+
+        // Graph loaded by ST_GraphLoad
+        GraphLease lease = GraphCache.lendGraph(connection, inputTable, parser, vertexClass, edgeClass);
+        if (lease != null) {
+            return lease;
+        }
+        return new GraphLease(new GraphCreator(connection,
+                inputTable,
+                parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
+                vertexClass,
+                edgeClass).prepareGraph(), null);
+    }
+
+    /**
+     * Return a compact graph from the input edges table. Unlike the graphs
+     * returned by {@link #prepareGraph}, it can be used by several threads.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table name
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Graph
+     * @throws java.sql.SQLException
+     */
+    protected static CSRGraph prepareCSRGraph(Connection connection,
+                                              String inputTable,
+                                              String orientation,
+                                              String weight) throws SQLException {
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+
+        // Graph loaded by ST_GraphLoad
+        CSRGraph graph = GraphCache.getCSRGraph(connection, inputTable, parser);
+        if (graph != null) {
+            return graph;
+        }
+        final GraphEdges edges = new GraphCreator<VDijkstra, Edge>(connection,
+                inputTable,
+                parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
+                VDijkstra.class,
+                Edge.class).readEdges();
+        return CSRGraph.build(edges, parser.getGlobalOrientation());
+    }
+
+    /**
+     * Return the searches in the compact graph from the input edges table.
+     * The searches of a graph loaded by ST_GraphLoad are kept for the next
+     * calls of the thread.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table
+     * @param orientation Global orientation
+     * @param weight      Edge weight column name, null for unweighted graphs
+     * @return Searches in the compact graph
+     * @throws SQLException
+     */
+    protected static GraphSearches prepareSearches(Connection connection,
+                                                   String inputTable,
+                                                   String orientation,
+                                                   String weight) throws SQLException {
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+
+        // Graph loaded by ST_GraphLoad
+        GraphSearches searches = GraphCache.getSearches(connection, inputTable, parser);
+        if (searches != null) {
+            return searches;
+        }
+        return new GraphSearches(prepareCSRGraph(connection, inputTable, orientation, weight));
+    }
+
     /**
      * Log the time elapsed from startTime until now.
      *
@@ -0,0 +1,70 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+import org.javanetworkanalyzer.model.KeyedGraph;
+
+import java.util.Queue;
+
+/**
+ * JGraphT graph lent to a function call. The graphs built from the edges
+ * loaded by {@link ST_GraphLoad} are given back to {@link GraphCache} by
+ * {@link #release()}, the next calls search them again instead of building
+ * another graph. The searches reset the state of the vertices when they
+ * start, but a graph is only searched by one call at a time.
+ *
+ * <p>The graphs of the tables that have not been loaded are dropped when
+ * they are released.
+ */
+public class GraphLease<V, E> {
+
+    private KeyedGraph<V, E> graph;
+    // Graphs ready to be lent again, null if the graph is not cached
+    private final Queue<KeyedGraph> pool;
+
+    /**
+     * @param graph Graph
+     * @param pool  Graphs given back to the cache, null if the graph is not
+     *              cached
+     */
+    GraphLease(KeyedGraph<V, E> graph, Queue<KeyedGraph> pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+    /**
+     * @return The lent graph, null once it has been released
+     */
+    public KeyedGraph<V, E> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Give the graph back, it must not be searched anymore by the caller.
+     * The graph is released once, the next calls do nothing.
+     */
+    public void release() {
+        if (graph != null && pool != null) {
+            // The pool is bounded, the extra graphs are dropped
+            pool.offer(graph);
+        }
+        graph = null;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.tools.SimpleRowSource;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Rows of a graph function computed while they are read, so that the whole
+ * result is never held in memory. The computation is done step by step,
+ * typically one source vertex at a time, each step producing a few rows.
+ *
+ * <p>The resources held by the computation are released by {@link #close()},
+ * called once all the rows have been read. {@link #reset()} restarts the
+ * computation from the first step.
+ */
+public abstract class GraphRowSource implements SimpleRowSource {
+
+    private final Queue<Object[]> rows = new ArrayDeque<Object[]>();
+    private boolean finished = false;
+
+    @Override
+    public Object[] readRow() throws SQLException {
+        while (rows.isEmpty()) {
+            if (finished) {
+                return null;
+            }
+            if (!fetchRows(rows)) {
+                finished = true;
+                close();
+            }
+        }
+        return rows.poll();
+    }
+
+    @Override
+    public void reset() throws SQLException {
+        rows.clear();
+        finished = false;
+        close();
+        rewind();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release by default
+    }
+
+    /**
+     * Compute the next step.
+     *
+     * @param rows Queue in which the rows of this step are added, a step may
+     *             produce no row
+     * @return False if the computation is over, in this case no row is added
+     * @throws SQLException
+     */
+    protected abstract boolean fetchRows(Queue<Object[]> rows) throws SQLException;
+
+    /**
+     * Go back to the first step, the resources released by {@link #close()}
+     * must be acquired again by {@link #fetchRows(Queue)}.
+     *
+     * @throws SQLException
+     */
+    protected abstract void rewind() throws SQLException;
+}
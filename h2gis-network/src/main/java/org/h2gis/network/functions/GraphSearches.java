@@ -0,0 +1,144 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.TableLocation;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Searches of a thread in a {@link CSRGraph}. The searches allocate their
+ * state once and only reset the vertices reached by the previous search, so
+ * {@link GraphCache} keeps one instance per thread for each loaded graph.
+ * The A* heuristics are shared by the searches of all the threads, they are
+ * computed again when the nodes table is modified.
+ *
+ * <p>The searches are reused by the next call of the same thread, so they
+ * must not be kept after the function call.
+ */
+public class GraphSearches {
+
+    private final CSRGraph graph;
+    // A* heuristic of each nodes table, shared by the threads
+    private final ConcurrentMap<String, CachedHeuristic> heuristics;
+    private CSRDijkstra dijkstra;
+    private CSRBidirectionalDijkstra bidirectionalDijkstra;
+    private CSRAStar aStar;
+
+    /**
+     * Searches of a graph that is not cached.
+     *
+     * @param graph Graph
+     */
+    public GraphSearches(CSRGraph graph) {
+        this(graph, new ConcurrentHashMap<String, CachedHeuristic>());
+    }
+
+    /**
+     * @param graph      Graph
+     * @param heuristics A* heuristics shared by the searches of the graph
+     */
+    GraphSearches(CSRGraph graph, ConcurrentMap<String, CachedHeuristic> heuristics) {
+        this.graph = graph;
+        this.heuristics = heuristics;
+    }
+
+    /**
+     * @return The searched graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return Dijkstra search in the graph
+     */
+    public CSRDijkstra getDijkstra() {
+        if (dijkstra == null) {
+            dijkstra = new CSRDijkstra(graph);
+        }
+        return dijkstra;
+    }
+
+    /**
+     * @return Bidirectional Dijkstra search in the graph
+     */
+    public CSRBidirectionalDijkstra getBidirectionalDijkstra() {
+        if (bidirectionalDijkstra == null) {
+            bidirectionalDijkstra = new CSRBidirectionalDijkstra(graph);
+        }
+        return bidirectionalDijkstra;
+    }
+
+    /**
+     * @param connection Connection
+     * @param nodesTable Nodes table containing the vertex coordinates
+     * @return A* search guided by the coordinates of the nodes table
+     * @throws SQLException
+     */
+    public CSRAStar getAStar(Connection connection, TableLocation nodesTable) throws SQLException {
+        final AStarHeuristic heuristic = getHeuristic(connection, nodesTable);
+        if (aStar == null || aStar.getHeuristic() != heuristic) {
+            aStar = new CSRAStar(graph, heuristic);
+        }
+        return aStar;
+    }
+
+    /**
+     * Return the A* heuristic of the nodes table, read again if the nodes
+     * table has been modified.
+     *
+     * @param connection Connection
+     * @param nodesTable Nodes table containing the vertex coordinates
+     * @return The heuristic
+     * @throws SQLException
+     */
+    private AStarHeuristic getHeuristic(Connection connection, TableLocation nodesTable) throws SQLException {
+        final String key = nodesTable.toString();
+        // Read the modification identifier first, a concurrent modification will read the coordinates again.
+        final long modificationId = GraphCache.getModificationId(connection, nodesTable);
+        final CachedHeuristic cached = heuristics.get(key);
+        if (cached != null && modificationId != -1 && cached.modificationId == modificationId) {
+            return cached.heuristic;
+        }
+        final double[][] coordinates = ShortestPathSearch.readCoordinates(connection, nodesTable, graph);
+        final AStarHeuristic heuristic = new AStarHeuristic(graph, coordinates[0], coordinates[1],
+                ShortestPathSearch.isGeographic(connection, nodesTable));
+        heuristics.put(key, new CachedHeuristic(heuristic, modificationId));
+        return heuristic;
+    }
+
+    /**
+     * A* heuristic with the modification identifier of the nodes table it
+     * has been read from.
+     */
+    static class CachedHeuristic {
+        private final AStarHeuristic heuristic;
+        private final long modificationId;
+
+        private CachedHeuristic(AStarHeuristic heuristic, long modificationId) {
+            this.heuristic = heuristic;
+            this.modificationId = modificationId;
+        }
+    }
+}
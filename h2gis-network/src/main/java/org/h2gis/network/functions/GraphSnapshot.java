@@ -0,0 +1,337 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file holding the edges read from an edges table and the
+ * {@link CSRGraph} built from them, so that a graph can be loaded by
+ * {@link ST_GraphLoad} without reading the edges table.
+ *
+ * <p>The file contains a header (magic number, version, number of rows and
+ * hash of the edges table, key of the graph: table, orientation and weight),
+ * the edge arrays, the arrays of the compact graph and a CRC32 checksum of
+ * these arrays. All the values are little endian. The arrays are copied from
+ * memory mapped regions of the file into the arrays of the graph.
+ */
+public final class GraphSnapshot {
+
+    private static final int MAGIC = 0x48324753;
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int WEIGHTED = 1;
+    private static final int DIRECTED = 2;
+
+    private final GraphEdges edges;
+    private final CSRGraph graph;
+
+    private GraphSnapshot(GraphEdges edges, CSRGraph graph) {
+        this.edges = edges;
+        this.graph = graph;
+    }
+
+    /**
+     * @return Edges of the edges table
+     */
+    public GraphEdges getEdges() {
+        return edges;
+    }
+
+    /**
+     * @return Compact graph built from the edges
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Write a snapshot file.
+     *
+     * @param file     Snapshot file, replaced if it exists
+     * @param key      Key of the graph, the snapshot is read only with the same key
+     * @param rowCount Number of rows of the edges table
+     * @param hash     Hash of the columns of the edges table read by the graph
+     * @param edges    Edges read from the edges table
+     * @param graph    Compact graph built from the edges
+     * @throws IOException Write error
+     */
+    public static void write(File file, String key, long rowCount, long hash, GraphEdges edges, CSRGraph graph)
+            throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final boolean weighted = edges.isWeighted();
+        // Write in a temporary file first, in order to never leave a partial snapshot file
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            final ChannelWriter writer = new ChannelWriter(fos.getChannel());
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putLong(rowCount);
+            writer.putLong(hash);
+            writer.putInt(keyBytes.length);
+            writer.putBytes(keyBytes);
+            writer.startChecksum();
+            final int edgeCount = edges.size();
+            writer.putInt(edgeCount);
+            writer.putInt((weighted ? WEIGHTED : 0) | (graph.isDirected() ? DIRECTED : 0));
+            writer.putInt(graph.getVertexCount());
+            writer.putInt(graph.getArcCount());
+            writer.putInts(edges.getStartNodes(), edgeCount);
+            writer.putInts(edges.getEndNodes(), edgeCount);
+            writer.putInts(edges.getEdgeIds(), edgeCount);
+            writer.putInts(edges.getEdgeOrientations(), edgeCount);
+            if (weighted) {
+                writer.putDoubles(edges.getWeights(), edgeCount);
+            }
+            writer.putInts(graph.getVertexIds(), graph.getVertexCount());
+            writer.putInts(graph.getOffsets(), graph.getVertexCount() + 1);
+            writer.putInts(graph.getTargets(), graph.getArcCount());
+            writer.putInts(graph.getEdgeIds(), graph.getArcCount());
+            if (weighted) {
+                writer.putDoubles(graph.getWeights(), graph.getArcCount());
+            }
+            writer.putChecksum();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read a snapshot file.
+     *
+     * @param file     Snapshot file
+     * @param key      Key of the graph
+     * @param rowCount Current number of rows of the edges table
+     * @param hash     Current hash of the columns of the edges table read by the graph
+     * @return The snapshot, or null if the file does not exist, has been
+     * written for another graph or other edges, or is corrupted
+     * @throws IOException Read error
+     */
+    public static GraphSnapshot read(File file, String key, long rowCount, long hash) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        try (FileInputStream fis = new FileInputStream(file)) {
+            final ChannelReader reader = new ChannelReader(fis.getChannel());
+            final int headerSize = 28 + keyBytes.length;
+            if (reader.size < headerSize) {
+                return null;
+            }
+            final ByteBuffer header = reader.map(headerSize);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != rowCount
+                    || header.getLong() != hash || header.getInt() != keyBytes.length) {
+                return null;
+            }
+            final byte[] fileKey = new byte[keyBytes.length];
+            header.get(fileKey);
+            if (!Arrays.equals(keyBytes, fileKey) || reader.size < headerSize + 16) {
+                return null;
+            }
+            reader.startChecksum();
+            final ByteBuffer counts = reader.map(16);
+            final int edgeCount = counts.getInt();
+            final int flags = counts.getInt();
+            final int vertexCount = counts.getInt();
+            final int arcCount = counts.getInt();
+            final boolean weighted = (flags & WEIGHTED) != 0;
+            if (edgeCount < 0 || vertexCount < 0 || arcCount < 0) {
+                return null;
+            }
+            final long expectedSize = headerSize + 16
+                    + (weighted ? 24L : 16L) * edgeCount
+                    + 4L * (2 * vertexCount + 1)
+                    + (weighted ? 16L : 8L) * arcCount
+                    + 8;
+            if (reader.size != expectedSize) {
+                return null;
+            }
+            final int[] startNodes = reader.getInts(edgeCount);
+            final int[] endNodes = reader.getInts(edgeCount);
+            final int[] edgeIds = reader.getInts(edgeCount);
+            final int[] edgeOrientations = reader.getInts(edgeCount);
+            final double[] weights = weighted ? reader.getDoubles(edgeCount) : null;
+            final int[] vertexIds = reader.getInts(vertexCount);
+            final int[] offsets = reader.getInts(vertexCount + 1);
+            final int[] targets = reader.getInts(arcCount);
+            final int[] arcEdgeIds = reader.getInts(arcCount);
+            final double[] arcWeights = weighted ? reader.getDoubles(arcCount) : null;
+            final long checksum = reader.getChecksum();
+            if (reader.map(8).getLong() != checksum) {
+                return null;
+            }
+            return new GraphSnapshot(new GraphEdges(startNodes, endNodes, edgeIds, edgeOrientations, weights),
+                    CSRGraph.fromArrays((flags & DIRECTED) != 0, vertexIds, offsets, targets, arcEdgeIds,
+                            arcWeights));
+        }
+    }
+
+    /**
+     * Write little endian values in a channel through a buffer, computing the
+     * checksum of the written bytes once started.
+     */
+    private static class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private CRC32 checksum;
+
+        private ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            if (checksum != null) {
+                checksum.update(buffer.array(), 0, buffer.limit());
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void startChecksum() throws IOException {
+            flush();
+            checksum = new CRC32();
+        }
+
+        private void putChecksum() throws IOException {
+            flush();
+            final long value = checksum.getValue();
+            checksum = null;
+            putLong(value);
+            flush();
+        }
+
+        private void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+        private void putBytes(byte[] values) throws IOException {
+            for (int position = 0; position < values.length; ) {
+                ensureRemaining(1);
+                final int count = Math.min(buffer.remaining(), values.length - position);
+                buffer.put(values, position, count);
+                position += count;
+            }
+        }
+
+        private void putInts(int[] values, int length) throws IOException {
+            for (int position = 0; position < length; ) {
+                ensureRemaining(4);
+                final int count = Math.min(buffer.remaining() / 4, length - position);
+                buffer.asIntBuffer().put(values, position, count);
+                buffer.position(buffer.position() + count * 4);
+                position += count;
+            }
+        }
+
+        private void putDoubles(double[] values, int length) throws IOException {
+            for (int position = 0; position < length; ) {
+                ensureRemaining(8);
+                final int count = Math.min(buffer.remaining() / 8, length - position);
+                buffer.asDoubleBuffer().put(values, position, count);
+                buffer.position(buffer.position() + count * 8);
+                position += count;
+            }
+        }
+    }
+
+    /**
+     * Read little endian values from consecutive memory mapped regions of a
+     * channel, computing the checksum of the read bytes once started.
+     */
+    private static class ChannelReader {
+        private final FileChannel channel;
+        private final long size;
+        private final byte[] chunk = new byte[BUFFER_SIZE];
+        private long position = 0;
+        private CRC32 checksum;
+
+        private ChannelReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        private void startChecksum() {
+            checksum = new CRC32();
+        }
+
+        private long getChecksum() {
+            final long value = checksum.getValue();
+            checksum = null;
+            return value;
+        }
+
+        /**
+         * Map the next bytes of the channel. The mapping stays valid when
+         * the channel is closed.
+         */
+        private ByteBuffer map(long length) throws IOException {
+            final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            position += length;
+            if (checksum != null) {
+                final ByteBuffer bytes = region.duplicate();
+                while (bytes.hasRemaining()) {
+                    final int count = Math.min(chunk.length, bytes.remaining());
+                    bytes.get(chunk, 0, count);
+                    checksum.update(chunk, 0, count);
+                }
+            }
+            return region;
+        }
+
+        private int[] getInts(int length) throws IOException {
+            final int[] values = new int[length];
+            map(4L * length).asIntBuffer().get(values);
+            return values;
+        }
+
+        private double[] getDoubles(int length) throws IOException {
+            final double[] values = new double[length];
+            map(8L * length).asDoubleBuffer().get(values);
+            return values;
+        }
+    }
+}
@@ -47,6 +47,10 @@ public class NetworkFunctions {
             new ST_Accessibility(),
             new ST_ConnectedComponents(),
             new ST_GraphAnalysis(),
+            new ST_GraphLoad(),
+            new ST_GraphDrop(),
+            new ST_GraphContract(),
+            new ST_Isochrone(),
             new ST_ShortestPathLength(),
             new ST_ShortestPathTree(),
             new ST_ShortestPath()
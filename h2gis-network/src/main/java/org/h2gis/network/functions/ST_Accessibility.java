@@ -21,7 +21,11 @@ package org.h2gis.network.functions;
 
 
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import org.h2.tools.SimpleResultSet;
 import org.h2gis.api.ScalarFunction;
@@ -53,6 +57,8 @@ public class ST_Accessibility extends GraphFunction implements ScalarFunction {
             "* `ST_Accessibility('input_edges', 'o[ - eo]', 'dt')`\n" +
             "* `ST_Accessibility('input_edges', 'o[ - eo]', 'w', 'ds')`\n" +
             "* `ST_Accessibility('input_edges', 'o[ - eo]', 'w', 'dt')` \n" +
+            "* `ST_Accessibility('input_edges', 'o[ - eo]', 'w', 'ds', m)`\n" +
+            "* `ST_Accessibility('input_edges', 'o[ - eo]', 'w', 'dt', m)`\n" +
             "\n" +
             "where \n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -62,7 +68,13 @@ public class ST_Accessibility extends GraphFunction implements ScalarFunction {
             "* `w` = Name of column containing edge weights as doubles\n" +
             "* `ds` = Comma-separated Destination string ('dest1, dest2, ...')\n" +
             "* `dt` = Destination table name (must contain column containing integer vertex\n" +
-            "  ids)\n";
+            "  ids)\n" +
+            "* `m` = Maximum distance to the closest destination, the vertices farther\n" +
+            "  from all the destinations are not returned. `w` may be NULL.\n" +
+            "\n" +
+            "The search uses a compact graph, `SET @" + COMPACT_GRAPH_VARIABLE + " = FALSE` selects\n" +
+            "JGraphT graphs for the calls without `m`. A JGraphT graph is built at each\n" +
+            "call, even from the edges loaded by `ST_GraphLoad`.\n";
 
     /**
      * Constructor
@@ -110,27 +122,77 @@ public class ST_Accessibility extends GraphFunction implements ScalarFunction {
         if (isColumnListConnection(connection)) {
             return prepareResultSet();
         }
+        final int[] destinations = getDestinations(connection, arg4);
+        if (isCompactGraph(connection, true)) {
+            return getAccessibility(connection, inputTable, orientation, weight, destinations,
+                    Double.POSITIVE_INFINITY);
+        }
         final KeyedGraph<VAccess, Edge> graph =
                 prepareGraph(connection, inputTable, orientation, weight, VAccess.class, Edge.class);
-        // Decide whether this is a destination string or a table string.
-        if (GraphFunctionParser.isDestinationsString(arg4)) {
-            return compute(graph, prepareDestSet(graph, GraphFunctionParser.parseDestinationsString(arg4)));
-        } else {
-            // arg4 is a destination table.
-            return compute(graph, prepareDestSet(connection, graph, arg4));
+        final SimpleResultSet output = new SimpleResultSet(
+                new AccessibilityRows(connection, inputTable, orientation, weight, graph, destinations));
+        addColumns(output);
+        return output;
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight, null for unweighted graphs
+     * @param arg4        Destination string or destination table
+     * @param maxDistance Maximum distance to the closest destination
+     * @return Table with closest destination id and distance to closest
+     * destination of the vertices that are not farther than the maximum
+     * distance
+     * @throws SQLException
+     */
+    public static ResultSet getAccessibility(Connection connection,
+                                             String inputTable,
+                                             String orientation,
+                                             String weight,
+                                             String arg4,
+                                             double maxDistance) throws SQLException {
+        if (isColumnListConnection(connection)) {
+            return prepareResultSet();
+        }
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("The maximum distance must be positive");
         }
+        return getAccessibility(connection, inputTable, orientation, weight,
+                getDestinations(connection, arg4), maxDistance);
     }
 
-    private static ResultSet compute(KeyedGraph<VAccess, Edge> graph,
-                                     Set<VAccess> destinations) throws SQLException {
-        SimpleResultSet output = prepareResultSet();
-        new AccessibilityAnalyzer(graph, destinations).compute();
-        for (VAccess v : graph.vertexSet()) {
-            output.addRow(v.getID(), v.getClosestDestinationId(), v.getDistanceToClosestDestination());
+    private static ResultSet getAccessibility(Connection connection,
+                                              String inputTable,
+                                              String orientation,
+                                              String weight,
+                                              int[] destinations,
+                                              double maxDistance) throws SQLException {
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final int[] destinationIndices = new int[destinations.length];
+        for (int i = 0; i < destinations.length; i++) {
+            destinationIndices[i] = graph.getVertexIndex(destinations[i]);
+            if (destinationIndices[i] == -1) {
+                throw new IllegalArgumentException("The graph does not contain vertex " + destinations[i]);
+            }
         }
+        final SimpleResultSet output = new SimpleResultSet(
+                new CompactAccessibilityRows(graph, destinationIndices, maxDistance));
+        addColumns(output);
         return output;
     }
 
+    private static int[] getDestinations(Connection connection, String arg4) throws SQLException {
+        // Decide whether this is a destination string or a table string.
+        if (GraphFunctionParser.isDestinationsString(arg4)) {
+            return GraphFunctionParser.parseDestinationsString(arg4);
+        } else {
+            // arg4 is a destination table.
+            return readDestinations(connection, arg4);
+        }
+    }
+
     private static Set<VAccess> prepareDestSet(KeyedGraph<VAccess, Edge> graph, int[] dests) {
         Set<VAccess> destinations = new HashSet<VAccess>();
         for (int i = 0; i < dests.length; i++) {
@@ -139,29 +201,148 @@ public class ST_Accessibility extends GraphFunction implements ScalarFunction {
         return destinations;
     }
 
-    private static Set<VAccess> prepareDestSet(Connection connection,
-                                               KeyedGraph<VAccess, Edge> graph,
-                                               String destTable) throws SQLException {
+    private static int[] readDestinations(Connection connection,
+                                          String destTable) throws SQLException {
         final Statement st = connection.createStatement();
-        Set<VAccess> destinations = new HashSet<VAccess>();
+        final List<Integer> destinations = new ArrayList<Integer>();
         try {
             final TableLocation destinationTable = TableUtilities.parseInputTable(connection, destTable);
             final ResultSet rs = st.executeQuery(
                     "SELECT " + DESTINATION + " FROM " + destinationTable);
             while (rs.next()) {
-                destinations.add(graph.getVertex(rs.getInt(1)));
+                destinations.add(rs.getInt(1));
             }
         } finally {
             st.close();
         }
-        return destinations;
+        final int[] array = new int[destinations.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = destinations.get(i);
+        }
+        return array;
     }
 
     private static SimpleResultSet prepareResultSet() {
         SimpleResultSet output = new SimpleResultSet();
+        addColumns(output);
+        return output;
+    }
+
+    private static void addColumns(SimpleResultSet output) {
         output.addColumn(SOURCE, Types.INTEGER, 10, 0);
         output.addColumn(CLOSEST_DEST, Types.INTEGER, 10, 0);
         output.addColumn(DISTANCE, Types.DOUBLE, 10, 0);
-        return output;
+    }
+
+    /**
+     * Closest destination of each vertex, read from the vertices once the
+     * accessibility has been computed. The graph is given back once all
+     * the rows have been read.
+     */
+    private static class AccessibilityRows extends GraphRowSource {
+        private static final int CHUNK_SIZE = 1000;
+        private final Connection connection;
+        private final String inputTable;
+        private final String orientation;
+        private final String weight;
+        private final int[] destinations;
+        private KeyedGraph<VAccess, Edge> graph;
+        private Iterator<VAccess> vertices;
+
+        private AccessibilityRows(Connection connection, String inputTable, String orientation, String weight,
+                                  KeyedGraph<VAccess, Edge> graph, int[] destinations) {
+            this.connection = connection;
+            this.inputTable = inputTable;
+            this.orientation = orientation;
+            this.weight = weight;
+            this.graph = graph;
+            this.destinations = destinations;
+        }
+
+        @Override
+        protected boolean fetchRows(Queue<Object[]> rows) throws SQLException {
+            if (vertices == null) {
+                if (graph == null) {
+                    graph = prepareGraph(connection, inputTable, orientation, weight, VAccess.class, Edge.class);
+                }
+                new AccessibilityAnalyzer(graph, prepareDestSet(graph, destinations)).compute();
+                vertices = graph.vertexSet().iterator();
+            }
+            if (!vertices.hasNext()) {
+                return false;
+            }
+            for (int i = 0; i < CHUNK_SIZE && vertices.hasNext(); i++) {
+                final VAccess v = vertices.next();
+                rows.add(new Object[]{v.getID(), v.getClosestDestinationId(), v.getDistanceToClosestDestination()});
+            }
+            return true;
+        }
+
+        @Override
+        protected void rewind() {
+            vertices = null;
+        }
+
+        @Override
+        public void close() {
+            graph = null;
+            vertices = null;
+        }
+    }
+
+    /**
+     * Closest destination of each vertex, computed in a compact graph by a
+     * single search from all the destinations in the reversed graph. The
+     * search stops at the maximum distance, the vertices that have not been
+     * reached are then not returned.
+     */
+    private static class CompactAccessibilityRows extends GraphRowSource {
+        private static final int CHUNK_SIZE = 1000;
+        private final CSRGraph graph;
+        private final int[] destinations;
+        private final double maxDistance;
+        private CSRDijkstra dijkstra;
+        private int nextVertex;
+
+        private CompactAccessibilityRows(CSRGraph graph, int[] destinations, double maxDistance) {
+            this.graph = graph;
+            this.destinations = destinations;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        protected boolean fetchRows(Queue<Object[]> rows) {
+            if (dijkstra == null) {
+                // Distances from the vertices to the destinations
+                dijkstra = new CSRDijkstra(graph.getReverse());
+                dijkstra.manyToAll(destinations, maxDistance);
+                nextVertex = 0;
+            }
+            final int vertexCount = graph.getVertexCount();
+            final boolean limited = maxDistance != Double.POSITIVE_INFINITY;
+            int count = 0;
+            while (count < CHUNK_SIZE && nextVertex < vertexCount) {
+                final int v = nextVertex++;
+                final int closest = dijkstra.getClosestSource(v);
+                if (closest == -1 && limited) {
+                    continue;
+                }
+                rows.add(new Object[]{graph.getVertexId(v), closest == -1 ? -1 : graph.getVertexId(closest),
+                        dijkstra.getDistance(v)});
+                count++;
+            }
+            return count > 0;
+        }
+
+        @Override
+        protected void rewind() {
+            dijkstra = null;
+        }
+
+        @Override
+        public void close() {
+            // The compact graph is not leased, only the search is released
+            dijkstra = null;
+        }
     }
 }
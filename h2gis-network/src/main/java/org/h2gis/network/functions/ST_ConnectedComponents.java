@@ -21,8 +21,10 @@ package org.h2gis.network.functions;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import org.h2gis.api.ScalarFunction;
@@ -69,7 +71,10 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
             "where \n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
             "* `o` = Global orientation (directed, reversed or undirected)\n" +
-            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n";
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "\n" +
+            "The components are found on a compact graph, `SET @" + COMPACT_GRAPH_VARIABLE + " = FALSE`\n" +
+            "uses a JGraphT graph instead.\n";
 
     /**
      * Constructor
@@ -84,7 +89,9 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
     }
 
     /**
-     * Calculate the node and edge connected component tables.
+     * Calculate the node and edge connected component tables. The compact
+     * graph implementation is used unless the session variable
+     * {@value #COMPACT_GRAPH_VARIABLE} is set to false.
      *
      * @param connection  Connection
      * @param inputTable  Edges table produced by ST_Graph
@@ -95,6 +102,9 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
     public static boolean getConnectedComponents(Connection connection,
                                                  String inputTable,
                                                  String orientation) throws SQLException {
+        if (isCompactGraph(connection, true)) {
+            return getCompactConnectedComponents(connection, inputTable, orientation);
+        }
         KeyedGraph graph = prepareGraph(connection, inputTable, orientation, null,
                 VUCent.class, Edge.class);
         if (graph == null) {
@@ -114,6 +124,151 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
         return false;
     }
 
+    /**
+     * Calculate the node and edge connected component tables on primitive
+     * arrays. In the undirected case, only the edge and node ids are read
+     * and the components are found with a union-find structure. In the
+     * directed case, the strongly connected components of the compact graph
+     * are found with an iterative Tarjan's algorithm.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return True if the calculation was successful
+     * @throws SQLException
+     */
+    private static boolean getCompactConnectedComponents(Connection connection,
+                                                         String inputTable,
+                                                         String orientation) throws SQLException {
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODE_COMP_SUFFIX);
+        final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGE_COMP_SUFFIX);
+        final int[] vertexIds;
+        final int[] nodeComponents;
+        final int[] edgeIds;
+        final int[] edgeComponents;
+        if (parseGlobalOrientation(orientation).equals(UNDIRECTED)) {
+            final GraphEdges edges = readEdgeNodes(connection, tableName);
+            LOGGER.info("Calculating connected components... ");
+            final long start = System.currentTimeMillis();
+            vertexIds = edges.getVertexIds();
+            nodeComponents = ConnectedComponents.unionFind(edges, vertexIds);
+            edgeIds = new int[edges.size()];
+            edgeComponents = new int[edges.size()];
+            for (int i = 0; i < edges.size(); i++) {
+                edgeIds[i] = edges.getEdgeId(i);
+                edgeComponents[i] = nodeComponents[Arrays.binarySearch(vertexIds, edges.getStartNode(i))];
+            }
+            logTime(LOGGER, start);
+        } else {
+            final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, null);
+            LOGGER.info("Calculating connected components... ");
+            final long start = System.currentTimeMillis();
+            vertexIds = graph.getVertexIds();
+            nodeComponents = ConnectedComponents.tarjan(graph);
+            // Undirected edges have a second arc with the opposite id, keep
+            // the arcs with the edge id of the table.
+            int edgeCount = 0;
+            for (int arc = 0; arc < graph.getArcCount(); arc++) {
+                if (graph.getEdgeId(arc) > 0) {
+                    edgeCount++;
+                }
+            }
+            edgeIds = new int[edgeCount];
+            edgeComponents = new int[edgeCount];
+            int index = 0;
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                for (int arc = graph.getFirstArc(v); arc < graph.getEndArc(v); arc++) {
+                    if (graph.getEdgeId(arc) > 0) {
+                        // An edge between two strongly connected components
+                        // is not in a strongly connected component.
+                        final int component = nodeComponents[v];
+                        edgeIds[index] = graph.getEdgeId(arc);
+                        edgeComponents[index++] = component == nodeComponents[graph.getTarget(arc)]
+                                ? component : NULL_CONNECTED_COMPONENT_NUMBER;
+                    }
+                }
+            }
+            logTime(LOGGER, start);
+        }
+        LOGGER.info("Storing connected components... ");
+        final long start = System.currentTimeMillis();
+        createNodeTable(connection, nodesName);
+        final boolean previousAutoCommit = connection.getAutoCommit();
+        try {
+            createEdgeTable(connection, edgesName);
+            connection.setAutoCommit(false);
+            insertComponents(connection, nodesName, vertexIds, nodeComponents);
+            insertComponents(connection, edgesName, edgeIds, edgeComponents);
+            connection.commit();
+        } catch (SQLException e) {
+            cancel(connection, nodesName, edgesName, e, "Could not store connected components.");
+            return false;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        logTime(LOGGER, start);
+        return true;
+    }
+
+    /**
+     * Read the edge, start node and end node ids of the edges table.
+     */
+    private static GraphEdges readEdgeNodes(Connection connection, TableLocation tableName) throws SQLException {
+        LOGGER.info("Loading edges into memory...");
+        final long start = System.currentTimeMillis();
+        final GraphEdges edges = new GraphEdges(false);
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("SELECT " + EDGE_ID + ", " + START_NODE + ", " + END_NODE +
+                    " FROM " + tableName);
+            try {
+                while (rs.next()) {
+                    edges.add(rs.getInt(2), rs.getInt(3), rs.getInt(1), 0, GraphCreator.UNDIRECTED_EDGE);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+        edges.trimToSize();
+        logTime(LOGGER, start);
+        return edges;
+    }
+
+    /**
+     * Insert the (id, component) rows in the given node or edge component
+     * table, by batches of {@link #BATCH_SIZE} rows.
+     */
+    private static void insertComponents(Connection connection,
+                                         TableLocation table,
+                                         int[] ids,
+                                         int[] components) throws SQLException {
+        final PreparedStatement insertSt =
+                connection.prepareStatement("INSERT INTO " + table + " VALUES(?,?)");
+        try {
+            int count = 0;
+            for (int i = 0; i < ids.length; i++) {
+                insertSt.setInt(1, ids[i]);
+                insertSt.setInt(2, components[i]);
+                insertSt.addBatch();
+                count++;
+                if (count >= BATCH_SIZE) {
+                    insertSt.executeBatch();
+                    insertSt.clearBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                insertSt.executeBatch();
+                insertSt.clearBatch();
+            }
+        } finally {
+            insertSt.close();
+        }
+    }
+
     private static void cancel(Connection connection,
                                TableLocation nodesName,
                                TableLocation edgesName,
@@ -203,6 +358,18 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
         }
     }
 
+    private static void createEdgeTable(Connection connection,
+                                        TableLocation edgesName) throws SQLException {
+        final Statement st = connection.createStatement();
+        try {
+            st.execute("CREATE TABLE " + edgesName + "(" +
+                    EDGE_ID + " INTEGER PRIMARY KEY, " +
+                    CONNECTED_COMPONENT + " INTEGER);");
+        } finally {
+            st.close();
+        }
+    }
+
     private static boolean storeEdgeConnectedComponents(Connection connection,
                                                         TableLocation tableName,
                                                         TableLocation nodesName,
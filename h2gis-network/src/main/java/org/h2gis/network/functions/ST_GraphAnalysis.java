@@ -24,6 +24,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.Random;
 import java.util.Set;
 import org.h2gis.api.ScalarFunction;
 import static org.h2gis.network.functions.GraphConstants.BETWEENNESS;
@@ -63,17 +65,33 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
             "as well as betweenness centrality for edges. Possible signatures:\n" +
             "* `ST_GraphAnalysis('input_edges', 'o[ - eo]')`\n" +
             "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w')`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w', k)`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w', k, t)`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w', k, t, s)`\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
             "* `o` = Global orientation (directed, reversed or undirected)\n" +
             "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
             "  Required if global orientation is directed or reversed.\n" +
-            "* `w` = Name of column containing edge weights as doubles\n" +
+            "* `w` = Name of column containing edge weights as doubles, NULL for an\n" +
+            "  unweighted graph\n" +
+            "* `k` = Number of random source nodes used to estimate betweenness\n" +
+            "  centrality, much faster on large graphs. Closeness centrality is not\n" +
+            "  computed (NULL). 0 to use all the nodes.\n" +
+            "* `t` = Number of threads computing the centrality (1 by default),\n" +
+            "  several threads analyze a compact graph\n" +
+            "* `s` = Seed of the random choice of the `k` source nodes, so that the\n" +
+            "  estimation can be reproduced. A new seed is used by default.\n" +
             "\n" +
             "**WARNING**: If ST_GraphAnalysis is called on a graph with more than one\n" +
             "(strongly) connected component, all closeness centrality scores will be zero.\n" +
-            "See ST_ConnectedComponents.\n";
+            "See ST_ConnectedComponents.\n" +
+            "\n" +
+            "`SET @" + COMPACT_GRAPH_VARIABLE + " = TRUE` selects compact graphs for the\n" +
+            "calls of the session, they need much less memory. Otherwise the centrality is\n" +
+            "stored in the vertices of a JGraphT graph, which is built at each call, even\n" +
+            "from the edges loaded by `ST_GraphLoad`.\n";
 
     /**
      * Constructor
@@ -130,17 +148,143 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
                                           String weight)
             throws SQLException, InvocationTargetException, NoSuchMethodException,
             InstantiationException, IllegalAccessException {
+        return doGraphAnalysis(connection, inputTable, orientation, weight, 0);
+    }
+
+    /**
+     * Calculate centrality indices on the nodes and edges of a graph
+     * constructed from the input table, in the calling thread.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table
+     * @param orientation Global orientation
+     * @param weight      Edge weight column name, null for unweighted graphs
+     * @param sampleSize  Number of random sources used to estimate the
+     *                    betweenness, 0 to use all the sources
+     * @return True if the calculation was successful
+     * @throws SQLException
+     * @throws InvocationTargetException
+     * @throws NoSuchMethodException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public static boolean doGraphAnalysis(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          int sampleSize)
+            throws SQLException, InvocationTargetException, NoSuchMethodException,
+            InstantiationException, IllegalAccessException {
+        return doGraphAnalysis(connection, inputTable, orientation, weight, sampleSize, 1);
+    }
+
+    /**
+     * Calculate centrality indices on the nodes and edges of a graph
+     * constructed from the input table. The centrality is computed on a
+     * compact graph by {@link BrandesCentrality} if a sample size is given,
+     * if compact graphs are enabled or if several threads are used.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table
+     * @param orientation Global orientation
+     * @param weight      Edge weight column name, null for unweighted graphs
+     * @param sampleSize  Number of random sources used to estimate the
+     *                    betweenness, 0 to use all the sources
+     * @param threadCount Number of threads, 1 to compute in the calling thread
+     * @return True if the calculation was successful
+     * @throws SQLException
+     * @throws InvocationTargetException
+     * @throws NoSuchMethodException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public static boolean doGraphAnalysis(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          int sampleSize,
+                                          int threadCount)
+            throws SQLException, InvocationTargetException, NoSuchMethodException,
+            InstantiationException, IllegalAccessException {
+        return graphAnalysis(connection, inputTable, orientation, weight, sampleSize, threadCount,
+                new Random());
+    }
+
+    /**
+     * Calculate centrality indices on the nodes and edges of a graph
+     * constructed from the input table, choosing the sampled sources with
+     * the given seed so that the estimated betweenness can be reproduced.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table
+     * @param orientation Global orientation
+     * @param weight      Edge weight column name, null for unweighted graphs
+     * @param sampleSize  Number of random sources used to estimate the
+     *                    betweenness, 0 to use all the sources
+     * @param threadCount Number of threads, 1 to compute in the calling thread
+     * @param seed        Seed of the random choice of the sources
+     * @return True if the calculation was successful
+     * @throws SQLException
+     * @throws InvocationTargetException
+     * @throws NoSuchMethodException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public static boolean doGraphAnalysis(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          int sampleSize,
+                                          int threadCount,
+                                          long seed)
+            throws SQLException, InvocationTargetException, NoSuchMethodException,
+            InstantiationException, IllegalAccessException {
+        return graphAnalysis(connection, inputTable, orientation, weight, sampleSize, threadCount,
+                new Random(seed));
+    }
+
+    private static boolean graphAnalysis(Connection connection,
+                                         String inputTable,
+                                         String orientation,
+                                         String weight,
+                                         int sampleSize,
+                                         int threadCount,
+                                         Random random)
+            throws SQLException, InvocationTargetException, NoSuchMethodException,
+            InstantiationException, IllegalAccessException {
+        checkThreadCount(threadCount);
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("The sample size must be positive, or 0 to use all the nodes");
+        }
         final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
         final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODE_CENT_SUFFIX);
         final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGE_CENT_SUFFIX);
+        final boolean compact = sampleSize > 0 || isCompactGraph(connection) || threadCount > 1;
+        KeyedGraph graph = null;
         try {
             createTables(connection, nodesName, edgesName);
-            final KeyedGraph graph =
-                    doAnalysisAndReturnGraph(connection, inputTable, orientation, weight);
+            BrandesCentrality centrality = null;
+            if (compact) {
+                centrality = new BrandesCentrality(prepareCSRGraph(connection, inputTable, orientation, weight));
+                if (sampleSize > 0) {
+                    centrality.computeSampled(sampleSize, random, threadCount);
+                } else {
+                    centrality.compute(threadCount);
+                }
+            } else {
+                graph = prepareGraph(connection, inputTable, orientation, weight,
+                        (weight == null) ? VUCent.class : VWCent.class, EdgeCent.class);
+                analyzeGraph(graph, weight);
+            }
             final boolean previousAutoCommit = connection.getAutoCommit();
             connection.setAutoCommit(false);
-            storeNodeCentrality(connection, nodesName, graph);
-            storeEdgeCentrality(connection, edgesName, graph);
+            if (compact) {
+                storeNodeCentrality(connection, nodesName, centrality);
+                storeEdgeCentrality(connection, edgesName, centrality);
+            } else {
+                storeNodeCentrality(connection, nodesName, graph);
+                storeEdgeCentrality(connection, edgesName, graph);
+            }
             connection.setAutoCommit(previousAutoCommit);
         } catch (SQLException e) {
             LOGGER.error("Problem creating centrality tables.");
@@ -152,24 +296,21 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
                 statement.close();
             }
             return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Centrality computation has been interrupted", e);
         }
         return true;
     }
 
-    private static KeyedGraph doAnalysisAndReturnGraph(Connection connection,
-                                                       String inputTable,
-                                                       String orientation,
-                                                       String weight)
-            throws SQLException, NoSuchMethodException, InstantiationException,
+    private static void analyzeGraph(KeyedGraph graph, String weight)
+            throws NoSuchMethodException, InstantiationException,
             IllegalAccessException, InvocationTargetException {
-        final KeyedGraph graph = prepareGraph(connection, inputTable, orientation, weight,
-                (weight == null) ? VUCent.class : VWCent.class, EdgeCent.class);
         final DefaultProgressMonitor pm = new DefaultProgressMonitor();
         GraphAnalyzer analyzer = (weight == null) ?
                 new UnweightedGraphAnalyzer(graph, pm) :
                 new WeightedGraphAnalyzer((WeightedGraph) graph, pm);
         analyzer.computeAll();
-        return graph;
     }
 
     private static void createTables(Connection connection,
@@ -218,6 +359,73 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
         }
     }
 
+    private static void storeNodeCentrality(Connection connection,
+                                            TableLocation nodesName,
+                                            BrandesCentrality centrality) throws SQLException {
+        final PreparedStatement nodeSt =
+                connection.prepareStatement("INSERT INTO " + nodesName + " VALUES(?,?,?)");
+        try {
+            final CSRGraph graph = centrality.getGraph();
+            final double[] betweenness = centrality.getNodeBetweenness();
+            // Null if the centrality has been estimated from a sample
+            final double[] closeness = centrality.getCloseness();
+            int count = 0;
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                nodeSt.setInt(1, graph.getVertexId(v));
+                nodeSt.setDouble(2, betweenness[v]);
+                if (closeness != null) {
+                    nodeSt.setDouble(3, closeness[v]);
+                } else {
+                    nodeSt.setNull(3, Types.DOUBLE);
+                }
+                nodeSt.addBatch();
+                count++;
+                if (count >= BATCH_SIZE) {
+                    nodeSt.executeBatch();
+                    nodeSt.clearBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                nodeSt.executeBatch();
+                nodeSt.clearBatch();
+            }
+            connection.commit();
+        } finally {
+            nodeSt.close();
+        }
+    }
+
+    private static void storeEdgeCentrality(Connection connection,
+                                            TableLocation edgesName,
+                                            BrandesCentrality centrality) throws SQLException {
+        final PreparedStatement edgeSt =
+                connection.prepareStatement("INSERT INTO " + edgesName + " VALUES(?,?)");
+        try {
+            final int[] edgeIds = centrality.getEdgeIds();
+            final double[] betweenness = centrality.getEdgeBetweenness();
+            int count = 0;
+            for (int i = 0; i < edgeIds.length; i++) {
+                edgeSt.setInt(1, edgeIds[i]);
+                edgeSt.setDouble(2, betweenness[i]);
+                edgeSt.addBatch();
+                count++;
+                if (count >= BATCH_SIZE) {
+                    edgeSt.executeBatch();
+                    edgeSt.clearBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                edgeSt.executeBatch();
+                edgeSt.clearBatch();
+            }
+            connection.commit();
+        } finally {
+            edgeSt.close();
+        }
+    }
+
     private static void storeEdgeCentrality(Connection connection,
                                             TableLocation edgesName,
                                             KeyedGraph graph) throws SQLException {
@@ -0,0 +1,370 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.h2gis.network.functions.GraphConstants.CH_INFO_SUFFIX;
+import static org.h2gis.network.functions.GraphConstants.CH_NODES_SUFFIX;
+import static org.h2gis.network.functions.GraphConstants.CH_RANK;
+import static org.h2gis.network.functions.GraphConstants.CH_SHORTCUTS_SUFFIX;
+import static org.h2gis.network.functions.GraphConstants.END_NODE;
+import static org.h2gis.network.functions.GraphConstants.MIDDLE_NODE;
+import static org.h2gis.network.functions.GraphConstants.NODE_ID;
+import static org.h2gis.network.functions.GraphConstants.START_NODE;
+import static org.h2gis.network.functions.GraphConstants.WEIGHT;
+
+/**
+ * Builds the contraction hierarchy of a graph and stores it in three tables:
+ * the rank of each node, the shortcuts added by the contraction, and the
+ * orientation, weight and edges the hierarchy has been built from. The
+ * hierarchy is then used by the 'ch' algorithm of ST_ShortestPathLength,
+ * which refuses a hierarchy that does not match the queried graph.
+ */
+public class ST_GraphContract extends GraphFunction implements ScalarFunction {
+
+    private static final int BATCH_SIZE = 100;
+    // Columns of the info table
+    private static final String ORIENTATION = "ORIENTATION";
+    private static final String WEIGHT_COLUMN = "WEIGHT_COLUMN";
+    private static final String EDGES_CHECKSUM = "EDGES_CHECKSUM";
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_GraphContract.class);
+    public static final String REMARKS =
+            "`ST_GraphContract` builds the contraction hierarchy of a graph, used by\n" +
+            "`ST_ShortestPathLength` with the 'ch' algorithm. It produces three tables: the\n" +
+            "rank of each node (input_edges" + CH_NODES_SUFFIX + "), the shortcuts added\n" +
+            "between the nodes (input_edges" + CH_SHORTCUTS_SUFFIX + ") and the orientation,\n" +
+            "weight and checksum of the contracted edges (input_edges" + CH_INFO_SUFFIX + ").\n" +
+            "The function must be called again when the edges table is modified, the\n" +
+            "queries refuse an outdated hierarchy. Possible signatures:\n" +
+            "* `ST_GraphContract('input_edges', 'o[ - eo]')`\n" +
+            "* `ST_GraphContract('input_edges', 'o[ - eo]', 'w')`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles\n" +
+            "\n" +
+            "The queries must use the same orientation and weight as the contraction.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphContract() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "contract";
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return True if the contraction hierarchy has been stored
+     * @throws SQLException
+     */
+    public static boolean contract(Connection connection,
+                                   String inputTable,
+                                   String orientation) throws SQLException {
+        return contract(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return True if the contraction hierarchy has been stored
+     * @throws SQLException
+     */
+    public static boolean contract(Connection connection,
+                                   String inputTable,
+                                   String orientation,
+                                   String weight) throws SQLException {
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        LOGGER.info("Contracting the graph... ");
+        long start = System.currentTimeMillis();
+        final ContractionHierarchy hierarchy = ContractionHierarchy.contract(graph);
+        logTime(LOGGER, start);
+
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, CH_NODES_SUFFIX);
+        final TableLocation shortcutsName = TableUtilities.suffixTableLocation(tableName, CH_SHORTCUTS_SUFFIX);
+        final TableLocation infoName = TableUtilities.suffixTableLocation(tableName, CH_INFO_SUFFIX);
+        LOGGER.info("Storing " + hierarchy.getShortcutCount() + " shortcuts... ");
+        start = System.currentTimeMillis();
+        final boolean previousAutoCommit = connection.getAutoCommit();
+        try {
+            final Statement st = connection.createStatement();
+            try {
+                st.execute("DROP TABLE IF EXISTS " + nodesName + ", " + shortcutsName + ", " + infoName);
+                st.execute("CREATE TABLE " + nodesName + "(" +
+                        NODE_ID + " INTEGER PRIMARY KEY, " +
+                        CH_RANK + " INTEGER)");
+                st.execute("CREATE TABLE " + shortcutsName + "(" +
+                        START_NODE + " INTEGER, " +
+                        END_NODE + " INTEGER, " +
+                        WEIGHT + " DOUBLE, " +
+                        MIDDLE_NODE + " INTEGER)");
+                st.execute("CREATE TABLE " + infoName + "(" +
+                        ORIENTATION + " VARCHAR, " +
+                        WEIGHT_COLUMN + " VARCHAR, " +
+                        EDGES_CHECKSUM + " BIGINT)");
+            } finally {
+                st.close();
+            }
+            connection.setAutoCommit(false);
+            storeNodes(connection, nodesName, hierarchy);
+            storeShortcuts(connection, shortcutsName, hierarchy);
+            storeInfo(connection, infoName, parser, graph);
+            connection.commit();
+        } catch (SQLException e) {
+            LOGGER.error("Could not store the contraction hierarchy.", e);
+            connection.rollback();
+            final Statement st = connection.createStatement();
+            try {
+                st.execute("DROP TABLE IF EXISTS " + nodesName + ", " + shortcutsName + ", " + infoName);
+            } finally {
+                st.close();
+            }
+            return false;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        logTime(LOGGER, start);
+        return true;
+    }
+
+    private static void storeNodes(Connection connection,
+                                   TableLocation nodesName,
+                                   ContractionHierarchy hierarchy) throws SQLException {
+        final CSRGraph graph = hierarchy.getGraph();
+        final PreparedStatement st = connection.prepareStatement("INSERT INTO " + nodesName + " VALUES(?,?)");
+        try {
+            int count = 0;
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                st.setInt(1, graph.getVertexId(v));
+                st.setInt(2, hierarchy.getRank(v));
+                st.addBatch();
+                if (++count >= BATCH_SIZE) {
+                    st.executeBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                st.executeBatch();
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    private static void storeShortcuts(Connection connection,
+                                       TableLocation shortcutsName,
+                                       ContractionHierarchy hierarchy) throws SQLException {
+        final CSRGraph graph = hierarchy.getGraph();
+        final PreparedStatement st = connection.prepareStatement("INSERT INTO " + shortcutsName + " VALUES(?,?,?,?)");
+        try {
+            int count = 0;
+            for (int i = 0; i < hierarchy.getShortcutCount(); i++) {
+                st.setInt(1, graph.getVertexId(hierarchy.getShortcutSource(i)));
+                st.setInt(2, graph.getVertexId(hierarchy.getShortcutTarget(i)));
+                st.setDouble(3, hierarchy.getShortcutWeight(i));
+                st.setInt(4, graph.getVertexId(hierarchy.getShortcutMiddle(i)));
+                st.addBatch();
+                if (++count >= BATCH_SIZE) {
+                    st.executeBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                st.executeBatch();
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    private static void storeInfo(Connection connection,
+                                  TableLocation infoName,
+                                  GraphFunctionParser parser,
+                                  CSRGraph graph) throws SQLException {
+        final PreparedStatement st = connection.prepareStatement("INSERT INTO " + infoName + " VALUES(?,?,?)");
+        try {
+            st.setString(1, getOrientation(parser));
+            st.setString(2, getWeightColumn(parser));
+            st.setLong(3, graph.getChecksum());
+            st.execute();
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * @param parser Parsed orientation and weight
+     * @return Global orientation and edge orientation column, in upper case
+     */
+    private static String getOrientation(GraphFunctionParser parser) {
+        final String edgeOrientation = parser.getEdgeOrientation();
+        return parser.getGlobalOrientation().name() + (edgeOrientation == null ? "" :
+                " " + GraphFunctionParser.SEPARATOR + " " + edgeOrientation.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @param parser Parsed orientation and weight
+     * @return Weight column in upper case, or null for unweighted graphs
+     */
+    private static String getWeightColumn(GraphFunctionParser parser) {
+        final String weight = parser.getWeightColumn();
+        return weight == null ? null : weight.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Read the contraction hierarchy stored by {@link #contract} for the
+     * given graph.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @param parser     Parsed orientation and weight of the graph
+     * @param graph      Graph built with this orientation and weight
+     * @return The contraction hierarchy
+     * @throws SQLException
+     * @throws IllegalArgumentException If the hierarchy is missing, has been
+     *                                  built with another orientation or
+     *                                  weight, or from other edges
+     */
+    public static ContractionHierarchy readHierarchy(Connection connection,
+                                                     String inputTable,
+                                                     GraphFunctionParser parser,
+                                                     CSRGraph graph) throws SQLException {
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, CH_NODES_SUFFIX);
+        final TableLocation shortcutsName = TableUtilities.suffixTableLocation(tableName, CH_SHORTCUTS_SUFFIX);
+        final TableLocation infoName = TableUtilities.suffixTableLocation(tableName, CH_INFO_SUFFIX);
+        final String outdated = "The contraction hierarchy of " + tableName
+                + " does not match the graph, call ST_GraphContract again.";
+        final int vertexCount = graph.getVertexCount();
+        final int[] ranks = new int[vertexCount];
+        Arrays.fill(ranks, -1);
+        int shortcutCount = 0;
+        int[] sources = new int[16];
+        int[] targets = new int[16];
+        int[] middles = new int[16];
+        double[] weights = new double[16];
+        final Statement st = connection.createStatement();
+        try {
+            if (!JDBCUtilities.tableExists(connection, nodesName.toString())
+                    || !JDBCUtilities.tableExists(connection, shortcutsName.toString())
+                    || !JDBCUtilities.tableExists(connection, infoName.toString())) {
+                throw new IllegalArgumentException("The graph " + tableName
+                        + " has not been contracted, call ST_GraphContract first.");
+            }
+            ResultSet rs = st.executeQuery("SELECT " + ORIENTATION + ", " + WEIGHT_COLUMN + ", "
+                    + EDGES_CHECKSUM + " FROM " + infoName);
+            try {
+                if (!rs.next()) {
+                    throw new IllegalArgumentException(outdated);
+                }
+                final String orientation = rs.getString(1);
+                final String weight = rs.getString(2);
+                final String expectedWeight = getWeightColumn(parser);
+                if (!getOrientation(parser).equals(orientation)
+                        || (weight == null ? expectedWeight != null : !weight.equals(expectedWeight))) {
+                    throw new IllegalArgumentException("The contraction hierarchy of " + tableName
+                            + " has been built with the orientation '" + orientation + "' and the weight "
+                            + (weight == null ? "NULL" : "'" + weight + "'")
+                            + ", the queries must use the same orientation and weight.");
+                }
+                if (rs.getLong(3) != graph.getChecksum()) {
+                    throw new IllegalArgumentException("The edges of " + tableName
+                            + " have been modified since the contraction, call ST_GraphContract again.");
+                }
+            } finally {
+                rs.close();
+            }
+            rs = st.executeQuery("SELECT " + NODE_ID + ", " + CH_RANK + " FROM " + nodesName);
+            try {
+                int rankCount = 0;
+                while (rs.next()) {
+                    final int vertex = graph.getVertexIndex(rs.getInt(1));
+                    if (vertex == -1) {
+                        throw new IllegalArgumentException(outdated);
+                    }
+                    ranks[vertex] = rs.getInt(2);
+                    rankCount++;
+                }
+                if (rankCount != vertexCount) {
+                    throw new IllegalArgumentException(outdated);
+                }
+            } finally {
+                rs.close();
+            }
+            rs = st.executeQuery("SELECT " + START_NODE + ", " + END_NODE + ", " + WEIGHT + ", "
+                    + MIDDLE_NODE + " FROM " + shortcutsName);
+            try {
+                while (rs.next()) {
+                    if (shortcutCount == sources.length) {
+                        sources = Arrays.copyOf(sources, shortcutCount * 2);
+                        targets = Arrays.copyOf(targets, shortcutCount * 2);
+                        middles = Arrays.copyOf(middles, shortcutCount * 2);
+                        weights = Arrays.copyOf(weights, shortcutCount * 2);
+                    }
+                    sources[shortcutCount] = graph.getVertexIndex(rs.getInt(1));
+                    targets[shortcutCount] = graph.getVertexIndex(rs.getInt(2));
+                    weights[shortcutCount] = rs.getDouble(3);
+                    middles[shortcutCount] = graph.getVertexIndex(rs.getInt(4));
+                    if (sources[shortcutCount] == -1 || targets[shortcutCount] == -1
+                            || middles[shortcutCount] == -1) {
+                        throw new IllegalArgumentException(outdated);
+                    }
+                    shortcutCount++;
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+        return new ContractionHierarchy(graph, ranks,
+                Arrays.copyOf(sources, shortcutCount), Arrays.copyOf(targets, shortcutCount),
+                Arrays.copyOf(middles, shortcutCount), Arrays.copyOf(weights, shortcutCount));
+    }
+}
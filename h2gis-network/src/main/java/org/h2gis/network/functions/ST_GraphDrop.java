@@ -0,0 +1,96 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Removes from memory the graphs kept by {@link ST_GraphLoad}.
+ */
+public class ST_GraphDrop extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_GraphDrop` removes from memory the graphs kept by `ST_GraphLoad`.\n" +
+            "Possible signatures:\n" +
+            "* `ST_GraphDrop('input_edges')` - All the graphs of the edges table\n" +
+            "* `ST_GraphDrop('input_edges', 'o[ - eo]')`\n" +
+            "* `ST_GraphDrop('input_edges', 'o[ - eo]', 'w')`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "* `w` = Name of column containing edge weights as doubles\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphDrop() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "dropGraph";
+    }
+
+    /**
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @return True if at least one graph has been removed
+     * @throws SQLException
+     */
+    public static boolean dropGraph(Connection connection,
+                                    String inputTable) throws SQLException {
+        return GraphCache.drop(connection, inputTable);
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return True if the graph has been removed
+     * @throws SQLException
+     */
+    public static boolean dropGraph(Connection connection,
+                                    String inputTable,
+                                    String orientation) throws SQLException {
+        return dropGraph(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return True if the graph has been removed
+     * @throws SQLException
+     */
+    public static boolean dropGraph(Connection connection,
+                                    String inputTable,
+                                    String orientation,
+                                    String weight) throws SQLException {
+        return GraphCache.drop(connection, inputTable, orientation, weight);
+    }
+}
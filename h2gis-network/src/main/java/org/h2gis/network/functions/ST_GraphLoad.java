@@ -0,0 +1,112 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Keeps the edges of a graph in memory, so that the graph functions called
+ * with the same table, orientation and weight do not read the edges table
+ * again.
+ */
+public class ST_GraphLoad extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_GraphLoad` keeps a graph in memory, it is then reused by the graph functions\n" +
+            "called with the same edges table, orientation and weight. The graph is read again\n" +
+            "if the edges table is modified, and removed from memory by `ST_GraphDrop`.\n" +
+            "Possible signatures:\n" +
+            "* `ST_GraphLoad('input_edges', 'o[ - eo]')`\n" +
+            "* `ST_GraphLoad('input_edges', 'o[ - eo]', 'w')`\n" +
+            "* `ST_GraphLoad('input_edges', 'o[ - eo]', 'w', 'snapshot')`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles, null for unweighted graphs\n" +
+            "* `snapshot` = Path of a binary snapshot file of the graph. The graph is read from\n" +
+            "  this file if it has been written for the same edges table, orientation, weight\n" +
+            "  and edges (number of rows and hash of the edge ids, nodes, orientations and\n" +
+            "  weights). Otherwise the edges table is read and the file is written.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphLoad() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "loadGraph";
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return Number of edges kept in memory
+     * @throws SQLException
+     */
+    public static int loadGraph(Connection connection,
+                                String inputTable,
+                                String orientation) throws SQLException {
+        return loadGraph(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Number of edges kept in memory
+     * @throws SQLException
+     */
+    public static int loadGraph(Connection connection,
+                                String inputTable,
+                                String orientation,
+                                String weight) throws SQLException {
+        return GraphCache.load(connection, inputTable, orientation, weight);
+    }
+
+    /**
+     * @param connection   Connection
+     * @param inputTable   Edges table produced by ST_Graph
+     * @param orientation  Orientation string
+     * @param weight       Weight column name, null for unweighted graphs
+     * @param snapshotFile Path of the snapshot file of the graph
+     * @return Number of edges kept in memory
+     * @throws SQLException
+     */
+    public static int loadGraph(Connection connection,
+                                String inputTable,
+                                String orientation,
+                                String weight,
+                                String snapshotFile) throws SQLException {
+        return GraphCache.load(connection, inputTable, orientation, weight, new File(snapshotFile));
+    }
+}
@@ -0,0 +1,404 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+import org.locationtech.jts.triangulate.DelaunayTriangulationBuilder;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.h2gis.network.functions.GraphConstants.DISTANCE;
+import static org.h2gis.network.functions.GraphConstants.SOURCE;
+import static org.h2gis.network.functions.GraphConstants.THE_GEOM;
+import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
+
+/**
+ * Computes the isochrone polygons of a source vertex: the areas reachable
+ * from the source within several distances, in a single search bounded by
+ * the largest distance.
+ *
+ * <p>The vertices reached by the search, with their distance, and the
+ * vertices next to them, with the distance through the reached vertices,
+ * are triangulated using the coordinates of the nodes table. The isochrone
+ * of a distance is the union of the parts of the triangles where the
+ * distance, linearly interpolated in the triangles, is lower than or equal to
+ * this distance. Triangles with a side longer than a given length are not
+ * used, so that areas without edges are not covered.
+ */
+public class ST_Isochrone extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_Isochrone` calculates the areas reachable from a vertex of a graph within\n" +
+            "several distances, from the coordinates of the nodes table produced by\n" +
+            "`ST_Graph`. Possible signatures:\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'w', s, 'd')`\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'w', 's', 'd')`\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'w', s, 'd', l)`\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'w', 's', 'd', l)`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`, the\n" +
+            "  nodes table is `input_nodes`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles, NULL for an\n" +
+            "  unweighted graph\n" +
+            "* `s` = Source vertex id, comma-separated source string ('s1, s2, ...') or\n" +
+            "  source table name (must contain column " + SOURCE + ")\n" +
+            "* `d` = Comma-separated distances ('d1, d2, ...')\n" +
+            "* `l` = Maximum side length of the triangles. By default twice the longest\n" +
+            "  edge of the shortest path tree, including the edges to the nodes next to the\n" +
+            "  reached nodes (straight line between the nodes)\n" +
+            "\n" +
+            "One polygon is returned for each source and distance, covering the areas\n" +
+            "reachable within this distance.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_Isochrone() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "getIsochrones";
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param sources     Source vertex id, source string or source table
+     * @param distances   Comma-separated distances
+     * @return The isochrone polygons
+     * @throws SQLException
+     */
+    public static ResultSet getIsochrones(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          Value sources,
+                                          String distances) throws SQLException {
+        return getIsochrones(connection, inputTable, orientation, weight, sources, distances, 0);
+    }
+
+    /**
+     * @param connection      Connection
+     * @param inputTable      Edges table produced by ST_Graph
+     * @param orientation     Orientation string
+     * @param weight          Weight column name, null for unweighted graphs
+     * @param sources         Source vertex id, source string or source table
+     * @param distances       Comma-separated distances
+     * @param maxTriangleSide Maximum side length of the triangles, 0 to use
+     *                        twice the longest edge of the shortest path tree
+     *                        extended to the vertices next to it
+     * @return The isochrone polygons
+     * @throws SQLException
+     */
+    public static ResultSet getIsochrones(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          Value sources,
+                                          String distances,
+                                          double maxTriangleSide) throws SQLException {
+        if (isColumnListConnection(connection)) {
+            return prepareResultSet(null);
+        }
+        if (maxTriangleSide < 0) {
+            throw new IllegalArgumentException("The maximum side length must be positive");
+        }
+        final double[] bands = parseDistances(distances);
+        final TableLocation nodesTable = ShortestPathSearch.getNodesTable(connection, inputTable);
+        if (nodesTable == null) {
+            throw new IllegalArgumentException("Cannot deduce the nodes table of " + inputTable
+                    + ", the edges table name must end with _EDGES.");
+        }
+        final int[] sourceIds = getSources(connection, sources);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final int[] sourceIndices = new int[sourceIds.length];
+        for (int i = 0; i < sourceIds.length; i++) {
+            sourceIndices[i] = graph.getVertexIndex(sourceIds[i]);
+            if (sourceIndices[i] == -1) {
+                throw new IllegalArgumentException("The graph does not contain vertex " + sourceIds[i]);
+            }
+        }
+        final double[][] coordinates = ShortestPathSearch.readCoordinates(connection, nodesTable, graph);
+        final GeometryFactory factory = new GeometryFactory(new PrecisionModel(),
+                SFSUtilities.getSRID(connection, nodesTable));
+        return prepareResultSet(new IsochroneRows(graph, coordinates[0], coordinates[1], factory,
+                sourceIndices, bands, maxTriangleSide));
+    }
+
+    /**
+     * @param distances Comma-separated distances
+     * @return Sorted distances
+     */
+    private static double[] parseDistances(String distances) {
+        final String[] values = distances.split(",");
+        final double[] bands = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                bands[i] = Double.parseDouble(values[i].trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid distance: " + values[i].trim());
+            }
+            if (!(bands[i] >= 0) || Double.isInfinite(bands[i])) {
+                throw new IllegalArgumentException("Invalid distance: " + values[i].trim());
+            }
+        }
+        Arrays.sort(bands);
+        return bands;
+    }
+
+    private static int[] getSources(Connection connection, Value sources) throws SQLException {
+        if (sources instanceof ValueInt) {
+            return new int[]{sources.getInt()};
+        }
+        final String string = sources.getString();
+        if (GraphFunctionParser.isDestinationsString(string)) {
+            return GraphFunctionParser.parseDestinationsString(string);
+        }
+        final TableLocation sourceTable = TableUtilities.parseInputTable(connection, string);
+        final List<Integer> ids = new ArrayList<Integer>();
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("SELECT " + SOURCE + " FROM " + sourceTable);
+            try {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+        final int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+
+    private static SimpleResultSet prepareResultSet(SimpleRowSource rows) {
+        SimpleResultSet output = rows == null ? new SimpleResultSet() : new SimpleResultSet(rows);
+        output.addColumn(THE_GEOM, Types.JAVA_OBJECT, "GEOMETRY", 0, 0);
+        output.addColumn(SOURCE, Types.INTEGER, 10, 0);
+        output.addColumn(DISTANCE, Types.DOUBLE, 10, 0);
+        return output;
+    }
+
+    /**
+     * Isochrones of each source, computed when the first row of the source
+     * is read. The search state is shared by all the sources.
+     */
+    private static class IsochroneRows extends GraphRowSource {
+        private final CSRGraph graph;
+        private final double[] x;
+        private final double[] y;
+        private final GeometryFactory factory;
+        private final int[] sources;
+        private final double[] bands;
+        private final double maxTriangleSide;
+        private CSRDijkstra dijkstra;
+        private int nextSource = 0;
+
+        private IsochroneRows(CSRGraph graph, double[] x, double[] y, GeometryFactory factory, int[] sources,
+                              double[] bands, double maxTriangleSide) {
+            this.graph = graph;
+            this.x = x;
+            this.y = y;
+            this.factory = factory;
+            this.sources = sources;
+            this.bands = bands;
+            this.maxTriangleSide = maxTriangleSide;
+        }
+
+        @Override
+        protected boolean fetchRows(Queue<Object[]> rows) {
+            if (nextSource == sources.length) {
+                return false;
+            }
+            if (dijkstra == null) {
+                dijkstra = new CSRDijkstra(graph);
+            }
+            final int source = sources[nextSource++];
+            final Geometry[] isochrones = computeIsochrones(source);
+            for (int i = 0; i < bands.length; i++) {
+                rows.add(new Object[]{isochrones[i], graph.getVertexId(source), bands[i]});
+            }
+            return true;
+        }
+
+        private Geometry[] computeIsochrones(int source) {
+            final double maxDistance = bands[bands.length - 1];
+            dijkstra.manyToAll(new int[]{source}, maxDistance);
+            // Distance of each node coordinate
+            final Map<Coordinate, Double> sites = new HashMap<Coordinate, Double>();
+            // Distances through the reached vertices of the vertices next to them
+            final Map<Integer, Double> frontier = new HashMap<Integer, Double>();
+            double longestTreeEdge = 0;
+            for (int i = 0; i < dijkstra.getReachedCount(); i++) {
+                final int v = dijkstra.getReachedVertex(i);
+                final double distance = dijkstra.getDistance(v);
+                addSite(sites, v, distance);
+                final int predecessorArc = dijkstra.getPredecessorArc(v);
+                if (predecessorArc != -1) {
+                    longestTreeEdge = Math.max(longestTreeEdge, length(graph.getSource(predecessorArc), v));
+                }
+                for (int arc = graph.getFirstArc(v); arc < graph.getEndArc(v); arc++) {
+                    final int w = graph.getTarget(arc);
+                    if (dijkstra.getDistance(w) == Double.POSITIVE_INFINITY) {
+                        final double newDistance = distance + graph.getWeight(arc);
+                        final Double previous = frontier.get(w);
+                        if (previous == null || newDistance < previous) {
+                            frontier.put(w, newDistance);
+                            longestTreeEdge = Math.max(longestTreeEdge, length(v, w));
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Double> entry : frontier.entrySet()) {
+                addSite(sites, entry.getKey(), entry.getValue());
+            }
+            final Geometry[] isochrones = new Geometry[bands.length];
+            final List<Coordinate[]> triangles;
+            if (sites.size() < 3) {
+                triangles = new ArrayList<Coordinate[]>();
+            } else {
+                final DelaunayTriangulationBuilder builder = new DelaunayTriangulationBuilder();
+                builder.setSites(sites.keySet());
+                triangles = builder.getSubdivision().getTriangleCoordinates(false);
+            }
+            final double maxSide = maxTriangleSide > 0 ? maxTriangleSide : 2 * longestTreeEdge;
+            for (int i = 0; i < bands.length; i++) {
+                final List<Geometry> parts = new ArrayList<Geometry>();
+                for (Coordinate[] triangle : triangles) {
+                    if (isTooLarge(triangle, maxSide)) {
+                        continue;
+                    }
+                    final Geometry part = clip(triangle, sites, bands[i]);
+                    if (part != null) {
+                        parts.add(part);
+                    }
+                }
+                final Geometry union = parts.isEmpty() ? null : UnaryUnionOp.union(parts);
+                isochrones[i] = union == null ? factory.createPolygon((Coordinate[]) null) : union;
+            }
+            return isochrones;
+        }
+
+        /**
+         * @return Straight line distance between two vertices, 0 if a vertex
+         * is not in the nodes table
+         */
+        private double length(int u, int v) {
+            final double length = Math.hypot(x[v] - x[u], y[v] - y[u]);
+            return Double.isNaN(length) ? 0 : length;
+        }
+
+        private void addSite(Map<Coordinate, Double> sites, int vertex, double distance) {
+            if (Double.isNaN(x[vertex]) || Double.isNaN(y[vertex])) {
+                // Not in the nodes table
+                return;
+            }
+            final Coordinate coordinate = new Coordinate(x[vertex], y[vertex]);
+            final Double previous = sites.get(coordinate);
+            if (previous == null || distance < previous) {
+                sites.put(coordinate, distance);
+            }
+        }
+
+        private static boolean isTooLarge(Coordinate[] triangle, double maxSide) {
+            for (int i = 0; i < 3; i++) {
+                if (triangle[i].distance(triangle[i + 1]) > maxSide) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return The part of the triangle where the interpolated distance is
+         * not greater than the given distance, or null if this part is empty
+         * or degenerated
+         */
+        private Geometry clip(Coordinate[] triangle, Map<Coordinate, Double> sites, double distance) {
+            final List<Coordinate> ring = new ArrayList<Coordinate>(5);
+            for (int i = 0; i < 3; i++) {
+                final Coordinate a = triangle[i];
+                final Coordinate b = triangle[i + 1];
+                final double da = sites.get(a);
+                final double db = sites.get(b);
+                if (da <= distance) {
+                    ring.add(new Coordinate(a.x, a.y));
+                }
+                if ((da <= distance) != (db <= distance)) {
+                    final double t = (distance - da) / (db - da);
+                    ring.add(new Coordinate(a.x + t * (b.x - a.x), a.y + t * (b.y - a.y)));
+                }
+            }
+            if (ring.size() < 3) {
+                return null;
+            }
+            ring.add(ring.get(0));
+            final Geometry part = factory.createPolygon(ring.toArray(new Coordinate[ring.size()]));
+            return part.getArea() > 0 ? part : null;
+        }
+
+        @Override
+        protected void rewind() {
+            nextSource = 0;
+        }
+
+        @Override
+        public void close() {
+            // The compact graph is not leased, only the search is released
+            dijkstra = null;
+        }
+    }
+}
@@ -22,9 +22,13 @@ package org.h2gis.network.functions;
 import org.locationtech.jts.geom.Geometry;
 
 import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import org.h2.tools.SimpleResultSet;
 import org.h2gis.api.ScalarFunction;
@@ -43,6 +47,8 @@ import org.javanetworkanalyzer.alg.Dijkstra;
 import org.javanetworkanalyzer.data.VDijkstra;
 import org.javanetworkanalyzer.model.Edge;
 import org.javanetworkanalyzer.model.KeyedGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Calculates the shortest path(s) between vertices in a JGraphT graph produced
@@ -52,8 +58,7 @@ import org.javanetworkanalyzer.model.KeyedGraph;
  */
 public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
 
-    private int globalID = 1;
-
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_ShortestPath.class);
     public static final String NO_GEOM_FIELD_ERROR = "The input table must contain a geometry field.";
 
     public static final String REMARKS =
@@ -61,6 +66,7 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
             "Possible signatures:\n" +
             "* `ST_ShortestPath('input_edges', 'o[ - eo]', s, d)`  - One-to-One\n" +
             "* `ST_ShortestPath('input_edges', 'o[ - eo]', 'w', s, d)`  - One-to-One weighted\n" +
+            "* `ST_ShortestPath('input_edges', 'o[ - eo]', 'w', s, d, 'a')`  - One-to-One with algorithm\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -69,7 +75,14 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
             "  if global orientation is directed or reversed.\n" +
             "* `w` = Name of column containing edge weights as doubles\n" +
             "* `s` = Source vertex id\n" +
-            "* `d` = Destination vertex id\n";
+            "* `d` = Destination vertex id\n" +
+            "* `a` = Algorithm: 'dijkstra' (default, returns all the shortest paths),\n" +
+            "  'bidirectional' or 'astar[ - input_nodes]' (return one shortest path).\n" +
+            "  A* reads the node coordinates from the nodes table produced by `ST_Graph`.\n" +
+            "  `w` may be NULL for unweighted graphs.\n" +
+            "\n" +
+            "The 'dijkstra' search uses a JGraphT graph, built at each call. The graphs built\n" +
+            "from the edges loaded by `ST_GraphLoad` are reused by the next calls.\n";
 
     /**
      * Constructor
@@ -119,12 +132,27 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
         return oneToOne(connection, inputTable, orientation, weight, source, destination);
     }
 
-    private static ResultSet oneToOne(Connection connection,
-                                      String inputTable,
-                                      String orientation,
-                                      String weight,
-                                      int source,
-                                      int destination) throws SQLException {
+    /**
+     * @param connection  connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight, null for unweighted graphs
+     * @param source      Source vertex id
+     * @param destination Destination vertex id
+     * @param algorithm   Algorithm, see {@link ShortestPathSearch}
+     * @return Shortest path
+     * @throws SQLException
+     */
+    public static ResultSet getShortestPath(Connection connection,
+                                            String inputTable,
+                                            String orientation,
+                                            String weight,
+                                            int source,
+                                            int destination,
+                                            String algorithm) throws SQLException {
+        if (ShortestPathSearch.isDijkstra(algorithm)) {
+            return oneToOne(connection, inputTable, orientation, weight, source, destination);
+        }
         final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
         final String firstGeometryField =
                 getFirstGeometryField(connection, tableName);
@@ -133,83 +161,76 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
         if (isColumnListConnection(connection)) {
             return output;
         }
-        // Do the calculation.
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
-        final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-        final VDijkstra vDestination = graph.getVertex(destination);
-        final double distance = dijkstra.oneToOne(graph.getVertex(source), vDestination);
-
-        if (distance != Double.POSITIVE_INFINITY) {           
-            // Need to create an object for the globalID recursion.
-            final ST_ShortestPath f = new ST_ShortestPath();
+        final CSRPath path = ShortestPathSearch.oneToOne(connection, inputTable, orientation, weight,
+                source, destination, algorithm);
+        if (path != null) {
+            Map<Integer, Geometry> edgeGeometryMap = null;
             if (containsGeomField) {
-                final Map<Integer, Geometry> edgeGeometryMap =
-                        getEdgeGeometryMap(connection, tableName, firstGeometryField);
-                f.addPredEdges(graph, vDestination, output, edgeGeometryMap, 1);
-            } else {
-                f.addPredEdges(graph, vDestination, output, 1);
+                final List<Integer> edgeIds = new ArrayList<Integer>(path.getEdgeCount());
+                for (int i = 0; i < path.getEdgeCount(); i++) {
+                    edgeIds.add(path.getEdgeId(i));
+                }
+                final EdgeGeometries geometries = new EdgeGeometries(connection, tableName, firstGeometryField);
+                try {
+                    edgeGeometryMap = geometries.read(edgeIds);
+                } finally {
+                    geometries.close();
+                }
             }
+            addPathEdges(path, output, edgeGeometryMap);
         }
         return output;
     }
 
-    private void addPredEdges(KeyedGraph<VDijkstra, Edge> graph, VDijkstra dest, SimpleResultSet output,
-                              Map<Integer, Geometry> edgeGeomMap, int localID) throws SQLException {
-        // Rebuild the shortest path(s). (Yes, there could be more than
-        // one if they have the same distance!)
-        final Set<Edge> predEdges = dest.getPredecessorEdges();
-        // The only vertex with no predecessors is the source vertex, so we can
-        // start renumbering here.
-        if (predEdges.isEmpty()) {
-            globalID++;
-        }
-        // Recursively add the predecessor edges.
-        for (Edge e : predEdges) {
-            final VDijkstra edgeSource = graph.getEdgeSource(e);
-            final VDijkstra edgeDestination = graph.getEdgeTarget(e);
-            final Geometry geometry = edgeGeomMap.get(Math.abs(e.getID()));
-            // Right order
-            if (edgeDestination.equals(dest)) {
-                output.addRow(geometry, e.getID(), globalID, localID,
-                        edgeSource.getID(), edgeDestination.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeSource, output, edgeGeomMap, localID + 1);
-            } // Wrong order
-            else {
-                output.addRow(geometry, e.getID(), globalID, localID,
-                        edgeDestination.getID(), edgeSource.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeDestination, output, edgeGeomMap, localID + 1);
+    /**
+     * Add the edges of a path found in a compact graph, in the same order
+     * as the paths found in a JGraphT graph: from the destination to the
+     * source.
+     *
+     * @param path            Path
+     * @param output          Output
+     * @param edgeGeometryMap Edge geometries, null if the edges table has no
+     *                        geometry field
+     * @throws SQLException
+     */
+    private static void addPathEdges(CSRPath path, SimpleResultSet output,
+                                     Map<Integer, Geometry> edgeGeometryMap) throws SQLException {
+        final int pathID = 1;
+        final int edgeCount = path.getEdgeCount();
+        for (int i = edgeCount - 1; i >= 0; i--) {
+            final int edgeID = path.getEdgeId(i);
+            final int localID = edgeCount - i;
+            if (edgeGeometryMap != null) {
+                output.addRow(edgeGeometryMap.get(Math.abs(edgeID)), edgeID, pathID, localID,
+                        path.getVertexId(i), path.getVertexId(i + 1), path.getWeight(i));
+            } else {
+                output.addRow(edgeID, pathID, localID,
+                        path.getVertexId(i), path.getVertexId(i + 1), path.getWeight(i));
             }
         }
     }
 
-    private void addPredEdges(KeyedGraph<VDijkstra, Edge> graph, VDijkstra dest, SimpleResultSet output,
-                              int localID) throws SQLException {
-        // Rebuild the shortest path(s). (Yes, there could be more than
-        // one if they have the same distance!)
-        final Set<Edge> predEdges = dest.getPredecessorEdges();
-        // The only vertex with no predecessors is the source vertex, so we can
-        // start renumbering here.
-        if (predEdges.isEmpty()) {
-            globalID++;
-        }
-        // Recursively add the predecessor edges.
-        for (Edge e : predEdges) {
-            final VDijkstra edgeSource = graph.getEdgeSource(e);
-            final VDijkstra edgeDestination = graph.getEdgeTarget(e);
-            // Right order
-            if (edgeDestination.equals(dest)) {
-                output.addRow(e.getID(), globalID, localID,
-                        edgeSource.getID(), edgeDestination.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeSource, output, localID + 1);
-            } // Wrong order
-            else {
-                output.addRow(e.getID(), globalID, localID,
-                        edgeDestination.getID(), edgeSource.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeDestination, output, localID + 1);
-           }
+    private static ResultSet oneToOne(Connection connection,
+                                      String inputTable,
+                                      String orientation,
+                                      String weight,
+                                      int source,
+                                      int destination) throws SQLException {
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final String firstGeometryField =
+                getFirstGeometryField(connection, tableName);
+        final boolean containsGeomField = firstGeometryField != null;
+        if (isColumnListConnection(connection)) {
+            return prepareResultSet(containsGeomField);
         }
+        // The calculation is done when the first row is read.
+        final GraphLease<VDijkstra, Edge> lease =
+                lendGraph(connection, inputTable, orientation, weight,
+                        VDijkstra.class, Edge.class);
+        final SimpleResultSet output = new SimpleResultSet(new PathRows(connection, inputTable, orientation,
+                weight, lease, source, destination, tableName, firstGeometryField));
+        addColumns(output, containsGeomField);
+        return output;
     }
 
     /**
@@ -231,7 +252,8 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
 
     /**
      * Return a map of edge ids to edge geometries, or null if the input table
-     * contains no geometry fields.
+     * contains no geometry fields. All the geometries are read, use
+     * {@link EdgeGeometries} when only a few edges are returned.
      *
      * @param connection Connection
      * @param tableName  TableLocation
@@ -279,6 +301,11 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
      */
     private static SimpleResultSet prepareResultSet(boolean includeGeomColumn) {
         SimpleResultSet output = new SimpleResultSet();
+        addColumns(output, includeGeomColumn);
+        return output;
+    }
+
+    private static void addColumns(SimpleResultSet output, boolean includeGeomColumn) {
         if (includeGeomColumn) {
             output.addColumn(THE_GEOM, Types.JAVA_OBJECT, "GEOMETRY", 0, 0);
         }
@@ -288,6 +315,159 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
         output.addColumn(SOURCE, Types.INTEGER, 10, 0);
         output.addColumn(DESTINATION, Types.INTEGER, 10, 0);
         output.addColumn(WEIGHT, Types.DOUBLE, 10, 0);
-        return output;
+    }
+
+    /**
+     * Edges of the shortest path(s), computed when the first row is read.
+     * There could be more than one path if they have the same distance, the
+     * paths are walked back from the destination to the source, a path
+     * sharing its last edges with a previous path only contains its other
+     * edges. The geometries of the edges are read by batches. The graph is
+     * given back once all the rows have been read, the predecessors of its
+     * vertices are walked until then.
+     */
+    private static class PathRows extends GraphRowSource {
+        private final Connection connection;
+        private final String inputTable;
+        private final String orientation;
+        private final String weight;
+        private final int source;
+        private final int destination;
+        private final TableLocation tableName;
+        // Null if the edges table has no geometry field
+        private final String geometryField;
+        private EdgeGeometries geometries;
+        private GraphLease<VDijkstra, Edge> lease;
+        private KeyedGraph<VDijkstra, Edge> graph;
+        // Vertices being walked, from the destination
+        private ArrayDeque<PathStep> steps;
+        private int globalID;
+
+        private PathRows(Connection connection, String inputTable, String orientation, String weight,
+                         GraphLease<VDijkstra, Edge> lease, int source, int destination,
+                         TableLocation tableName, String geometryField) {
+            this.connection = connection;
+            this.inputTable = inputTable;
+            this.orientation = orientation;
+            this.weight = weight;
+            this.lease = lease;
+            this.source = source;
+            this.destination = destination;
+            this.tableName = tableName;
+            this.geometryField = geometryField;
+        }
+
+        @Override
+        protected boolean fetchRows(Queue<Object[]> rows) throws SQLException {
+            if (steps == null) {
+                if (lease == null) {
+                    lease = lendGraph(connection, inputTable, orientation, weight,
+                            VDijkstra.class, Edge.class);
+                }
+                graph = lease.getGraph();
+                final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
+                final VDijkstra vDestination = graph.getVertex(destination);
+                final double distance = dijkstra.oneToOne(graph.getVertex(source), vDestination);
+                steps = new ArrayDeque<PathStep>();
+                globalID = 1;
+                if (distance != Double.POSITIVE_INFINITY) {
+                    push(vDestination, 1);
+                }
+            }
+            if (geometryField != null && geometries == null) {
+                geometries = new EdgeGeometries(connection, tableName, geometryField);
+            }
+            // Without an index on the edge ids, each read scans the edges table:
+            // walk the whole path and read its geometries once
+            final int batchSize = geometries == null || geometries.isIndexed()
+                    ? EdgeGeometries.BATCH_SIZE : Integer.MAX_VALUE;
+            final List<Object[]> batch = new ArrayList<Object[]>(EdgeGeometries.BATCH_SIZE);
+            while (!steps.isEmpty() && batch.size() < batchSize) {
+                final PathStep step = steps.peek();
+                if (!step.predEdges.hasNext()) {
+                    steps.pop();
+                    continue;
+                }
+                final Edge e = step.predEdges.next();
+                final VDijkstra edgeSource = graph.getEdgeSource(e);
+                final VDijkstra edgeDestination = graph.getEdgeTarget(e);
+                // Right order or wrong order
+                final boolean rightOrder = edgeDestination.equals(step.vertex);
+                final VDijkstra start = rightOrder ? edgeSource : edgeDestination;
+                final VDijkstra end = rightOrder ? edgeDestination : edgeSource;
+                if (geometryField != null) {
+                    // The geometry is set once the geometries of the batch are read
+                    batch.add(new Object[]{null, e.getID(), globalID,
+                            step.localID, start.getID(), end.getID(), graph.getEdgeWeight(e)});
+                } else {
+                    batch.add(new Object[]{e.getID(), globalID, step.localID,
+                            start.getID(), end.getID(), graph.getEdgeWeight(e)});
+                }
+                push(start, step.localID + 1);
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+            if (geometryField != null) {
+                final List<Integer> edgeIds = new ArrayList<Integer>(batch.size());
+                for (Object[] row : batch) {
+                    edgeIds.add((Integer) row[1]);
+                }
+                final Map<Integer, Geometry> edgeGeometryMap = geometries.read(edgeIds);
+                for (Object[] row : batch) {
+                    row[0] = edgeGeometryMap.get(Math.abs((Integer) row[1]));
+                }
+            }
+            rows.addAll(batch);
+            return true;
+        }
+
+        private void push(VDijkstra vertex, int localID) {
+            final Set<Edge> predEdges = vertex.getPredecessorEdges();
+            // The only vertex with no predecessors is the source vertex, so we can
+            // start renumbering here.
+            if (predEdges.isEmpty()) {
+                globalID++;
+            }
+            steps.push(new PathStep(vertex, predEdges.iterator(), localID));
+        }
+
+        @Override
+        protected void rewind() {
+            steps = null;
+        }
+
+        @Override
+        public void close() {
+            if (lease != null) {
+                lease.release();
+                lease = null;
+            }
+            graph = null;
+            steps = null;
+            if (geometries != null) {
+                try {
+                    geometries.close();
+                } catch (SQLException ex) {
+                    LOGGER.warn("Could not close the edge geometries statement", ex);
+                }
+                geometries = null;
+            }
+        }
+    }
+
+    /**
+     * Vertex of a path with its predecessor edges that remain to be walked.
+     */
+    private static class PathStep {
+        private final VDijkstra vertex;
+        private final Iterator<Edge> predEdges;
+        private final int localID;
+
+        private PathStep(VDijkstra vertex, Iterator<Edge> predEdges, int localID) {
+            this.vertex = vertex;
+            this.predEdges = predEdges;
+            this.localID = localID;
+        }
     }
 }
@@ -21,11 +21,25 @@ package org.h2gis.network.functions;
 
 
 import java.sql.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
 import org.h2.value.Value;
 import org.h2.value.ValueInt;
 import org.h2.value.ValueString;
@@ -63,6 +77,12 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'sdt')` - Many-to-Many weighted\n" +
             "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, d)` - One-to-One weighted\n" +
             "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, 'ds')` - One-to-Several weighted\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, d, 'a')` - One-to-One with algorithm\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'st', 'dt', 'a')` - Many-to-Many with algorithm\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'st', 'dt', 'a', t)` - Many-to-Many with algorithm\n" +
+            "  and threads\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'sdt', 'a', t)` - Many-to-Many with algorithm\n" +
+            "  and threads\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -74,7 +94,21 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             "* `d` = Destination vertex id\n" +
             "* `sdt` = Source-Destination table name (must contain columns\n" +
             "  " + SOURCE + " and " + DESTINATION + " containing integer vertex ids)\n" +
-            "* `ds` = Comma-separated Destination string ('dest1, dest2, ...')\n";
+            "* `ds` = Comma-separated Destination string ('dest1, dest2, ...')\n" +
+            "* `st` = Source table name, `dt` = Destination table name (the first column\n" +
+            "  contains the integer vertex ids)\n" +
+            "* `a` = Algorithm: 'dijkstra' (default), 'bidirectional', 'astar[ - input_nodes]'\n" +
+            "  or 'ch'. A* reads the node coordinates from the nodes table produced by\n" +
+            "  `ST_Graph`. 'ch' uses the contraction hierarchy built by `ST_GraphContract`\n" +
+            "  with the same orientation and weight. Many-to-Many only supports 'dijkstra'\n" +
+            "  and 'ch', only 'dijkstra' with a Source-Destination table. `w` may be NULL\n" +
+            "  for unweighted graphs.\n" +
+            "* `t` = Number of threads of the 'dijkstra' Many-to-Many searches (1 by\n" +
+            "  default), several threads search a compact graph\n" +
+            "\n" +
+            "The searches use compact graphs, `SET @" + COMPACT_GRAPH_VARIABLE + " = FALSE` selects\n" +
+            "JGraphT graphs for the calls of the session. A JGraphT graph is built at each\n" +
+            "call, even from the edges loaded by `ST_GraphLoad`.\n";
 
 
     /**
@@ -118,7 +152,7 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             return oneToAll(connection, inputTable, orientation, null, source);
         } else if (arg3 instanceof ValueString) {
             String table = arg3.getString();
-            return manyToMany(connection, inputTable, orientation, null, table);
+            return manyToMany(connection, inputTable, orientation, null, table, 1);
         } else {
             throw new IllegalArgumentException(ARG_ERROR + arg3);
         }
@@ -175,7 +209,7 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                     return oneToAll(connection, inputTable, orientation, weight, source);
                 } else if (arg4 instanceof ValueString) {
                     String table = arg4.getString();
-                    return manyToMany(connection, inputTable, orientation, weight, table);
+                    return manyToMany(connection, inputTable, orientation, weight, table, 1);
                 } else {
                     throw new IllegalArgumentException(ARG_ERROR + arg4);
                 }
@@ -183,7 +217,7 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                 final String sourceTable = arg3String;
                 if (arg4 instanceof ValueString) {
                     final String destTable = arg4.getString();
-                    return manyToManySeparateTables(connection, inputTable, orientation, null, sourceTable, destTable);
+                    return manyToManySeparateTables(connection, inputTable, orientation, null, sourceTable, destTable, 1);
                 } else {
                     throw new IllegalArgumentException(ARG_ERROR + arg4);
                 }
@@ -234,7 +268,7 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             final String sourceTable = arg4.getString();
             if (arg5 instanceof ValueString) {
                 final String destTable = arg5.getString();
-                return manyToManySeparateTables(connection, inputTable, orientation, weight, sourceTable, destTable);
+                return manyToManySeparateTables(connection, inputTable, orientation, weight, sourceTable, destTable, 1);
             } else {
                 throw new IllegalArgumentException(ARG_ERROR + arg4);
             }
@@ -243,12 +277,125 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         }
     }
 
+    /**
+     * Calculate distances with the given algorithm, see
+     * {@link ShortestPathSearch}, for
+     * <ol>
+     * <li> One-to-One: <code>(arg4, arg5, arg6) = (s, d, a)</code>,</li>
+     * <li> Many-to-Many: <code>(arg4, arg5, arg6) = (st, dt, a)</code>, only
+     * with the 'dijkstra' and 'ch' algorithms,</li>
+     * <li> Many-to-Many: <code>(arg4, arg5, arg6) = (sdt, a, t)</code>, only
+     * with the 'dijkstra' algorithm.</li>
+     * </ol>
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param arg4        Source vertex id -OR- Source table -OR- Source-Destination table
+     * @param arg5        Destination vertex id -OR- Destination table -OR- Algorithm
+     * @param arg6        Algorithm -OR- Number of threads
+     * @return Distances table
+     * @throws SQLException
+     */
+    public static ResultSet getShortestPathLength(Connection connection,
+                                                  String inputTable,
+                                                  String orientation,
+                                                  String weight,
+                                                  Value arg4,
+                                                  Value arg5,
+                                                  Value arg6) throws SQLException {
+        if (arg6 instanceof ValueInt) {
+            final int threadCount = arg6.getInt();
+            checkThreadCount(threadCount);
+            if (isColumnListConnection(connection)) {
+                return prepareResultSet();
+            }
+            if (!(arg4 instanceof ValueString) || !(arg5 instanceof ValueString)) {
+                throw new IllegalArgumentException(ARG_ERROR + arg4 + ", " + arg5);
+            }
+            final String algorithm = arg5.getString();
+            if (!ShortestPathSearch.isDijkstra(algorithm)) {
+                throw new IllegalArgumentException("Many-to-Many with a Source-Destination table only supports the '"
+                        + ShortestPathSearch.DIJKSTRA + "' algorithm: " + algorithm);
+            }
+            return manyToMany(connection, inputTable, orientation, weight, arg4.getString(), threadCount);
+        }
+        return getShortestPathLength(connection, inputTable, orientation, weight, arg4, arg5,
+                arg6 == null ? null : arg6.getString(), 1);
+    }
+
+    /**
+     * Calculate distances with the given algorithm, see
+     * {@link #getShortestPathLength(Connection, String, String, String, Value, Value, Value)}.
+     * The 'dijkstra' Many-to-Many searches are distributed among the given
+     * number of threads, the other searches ignore it.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param arg4        Source vertex id -OR- Source table
+     * @param arg5        Destination vertex id -OR- Destination table
+     * @param algorithm   Algorithm
+     * @param threadCount Number of threads
+     * @return Distances table
+     * @throws SQLException
+     */
+    public static ResultSet getShortestPathLength(Connection connection,
+                                                  String inputTable,
+                                                  String orientation,
+                                                  String weight,
+                                                  Value arg4,
+                                                  Value arg5,
+                                                  String algorithm,
+                                                  int threadCount) throws SQLException {
+        checkThreadCount(threadCount);
+        if (isColumnListConnection(connection)) {
+            return prepareResultSet();
+        }
+        if (arg4 instanceof ValueInt && arg5 instanceof ValueInt) {
+            final int source = arg4.getInt();
+            final int destination = arg5.getInt();
+            if (ShortestPathSearch.isDijkstra(algorithm)) {
+                return oneToOne(connection, inputTable, orientation, weight, source, destination);
+            }
+            final SimpleResultSet output = prepareResultSet();
+            output.addRow(source, destination, ShortestPathSearch.distance(connection, inputTable, orientation,
+                    weight, source, destination, algorithm));
+            return output;
+        } else if (arg4 instanceof ValueString && arg5 instanceof ValueString) {
+            final String sourceTable = arg4.getString();
+            final String destTable = arg5.getString();
+            if (ShortestPathSearch.isDijkstra(algorithm)) {
+                return manyToManySeparateTables(connection, inputTable, orientation, weight,
+                        sourceTable, destTable, threadCount);
+            } else if (ShortestPathSearch.isContractionHierarchy(algorithm)) {
+                return hierarchyManyToManySeparateTables(connection, inputTable, orientation, weight,
+                        sourceTable, destTable);
+            } else {
+                throw new IllegalArgumentException("Many-to-Many only supports the '"
+                        + ShortestPathSearch.DIJKSTRA + "' and '" + ShortestPathSearch.CONTRACTION_HIERARCHY
+                        + "' algorithms: " + algorithm);
+            }
+        } else {
+            throw new IllegalArgumentException(ARG_ERROR + arg4 + ", " + arg5);
+        }
+    }
+
     private static ResultSet oneToOne(Connection connection,
                                      String inputTable,
                                      String orientation,
                                      String weight,
                                      int source,
                                      int destination) throws SQLException {
+        if (isCompactGraph(connection, true)) {
+            final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+            final SimpleResultSet output = prepareResultSet();
+            addRows(output, new CSRDijkstra(graph), getVertexIndex(graph, source),
+                    new int[]{getVertexIndex(graph, destination)});
+            return output;
+        }
         final SimpleResultSet output = prepareResultSet();
         final KeyedGraph<VDijkstra, Edge> graph =
                 prepareGraph(connection, inputTable, orientation, weight,
@@ -265,51 +412,54 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                       String orientation,
                                       String weight,
                                       int source) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
+        if (isCompactGraph(connection, true)) {
+            final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+            final int[] allVertices = new int[graph.getVertexCount()];
+            for (int v = 0; v < allVertices.length; v++) {
+                allVertices[v] = v;
+            }
+            return prepareResultSet(new CompactDistanceRows(graph,
+                    new int[]{getVertexIndex(graph, source)}, new int[][]{allVertices}, 1));
+        }
         final KeyedGraph<VDijkstra, Edge> graph =
                 prepareGraph(connection, inputTable, orientation, weight,
                         VDijkstra.class, Edge.class);
         // 5: (o, w, s)
-        final Map<VDijkstra,Double> distances = new Dijkstra<VDijkstra, Edge>(graph)
-                        .oneToMany(graph.getVertex(source), graph.vertexSet());
-        for (Map.Entry<VDijkstra, Double> e : distances.entrySet()) {
-            output.addRow(source, e.getKey().getID(), e.getValue());
-        }
-        return output;
+        return prepareResultSet(new DijkstraDistanceRows(connection, inputTable, orientation, weight, graph,
+                new int[]{source}, new int[][]{null}));
     }
 
     private static ResultSet manyToMany(Connection connection,
                                         String inputTable,
                                         String orientation,
                                         String weight,
-                                        String sourceDestinationTable) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+                                        String sourceDestinationTable,
+                                        int threadCount) throws SQLException {
+        if (isCompactGraph(connection, true) || threadCount > 1) {
+            return compactManyToMany(connection, inputTable, orientation, weight, sourceDestinationTable,
+                    threadCount);
+        }
+        final Map<Integer, Set<Integer>> sourceDestinationMap;
         final Statement st = connection.createStatement();
         try {
             // Prepare the source-destination map from the source-destination table.
-            Map<VDijkstra, Set<VDijkstra>> sourceDestinationMap =
-                    prepareSourceDestinationMap(st, sourceDestinationTable, graph);
-
-            // Reusable Dijkstra object.
-            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-
-            // 6: (o, w, sdt). Do One-to-Many many times and store the results.
-            for (Map.Entry<VDijkstra, Set<VDijkstra>> sourceToDestSetMap : sourceDestinationMap.entrySet()) {
-                Map<VDijkstra, Double> distances =
-                        dijkstra.oneToMany(sourceToDestSetMap.getKey(),
-                                           sourceToDestSetMap.getValue());
-                for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
-                    output.addRow(sourceToDestSetMap.getKey().getID(),
-                            destToDistMap.getKey().getID(), destToDistMap.getValue());
-                }
-            }
+            sourceDestinationMap = prepareSourceDestinationMap(st, sourceDestinationTable);
         } finally {
             st.close();
         }
-        return output;
+        final int[] sources = new int[sourceDestinationMap.size()];
+        final int[][] destinations = new int[sourceDestinationMap.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, Set<Integer>> sourceToDestSet : sourceDestinationMap.entrySet()) {
+            sources[i] = sourceToDestSet.getKey();
+            destinations[i++] = toArray(sourceToDestSet.getValue());
+        }
+        final KeyedGraph<VDijkstra, Edge> graph =
+                prepareGraph(connection, inputTable, orientation, weight,
+                        VDijkstra.class, Edge.class);
+        // 6: (o, w, sdt). Do One-to-Many many times.
+        return prepareResultSet(new DijkstraDistanceRows(connection, inputTable, orientation, weight, graph,
+                sources, destinations));
     }
 
     private static ResultSet manyToManySeparateTables(
@@ -318,58 +468,57 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             String orientation,
             String weight,
             String sourceTable,
-            String destTable) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
+            String destTable,
+            int threadCount) throws SQLException {
+        if (isCompactGraph(connection, true) || threadCount > 1) {
+            return compactManyToManySeparateTables(connection, inputTable, orientation, weight,
+                    sourceTable, destTable, threadCount);
+        }
         final KeyedGraph<VDijkstra, Edge> graph =
                 prepareGraph(connection, inputTable, orientation, weight,
                         VDijkstra.class, Edge.class);
+        final int[] destinations;
+        final int[] sources;
         final Statement st = connection.createStatement();
         try {
-            final Set<VDijkstra> destSet = getSet(st, graph, destTable);
-            final Set<VDijkstra> sourceSet = getSet(st, graph, sourceTable);
-            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-            for (VDijkstra source : sourceSet) {
-                Map<VDijkstra, Double> distances =
-                        dijkstra.oneToMany(source, destSet);
-                for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
-                    output.addRow(source.getID(),
-                            destToDistMap.getKey().getID(), destToDistMap.getValue());
-                }
-            }
+            destinations = getSet(st, graph, destTable);
+            sources = getSet(st, graph, sourceTable);
         } finally {
             st.close();
         }
-        return output;
+        final int[][] sourceDestinations = new int[sources.length][];
+        Arrays.fill(sourceDestinations, destinations);
+        return prepareResultSet(new DijkstraDistanceRows(connection, inputTable, orientation, weight, graph,
+                sources, sourceDestinations));
     }
 
     /**
-     * Puts the integers contained in the first column of the table in a Set of
-     * corresponding VDijkstra.
+     * Puts the integers contained in the first column of the table in an
+     * array of distinct vertex ids of the graph.
      *
      * @param st        Statement
      * @param graph     Graph
      * @param tableName Table
-     * @return Set of VDijkstra
+     * @return Vertex ids
      * @throws SQLException
      */
-    private static Set<VDijkstra> getSet(Statement st,
+    private static int[] getSet(Statement st,
             KeyedGraph<VDijkstra, Edge> graph, String tableName) throws SQLException {
         final ResultSet intSet =
                 st.executeQuery("SELECT * FROM " + tableName);
         try {
-            final Set<VDijkstra> set = new HashSet<VDijkstra>();
+            final Set<Integer> set = new LinkedHashSet<Integer>();
             while (intSet.next()) {
                 final int vertexID = intSet.getInt(1);
-                final VDijkstra vertex = graph.getVertex(vertexID);
-                if (vertex == null) {
+                if (graph.getVertex(vertexID) == null) {
                     throw new IllegalArgumentException("The graph does not contain vertex " + vertexID);
                 }
-                set.add(vertex);
+                set.add(vertexID);
             }
             if (set.isEmpty()) {
                 throw new IllegalArgumentException("Table " + tableName + " was empty.");
             }
-            return set;
+            return toArray(set);
         } finally {
             intSet.close();
         }
@@ -381,11 +530,20 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                           String weight,
                                           int source,
                                           String destString) throws SQLException {
+        if (isCompactGraph(connection, true)) {
+            final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+            final SimpleResultSet output = prepareResultSet();
+            final Set<Integer> destSet = new LinkedHashSet<Integer>();
+            for (int d : GraphFunctionParser.parseDestinationsString(destString)) {
+                destSet.add(getVertexIndex(graph, d));
+            }
+            addRows(output, new CSRDijkstra(graph), getVertexIndex(graph, source), toArray(destSet));
+            return output;
+        }
         final SimpleResultSet output = prepareResultSet();
         final KeyedGraph<VDijkstra, Edge> graph =
                 prepareGraph(connection, inputTable, orientation, weight,
                         VDijkstra.class, Edge.class);
-
         final int[] destIDs = GraphFunctionParser.parseDestinationsString(destString);
         Set<VDijkstra> destSet = new HashSet<VDijkstra>();
         for (int d : destIDs)  {
@@ -408,15 +566,14 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
      * Prepare the source-destination map (to which we will apply Dijkstra) from
      * the source-destination table.
      *
+     * @param st                     Statement
      * @param sourceDestinationTable Source-Destination table name
-     * @param graph                  Graph
-     * @return Source-Destination map
+     * @return Destination vertex ids of each source vertex id
      * @throws SQLException
      */
-    private static Map<VDijkstra, Set<VDijkstra>> prepareSourceDestinationMap(
+    private static Map<Integer, Set<Integer>> prepareSourceDestinationMap(
             Statement st,
-            String sourceDestinationTable,
-            KeyedGraph<VDijkstra, Edge> graph) throws SQLException {
+            String sourceDestinationTable) throws SQLException {
         final ResultSet sourceDestinationRS =
                 st.executeQuery("SELECT " +
                         SOURCE + ", " + DESTINATION +
@@ -424,14 +581,14 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         try {
             // Make sure the source-destination table has columns named
             // SOURCE and DESTINATION. An SQLException is thrown if not.
-            Map<VDijkstra, Set<VDijkstra>> map = new HashMap<VDijkstra, Set<VDijkstra>>();
+            Map<Integer, Set<Integer>> map = new LinkedHashMap<Integer, Set<Integer>>();
             while (sourceDestinationRS.next()) {
-                final VDijkstra source = graph.getVertex(sourceDestinationRS.getInt(SOURCE_INDEX));
-                final VDijkstra destination = graph.getVertex(sourceDestinationRS.getInt(DESTINATION_INDEX));
-                Set<VDijkstra> targets = map.get(source);
+                final int source = sourceDestinationRS.getInt(SOURCE_INDEX);
+                final int destination = sourceDestinationRS.getInt(DESTINATION_INDEX);
+                Set<Integer> targets = map.get(source);
                 // Lazy initialize if the destinations set is null.
                 if (targets == null) {
-                    targets = new HashSet<VDijkstra>();
+                    targets = new LinkedHashSet<Integer>();
                     map.put(source, targets);
                 }
                 // Add the destination.
@@ -446,6 +603,170 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         }
     }
 
+    private static ResultSet compactManyToMany(Connection connection,
+                                               String inputTable,
+                                               String orientation,
+                                               String weight,
+                                               String sourceDestinationTable,
+                                               int threadCount) throws SQLException {
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final Map<Integer, Set<Integer>> map;
+        final Statement st = connection.createStatement();
+        try {
+            map = prepareSourceDestinationMap(st, sourceDestinationTable);
+        } finally {
+            st.close();
+        }
+        final int[] sources = new int[map.size()];
+        final int[][] destinations = new int[map.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, Set<Integer>> sourceToDestSet : map.entrySet()) {
+            sources[i] = getVertexIndex(graph, sourceToDestSet.getKey());
+            final int[] targets = new int[sourceToDestSet.getValue().size()];
+            int j = 0;
+            for (int destination : sourceToDestSet.getValue()) {
+                targets[j++] = getVertexIndex(graph, destination);
+            }
+            destinations[i++] = targets;
+        }
+        return prepareResultSet(new CompactDistanceRows(graph, sources, destinations, threadCount));
+    }
+
+    private static ResultSet compactManyToManySeparateTables(Connection connection,
+                                                             String inputTable,
+                                                             String orientation,
+                                                             String weight,
+                                                             String sourceTable,
+                                                             String destTable,
+                                                             int threadCount) throws SQLException {
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final int[] destinations;
+        final int[] sources;
+        final Statement st = connection.createStatement();
+        try {
+            destinations = getCompactSet(st, graph, destTable);
+            sources = getCompactSet(st, graph, sourceTable);
+        } finally {
+            st.close();
+        }
+        final int[][] sourceDestinations = new int[sources.length][];
+        Arrays.fill(sourceDestinations, destinations);
+        return prepareResultSet(new CompactDistanceRows(graph, sources, sourceDestinations, threadCount));
+    }
+
+    private static ResultSet hierarchyManyToManySeparateTables(Connection connection,
+                                                               String inputTable,
+                                                               String orientation,
+                                                               String weight,
+                                                               String sourceTable,
+                                                               String destTable) throws SQLException {
+        final ContractionHierarchy hierarchy =
+                ShortestPathSearch.prepareHierarchy(connection, inputTable, orientation, weight);
+        final int[] destinations;
+        final int[] sources;
+        final Statement st = connection.createStatement();
+        try {
+            destinations = getCompactSet(st, hierarchy.getGraph(), destTable);
+            sources = getCompactSet(st, hierarchy.getGraph(), sourceTable);
+        } finally {
+            st.close();
+        }
+        return prepareResultSet(new HierarchyDistanceRows(hierarchy, sources, destinations));
+    }
+
+    /**
+     * Puts the integers contained in the first column of the table in an
+     * array of distinct vertex indices of the compact graph.
+     *
+     * @param st        Statement
+     * @param graph     Graph
+     * @param tableName Table
+     * @return Vertex indices
+     * @throws SQLException
+     */
+    private static int[] getCompactSet(Statement st, CSRGraph graph, String tableName) throws SQLException {
+        final ResultSet intSet =
+                st.executeQuery("SELECT * FROM " + tableName);
+        try {
+            final Set<Integer> set = new LinkedHashSet<Integer>();
+            while (intSet.next()) {
+                set.add(getVertexIndex(graph, intSet.getInt(1)));
+            }
+            if (set.isEmpty()) {
+                throw new IllegalArgumentException("Table " + tableName + " was empty.");
+            }
+            return toArray(set);
+        } finally {
+            intSet.close();
+        }
+    }
+
+    private static DistancesTask getDistances(Future<DistancesTask> future) throws SQLException,
+            InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Compute the distances from the source to the destinations and add them
+     * to the output.
+     *
+     * @param output       Output
+     * @param dijkstra     Search in the compact graph
+     * @param source       Source vertex index
+     * @param destinations Destination vertex indices
+     */
+    private static void addRows(SimpleResultSet output, CSRDijkstra dijkstra, int source, int[] destinations) {
+        final CSRGraph graph = dijkstra.getGraph();
+        final double[] distances = dijkstra.oneToMany(source, destinations);
+        for (int i = 0; i < destinations.length; i++) {
+            output.addRow(graph.getVertexId(source), graph.getVertexId(destinations[i]), distances[i]);
+        }
+    }
+
+    /**
+     * @param graph    Graph
+     * @param vertexID Vertex id
+     * @return The index of the vertex in the compact graph
+     * @throws IllegalArgumentException If the graph does not contain the vertex
+     */
+    private static int getVertexIndex(CSRGraph graph, int vertexID) {
+        final int index = graph.getVertexIndex(vertexID);
+        if (index == -1) {
+            throw new IllegalArgumentException("The graph does not contain vertex " + vertexID);
+        }
+        return index;
+    }
+
+    /**
+     * @param graph    Graph
+     * @param vertexID Vertex id
+     * @return The vertex
+     * @throws IllegalArgumentException If the graph does not contain the vertex
+     */
+    private static VDijkstra getVertex(KeyedGraph<VDijkstra, Edge> graph, int vertexID) {
+        final VDijkstra vertex = graph.getVertex(vertexID);
+        if (vertex == null) {
+            throw new IllegalArgumentException("The graph does not contain vertex " + vertexID);
+        }
+        return vertex;
+    }
+
+    private static int[] toArray(Set<Integer> set) {
+        final int[] array = new int[set.size()];
+        int i = 0;
+        for (int value : set) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
     /**
      * Return a new {@link org.h2.tools.SimpleResultSet} with SOURCE,
      * DESTINATION and DISTANCE columns.
@@ -454,9 +775,400 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
      */
     private static SimpleResultSet prepareResultSet() {
         SimpleResultSet output = new SimpleResultSet();
+        addColumns(output);
+        return output;
+    }
+
+    /**
+     * Return a new {@link org.h2.tools.SimpleResultSet} with SOURCE,
+     * DESTINATION and DISTANCE columns, reading the rows computed by the
+     * row source.
+     *
+     * @param rows Row source
+     * @return a new {@link org.h2.tools.SimpleResultSet} with SOURCE,
+     * DESTINATION and DISTANCE columns
+     */
+    private static SimpleResultSet prepareResultSet(SimpleRowSource rows) {
+        SimpleResultSet output = new SimpleResultSet(rows);
+        addColumns(output);
+        return output;
+    }
+
+    private static void addColumns(SimpleResultSet output) {
         output.addColumn(SOURCE, Types.INTEGER, 10, 0);
         output.addColumn(DESTINATION, Types.INTEGER, 10, 0);
         output.addColumn(DISTANCE, Types.DOUBLE, 10, 0);
-        return output;
+    }
+
+    /**
+     * Distances computed one source at a time. The rows of a source are
+     * read by chunks, so that a One-to-All search on a large graph does not
+     * produce all its rows at once.
+     */
+    private abstract static class DistanceRows extends GraphRowSource {
+        private static final int CHUNK_SIZE = 1000;
+        private int source;
+        private int[] destinations;
+        private double[] distances;
+        private int position;
+
+        /**
+         * @param source       Source vertex id
+         * @param destinations Destination vertex ids
+         * @param distances    Distance to each destination
+         */
+        protected void setDistances(int source, int[] destinations, double[] distances) {
+            this.source = source;
+            this.destinations = destinations;
+            this.distances = distances;
+            this.position = 0;
+        }
+
+        @Override
+        protected boolean fetchRows(Queue<Object[]> rows) throws SQLException {
+            if (distances == null || position == distances.length) {
+                distances = null;
+                return nextSource();
+            }
+            final int end = Math.min(distances.length, position + CHUNK_SIZE);
+            for (; position < end; position++) {
+                rows.add(new Object[]{source, destinations[position], distances[position]});
+            }
+            return true;
+        }
+
+        @Override
+        protected void rewind() throws SQLException {
+            distances = null;
+            restart();
+        }
+
+        /**
+         * Compute the distances of the next source and give them to
+         * {@link #setDistances(int, int[], double[])}.
+         *
+         * @return False if all the sources have been computed
+         * @throws SQLException
+         */
+        protected abstract boolean nextSource() throws SQLException;
+
+        /**
+         * Go back to the first source.
+         */
+        protected abstract void restart();
+    }
+
+    /**
+     * Distances computed by Dijkstra in a JGraphT graph. The graph is given
+     * back once all the rows have been read.
+     */
+    private static class DijkstraDistanceRows extends DistanceRows {
+        private final Connection connection;
+        private final String inputTable;
+        private final String orientation;
+        private final String weight;
+        private final int[] sources;
+        // Destination vertex ids of each source, null for all the vertices
+        private final int[][] destinations;
+        private KeyedGraph<VDijkstra, Edge> graph;
+        private Dijkstra<VDijkstra, Edge> dijkstra;
+        private int nextSource = 0;
+
+        private DijkstraDistanceRows(Connection connection, String inputTable, String orientation, String weight,
+                                     KeyedGraph<VDijkstra, Edge> graph, int[] sources, int[][] destinations) {
+            this.connection = connection;
+            this.inputTable = inputTable;
+            this.orientation = orientation;
+            this.weight = weight;
+            this.graph = graph;
+            this.sources = sources;
+            this.destinations = destinations;
+        }
+
+        @Override
+        protected boolean nextSource() throws SQLException {
+            if (nextSource == sources.length) {
+                return false;
+            }
+            if (graph == null) {
+                graph = prepareGraph(connection, inputTable, orientation, weight, VDijkstra.class, Edge.class);
+            }
+            if (dijkstra == null) {
+                dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
+            }
+            final int i = nextSource++;
+            final Set<VDijkstra> destSet;
+            if (destinations[i] == null) {
+                destSet = graph.vertexSet();
+            } else {
+                destSet = new HashSet<VDijkstra>();
+                for (int destination : destinations[i]) {
+                    destSet.add(getVertex(graph, destination));
+                }
+            }
+            final Map<VDijkstra, Double> distances = dijkstra.oneToMany(getVertex(graph, sources[i]), destSet);
+            final int[] destinationIds = new int[distances.size()];
+            final double[] destinationDistances = new double[distances.size()];
+            int j = 0;
+            for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
+                destinationIds[j] = destToDistMap.getKey().getID();
+                destinationDistances[j++] = destToDistMap.getValue();
+            }
+            setDistances(sources[i], destinationIds, destinationDistances);
+            return true;
+        }
+
+        @Override
+        protected void restart() {
+            nextSource = 0;
+        }
+
+        @Override
+        public void close() {
+            graph = null;
+            dijkstra = null;
+        }
+    }
+
+    /**
+     * Distances computed in a compact graph. The sources are distributed
+     * among several threads, each thread having its own
+     * search state on the shared graph. A few groups of sources are computed
+     * in advance while the rows are read.
+     */
+    private static class CompactDistanceRows extends DistanceRows {
+        private final CSRGraph graph;
+        private final int[] sources;
+        private final int[][] destinations;
+        private final int threadCount;
+        private final int groupSize;
+        private int nextSource = 0;
+        // Destination ids of the last destination indices, shared by the
+        // sources with the same destinations
+        private int[] lastDestinations;
+        private int[] lastDestinationIds;
+        // Search of a single thread
+        private CSRDijkstra dijkstra;
+        // Searches of several threads
+        private ExecutorService executor;
+        private CompletionService<DistancesTask> completionService;
+        private BlockingQueue<CSRDijkstra> searches;
+        private int pending = 0;
+        private DistancesTask current;
+        private int currentSource;
+
+        /**
+         * @param graph        Graph
+         * @param sources      Source vertex indices
+         * @param destinations Destination vertex indices of each source
+         * @param threadCount  Number of threads, 1 to search in the calling thread
+         */
+        private CompactDistanceRows(CSRGraph graph, int[] sources, int[][] destinations, int threadCount) {
+            this.graph = graph;
+            this.sources = sources;
+            this.destinations = destinations;
+            this.threadCount = Math.max(1, Math.min(threadCount, sources.length));
+            // Several groups of sources per thread, in order to balance the load
+            this.groupSize = Math.max(1, sources.length / (threadCount * 4));
+        }
+
+        @Override
+        protected boolean nextSource() throws SQLException {
+            if (threadCount <= 1) {
+                if (nextSource == sources.length) {
+                    return false;
+                }
+                if (dijkstra == null) {
+                    dijkstra = new CSRDijkstra(graph);
+                }
+                final int i = nextSource++;
+                setSourceDistances(i, dijkstra.oneToMany(sources[i], destinations[i]));
+                return true;
+            }
+            if (current == null || currentSource == current.endSource) {
+                current = nextGroup();
+                if (current == null) {
+                    return false;
+                }
+                currentSource = current.firstSource;
+            }
+            final int i = currentSource++;
+            setSourceDistances(i, current.distances[i - current.firstSource]);
+            current.distances[i - current.firstSource] = null;
+            return true;
+        }
+
+        private void setSourceDistances(int i, double[] distances) {
+            if (destinations[i] != lastDestinations) {
+                lastDestinations = destinations[i];
+                lastDestinationIds = new int[lastDestinations.length];
+                for (int j = 0; j < lastDestinations.length; j++) {
+                    lastDestinationIds[j] = graph.getVertexId(lastDestinations[j]);
+                }
+            }
+            setDistances(graph.getVertexId(sources[i]), lastDestinationIds, distances);
+        }
+
+        /**
+         * @return The next computed group of sources, or null if all the
+         * sources have been computed
+         */
+        private DistancesTask nextGroup() throws SQLException {
+            if (executor == null) {
+                searches = new ArrayBlockingQueue<CSRDijkstra>(threadCount);
+                for (int i = 0; i < threadCount; i++) {
+                    searches.add(new CSRDijkstra(graph));
+                }
+                executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        // Do not prevent the JVM from exiting if the rows are never read
+                        final Thread thread = new Thread(r, "ST_ShortestPathLength");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                completionService = new ExecutorCompletionService<DistancesTask>(executor);
+            }
+            // Keep the workers busy while the rows are read
+            while (nextSource < sources.length && pending < threadCount * 2) {
+                final int endSource = Math.min(sources.length, nextSource + groupSize);
+                completionService.submit(new DistancesTask(searches, sources, destinations,
+                        nextSource, endSource));
+                nextSource = endSource;
+                pending++;
+            }
+            if (pending == 0) {
+                return null;
+            }
+            try {
+                final DistancesTask done = getDistances(completionService.take());
+                pending--;
+                return done;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Shortest path computation has been interrupted", ex);
+            }
+        }
+
+        @Override
+        protected void restart() {
+            nextSource = 0;
+            pending = 0;
+            current = null;
+        }
+
+        @Override
+        public void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+                completionService = null;
+                searches = null;
+            }
+            dijkstra = null;
+        }
+    }
+
+    /**
+     * Distances computed in a contraction hierarchy. The backward searches
+     * of the destinations are done once, then each source is computed while
+     * the rows are read.
+     */
+    private static class HierarchyDistanceRows extends DistanceRows {
+        private final ContractionHierarchy hierarchy;
+        private final int[] sources;
+        private final int[] destinations;
+        private final int[] destinationIds;
+        private int nextSource = 0;
+        // Query of the hierarchy, acquired until all the rows have been read
+        private CHQuery query;
+
+        /**
+         * @param hierarchy    Contraction hierarchy
+         * @param sources      Source vertex indices
+         * @param destinations Destination vertex indices
+         */
+        private HierarchyDistanceRows(ContractionHierarchy hierarchy, int[] sources, int[] destinations) {
+            this.hierarchy = hierarchy;
+            this.sources = sources;
+            this.destinations = destinations;
+            final CSRGraph graph = hierarchy.getGraph();
+            this.destinationIds = new int[destinations.length];
+            for (int i = 0; i < destinations.length; i++) {
+                destinationIds[i] = graph.getVertexId(destinations[i]);
+            }
+        }
+
+        @Override
+        protected boolean nextSource() throws SQLException {
+            if (nextSource == sources.length) {
+                return false;
+            }
+            if (query == null) {
+                query = hierarchy.acquireQuery();
+                query.setDestinations(destinations);
+            }
+            final int source = sources[nextSource++];
+            setDistances(hierarchy.getGraph().getVertexId(source), destinationIds,
+                    query.oneToDestinations(source));
+            return true;
+        }
+
+        @Override
+        protected void restart() {
+            nextSource = 0;
+        }
+
+        @Override
+        public void close() {
+            if (query != null) {
+                hierarchy.releaseQuery(query);
+                query = null;
+            }
+        }
+    }
+
+    /**
+     * Compute the distances of a group of sources with one of the available
+     * searches.
+     */
+    private static class DistancesTask implements Callable<DistancesTask> {
+        private final BlockingQueue<CSRDijkstra> searches;
+        private final int[] sources;
+        private final int[][] destinations;
+        private final int firstSource;
+        private final int endSource;
+        private final double[][] distances;
+
+        /**
+         * @param searches     Searches that are not used by the other tasks
+         * @param sources      Source vertex indices
+         * @param destinations Destination vertex indices of each source
+         * @param firstSource  First source of the group
+         * @param endSource    Last source of the group, excluded
+         */
+        public DistancesTask(BlockingQueue<CSRDijkstra> searches, int[] sources, int[][] destinations,
+                             int firstSource, int endSource) {
+            this.searches = searches;
+            this.sources = sources;
+            this.destinations = destinations;
+            this.firstSource = firstSource;
+            this.endSource = endSource;
+            this.distances = new double[endSource - firstSource][];
+        }
+
+        @Override
+        public DistancesTask call() throws Exception {
+            CSRDijkstra dijkstra = searches.take();
+            try {
+                for (int i = firstSource; i < endSource; i++) {
+                    distances[i - firstSource] = dijkstra.oneToMany(sources[i], destinations[i]);
+                }
+            } finally {
+                searches.add(dijkstra);
+            }
+            return this;
+        }
     }
 }
@@ -24,8 +24,11 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
 import org.h2.value.Value;
 import org.h2.value.ValueDecimal;
 import org.h2.value.ValueInt;
@@ -69,7 +72,10 @@ public class ST_ShortestPathTree extends GraphFunction implements ScalarFunction
             "   Required if global orientation is directed or reversed.\n" +
             "* `s` = Source vertex id\n" +
             "* `r` = Radius by which to limit the search (a `DOUBLE`)\n" +
-            "* `w` = Name of column containing edge weights as `DOUBLES`\n";
+            "* `w` = Name of column containing edge weights as `DOUBLES`\n" +
+            "\n" +
+            "The search uses a JGraphT graph, built at each call. The graphs built from the\n" +
+            "edges loaded by `ST_GraphLoad` are reused by the next calls.\n";
 
     /**
      * Constructor
@@ -162,50 +168,17 @@ public class ST_ShortestPathTree extends GraphFunction implements ScalarFunction
         final String firstGeometryField =
                 ST_ShortestPath.getFirstGeometryField(connection, tableName);
         final boolean containsGeomField = firstGeometryField != null;
-        final SimpleResultSet output = prepareResultSet(containsGeomField);
         if (isColumnListConnection(connection)) {
-            return output;
+            return prepareResultSet(containsGeomField, null);
         }
-        // Do the calculation.
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
+        final Map<Integer, Geometry> edgeGeometryMap = containsGeomField ?
+                ST_ShortestPath.getEdgeGeometryMap(connection, tableName, firstGeometryField) : null;
+        // The calculation is done when the first row is read.
+        final GraphLease<VDijkstra, Edge> lease =
+                lendGraph(connection, inputTable, orientation, weight,
                         VDijkstra.class, Edge.class);
-
-        final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-        final VDijkstra vSource = graph.getVertex(source);
-        final TraversalGraph<VDijkstra, Edge> shortestPathTree;
-
-        if (radius < Double.POSITIVE_INFINITY) {
-            dijkstra.calculate(vSource, radius);
-            shortestPathTree = dijkstra.reconstructTraversalGraph(radius);
-        } else {
-            dijkstra.calculate(vSource);
-            shortestPathTree = dijkstra.reconstructTraversalGraph();
-        }
-
-        if (containsGeomField) {
-            final Map<Integer, Geometry> edgeGeometryMap =
-                    ST_ShortestPath.getEdgeGeometryMap(connection, tableName, firstGeometryField);
-            for (Edge e : shortestPathTree.edgeSet()) {
-                final Edge baseGraphEdge = e.getBaseGraphEdge();
-                final int id = baseGraphEdge.getID();
-                output.addRow(edgeGeometryMap.get(Math.abs(id)),
-                        id,
-                        shortestPathTree.getEdgeSource(e).getID(),
-                        shortestPathTree.getEdgeTarget(e).getID(),
-                        graph.getEdgeWeight(baseGraphEdge));
-            }
-        } else {
-            for (Edge e : shortestPathTree.edgeSet()) {
-                final Edge baseGraphEdge = e.getBaseGraphEdge();
-                final int id = baseGraphEdge.getID();
-                output.addRow(id,
-                        shortestPathTree.getEdgeSource(e).getID(),
-                        shortestPathTree.getEdgeTarget(e).getID(),
-                        graph.getEdgeWeight(baseGraphEdge));
-            }
-        }
-        return output;
+        return prepareResultSet(containsGeomField, new TreeRows(connection, inputTable, orientation, weight,
+                lease, source, radius, edgeGeometryMap));
     }
 
     /**
@@ -215,9 +188,10 @@ public class ST_ShortestPathTree extends GraphFunction implements ScalarFunction
      * DESTINATION and DISTANCE columns
      *
      * @param includeGeomColumn True if we include a Geometry column
+     * @param rows              Row source, null for an empty result set
      */
-    private static SimpleResultSet prepareResultSet(boolean includeGeomColumn) {
-        SimpleResultSet output = new SimpleResultSet();
+    private static SimpleResultSet prepareResultSet(boolean includeGeomColumn, SimpleRowSource rows) {
+        SimpleResultSet output = rows == null ? new SimpleResultSet() : new SimpleResultSet(rows);
         if (includeGeomColumn) {
             output.addColumn(THE_GEOM, Types.JAVA_OBJECT, "GEOMETRY", 0, 0);
         }
@@ -227,4 +201,96 @@ public class ST_ShortestPathTree extends GraphFunction implements ScalarFunction
         output.addColumn(WEIGHT, Types.DOUBLE, 10, 0);
         return output;
     }
+
+    /**
+     * Edges of the shortest path tree, computed when the first row is read.
+     * The graph is given back once all the rows have been read.
+     */
+    private static class TreeRows extends GraphRowSource {
+        private static final int CHUNK_SIZE = 1000;
+        private final Connection connection;
+        private final String inputTable;
+        private final String orientation;
+        private final String weight;
+        private final int source;
+        private final double radius;
+        // Edge geometries, null if the edges table has no geometry field
+        private final Map<Integer, Geometry> edgeGeometryMap;
+        private GraphLease<VDijkstra, Edge> lease;
+        private KeyedGraph<VDijkstra, Edge> graph;
+        private TraversalGraph<VDijkstra, Edge> shortestPathTree;
+        private Iterator<Edge> edges;
+
+        private TreeRows(Connection connection, String inputTable, String orientation, String weight,
+                         GraphLease<VDijkstra, Edge> lease, int source, double radius,
+                         Map<Integer, Geometry> edgeGeometryMap) {
+            this.connection = connection;
+            this.inputTable = inputTable;
+            this.orientation = orientation;
+            this.weight = weight;
+            this.lease = lease;
+            this.source = source;
+            this.radius = radius;
+            this.edgeGeometryMap = edgeGeometryMap;
+        }
+
+        @Override
+        protected boolean fetchRows(Queue<Object[]> rows) throws SQLException {
+            if (edges == null) {
+                if (lease == null) {
+                    lease = lendGraph(connection, inputTable, orientation, weight,
+                            VDijkstra.class, Edge.class);
+                }
+                graph = lease.getGraph();
+                final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
+                final VDijkstra vSource = graph.getVertex(source);
+                if (radius < Double.POSITIVE_INFINITY) {
+                    dijkstra.calculate(vSource, radius);
+                    shortestPathTree = dijkstra.reconstructTraversalGraph(radius);
+                } else {
+                    dijkstra.calculate(vSource);
+                    shortestPathTree = dijkstra.reconstructTraversalGraph();
+                }
+                edges = shortestPathTree.edgeSet().iterator();
+            }
+            if (!edges.hasNext()) {
+                return false;
+            }
+            for (int i = 0; i < CHUNK_SIZE && edges.hasNext(); i++) {
+                final Edge e = edges.next();
+                final Edge baseGraphEdge = e.getBaseGraphEdge();
+                final int id = baseGraphEdge.getID();
+                if (edgeGeometryMap != null) {
+                    rows.add(new Object[]{edgeGeometryMap.get(Math.abs(id)),
+                            id,
+                            shortestPathTree.getEdgeSource(e).getID(),
+                            shortestPathTree.getEdgeTarget(e).getID(),
+                            graph.getEdgeWeight(baseGraphEdge)});
+                } else {
+                    rows.add(new Object[]{id,
+                            shortestPathTree.getEdgeSource(e).getID(),
+                            shortestPathTree.getEdgeTarget(e).getID(),
+                            graph.getEdgeWeight(baseGraphEdge)});
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void rewind() {
+            edges = null;
+            shortestPathTree = null;
+        }
+
+        @Override
+        public void close() {
+            if (lease != null) {
+                lease.release();
+                lease = null;
+            }
+            graph = null;
+            edges = null;
+            shortestPathTree = null;
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * State of a Dijkstra search in a {@link CSRGraph}, shared by the searches
+ * that drive one or several searches step by step. Only the vertices
+ * reached by the previous search are reset by {@link #init(int)}.
+ */
+class SearchState {
+
+    final CSRGraph graph;
+    final double[] distances;
+    final int[] predecessorArcs;
+    final boolean[] settled;
+    final VertexHeap heap;
+    final int[] reached;
+    int reachedCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param graph Searched graph
+     */
+    SearchState(CSRGraph graph) {
+        this.graph = graph;
+        final int vertexCount = graph.getVertexCount();
+        distances = new double[vertexCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        predecessorArcs = new int[vertexCount];
+        Arrays.fill(predecessorArcs, -1);
+        settled = new boolean[vertexCount];
+        heap = new VertexHeap(vertexCount);
+        reached = new int[vertexCount];
+    }
+
+    /**
+     * Reset the vertices reached by the previous search and start from the
+     * origin.
+     *
+     * @param origin Origin vertex index
+     */
+    void init(int origin) {
+        for (int i = 0; i < reachedCount; i++) {
+            final int vertex = reached[i];
+            distances[vertex] = Double.POSITIVE_INFINITY;
+            predecessorArcs[vertex] = -1;
+            settled[vertex] = false;
+        }
+        reachedCount = 0;
+        heap.clear();
+        update(origin, 0, -1);
+    }
+
+    /**
+     * Set a shorter distance to a vertex that is not settled.
+     *
+     * @param vertex   Vertex index
+     * @param distance Distance from the origin
+     * @param arc      Arc used to reach the vertex
+     */
+    void update(int vertex, double distance, int arc) {
+        if (distances[vertex] == Double.POSITIVE_INFINITY) {
+            reached[reachedCount++] = vertex;
+        }
+        distances[vertex] = distance;
+        predecessorArcs[vertex] = arc;
+        heap.push(vertex, distance);
+    }
+
+    /**
+     * Settle the closest vertex and relax its outgoing arcs.
+     *
+     * @return The settled vertex index, the heap must not be empty
+     */
+    int settleNext() {
+        final int vertex = heap.pop();
+        settled[vertex] = true;
+        final double distance = distances[vertex];
+        for (int arc = graph.getFirstArc(vertex); arc < graph.getEndArc(vertex); arc++) {
+            final int target = graph.getTarget(arc);
+            if (!settled[target]) {
+                final double newDistance = distance + graph.getWeight(arc);
+                if (newDistance < distances[target]) {
+                    update(target, newDistance, arc);
+                }
+            }
+        }
+        return vertex;
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.cts.crs.CRSException;
+import org.cts.crs.CoordinateReferenceSystem;
+import org.h2gis.functions.spatial.crs.ST_Transform;
+import org.h2gis.functions.spatial.topology.ST_Graph;
+import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.h2gis.network.functions.GraphConstants.NODE_ID;
+
+/**
+ * One-to-one shortest path search with the algorithm given to the graph
+ * functions as an optional argument:
+ * <ul>
+ * <li>{@value #DIJKSTRA}: search from the source only (default),</li>
+ * <li>{@value #BIDIRECTIONAL}: search from the source and from the
+ * destination at the same time,</li>
+ * <li>{@value #ASTAR}: search guided by the coordinates of the vertices,
+ * read from the nodes table produced by ST_Graph. The nodes table is
+ * deduced from the edges table name, or given after a separator:
+ * <code>'astar - input_nodes'</code>.</li>
+ * <li>{@value #CONTRACTION_HIERARCHY}: search in the contraction hierarchy
+ * stored by ST_GraphContract, only for path lengths.</li>
+ * </ul>
+ */
+public class ShortestPathSearch {
+
+    public static final String DIJKSTRA = "dijkstra";
+    public static final String BIDIRECTIONAL = "bidirectional";
+    public static final String ASTAR = "astar";
+    public static final String CONTRACTION_HIERARCHY = "ch";
+    public static final String ALGORITHM_ERROR = "Unknown algorithm, expected '" + DIJKSTRA + "', '"
+            + BIDIRECTIONAL + "', '" + ASTAR + "', '" + ASTAR + " " + GraphFunctionParser.SEPARATOR
+            + " nodes_table' or '" + CONTRACTION_HIERARCHY + "': ";
+
+    private ShortestPathSearch() {
+    }
+
+    /**
+     * @param algorithm Algorithm argument, may be null
+     * @return True if the algorithm is the default one-directional Dijkstra
+     */
+    public static boolean isDijkstra(String algorithm) {
+        return algorithm == null || getAlgorithmName(algorithm).equals(DIJKSTRA);
+    }
+
+    /**
+     * @param algorithm Algorithm argument, may be null
+     * @return True if the algorithm uses the contraction hierarchy
+     */
+    public static boolean isContractionHierarchy(String algorithm) {
+        return algorithm != null && getAlgorithmName(algorithm).equals(CONTRACTION_HIERARCHY);
+    }
+
+    private static String getAlgorithmName(String algorithm) {
+        final int separator = algorithm.indexOf(GraphFunctionParser.SEPARATOR);
+        final String name = (separator == -1 ? algorithm : algorithm.substring(0, separator))
+                .trim().toLowerCase(Locale.ROOT);
+        if (!name.equals(DIJKSTRA) && !name.equals(BIDIRECTIONAL) && !name.equals(ASTAR)
+                && !name.equals(CONTRACTION_HIERARCHY)) {
+            throw new IllegalArgumentException(ALGORITHM_ERROR + algorithm);
+        }
+        return name;
+    }
+
+    /**
+     * Compute the shortest path between two vertices of a compact graph.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param source      Source vertex id
+     * @param destination Destination vertex id
+     * @param algorithm   Algorithm argument
+     * @return The shortest path, or null if the destination is not reachable
+     * @throws SQLException
+     */
+    public static CSRPath oneToOne(Connection connection,
+                                   String inputTable,
+                                   String orientation,
+                                   String weight,
+                                   int source,
+                                   int destination,
+                                   String algorithm) throws SQLException {
+        final String name = algorithm == null ? DIJKSTRA : getAlgorithmName(algorithm);
+        if (name.equals(CONTRACTION_HIERARCHY)) {
+            throw new IllegalArgumentException("The '" + CONTRACTION_HIERARCHY
+                    + "' algorithm only computes path lengths.");
+        }
+        final GraphSearches searches = GraphFunction.prepareSearches(connection, inputTable, orientation, weight);
+        final CSRGraph graph = searches.getGraph();
+        final int sourceIndex = getVertexIndex(graph, source);
+        final int destinationIndex = getVertexIndex(graph, destination);
+        if (name.equals(BIDIRECTIONAL)) {
+            return searches.getBidirectionalDijkstra().oneToOne(sourceIndex, destinationIndex);
+        } else if (name.equals(ASTAR)) {
+            final TableLocation nodesTable = getNodesTable(connection, inputTable, algorithm);
+            return searches.getAStar(connection, nodesTable).oneToOne(sourceIndex, destinationIndex);
+        } else {
+            final CSRDijkstra dijkstra = searches.getDijkstra();
+            dijkstra.oneToOne(sourceIndex, destinationIndex);
+            return dijkstra.getPath(destinationIndex);
+        }
+    }
+
+    /**
+     * Compute the distance between two vertices of a compact graph.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param source      Source vertex id
+     * @param destination Destination vertex id
+     * @param algorithm   Algorithm argument
+     * @return The distance, or infinity if the destination is not reachable
+     * @throws SQLException
+     */
+    public static double distance(Connection connection,
+                                  String inputTable,
+                                  String orientation,
+                                  String weight,
+                                  int source,
+                                  int destination,
+                                  String algorithm) throws SQLException {
+        if (isContractionHierarchy(algorithm)) {
+            final ContractionHierarchy hierarchy = prepareHierarchy(connection, inputTable, orientation, weight);
+            final CSRGraph graph = hierarchy.getGraph();
+            final CHQuery query = hierarchy.acquireQuery();
+            try {
+                return query.oneToOne(getVertexIndex(graph, source), getVertexIndex(graph, destination));
+            } finally {
+                hierarchy.releaseQuery(query);
+            }
+        }
+        final CSRPath path = oneToOne(connection, inputTable, orientation, weight, source, destination, algorithm);
+        return path == null ? Double.POSITIVE_INFINITY : path.getLength();
+    }
+
+    /**
+     * Return the contraction hierarchy stored by ST_GraphContract, kept in
+     * memory with the graphs loaded by ST_GraphLoad.
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return The contraction hierarchy
+     * @throws SQLException
+     */
+    public static ContractionHierarchy prepareHierarchy(Connection connection,
+                                                        String inputTable,
+                                                        String orientation,
+                                                        String weight) throws SQLException {
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final ContractionHierarchy hierarchy = GraphCache.getContractionHierarchy(connection, inputTable, parser);
+        if (hierarchy != null) {
+            return hierarchy;
+        }
+        final CSRGraph graph = GraphFunction.prepareCSRGraph(connection, inputTable, orientation, weight);
+        return ST_GraphContract.readHierarchy(connection, inputTable, parser, graph);
+    }
+
+    /**
+     * @param graph    Graph
+     * @param vertexID Vertex id
+     * @return The index of the vertex in the compact graph
+     * @throws IllegalArgumentException If the graph does not contain the vertex
+     */
+    private static int getVertexIndex(CSRGraph graph, int vertexID) {
+        final int index = graph.getVertexIndex(vertexID);
+        if (index == -1) {
+            throw new IllegalArgumentException("The graph does not contain vertex " + vertexID);
+        }
+        return index;
+    }
+
+    /**
+     * Return the nodes table given after the algorithm name, or the nodes
+     * table produced by ST_Graph with the edges table.
+     */
+    private static TableLocation getNodesTable(Connection connection, String inputTable, String algorithm)
+            throws SQLException {
+        final int separator = algorithm.indexOf(GraphFunctionParser.SEPARATOR);
+        if (separator != -1) {
+            return TableUtilities.parseInputTable(connection, algorithm.substring(separator + 1).trim());
+        }
+        final TableLocation nodesTable = getNodesTable(connection, inputTable);
+        if (nodesTable == null) {
+            throw new IllegalArgumentException("Cannot deduce the nodes table of " + inputTable + ", use '"
+                    + ASTAR + " " + GraphFunctionParser.SEPARATOR + " nodes_table'.");
+        }
+        return nodesTable;
+    }
+
+    /**
+     * Return the nodes table produced by ST_Graph with the edges table.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @return The nodes table, or null if the edges table name does not end
+     * with {@value ST_Graph#EDGES_SUFFIX}
+     * @throws SQLException
+     */
+    static TableLocation getNodesTable(Connection connection, String inputTable) throws SQLException {
+        final TableLocation edgesTable = TableUtilities.parseInputTable(connection, inputTable);
+        final String edgesName = edgesTable.getTable();
+        if (!edgesName.toUpperCase(Locale.ROOT).endsWith(ST_Graph.EDGES_SUFFIX)) {
+            return null;
+        }
+        final String prefix = edgesName.substring(0, edgesName.length() - ST_Graph.EDGES_SUFFIX.length());
+        // Keep the case of quoted table names
+        final String suffix = edgesName.endsWith(ST_Graph.EDGES_SUFFIX) ?
+                ST_Graph.NODES_SUFFIX : ST_Graph.NODES_SUFFIX.toLowerCase(Locale.ROOT);
+        return new TableLocation(edgesTable.getCatalog(), edgesTable.getSchema(), prefix + suffix);
+    }
+
+    /**
+     * Read the coordinates of the vertices in the first geometry field of the
+     * nodes table.
+     *
+     * @return X and Y of each vertex index, NaN for the vertices missing in
+     * the nodes table
+     */
+    static double[][] readCoordinates(Connection connection, TableLocation nodesTable, CSRGraph graph)
+            throws SQLException {
+        final List<String> geometryFields = SFSUtilities.getGeometryFields(connection, nodesTable);
+        if (geometryFields.isEmpty()) {
+            throw new IllegalArgumentException("The nodes table " + nodesTable
+                    + " must contain a geometry field.");
+        }
+        final double[] x = new double[graph.getVertexCount()];
+        final double[] y = new double[graph.getVertexCount()];
+        Arrays.fill(x, Double.NaN);
+        Arrays.fill(y, Double.NaN);
+        final Statement st = connection.createStatement();
+        try {
+            final ResultSet rs = st.executeQuery("SELECT " + NODE_ID + ", "
+                    + TableLocation.quoteIdentifier(geometryFields.get(0)) + " FROM " + nodesTable);
+            try {
+                while (rs.next()) {
+                    final int vertex = graph.getVertexIndex(rs.getInt(1));
+                    final Geometry geometry = (Geometry) rs.getObject(2);
+                    if (vertex != -1 && geometry != null && !geometry.isEmpty()) {
+                        final Coordinate coordinate = geometry.getCoordinate();
+                        x[vertex] = coordinate.x;
+                        y[vertex] = coordinate.y;
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+        return new double[][]{x, y};
+    }
+
+    /**
+     * @param connection Connection
+     * @param nodesTable Nodes table
+     * @return True if the coordinate reference system of the nodes table is
+     * geographic, the coordinates are then longitudes and latitudes. False
+     * if the SRID is unknown
+     * @throws SQLException
+     */
+    static boolean isGeographic(Connection connection, TableLocation nodesTable) throws SQLException {
+        final int srid = SFSUtilities.getSRID(connection, nodesTable);
+        if (srid <= 0) {
+            return false;
+        }
+        try {
+            final CoordinateReferenceSystem crs = ST_Transform.getCache().getCRS(connection, srid);
+            return CoordinateReferenceSystem.Type.GEOGRAPHIC2D.equals(crs.getType())
+                    || CoordinateReferenceSystem.Type.GEOGRAPHIC3D.equals(crs.getType());
+        } catch (CRSException ex) {
+            // Unknown SRID: the Euclidean estimate is scaled by the arcs, so it stays a lower bound
+            return false;
+        }
+    }
+}
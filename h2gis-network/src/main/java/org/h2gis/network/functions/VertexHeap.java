@@ -0,0 +1,155 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of vertex indices ordered by a double key, with
+ * decrease-key. Used by the searches in a {@link CSRGraph}.
+ */
+public class VertexHeap {
+
+    private static final int NOT_IN_HEAP = -1;
+
+    private final int[] heap;
+    // Position of each vertex in the heap, or NOT_IN_HEAP
+    private final int[] positions;
+    private final double[] keys;
+    private int size = 0;
+
+    /**
+     * Constructor
+     *
+     * @param vertexCount Number of vertices of the graph
+     */
+    public VertexHeap(int vertexCount) {
+        heap = new int[vertexCount];
+        positions = new int[vertexCount];
+        Arrays.fill(positions, NOT_IN_HEAP);
+        keys = new double[vertexCount];
+    }
+
+    /**
+     * @return True if the heap is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return True if the vertex is in the heap
+     */
+    public boolean contains(int vertex) {
+        return positions[vertex] != NOT_IN_HEAP;
+    }
+
+    /**
+     * Add a vertex, or decrease its key if it is already in the heap.
+     *
+     * @param vertex Vertex index
+     * @param key    Key, lower than the current key of the vertex if it is
+     *               already in the heap
+     */
+    public void push(int vertex, double key) {
+        keys[vertex] = key;
+        if (positions[vertex] == NOT_IN_HEAP) {
+            heap[size] = vertex;
+            positions[vertex] = size;
+            siftUp(size++);
+        } else {
+            siftUp(positions[vertex]);
+        }
+    }
+
+    /**
+     * @return The key of the first vertex, the heap must not be empty
+     */
+    public double peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Remove the vertex with the lowest key.
+     *
+     * @return Vertex index, the heap must not be empty
+     */
+    public int pop() {
+        final int top = heap[0];
+        positions[top] = NOT_IN_HEAP;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Remove all the vertices.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = NOT_IN_HEAP;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        final int vertex = heap[position];
+        final double key = keys[vertex];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = vertex;
+        positions[vertex] = position;
+    }
+
+    private void siftDown(int position) {
+        final int vertex = heap[position];
+        final double key = keys[vertex];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = vertex;
+        positions[vertex] = position;
+    }
+}
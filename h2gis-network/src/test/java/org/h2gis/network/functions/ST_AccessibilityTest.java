@@ -34,6 +34,7 @@ import static org.h2gis.network.functions.GraphConstants.SOURCE;
 import org.junit.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Adam Gouge
@@ -262,6 +263,49 @@ public class ST_AccessibilityTest {
         check(compute(DO, W, "'5'"), new int[]{5, 5, 5, 5, 5}, new double[]{7.0, 4.0, 2.0, 4.0, 0.0});
     }
 
+    @Test
+    public void testJGraphTGraph() throws Exception {
+        // The compact graph is used by default
+        st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = FALSE");
+        try {
+            DO();
+            WDO();
+            RO();
+            WRO();
+            U();
+            WU();
+            WDOSingleDestination();
+        } finally {
+            st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = NULL");
+        }
+    }
+
+    @Test
+    public void testMaxDistance() throws Exception {
+        // SELECT * FROM ST_Accessibility('CORMEN_EDGES_ALL',
+        //     'directed - edge_orientation', 'weight', '1, 5', 3.0)
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Accessibility('CORMEN_EDGES_ALL', "
+                + DO + ", " + W + ", '1, 5', 3.0)");
+        final Map<Integer, Integer> closest = new HashMap<Integer, Integer>();
+        try {
+            while (rs.next()) {
+                closest.put(rs.getInt(SOURCE), rs.getInt(CLOSEST_DEST));
+                assertTrue(rs.getDouble(DISTANCE) <= 3.0);
+            }
+        } finally {
+            rs.close();
+        }
+        // Vertices 2 and 4 are at distance 4.0
+        assertEquals(3, closest.size());
+        assertEquals(1, closest.get(1).intValue());
+        assertEquals(5, closest.get(3).intValue());
+        assertEquals(5, closest.get(5).intValue());
+        // Without weight, no vertex is farther than 2.0
+        check(st.executeQuery("SELECT * FROM ST_Accessibility('CORMEN_EDGES_ALL', "
+                        + DO + ", NULL, 'dest15', 2.0)"),
+                new int[]{1, 5, 5, 5, 5}, new double[]{0.0, 2.0, 1.0, 1.0, 0.0});
+    }
+
     @Test
     public void testST_AccST_SPLSingleDestEquivalence() throws Exception {
         final ResultSet sPL = st.executeQuery(
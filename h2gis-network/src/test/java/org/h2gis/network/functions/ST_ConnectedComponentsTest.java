@@ -140,6 +140,19 @@ public class ST_ConnectedComponentsTest {
                 getEdgePartition(st.executeQuery("SELECT * FROM " + EDGES + EDGE_COMP_SUFFIX)));
     }
 
+    @Test
+    public void testJGraphTGraph() throws Exception {
+        // The compact graph is used by default
+        st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = FALSE");
+        try {
+            DO();
+            RO();
+            U();
+        } finally {
+            st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = NULL");
+        }
+    }
+
     @Test
     public void testLineGraph() throws Exception {
         final int n = 200;
@@ -21,6 +21,7 @@ package org.h2gis.network.functions;
 
 
 import java.sql.*;
+import org.h2.jdbc.JdbcSQLException;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 
@@ -55,6 +56,8 @@ public class ST_GraphAnalysisTest {
     private static final String U = "'undirected'";
     private static final String W = "'weight'";
     public static final String LINE_GRAPH_TABLE = "LINE_GRAPH_EDGES";
+    // Number of threads given to ST_GraphAnalysis
+    private int threadCount = 1;
 
     @BeforeClass
     public static void setUp() throws Exception {
@@ -345,9 +348,7 @@ public class ST_GraphAnalysisTest {
         st.execute("DROP TABLE IF EXISTS COPY_EDGES_ALL" + NODE_CENT_SUFFIX);
         st.execute("DROP TABLE IF EXISTS COPY_EDGES_ALL" + EDGE_CENT_SUFFIX);
 
-        checkBoolean(st.executeQuery(
-                "SELECT ST_GraphAnalysis('COPY_EDGES_ALL', " +
-                        "'directed - edge_orientation', 'weight');"));
+        checkBoolean(st.executeQuery(analysis("'COPY_EDGES_ALL'", DO, W)));
         // σ
         // 11122000
         // 11111000
@@ -408,6 +409,91 @@ public class ST_GraphAnalysisTest {
                 new double[]{0., 4./7, 6./7, 2./7, 3./7, 0., 1., 2./7, 6./7, 4./7, 1./7, 2./7, 2./7});
     }
 
+    @Test
+    public void testParallel() throws Exception {
+        threadCount = 2;
+        // Same results as the java-network-analyzer analyzers
+        DO();
+        WRO();
+        U();
+        WU();
+        testDisconnectedGraph();
+        testBatchComputation(5 * BATCH_SIZE + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoThreadFail() throws Throwable {
+        try {
+            st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", NULL, 0, 0)");
+        } catch (JdbcSQLException e) {
+            throw e.getOriginalCause();
+        }
+    }
+
+    @Test
+    public void testSampled() throws Exception {
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        // More sources than nodes: exact betweenness
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", NULL, 10)"));
+        ResultSet nodeCent = st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        try {
+            while (nodeCent.next()) {
+                final int nodeID = nodeCent.getInt(GraphConstants.NODE_ID);
+                assertEquals(DO_RO_NODE_BETWEENNESS[nodeID - 1],
+                        nodeCent.getDouble(GraphConstants.BETWEENNESS), TOLERANCE);
+                nodeCent.getDouble(GraphConstants.CLOSENESS);
+                assertTrue(nodeCent.wasNull());
+            }
+        } finally {
+            nodeCent.close();
+        }
+        checkEdges(st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX),
+                DO_RO_EDGE_BETWEENNESS);
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        // Estimate from two sources
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", " + W + ", 2)"));
+        ResultSet edgeCent = st.executeQuery("SELECT COUNT(*), MIN(" + GraphConstants.BETWEENNESS + "), MAX("
+                + GraphConstants.BETWEENNESS + ") FROM CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        try {
+            assertTrue(edgeCent.next());
+            assertEquals(11, edgeCent.getInt(1));
+            assertEquals(0., edgeCent.getDouble(2), TOLERANCE);
+            assertEquals(1., edgeCent.getDouble(3), TOLERANCE);
+        } finally {
+            edgeCent.close();
+        }
+    }
+
+    @Test
+    public void testSampledSeed() throws Exception {
+        // The same seed chooses the same sources, whatever the number of threads
+        final double[] expected = sampledBetweenness(", 2, 1, 42)");
+        assertArrayEquals(expected, sampledBetweenness(", 2, 1, 42)"), 0.);
+        assertArrayEquals(expected, sampledBetweenness(", 2, 2, 42)"), 0.);
+    }
+
+    private double[] sampledBetweenness(String sampleArguments) throws SQLException {
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", " + W
+                + sampleArguments));
+        final ResultSet edgeCent = st.executeQuery("SELECT " + GraphConstants.BETWEENNESS
+                + " FROM CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX + " ORDER BY " + GraphConstants.EDGE_ID);
+        try {
+            final double[] betweenness = new double[11];
+            for (int i = 0; i < betweenness.length; i++) {
+                assertTrue(edgeCent.next());
+                betweenness[i] = edgeCent.getDouble(1);
+            }
+            assertFalse(edgeCent.next());
+            return betweenness;
+        } finally {
+            edgeCent.close();
+        }
+    }
+
     @Test
     public void testLineGraphOdd() throws Exception {
         testBatchComputation(5 * BATCH_SIZE + 1);
@@ -431,7 +517,7 @@ public class ST_GraphAnalysisTest {
         // To normalize betweenness, just find the extreme values of these
         // functions and consider whether n is even or odd. Normalizing
         // closeness amounts to multiplying by (n-1).
-        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('" + tableName + "', 'undirected');"));
+        checkBoolean(st.executeQuery(analysis("'" + tableName + "'", U, null)));
             ResultSet nodeCent = st.executeQuery("SELECT * FROM " + tableName + "_NODE_CENT");
             try {
                 // The minimum betweenness value is zero.
@@ -497,9 +583,16 @@ public class ST_GraphAnalysisTest {
     }
 
     private ResultSet compute(String orientation, String weight) throws SQLException {
-        return st.executeQuery(
-                "SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', "
-                        + orientation + ((weight != null) ? ", " + weight : "") + ")");
+        return st.executeQuery(analysis("'CORMEN_EDGES_ALL'", orientation, weight));
+    }
+
+    private String analysis(String table, String orientation, String weight) {
+        if (threadCount > 1) {
+            return "SELECT ST_GraphAnalysis(" + table + ", " + orientation + ", "
+                    + ((weight != null) ? weight : "NULL") + ", 0, " + threadCount + ")";
+        }
+        return "SELECT ST_GraphAnalysis(" + table + ", "
+                + orientation + ((weight != null) ? ", " + weight : "") + ")";
     }
 
     private ResultSet compute(String orientation) throws SQLException {
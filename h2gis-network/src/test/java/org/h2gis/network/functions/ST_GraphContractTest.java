@@ -0,0 +1,349 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ST_GraphContractTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 0.0;
+    private static final String DO = "'directed - edge_orientation'";
+    private static final String RO = "'reversed - edge_orientation'";
+    private static final String U = "'undirected'";
+    private static final String W = "'weight'";
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_GraphContractTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphContract(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphLoad(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPathLength(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @Before
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS CH_EDGES, CH_EDGES_CH_NODES, CH_EDGES_CH_SHORTCUTS, CH_EDGES_CH_INFO");
+        st.execute("CREATE TABLE CH_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+    }
+
+    @After
+    public void tearDownStatement() throws Exception {
+        GraphCache.clear();
+        st.close();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testContractTables() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        assertTrue(rs.next());
+        assertTrue(rs.getBoolean(1));
+        rs.close();
+        rs = st.executeQuery("SELECT COUNT(*), COUNT(DISTINCT CH_RANK) FROM CH_EDGES_CH_NODES");
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(1));
+        assertEquals(5, rs.getInt(2));
+        rs.close();
+        rs = st.executeQuery("SELECT START_NODE, END_NODE, WEIGHT, MIDDLE_NODE FROM CH_EDGES_CH_SHORTCUTS");
+        while (rs.next()) {
+            // A shortcut is never shorter than the shortest path
+            assertTrue(rs.getDouble(3) >= distance(rs.getInt(1), rs.getInt(2), DO, W, "'dijkstra'"));
+            assertFalse(rs.getInt(4) == rs.getInt(1) || rs.getInt(4) == rs.getInt(2));
+        }
+        rs.close();
+    }
+
+    @Test
+    public void testOneToOneDO() throws Exception {
+        checkOneToOne(DO, W);
+    }
+
+    @Test
+    public void testOneToOneRO() throws Exception {
+        checkOneToOne(RO, W);
+    }
+
+    @Test
+    public void testOneToOneU() throws Exception {
+        checkOneToOne(U, W);
+    }
+
+    @Test
+    public void testOneToOneUnweighted() throws Exception {
+        checkOneToOne(DO, "NULL");
+    }
+
+    @Test
+    public void testOneToOneLoaded() throws Exception {
+        st.execute("SELECT ST_GraphLoad('CH_EDGES', " + DO + ", " + W + ")");
+        checkOneToOne(DO, W);
+    }
+
+    @Test
+    public void testManyToMany() throws Exception {
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        st.execute("DROP TABLE IF EXISTS CH_SOURCES, CH_DESTS");
+        st.execute("CREATE TABLE CH_SOURCES(ID INT) AS SELECT X FROM SYSTEM_RANGE(1, 5)");
+        st.execute("CREATE TABLE CH_DESTS(ID INT) AS SELECT X FROM SYSTEM_RANGE(1, 5)");
+        final Map<String, Double> expected = getDistances(st.executeQuery(
+                "SELECT * FROM ST_ShortestPathLength('CH_EDGES', " + DO + ", " + W
+                        + ", 'CH_SOURCES', 'CH_DESTS', 'dijkstra')"));
+        final Map<String, Double> actual = getDistances(st.executeQuery(
+                "SELECT * FROM ST_ShortestPathLength('CH_EDGES', " + DO + ", " + W
+                        + ", 'CH_SOURCES', 'CH_DESTS', 'ch')"));
+        assertEquals(25, actual.size());
+        assertEquals(expected, actual);
+        st.execute("DROP TABLE CH_SOURCES, CH_DESTS");
+    }
+
+    @Test
+    public void testOutdatedHierarchy() throws Throwable {
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        st.execute("DELETE FROM CH_EDGES_CH_NODES WHERE NODE_ID = 5");
+        try {
+            distance(1, 2, DO, W, "'ch'");
+            fail();
+        } catch (SQLException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testGridDO() throws Exception {
+        checkGrid(DO, false);
+    }
+
+    @Test
+    public void testGridRO() throws Exception {
+        checkGrid(RO, false);
+    }
+
+    @Test
+    public void testGridU() throws Exception {
+        checkGrid(U, false);
+    }
+
+    @Test
+    public void testGridLoaded() throws Exception {
+        checkGrid(DO, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherOrientation() throws Throwable {
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        try {
+            distance(1, 2, U, W, "'ch'");
+        } catch (SQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherWeight() throws Throwable {
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        try {
+            distance(1, 2, DO, "NULL", "'ch'");
+        } catch (SQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testModifiedEdges() throws Throwable {
+        st.execute("SELECT ST_GraphLoad('CH_EDGES', " + DO + ", " + W + ")");
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        assertEquals(8.0, distance(1, 2, DO, W, "'ch'"), TOLERANCE);
+        // The cached graph is read again, the hierarchy does not match it anymore
+        st.execute("UPDATE CH_EDGES SET WEIGHT = 1 WHERE EDGE_ID = 5");
+        try {
+            distance(1, 2, DO, W, "'ch'");
+            fail();
+        } catch (SQLException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + DO + ", " + W + ")");
+        assertEquals(4.0, distance(1, 2, DO, W, "'ch'"), TOLERANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotContracted() throws Throwable {
+        try {
+            distance(1, 2, DO, W, "'ch'");
+        } catch (SQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testManyToManyBidirectional() throws Throwable {
+        try {
+            st.executeQuery("SELECT * FROM ST_ShortestPathLength('CH_EDGES', " + DO + ", " + W
+                    + ", 'CH_SOURCES', 'CH_DESTS', 'bidirectional')");
+        } catch (SQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Compare the distances of the hierarchy with Dijkstra in a grid of
+     * 20x20 nodes with random weights and edge orientations, and a few
+     * edges between random nodes.
+     *
+     * @param loaded True to query the graph loaded by ST_GraphLoad
+     */
+    private void checkGrid(String orientation, boolean loaded) throws SQLException {
+        final int size = 20;
+        final Random random = new Random(42);
+        st.execute("DROP TABLE IF EXISTS CH_EDGES");
+        st.execute("CREATE TABLE CH_EDGES(EDGE_ID INT PRIMARY KEY, START_NODE INT, END_NODE INT, " +
+                "WEIGHT DOUBLE, EDGE_ORIENTATION INT)");
+        final PreparedStatement insert = connection.prepareStatement("INSERT INTO CH_EDGES VALUES(?, ?, ?, ?, ?)");
+        try {
+            int edgeId = 1;
+            for (int node = 1; node <= size * size; node++) {
+                if (node % size != 0) {
+                    addEdge(insert, random, edgeId++, node, node + 1);
+                }
+                if (node <= size * (size - 1)) {
+                    addEdge(insert, random, edgeId++, node, node + size);
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                final int startNode = 1 + random.nextInt(size * size);
+                final int endNode = 1 + (startNode + random.nextInt(size * size - 1)) % (size * size);
+                addEdge(insert, random, edgeId++, startNode, endNode);
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+        if (loaded) {
+            st.execute("SELECT ST_GraphLoad('CH_EDGES', " + orientation + ", " + W + ")");
+        }
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + orientation + ", " + W + ")");
+        st.execute("DROP TABLE IF EXISTS CH_SOURCES, CH_DESTS");
+        st.execute("CREATE TABLE CH_SOURCES(ID INT) AS SELECT X FROM SYSTEM_RANGE(1, " + size * size
+                + ") WHERE MOD(X, 7) = 0");
+        st.execute("CREATE TABLE CH_DESTS(ID INT) AS SELECT X FROM SYSTEM_RANGE(1, " + size * size + ")");
+        // Compare the reachable destinations, the unreachable ones may be omitted
+        final Map<String, Double> expected = getReachable(getDistances(st.executeQuery(
+                "SELECT * FROM ST_ShortestPathLength('CH_EDGES', " + orientation + ", " + W
+                        + ", 'CH_SOURCES', 'CH_DESTS', 'dijkstra')")));
+        final Map<String, Double> actual = getReachable(getDistances(st.executeQuery(
+                "SELECT * FROM ST_ShortestPathLength('CH_EDGES', " + orientation + ", " + W
+                        + ", 'CH_SOURCES', 'CH_DESTS', 'ch')")));
+        assertTrue(actual.size() > size * size);
+        assertEquals(expected, actual);
+        // One-to-One queries reuse the search state of the previous query
+        for (int i = 0; i < 50; i++) {
+            final int source = 1 + random.nextInt(size * size);
+            final int destination = 1 + random.nextInt(size * size);
+            assertEquals(distance(source, destination, orientation, W, "'dijkstra'"),
+                    distance(source, destination, orientation, W, "'ch'"), TOLERANCE);
+        }
+        st.execute("DROP TABLE CH_SOURCES, CH_DESTS");
+    }
+
+    /**
+     * Add an edge with an integer weight, so that the distances are exact.
+     */
+    private static void addEdge(PreparedStatement insert, Random random, int edgeId, int startNode, int endNode)
+            throws SQLException {
+        insert.setInt(1, edgeId);
+        insert.setInt(2, startNode);
+        insert.setInt(3, endNode);
+        insert.setDouble(4, 1 + random.nextInt(20));
+        // Mostly directed edges, some undirected and reversed edges
+        final int orientation = random.nextInt(4);
+        insert.setInt(5, orientation == 0 ? 0 : orientation == 1 ? -1 : 1);
+        insert.addBatch();
+    }
+
+    private void checkOneToOne(String orientation, String weight) throws SQLException {
+        st.execute("SELECT ST_GraphContract('CH_EDGES', " + orientation + ", " + weight + ")");
+        for (int source = 1; source <= 5; source++) {
+            for (int destination = 1; destination <= 5; destination++) {
+                assertEquals(distance(source, destination, orientation, weight, "'dijkstra'"),
+                        distance(source, destination, orientation, weight, "'ch'"), TOLERANCE);
+            }
+        }
+    }
+
+    private double distance(int source, int destination, String orientation, String weight, String algorithm)
+            throws SQLException {
+        final ResultSet rs = st.executeQuery("SELECT * FROM ST_ShortestPathLength('CH_EDGES', "
+                + orientation + ", " + weight + ", " + source + ", " + destination + ", " + algorithm + ")");
+        try {
+            assertTrue(rs.next());
+            final double distance = rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX);
+            assertFalse(rs.next());
+            return distance;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static Map<String, Double> getReachable(Map<String, Double> distances) {
+        final Map<String, Double> reachable = new HashMap<String, Double>();
+        for (Map.Entry<String, Double> entry : distances.entrySet()) {
+            if (!entry.getValue().isInfinite()) {
+                reachable.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return reachable;
+    }
+
+    private static Map<String, Double> getDistances(ResultSet rs) throws SQLException {
+        final Map<String, Double> distances = new HashMap<String, Double>();
+        try {
+            while (rs.next()) {
+                distances.put(rs.getInt(ST_ShortestPathLength.SOURCE_INDEX) + "-"
+                        + rs.getInt(ST_ShortestPathLength.DESTINATION_INDEX),
+                        rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX));
+            }
+        } finally {
+            rs.close();
+        }
+        return distances;
+    }
+}
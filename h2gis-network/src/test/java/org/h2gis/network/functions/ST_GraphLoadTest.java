@@ -0,0 +1,290 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.javanetworkanalyzer.data.VDijkstra;
+import org.javanetworkanalyzer.model.Edge;
+import org.javanetworkanalyzer.model.KeyedGraph;
+import org.junit.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class ST_GraphLoadTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 0.0;
+    private static final String DO = "'directed - edge_orientation'";
+    private static final String W = "'weight'";
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_GraphLoadTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphLoad(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphDrop(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPathLength(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPath(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPathTree(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @Before
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS CACHED_EDGES");
+        st.execute("CREATE TABLE CACHED_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+    }
+
+    @After
+    public void tearDownStatement() throws Exception {
+        GraphCache.clear();
+        st.close();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testLoadAndDrop() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        rs.close();
+        rs = st.executeQuery("SELECT ST_GraphDrop('CACHED_EDGES', " + DO + ", " + W + ")");
+        assertTrue(rs.next());
+        assertTrue(rs.getBoolean(1));
+        rs.close();
+        rs = st.executeQuery("SELECT ST_GraphDrop('CACHED_EDGES')");
+        assertTrue(rs.next());
+        assertFalse(rs.getBoolean(1));
+        rs.close();
+    }
+
+    @Test
+    public void testCachedShortestPathLength() throws Exception {
+        st.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+        // Same results as ST_ShortestPathLengthTest, computed twice to reuse the cached edges
+        for (int i = 0; i < 2; i++) {
+            oneToOne(1, 2, 8.0);
+            oneToOne(1, 5, 7.0);
+            oneToOne(5, 1, 7.0);
+        }
+    }
+
+    @Test
+    public void testCachedShortestPath() throws Exception {
+        st.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+        // Same paths as ST_ShortestPathTest, the graph of the first iteration is searched again
+        int treeEdgeCount = -1;
+        double treeWeight = 0;
+        for (int i = 0; i < 2; i++) {
+            checkPath(1, 2, 2, 8.0);
+            checkPath(5, 1, 1, 7.0);
+            checkPath(2, 4, 3, 10.0);
+            // Two paths sharing their last edge
+            checkPath(1, 4, 4, 20.0);
+            final ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(WEIGHT) FROM ST_ShortestPathTree("
+                    + "'CACHED_EDGES', " + DO + ", " + W + ", 1)");
+            assertTrue(rs.next());
+            if (treeEdgeCount == -1) {
+                treeEdgeCount = rs.getInt(1);
+                treeWeight = rs.getDouble(2);
+            } else {
+                assertEquals(treeEdgeCount, rs.getInt(1));
+                assertEquals(treeWeight, rs.getDouble(2), TOLERANCE);
+            }
+            rs.close();
+        }
+    }
+
+    @Test
+    public void testLentGraph() throws Exception {
+        st.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation("directed - edge_orientation", "weight");
+        final GraphLease lease = GraphCache.lendGraph(connection, "CACHED_EDGES", parser,
+                VDijkstra.class, Edge.class);
+        final KeyedGraph graph = lease.getGraph();
+        assertNotNull(graph);
+        lease.release();
+        assertNull(lease.getGraph());
+        // The graph given back is lent again
+        final GraphLease other = GraphCache.lendGraph(connection, "CACHED_EDGES", parser,
+                VDijkstra.class, Edge.class);
+        assertSame(graph, other.getGraph());
+        // But not while it is in use
+        final GraphLease third = GraphCache.lendGraph(connection, "CACHED_EDGES", parser,
+                VDijkstra.class, Edge.class);
+        assertNotSame(graph, third.getGraph());
+        other.release();
+        third.release();
+    }
+
+    @Test
+    public void testSeveralDatabases() throws Exception {
+        // Same table in another database, with other weights
+        Connection otherConnection = H2GISDBFactory.createSpatialDataBase("ST_GraphLoadTest_other", true);
+        try {
+            H2GISFunctions.registerFunction(otherConnection.createStatement(), new ST_GraphLoad(), "");
+            H2GISFunctions.registerFunction(otherConnection.createStatement(), new ST_ShortestPathLength(), "");
+            GraphCreatorTest.registerCormenGraph(otherConnection);
+            Statement otherSt = otherConnection.createStatement();
+            try {
+                otherSt.execute("DROP TABLE IF EXISTS CACHED_EDGES");
+                otherSt.execute("CREATE TABLE CACHED_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+                otherSt.execute("UPDATE CACHED_EDGES SET WEIGHT = 1");
+                st.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+                otherSt.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+                oneToOne(1, 2, 8.0);
+                ResultSet rs = otherSt.executeQuery(
+                        "SELECT * FROM ST_ShortestPathLength('CACHED_EDGES', " + DO + ", " + W + ", 1, 2)");
+                assertTrue(rs.next());
+                assertEquals(1.0, rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX), TOLERANCE);
+                rs.close();
+            } finally {
+                otherSt.close();
+            }
+        } finally {
+            otherConnection.close();
+        }
+    }
+
+    @Test
+    public void testCacheInvalidation() throws Exception {
+        st.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+        oneToOne(1, 2, 8.0);
+        // 1 -> 3 -> 2 is now shorter, the cached edges must be reloaded
+        st.execute("UPDATE CACHED_EDGES SET WEIGHT = 1 WHERE EDGE_ID = 5");
+        oneToOne(1, 2, 4.0);
+        st.execute("DELETE FROM CACHED_EDGES WHERE EDGE_ID = 5");
+        oneToOne(1, 2, 10.0);
+    }
+
+    @Test
+    public void testCachedAlgorithms() throws Exception {
+        st.execute("DROP TABLE IF EXISTS CACHED_NODES");
+        st.execute("CREATE TABLE CACHED_NODES AS SELECT * FROM CORMEN_NODES");
+        st.execute("SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ")");
+        // The searches and the A* heuristic are reused by the second iteration
+        for (int i = 0; i < 2; i++) {
+            for (String algorithm : new String[]{"'dijkstra'", "'bidirectional'", "'astar - cached_nodes'"}) {
+                oneToOne(1, 2, algorithm, 8.0);
+                oneToOne(1, 5, algorithm, 7.0);
+                oneToOne(5, 1, algorithm, 7.0);
+            }
+        }
+        // The coordinates are read again, the estimate is not used anymore
+        st.execute("UPDATE CACHED_NODES SET THE_GEOM = 'POINT (0 0)'");
+        oneToOne(1, 2, "'astar - cached_nodes'", 8.0);
+        oneToOne(5, 1, "'astar - cached_nodes'", 7.0);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        File snapshot = new File("target/cached_edges.graph");
+        snapshot.delete();
+        String load = "SELECT ST_GraphLoad('CACHED_EDGES', " + DO + ", " + W + ", '" + snapshot.getPath() + "')";
+        ResultSet rs = st.executeQuery(load);
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        rs.close();
+        assertTrue(snapshot.exists());
+        // Load the edges and the compact graph from the snapshot
+        GraphCache.clear();
+        rs = st.executeQuery(load);
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        rs.close();
+        for (boolean compactGraph : new boolean[]{false, true}) {
+            st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = " + compactGraph);
+            oneToOne(1, 2, 8.0);
+            oneToOne(1, 5, 7.0);
+            oneToOne(5, 1, 7.0);
+        }
+        st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = NULL");
+        // The snapshot does not match the edges table anymore, it is written again
+        st.execute("DELETE FROM CACHED_EDGES WHERE EDGE_ID = 5");
+        GraphCache.clear();
+        rs = st.executeQuery(load);
+        assertTrue(rs.next());
+        assertEquals(9, rs.getInt(1));
+        rs.close();
+        oneToOne(1, 2, 10.0);
+        GraphCache.clear();
+        rs = st.executeQuery(load);
+        assertTrue(rs.next());
+        assertEquals(9, rs.getInt(1));
+        rs.close();
+        oneToOne(1, 2, 10.0);
+        // Same number of rows but other weights, the snapshot is written again
+        st.execute("UPDATE CACHED_EDGES SET WEIGHT = 2 * WEIGHT");
+        GraphCache.clear();
+        rs = st.executeQuery(load);
+        assertTrue(rs.next());
+        assertEquals(9, rs.getInt(1));
+        rs.close();
+        oneToOne(1, 2, 20.0);
+        // Same weights but another edge orientation, 1 -> 5 -> 3 -> 2
+        st.execute("UPDATE CACHED_EDGES SET EDGE_ORIENTATION = -1 WHERE EDGE_ID = 1");
+        GraphCache.clear();
+        rs = st.executeQuery(load);
+        assertTrue(rs.next());
+        assertEquals(9, rs.getInt(1));
+        rs.close();
+        oneToOne(1, 2, 28.0);
+    }
+
+    private void checkPath(int source, int destination, int edgeCount, double weight) throws SQLException {
+        final ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(WEIGHT) FROM ST_ShortestPath('CACHED_EDGES', "
+                + DO + ", " + W + ", " + source + ", " + destination + ")");
+        assertTrue(rs.next());
+        assertEquals(edgeCount, rs.getInt(1));
+        assertEquals(weight, rs.getDouble(2), TOLERANCE);
+        rs.close();
+    }
+
+    private void oneToOne(int source, int destination, double distance) throws SQLException {
+        oneToOne(source, destination, null, distance);
+    }
+
+    private void oneToOne(int source, int destination, String algorithm, double distance) throws SQLException {
+        ResultSet rs = st.executeQuery(
+                "SELECT * FROM ST_ShortestPathLength('CACHED_EDGES', " + DO + ", " + W + ", "
+                        + source + ", " + destination + ((algorithm != null) ? ", " + algorithm : "") + ")");
+        assertTrue(rs.next());
+        assertEquals(source, rs.getInt(ST_ShortestPathLength.SOURCE_INDEX));
+        assertEquals(destination, rs.getInt(ST_ShortestPathLength.DESTINATION_INDEX));
+        assertEquals(distance, rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX), TOLERANCE);
+        assertFalse(rs.next());
+        rs.close();
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.*;
+import org.locationtech.jts.geom.Geometry;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.h2gis.network.functions.GraphConstants.DISTANCE;
+import static org.h2gis.network.functions.GraphConstants.SOURCE;
+import static org.h2gis.network.functions.GraphConstants.THE_GEOM;
+import static org.junit.Assert.*;
+
+public class ST_IsochroneTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 1E-12;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_IsochroneTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_Isochrone(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+        registerGridGraph(connection);
+    }
+
+    @Before
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+    }
+
+    @After
+    public void tearDownStatement() throws Exception {
+        st.close();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    /**
+     * 3x3 grid of unit edges, node 5 is the center.
+     * <pre>
+     * 7 - 8 - 9
+     * |   |   |
+     * 4 - 5 - 6
+     * |   |   |
+     * 1 - 2 - 3
+     * </pre>
+     */
+    private static void registerGridGraph(Connection connection) throws SQLException {
+        final Statement st = connection.createStatement();
+        try {
+            st.execute("CREATE TABLE GRID_NODES(NODE_ID INT PRIMARY KEY, THE_GEOM POINT)");
+            st.execute("CREATE TABLE GRID_EDGES(EDGE_ID INT AUTO_INCREMENT PRIMARY KEY, START_NODE INT, " +
+                    "END_NODE INT, WEIGHT DOUBLE, EDGE_ORIENTATION INT)");
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) {
+                    final int node = 3 * row + column + 1;
+                    st.execute("INSERT INTO GRID_NODES VALUES(" + node + ", 'POINT(" + column + " " + row + ")')");
+                    if (column < 2) {
+                        st.execute("INSERT INTO GRID_EDGES VALUES(DEFAULT, " + node + ", " + (node + 1) + ", 1, 0)");
+                    }
+                    if (row < 2) {
+                        st.execute("INSERT INTO GRID_EDGES VALUES(DEFAULT, " + node + ", " + (node + 3) + ", 1, 0)");
+                    }
+                }
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    @Test
+    public void testBands() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('GRID_EDGES', " +
+                "'directed - edge_orientation', 'weight', 5, '2, 0.5, 1') ORDER BY " + DISTANCE);
+        try {
+            // Diamonds around the center, then the whole grid
+            checkRow(rs, 5, 0.5, 0.5);
+            checkRow(rs, 5, 1, 2);
+            checkRow(rs, 5, 2, 4);
+            assertFalse(rs.next());
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Test
+    public void testUnweightedSources() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('GRID_EDGES', " +
+                "'undirected', NULL, '1, 9', '1')");
+        try {
+            // The triangles of the corner cell
+            checkRow(rs, 1, 1, 0.5);
+            checkRow(rs, 9, 1, 0.5);
+            assertFalse(rs.next());
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Test
+    public void testMaxTriangleSide() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('GRID_EDGES', " +
+                "'undirected', 'weight', 5, '2', 0.5)");
+        try {
+            assertTrue(rs.next());
+            assertTrue(((Geometry) rs.getObject(THE_GEOM)).isEmpty());
+            assertFalse(rs.next());
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoNodesTable() throws Throwable {
+        try {
+            st.executeQuery("SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', 'undirected', NULL, 1, '1')");
+        } catch (SQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void checkRow(ResultSet rs, int source, double distance, double area) throws SQLException {
+        assertTrue(rs.next());
+        assertEquals(source, rs.getInt(SOURCE));
+        assertEquals(distance, rs.getDouble(DISTANCE), TOLERANCE);
+        assertEquals(area, ((Geometry) rs.getObject(THE_GEOM)).getArea(), TOLERANCE);
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import org.h2.jdbc.JdbcSQLException;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of ST_ShortestPathLength which do not depend on the kind of graph or
+ * on the number of threads.
+ */
+public class ST_ShortestPathLengthAlgorithmsTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 0.0;
+    private static final String DO = "'directed - edge_orientation'";
+    private static final String RO = "'reversed - edge_orientation'";
+    private static final String U = "'undirected'";
+    private static final String W = "'weight'";
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_ShortestPathLengthAlgorithmsTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPathLength(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+        ST_ShortestPathLengthTest.registerSourceDestinationTable(connection);
+    }
+
+    @Before
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+    }
+
+    @After
+    public void tearDownStatement() throws Exception {
+        st.close();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noThreadFail() throws Throwable {
+        try {
+            st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                    "'undirected', NULL, 'SOURCE_TABLE', 'DEST_TABLE', 'dijkstra', 0)");
+        } catch (JdbcSQLException e) {
+            throw e.getOriginalCause();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sourceDestinationTableAlgorithmFail() throws Throwable {
+        try {
+            st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                    "'undirected', NULL, 'SOURCE_DEST', 'ch', 4)");
+        } catch (JdbcSQLException e) {
+            throw e.getOriginalCause();
+        }
+    }
+
+    @Test
+    public void oneToOneAlgorithms() throws Exception {
+        // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
+        //     'directed - edge_orientation', 'weight', i, j, 'bidirectional')
+        final String[] algorithms = {"'bidirectional'", "'astar - cormen_nodes'"};
+        for (String orientation : new String[]{DO, RO, U}) {
+            for (String weight : new String[]{"NULL", W}) {
+                for (String algorithm : algorithms) {
+                    for (int source = 1; source <= 5; source++) {
+                        for (int destination = 1; destination <= 5; destination++) {
+                            final double expected = getDistance(st.executeQuery(
+                                    "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                                            + orientation + ", " + weight + ", " + source + ", " + destination
+                                            + ", 'dijkstra')"));
+                            assertEquals(expected, getDistance(st.executeQuery(
+                                    "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                                            + orientation + ", " + weight + ", " + source + ", " + destination
+                                            + ", " + algorithm + ")")), TOLERANCE);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void oneToOneAStarNodesTable() throws Exception {
+        // The nodes table CORMEN_NODES is deduced from the edges table CORMEN_EDGES
+        assertEquals(2.0, getDistance(st.executeQuery(
+                "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES', 'undirected', NULL, 1, 4, 'astar')")),
+                TOLERANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oneToOneAlgorithmFail() throws Throwable {
+        try {
+            st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                    "'undirected', NULL, 1, 4, 'bellman-ford')");
+        } catch (JdbcSQLException e) {
+            throw e.getOriginalCause();
+        }
+    }
+
+    private static double getDistance(ResultSet rs) throws SQLException {
+        try {
+            assertTrue(rs.next());
+            final double distance = rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX);
+            assertFalse(rs.next());
+            return distance;
+        } finally {
+            rs.close();
+        }
+    }
+}
@@ -24,19 +24,29 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
 
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import org.h2.jdbc.JdbcSQLException;
+import org.h2.tools.SimpleResultSet;
+import org.h2.value.ValueString;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import static org.junit.Assert.assertEquals;
 
 /**
+ * Runs with JGraphT graphs, with compact graphs and, for the Many-to-Many
+ * searches, with several threads.
+ *
  * @author Adam Gouge
  * @author Erwan Bocher
  */
+@RunWith(Parameterized.class)
 public class ST_ShortestPathLengthTest {
 
     private static Connection connection;
@@ -49,6 +59,18 @@ public class ST_ShortestPathLengthTest {
     private static final String SOURCE_DEST_TABLE = "'source_dest'";
     private static final String SOURCE_TABLE = "'source_table'";
     private static final String DEST_TABLE = "'dest_table'";
+    private final boolean compactGraph;
+    private final int threadCount;
+
+    public ST_ShortestPathLengthTest(boolean compactGraph, int threadCount) {
+        this.compactGraph = compactGraph;
+        this.threadCount = threadCount;
+    }
+
+    @Parameterized.Parameters(name = "compactGraph={0}, threadCount={1}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{false, 1}, {true, 1}, {false, 4}});
+    }
 
     @BeforeClass
     public static void setUp() throws Exception {
@@ -62,6 +84,15 @@ public class ST_ShortestPathLengthTest {
     @Before
     public void setUpStatement() throws Exception {
         st = connection.createStatement();
+        st.execute("SET @" + GraphFunction.COMPACT_GRAPH_VARIABLE + " = " + compactGraph);
+    }
+
+    /**
+     * Only the Many-to-Many searches use several threads, the other tests
+     * run once by kind of graph.
+     */
+    private void assumeSingleThread() {
+        Assume.assumeTrue(threadCount == 1);
     }
 
     @After
@@ -74,7 +105,7 @@ public class ST_ShortestPathLengthTest {
         connection.close();
     }
 
-    private static void registerSourceDestinationTable(Connection connection) throws SQLException {
+    static void registerSourceDestinationTable(Connection connection) throws SQLException {
         final Statement st = connection.createStatement();
         try {
             st.execute("CREATE TABLE source_dest(source INT, destination INT);" +
@@ -103,6 +134,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToOneDO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'directed - edge_orientation', i, j)
         oneToOne(DO, 1, 1, 0.0);
@@ -134,6 +166,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToOneWDO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'weight', 'directed - edge_orientation', i, j)
         oneToOne(DO, W, 1, 1, 0.0);
@@ -193,6 +226,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToOneRO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'reversed - edge_orientation', i, j)
         oneToOne(RO, 1, 1, 0.0);
@@ -224,6 +258,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToOneWRO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'reversed - edge_orientation', 'weight', i, j)
         oneToOne(RO, W, 1, 1, 0.0);
@@ -283,6 +318,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToOneU() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'undirected', i, j)
         oneToOne(U, 1, 1, 0.0);
@@ -314,6 +350,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToOneWU() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'undirected', 'weight', i, j)
         oneToOne(U, W, 1, 1, 0.0);
@@ -392,6 +429,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToAllDO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'directed - edge_orientation', i)
         oneToAll(DO, 1, new double[]{0.0, 1.0, 1.0, 2.0, 1.0});
@@ -403,6 +441,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToAllWDO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'directed - edge_orientation', 'weight', i)
         oneToAll(DO, W, 1, new double[]{0.0, 8.0, 5.0, 13.0, 7.0});
@@ -414,6 +453,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToAllRO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'reversed - edge_orientation', i)
         oneToAll(RO, 1, new double[]{0.0, 3.0, 2.0, 2.0, 1.0});
@@ -425,6 +465,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToAllWRO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'reversed - edge_orientation', 'weight', i)
         oneToAll(RO, W, 1, new double[]{0.0, 11.0, 9.0, 11.0, 7.0});
@@ -436,6 +477,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToAllU() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'undirected', i)
         oneToAll(U, 1, new double[]{0.0,  1.0,  1.0,  2.0,  1.0});
@@ -447,6 +489,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToAllWU() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'undirected', 'weight', i)
         oneToAll(U, W, 1, new double[]{0.0, 7.0, 5.0, 8.0, 7.0});
@@ -554,11 +597,17 @@ public class ST_ShortestPathLengthTest {
 
     private void manyToMany(String orientation, String weight,
                             String sourceDestinationTable, double[][] distances) throws SQLException {
-        ResultSet rs = st.executeQuery(
-                "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
-                        + orientation + ((weight != null) ? ", " + weight : "")
-                        + ", " + sourceDestinationTable + ")");
-        checkManyToMany(rs, distances, 25);
+        final String query;
+        if (threadCount > 1) {
+            query = "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                    + orientation + ", " + ((weight != null) ? weight : "NULL")
+                    + ", " + sourceDestinationTable + ", 'dijkstra', " + threadCount + ")";
+        } else {
+            query = "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                    + orientation + ((weight != null) ? ", " + weight : "")
+                    + ", " + sourceDestinationTable + ")";
+        }
+        checkManyToMany(st.executeQuery(query), distances, 25);
     }
 
     private void checkManyToMany(ResultSet rs, double[][] distances, int expectedCount) throws SQLException {
@@ -655,11 +704,17 @@ public class ST_ShortestPathLengthTest {
                                 String sourceTable,
                                 String destinationTable,
                                 double[][] distances, int distancesSize) throws SQLException {
-        ResultSet rs = st.executeQuery(
-                "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
-                        + orientation + ((weight != null) ? ", " + weight : "")
-                        + ", " + sourceTable + ", " + destinationTable + ")");
-        checkManyToMany(rs, distances, distancesSize);
+        final String query;
+        if (threadCount > 1) {
+            query = "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                    + orientation + ", " + ((weight != null) ? weight : "NULL")
+                    + ", " + sourceTable + ", " + destinationTable + ", 'dijkstra', " + threadCount + ")";
+        } else {
+            query = "SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                    + orientation + ((weight != null) ? ", " + weight : "")
+                    + ", " + sourceTable + ", " + destinationTable + ")";
+        }
+        checkManyToMany(st.executeQuery(query), distances, distancesSize);
     }
 
     private void manyToManySTDT(String orientation, String weight,
@@ -676,6 +731,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void emptySourceTableFail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
                     "'undirected', 'SOURCE_TABLE', 'EMPTY_TABLE')");
@@ -688,6 +744,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void emptyDestTableFail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
                     "'undirected', 'EMPTY_TABLE', 'DEST_TABLE')");
@@ -700,6 +757,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void emptySourceTableDestTableFail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
                     "'undirected', 'EMPTY_TABLE', 'EMPTY_TABLE')");
@@ -712,6 +770,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void nonExistentNodeFail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
                     "'undirected', 'NONEXISTENT_NODE_TABLE', 'DEST_TABLE')");
@@ -722,10 +781,40 @@ public class ST_ShortestPathLengthTest {
         }
     }
 
+    @Test
+    public void manyToManyReadTwice() throws Exception {
+        assumeSingleThread();
+        // The rows are computed while they are read, reading them again
+        // restarts the computation.
+        final ResultSet rs = ST_ShortestPathLength.getShortestPathLength(connection, "CORMEN_EDGES_ALL",
+                "directed - edge_orientation", "weight", ValueString.get("source_table"),
+                ValueString.get("dest_table"));
+        ((SimpleResultSet) rs).setAutoClose(false);
+        try {
+            final double first = sumDistances(rs);
+            rs.beforeFirst();
+            assertEquals(first, sumDistances(rs), TOLERANCE);
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static double sumDistances(ResultSet rs) throws SQLException {
+        double sum = 0;
+        int count = 0;
+        while (rs.next()) {
+            sum += rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX);
+            count++;
+        }
+        assertTrue(count > 0);
+        return sum;
+    }
+
     // ************************* One-to-Several ***************************************
 
     @Test
     public void oneToSeveralDO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'directed - edge_orientation', i, '1, 2, 3, 4, 5')
         oneToSeveral(DO, 1, "'1, 2, 3, 4, 5'", new double[]{0.0, 1.0, 1.0, 2.0, 1.0});
@@ -737,6 +826,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToSeveralWDO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'directed - edge_orientation', 'weight', i, '1, 2, 3, 4, 5')
         oneToSeveral(DO, W, 1, "'1, 2, 3, 4, 5'", new double[]{0.0, 8.0, 5.0, 13.0, 7.0});
@@ -756,6 +846,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToSeveralRO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'reversed - edge_orientation', i, '1, 2, 3, 4, 5')
         oneToSeveral(RO, 1, "'1, 2, 3, 4, 5'", new double[]{0.0, 3.0, 2.0, 2.0, 1.0});
@@ -767,6 +858,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToSeveralWRO() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'reversed - edge_orientation', 'weight', i, '1, 2, 3, 4, 5')
         oneToSeveral(RO, W, 1, "'1, 2, 3, 4, 5'", new double[]{0.0, 11.0, 9.0, 11.0, 7.0});
@@ -786,6 +878,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToSeveralU() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'undirected', i, '1, 2, 3, 4, 5')
         oneToSeveral(U, 1, "'1, 2, 3, 4, 5'", new double[]{0.0,  1.0,  1.0,  2.0,  1.0});
@@ -797,6 +890,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void oneToSeveralWU() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
         //     'undirected', 'weight', i, '1, 2, 3, 4, 5')
         oneToSeveral(U, W, 1, "'1, 2, 3, 4, 5'", new double[]{0.0, 7.0, 5.0, 8.0, 7.0});
@@ -816,6 +910,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void oneToSeveralFail() throws Throwable {
+        assumeSingleThread();
         try {
             // The graph does not contain vertex 7.
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', 'undirected', 1, '2, 7')");
@@ -848,6 +943,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void edgesWithInfiniteWeights() throws Exception {
+        assumeSingleThread();
         // SELECT * FROM ST_ShortestPathLength('INF_EDGES_ALL',
         //     'undirected', 'source_dest')
         final double[][] distances = {{0.0, 10.0, 5.0, 11.0, 7.0},
@@ -863,6 +959,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void arg3Fail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', 'undirected', 2.0)");
         } catch (JdbcSQLException e) {
@@ -872,6 +969,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void arg4Fail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', 'undirected', 1, 2.0)");
         } catch (JdbcSQLException e) {
@@ -881,6 +979,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void arg5Fail() throws Throwable {
+        assumeSingleThread();
         try {
             st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', 'undirected', 'weight', 1, 2.0)");
         } catch (JdbcSQLException e) {
@@ -890,6 +989,7 @@ public class ST_ShortestPathLengthTest {
 
     @Test
     public void testUnreachableVertices() throws SQLException {
+        assumeSingleThread();
         // Vertices 3 and 6 are in different connected components.
         ResultSet rs = st.executeQuery("SELECT * FROM ST_ShortestPathLength('COPY_EDGES_ALL', " +
                 "'undirected', 3, 6)");
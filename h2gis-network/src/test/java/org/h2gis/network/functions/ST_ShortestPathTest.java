@@ -802,6 +802,32 @@ public class ST_ShortestPathTest {
                 new PathEdge("LINESTRING (3 1, 4 2)", 11, 1, 1, 7, 6, 1.0)});
     }
 
+    @Test
+    public void oneToOneWDOAlgorithms() throws Exception {
+        // The bidirectional Dijkstra and A* return one of the shortest paths,
+        // check the pairs of vertices having only one shortest path.
+        for (String algorithm : new String[]{"'bidirectional'", "'astar - cormen_nodes'"}) {
+            check(oneToOne(DO, W, 1, 1, algorithm), EMPTY);
+            check(oneToOne(DO, W, 1, 2, algorithm), new PathEdge[]{
+                    new PathEdge("LINESTRING (1 0, 1.25 1, 1 2)", 4, 1, 1, 3, 2, 3.0),
+                    new PathEdge("LINESTRING (0 1, 1 0)", 5, 1, 2, 1, 3, 5.0)});
+            check(oneToOne(DO, W, 2, 4, algorithm), new PathEdge[]{
+                    new PathEdge("LINESTRING (2 0, 2.25 1, 2 2)", 9, 1, 1, 5, 4, 6.0),
+                    new PathEdge("LINESTRING (1 0, 2 0)", 7, 1, 2, 3, 5, 2.0),
+                    new PathEdge("LINESTRING (1 2, 0.75 1, 1 0)", 3, 1, 3, 2, 3, 2.0)});
+            check(oneToOne(DO, W, 5, 1, algorithm), new PathEdge[]{
+                    new PathEdge("LINESTRING (2 0, 0 1)", 10, 1, 1, 5, 1, 7.0)});
+        }
+    }
+
+    private ResultSet oneToOne(String orientation, String weight,
+                               int source, int destination, String algorithm) throws SQLException {
+        return st.executeQuery(
+                "SELECT * FROM ST_ShortestPath('CORMEN_EDGES_ALL', "
+                        + orientation + ", " + weight + ", " + source + ", " + destination
+                        + ", " + algorithm + ")");
+    }
+
     private ResultSet oneToOne(String table, String orientation, String weight,
                                int source, int destination) throws SQLException {
         return st.executeQuery(
@@ -307,6 +307,35 @@ public class JDBCUtilities {
         return 0;
     }
 
+    /**
+     * Return true if an index of the table starts with the given field, so
+     * that a lookup on this field does not scan the whole table.
+     *
+     * @param connection Connection
+     * @param tableName  Table name
+     * @param fieldName  Field name, ignore case
+     * @return True if the field is the first column of an index of the table
+     * @throws SQLException
+     */
+    public static boolean isIndexed(Connection connection, String tableName, String fieldName) throws SQLException {
+        final TableLocation tableLocation = TableLocation.parse(tableName);
+        final ResultSet rs = connection.getMetaData().getIndexInfo(tableLocation.getCatalog(null),
+                tableLocation.getSchema(null), tableLocation.getTable(), false, true);
+        try {
+            while (rs.next()) {
+                // If the schema is not specified, public must be the schema
+                if ((!tableLocation.getSchema().isEmpty() || "public".equalsIgnoreCase(rs.getString("TABLE_SCHEM")))
+                        && rs.getInt("ORDINAL_POSITION") == 1
+                        && fieldName.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                    return true;
+                }
+            }
+        } finally {
+            rs.close();
+        }
+        return false;
+    }
+
     /**
      * Return true if the table exists.
      *
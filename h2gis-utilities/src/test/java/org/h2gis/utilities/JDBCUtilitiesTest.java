@@ -175,6 +175,18 @@ public class JDBCUtilitiesTest {
         assertFalse(JDBCUtilities.hasField(connection, "TEMPTABLE", "some_other_field"));
     }
 
+    @Test
+    public void testIsIndexed() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS TEMPTABLE");
+        st.execute("CREATE TABLE TEMPTABLE(id integer primary key, name varchar, code integer)");
+        st.execute("CREATE INDEX ON TEMPTABLE(name, code)");
+        assertTrue(JDBCUtilities.isIndexed(connection, "TEMPTABLE", "id"));
+        assertTrue(JDBCUtilities.isIndexed(connection, "TEMPTABLE", "NAME"));
+        // Only the first column of an index is used by a lookup
+        assertFalse(JDBCUtilities.isIndexed(connection, "TEMPTABLE", "code"));
+        st.execute("DROP TABLE IF EXISTS TEMPTABLE");
+    }
+
     @Test
     public void testCancel() throws SQLException {
         boolean aborted = false;